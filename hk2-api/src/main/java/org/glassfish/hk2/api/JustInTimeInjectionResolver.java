@@ -65,6 +65,13 @@ import org.jvnet.hk2.annotations.Contract;
  * If any of the registered injection resolvers commits a dynamic change
  * then the system will try one more time to resolve the injection before
  * failing (or returning null if the injection point is Optional).
+ * <p>
+ * If none of the injection resolvers could resolve an injection point
+ * the system remembers that until the next change to the configuration
+ * of the {@link ServiceLocator}, and will not call the injection resolvers
+ * for an equivalent injection point in the meantime.  Injection resolvers
+ * can use the {@link JustInTimeResolves} qualifier in order to only be
+ * called for the types they might be able to resolve
  * 
  * @author jwells
  */
@@ -0,0 +1,95 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.api;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import javax.inject.Qualifier;
+
+/**
+ * This qualifier may be placed on a {@link JustInTimeInjectionResolver}
+ * in order to tell the system which types the resolver can resolve.  When
+ * an injection point cannot be resolved only those resolvers that either
+ * have no such information or that declare the raw type of the injection
+ * point (or its package) are called.  This saves the system from creating
+ * and calling resolvers that could never have resolved the injection point.
+ * <p>
+ * The information is kept in the metadata of the descriptor of the
+ * resolver, and hence any user-defined {@link Descriptor} of a
+ * {@link JustInTimeInjectionResolver} can also have this information
+ * by filling in the {@link #JIT_RESOLVES_TYPES} or the
+ * {@link #JIT_RESOLVES_PACKAGES} metadata
+ * 
+ * @author jwells
+ *
+ */
+@Documented
+@Retention(RUNTIME)
+@Qualifier
+@Target(TYPE)
+public @interface JustInTimeResolves {
+    public static final String JIT_RESOLVES_TYPES = "org.glassfish.hk2.api.justInTimeResolvesTypes";
+    public static final String JIT_RESOLVES_PACKAGES = "org.glassfish.hk2.api.justInTimeResolvesPackages";
+    
+    /**
+     * The types this resolver might resolve.  An injection point whose
+     * raw type is one of these types will cause this resolver to be called
+     * 
+     * @return The types this resolver might resolve
+     */
+    @Metadata(JIT_RESOLVES_TYPES)
+    public Class<?>[] value() default {};
+    
+    /**
+     * The packages of the types this resolver might resolve.  An injection
+     * point whose raw type is in one of these packages (or in a sub-package
+     * of one of these packages) will cause this resolver to be called
+     * 
+     * @return The packages of the types this resolver might resolve
+     */
+    @Metadata(JIT_RESOLVES_PACKAGES)
+    public String[] packages() default {};
+
+}
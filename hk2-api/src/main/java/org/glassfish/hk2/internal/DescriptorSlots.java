@@ -0,0 +1,162 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.internal;
+
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.utilities.BuilderHelper;
+
+/**
+ * Gives each descriptor seen by one of the thread based contexts a
+ * small integer slot number.  The slot number is used as the index
+ * into the per-thread instance arrays so that a thread can find its
+ * instance of a service without hashing into a map of its own and
+ * without taking any lock shared with other threads.
+ * <p>
+ * The slot of a descriptor that has been unbound is given back and
+ * handed out again to the next new descriptor.  The per-thread arrays
+ * remember which descriptor each instance belongs to, so an instance
+ * left in a reused slot is never returned for the new descriptor
+ * 
+ * @author jwells
+ *
+ */
+class DescriptorSlots {
+    private final ConcurrentHashMap<ActiveDescriptor<?>, Integer> slots =
+            new ConcurrentHashMap<ActiveDescriptor<?>, Integer>();
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    
+    /** Slots that have been given back, guarded by itself */
+    private final LinkedList<Integer> freeSlots = new LinkedList<Integer>();
+    
+    /**
+     * Returns the slot of the given descriptor, assigning it a new
+     * slot if it has not been seen before
+     * 
+     * @param descriptor The non-null descriptor to find the slot of
+     * @return The slot of the descriptor
+     */
+    int getSlot(ActiveDescriptor<?> descriptor) {
+        Integer retVal = slots.get(descriptor);
+        if (retVal != null) return retVal;
+        
+        Integer candidate = allocate();
+        retVal = slots.putIfAbsent(descriptor, candidate);
+        if (retVal != null) {
+            free(candidate);
+            return retVal;
+        }
+        
+        return candidate;
+    }
+    
+    /**
+     * Returns the slot of the given descriptor without assigning one
+     * 
+     * @param descriptor The non-null descriptor to find the slot of
+     * @return The slot of the descriptor, or -1 if the descriptor has
+     * never been given a slot
+     */
+    int findSlot(ActiveDescriptor<?> descriptor) {
+        Integer retVal = slots.get(descriptor);
+        if (retVal == null) return -1;
+        
+        return retVal;
+    }
+    
+    /**
+     * Gives back the slots of the descriptors that are no longer bound
+     * into the given locator.  Descriptors that did not come from the
+     * locator or one of its parents can not be checked and keep their
+     * slots
+     * 
+     * @param locator The locator of the context
+     */
+    void releaseUnbound(ServiceLocator locator) {
+        for (ActiveDescriptor<?> descriptor : slots.keySet()) {
+            if (!isFrom(descriptor, locator)) continue;
+            
+            if (locator.getBestDescriptor(BuilderHelper.createSpecificDescriptorFilter(descriptor)) != null) continue;
+            
+            Integer slot = slots.remove(descriptor);
+            if (slot != null) free(slot);
+        }
+    }
+    
+    /**
+     * Forgets all slot assignments
+     */
+    void clear() {
+        slots.clear();
+        
+        synchronized (freeSlots) {
+            freeSlots.clear();
+        }
+    }
+    
+    private Integer allocate() {
+        synchronized (freeSlots) {
+            if (!freeSlots.isEmpty()) return freeSlots.removeFirst();
+        }
+        
+        return nextSlot.getAndIncrement();
+    }
+    
+    private void free(Integer slot) {
+        synchronized (freeSlots) {
+            freeSlots.addLast(slot);
+        }
+    }
+    
+    private static boolean isFrom(ActiveDescriptor<?> descriptor, ServiceLocator locator) {
+        Long locatorId = descriptor.getLocatorId();
+        if (locatorId == null || descriptor.getServiceId() == null) return false;
+        
+        for (ServiceLocator current = locator; current != null; current = current.getParent()) {
+            if (locatorId.longValue() == current.getLocatorId()) return true;
+        }
+        
+        return false;
+    }
+}
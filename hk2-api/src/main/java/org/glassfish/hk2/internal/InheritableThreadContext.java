@@ -42,21 +42,27 @@ package org.glassfish.hk2.internal;
 import java.lang.annotation.Annotation;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.HashMap;
+import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.Context;
 import org.glassfish.hk2.api.DescriptorVisibility;
+import org.glassfish.hk2.api.DynamicConfigurationListener;
 import org.glassfish.hk2.api.InheritableThread;
 import org.glassfish.hk2.api.ServiceHandle;
+import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.api.Visibility;
-import org.glassfish.hk2.utilities.reflection.Logger;
 
 /**
+ * The context for the {@link InheritableThread} scope.  The instances
+ * of each thread are kept in an {@link InheritableThreadLocal} as an
+ * array indexed by the slot of the descriptor.  A child thread shares
+ * the instances of the thread that created it
+ * 
  * @author jwells
  */
 @Singleton @Visibility(DescriptorVisibility.LOCAL)
-public class InheritableThreadContext implements Context<InheritableThread> {
+public class InheritableThreadContext implements Context<InheritableThread>, DynamicConfigurationListener {
     private final static boolean LOG_THREAD_DESTRUCTION = AccessController.<Boolean>doPrivileged(new PrivilegedAction<Boolean>() {
 
         @Override
@@ -66,10 +72,15 @@ public class InheritableThreadContext implements Context<InheritableThread> {
 
     });
 
-    private InheritableThreadLocal<InheritableContextThreadWrapper> threadMap
-            = new InheritableThreadLocal<InheritableContextThreadWrapper>() {
-                public InheritableContextThreadWrapper initialValue() {
-                    return new InheritableContextThreadWrapper();
+    private final DescriptorSlots slots = new DescriptorSlots();
+
+    @Inject
+    private ServiceLocator locator;
+    
+    private InheritableThreadLocal<ThreadInstances> threadMap
+            = new InheritableThreadLocal<ThreadInstances>() {
+                public ThreadInstances initialValue() {
+                    return ThreadInstances.create(LOG_THREAD_DESTRUCTION, "InheritableThreadContext");
         }
     };
 
@@ -88,10 +99,13 @@ public class InheritableThreadContext implements Context<InheritableThread> {
     @Override
     public <U> U findOrCreate(ActiveDescriptor<U> activeDescriptor,
             ServiceHandle<?> root) {
-        U retVal = (U) threadMap.get().get(activeDescriptor);
+        ThreadInstances instances = threadMap.get();
+        int slot = slots.getSlot(activeDescriptor);
+
+        U retVal = (U) instances.get(slot, activeDescriptor);
         if (retVal == null) {
             retVal = activeDescriptor.create(root);
-            threadMap.get().put(activeDescriptor, retVal);
+            instances.put(slot, activeDescriptor, retVal);
         }
 
         return retVal;
@@ -102,7 +116,7 @@ public class InheritableThreadContext implements Context<InheritableThread> {
      */
     @Override
     public boolean containsKey(ActiveDescriptor<?> descriptor) {
-        return threadMap.get().has(descriptor);
+        return threadMap.get().get(slots.findSlot(descriptor), descriptor) != null;
     }
 
     /* (non-Javadoc)
@@ -135,32 +149,13 @@ public class InheritableThreadContext implements Context<InheritableThread> {
         // so we will ignore any request to destroy a descriptor
 
     }
-
-    private static class InheritableContextThreadWrapper {
-        private final HashMap<ActiveDescriptor<?>, Object> instances =
-                new HashMap<ActiveDescriptor<?>, Object>();
-        private final long id = Thread.currentThread().getId();
-
-        public boolean has(ActiveDescriptor<?> d) {
-            return instances.containsKey(d);
-        }
-
-        public Object get(ActiveDescriptor<?> d) {
-            return instances.get(d);
-        }
-
-        public void put(ActiveDescriptor<?> d, Object v) {
-            instances.put(d, v);
-        }
-
-        @Override
-        public void finalize() throws Throwable {
-            instances.clear();
-
-            if (LOG_THREAD_DESTRUCTION) {
-                Logger.getLogger().debug("Removing PerThreadContext data for thread " + id);
-            }
-        }
-
+    
+    /**
+     * Gives back the slots of descriptors that have been unbound so that
+     * the slots do not keep growing as services come and go
+     */
+    @Override
+    public void configurationChanged() {
+        slots.releaseUnbound(locator);
     }
 }
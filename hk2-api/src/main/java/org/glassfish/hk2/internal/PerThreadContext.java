@@ -42,24 +42,30 @@ package org.glassfish.hk2.internal;
 import java.lang.annotation.Annotation;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.HashMap;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.Context;
 import org.glassfish.hk2.api.DescriptorVisibility;
+import org.glassfish.hk2.api.DynamicConfigurationListener;
 import org.glassfish.hk2.api.PerThread;
 import org.glassfish.hk2.api.ServiceHandle;
+import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.api.Visibility;
-import org.glassfish.hk2.utilities.general.Hk2ThreadLocal;
-import org.glassfish.hk2.utilities.reflection.Logger;
 
 /**
+ * The context for the {@link PerThread} scope.  The instances of each
+ * thread are kept in a {@link ThreadLocal} as an array indexed by the
+ * slot of the descriptor, so that lookups from different threads do
+ * not contend with each other and the data of a thread goes away
+ * with the thread
+ * 
  * @author jwells
  */
 @Singleton @Visibility(DescriptorVisibility.LOCAL)
-public class PerThreadContext implements Context<PerThread> {
+public class PerThreadContext implements Context<PerThread>, DynamicConfigurationListener {
     private final static boolean LOG_THREAD_DESTRUCTION = AccessController.<Boolean>doPrivileged(new PrivilegedAction<Boolean>() {
 
         @Override
@@ -69,12 +75,21 @@ public class PerThreadContext implements Context<PerThread> {
         
     });
     
-    private final Hk2ThreadLocal<PerContextThreadWrapper> threadMap =
-            new Hk2ThreadLocal<PerContextThreadWrapper>() {
-        public PerContextThreadWrapper initialValue() {
-            return new PerContextThreadWrapper();
-        }
-    };
+    private final DescriptorSlots slots = new DescriptorSlots();
+    
+    @Inject
+    private ServiceLocator locator;
+    
+    private volatile ThreadLocal<ThreadInstances> threadMap = createThreadMap();
+    
+    private static ThreadLocal<ThreadInstances> createThreadMap() {
+        return new ThreadLocal<ThreadInstances>() {
+            @Override
+            protected ThreadInstances initialValue() {
+                return ThreadInstances.create(LOG_THREAD_DESTRUCTION, "PerThreadContext");
+            }
+        };
+    }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.api.Context#getScope()
@@ -91,10 +106,13 @@ public class PerThreadContext implements Context<PerThread> {
     @Override
     public <U> U findOrCreate(ActiveDescriptor<U> activeDescriptor,
             ServiceHandle<?> root) {
-        U retVal = (U) threadMap.get().get(activeDescriptor);
+        ThreadInstances instances = threadMap.get();
+        int slot = slots.getSlot(activeDescriptor);
+        
+        U retVal = (U) instances.get(slot, activeDescriptor);
         if (retVal == null) {
             retVal = activeDescriptor.create(root);
-            threadMap.get().put(activeDescriptor, retVal);
+            instances.put(slot, activeDescriptor, retVal);
         }
         
         return retVal;
@@ -105,7 +123,7 @@ public class PerThreadContext implements Context<PerThread> {
      */
     @Override
     public boolean containsKey(ActiveDescriptor<?> descriptor) {
-        return threadMap.get().has(descriptor);
+        return threadMap.get().get(slots.findSlot(descriptor), descriptor) != null;
     }
 
     /* (non-Javadoc)
@@ -129,7 +147,11 @@ public class PerThreadContext implements Context<PerThread> {
      */
     @Override
     public void shutdown() {
-        threadMap.removeAll();
+        // The data of other threads can not be reached from here, so
+        // it is orphaned by replacing the ThreadLocal and is released
+        // as those threads touch their other ThreadLocals or die
+        threadMap = createThreadMap();
+        slots.clear();
     }
 
     @Override
@@ -139,31 +161,12 @@ public class PerThreadContext implements Context<PerThread> {
         
     }
     
-    private static class PerContextThreadWrapper {
-        private final HashMap<ActiveDescriptor<?>, Object> instances =
-                new HashMap<ActiveDescriptor<?>, Object>();
-        private final long id = Thread.currentThread().getId();
-        
-        public boolean has(ActiveDescriptor<?> d) {
-            return instances.containsKey(d);
-        }
-        
-        public Object get(ActiveDescriptor<?> d) {
-            return instances.get(d);
-        }
-        
-        public void put(ActiveDescriptor<?> d, Object v) {
-            instances.put(d, v);
-        }
-        
-        @Override
-        public void finalize() throws Throwable {
-            instances.clear();
-            
-            if (LOG_THREAD_DESTRUCTION) {
-                Logger.getLogger().debug("Removing PerThreadContext data for thread " + id);
-            }
-        }
-        
+    /**
+     * Gives back the slots of descriptors that have been unbound so that
+     * the slots do not keep growing as services come and go
+     */
+    @Override
+    public void configurationChanged() {
+        slots.releaseUnbound(locator);
     }
 }
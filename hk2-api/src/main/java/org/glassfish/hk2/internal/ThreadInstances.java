@@ -0,0 +1,149 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.internal;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.utilities.reflection.Logger;
+
+/**
+ * The instances of the thread based scopes held by one thread, stored
+ * in an array indexed by the {@link DescriptorSlots} slot of each
+ * descriptor.  An instance of this class is only ever reachable from
+ * a {@link ThreadLocal}, so it goes away with its thread.
+ * <p>
+ * Objects with a finalizer are registered under a JVM wide lock
+ * when they are created, which hurts when there are very many short
+ * lived threads (for example virtual threads), so the finalizer that
+ * logs the destruction of the thread data is only present when the
+ * logging has been asked for
+ * 
+ * @author jwells
+ *
+ */
+class ThreadInstances {
+    private final static Instance[] EMPTY = new Instance[0];
+    
+    private volatile Instance[] instances = EMPTY;
+    
+    /**
+     * Creates the instance storage for the current thread
+     * 
+     * @param logDestruction true if the destruction of the thread
+     * data should be logged
+     * @param contextName The name of the context to use in the log
+     * @return The storage for the current thread
+     */
+    static ThreadInstances create(boolean logDestruction, String contextName) {
+        if (!logDestruction) return new ThreadInstances();
+        
+        return new LoggingThreadInstances(contextName, Thread.currentThread().getId());
+    }
+    
+    /**
+     * Gets the instance of the descriptor in the given slot
+     * 
+     * @param slot The slot of the descriptor, or -1
+     * @param descriptor The descriptor the slot belongs to
+     * @return The instance, or null if there is no instance of the
+     * descriptor in the slot
+     */
+    Object get(int slot, ActiveDescriptor<?> descriptor) {
+        if (slot < 0) return null;
+        
+        Instance[] current = instances;
+        if (slot >= current.length) return null;
+        
+        Instance instance = current[slot];
+        if (instance == null || instance.descriptor != descriptor) {
+            // Empty, or left over from an unbound descriptor that had this slot
+            return null;
+        }
+        
+        return instance.instance;
+    }
+    
+    /**
+     * Sets the instance in the given slot, growing the storage if needed.
+     * This is synchronized because a child thread of an inheritable
+     * context shares this storage with its parent
+     * 
+     * @param slot The slot of the descriptor
+     * @param descriptor The descriptor the slot belongs to
+     * @param instance The instance to put in the slot
+     */
+    synchronized void put(int slot, ActiveDescriptor<?> descriptor, Object instance) {
+        Instance[] current = instances;
+        if (slot >= current.length) {
+            Instance[] grown = new Instance[Math.max(slot + 1, current.length * 2)];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            current = grown;
+        }
+        
+        current[slot] = new Instance(descriptor, instance);
+        
+        // Re-publishes the array to other threads sharing this storage
+        instances = current;
+    }
+    
+    private static class Instance {
+        private final ActiveDescriptor<?> descriptor;
+        private final Object instance;
+        
+        private Instance(ActiveDescriptor<?> descriptor, Object instance) {
+            this.descriptor = descriptor;
+            this.instance = instance;
+        }
+    }
+    
+    private static class LoggingThreadInstances extends ThreadInstances {
+        private final String contextName;
+        private final long id;
+        
+        private LoggingThreadInstances(String contextName, long id) {
+            this.contextName = contextName;
+            this.id = id;
+        }
+        
+        @Override
+        public void finalize() throws Throwable {
+            Logger.getLogger().debug("Removing " + contextName + " data for thread " + id);
+        }
+    }
+}
@@ -0,0 +1,515 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.glassfish.hk2.api.Descriptor;
+import org.glassfish.hk2.api.DescriptorType;
+import org.glassfish.hk2.api.DescriptorVisibility;
+
+/**
+ * A compact binary form of an hk2 descriptor file.  Whereas the text
+ * format written by {@link DescriptorImpl#writeObject(java.io.PrintWriter)}
+ * must be parsed line by line, the binary index stores every distinct
+ * string exactly once in a string table, stores each descriptor as a
+ * fixed-shape record of string table indexes and carries a pre-sorted
+ * index from contract name to the descriptors advertising that contract.
+ * <p>
+ * The {@link org.glassfish.hk2.api.Populator} and every other reader of
+ * hk2 descriptor files that goes through {@link #readDescriptors(InputStream)}
+ * recognize this format by its leading magic number, so a binary index may
+ * be placed in META-INF/hk2-locator/default in place of the text file.
+ * <p>
+ * Reading an index only decodes the string table and the record offsets.
+ * Individual {@link DescriptorImpl} objects are materialized the first time
+ * they are asked for with {@link #getDescriptor(int)}, and the index can be
+ * read directly from a {@link ByteBuffer}, such as a memory mapped file,
+ * without copying the records
+ * 
+ * @author jwells
+ */
+public class DescriptorIndex {
+    /** The first four bytes of every binary descriptor index ("HK2I") */
+    public final static int MAGIC = 0x484B3249;
+    
+    private final static int VERSION = 1;
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+    
+    private final static byte NULL_BOOLEAN = -1;
+    private final static byte FALSE_BOOLEAN = 0;
+    private final static byte TRUE_BOOLEAN = 1;
+    
+    private final static int[] NO_DESCRIPTORS = new int[0];
+    
+    private final ByteBuffer records;
+    private final String[] strings;
+    private final int[] offsets;
+    private final String[] sortedContracts;
+    private final int[][] contractDescriptors;
+    private final AtomicReferenceArray<DescriptorImpl> materialized;
+    
+    private DescriptorIndex(ByteBuffer records,
+            String[] strings,
+            int[] offsets,
+            String[] sortedContracts,
+            int[][] contractDescriptors) {
+        this.records = records;
+        this.strings = strings;
+        this.offsets = offsets;
+        this.sortedContracts = sortedContracts;
+        this.contractDescriptors = contractDescriptors;
+        materialized = new AtomicReferenceArray<DescriptorImpl>(offsets.length);
+    }
+    
+    /**
+     * Returns the number of descriptors in this index
+     * 
+     * @return The number of descriptors in this index
+     */
+    public int size() {
+        return offsets.length;
+    }
+    
+    /**
+     * Returns the descriptor at the given position in the index,
+     * materializing it on first use.  The same instance is returned
+     * on every call with the same index
+     * 
+     * @param index The zero-based position of the descriptor
+     * @return The descriptor at that position.  Will not return null
+     * @throws IndexOutOfBoundsException if index is not in the range
+     * [0, {@link #size()})
+     */
+    public DescriptorImpl getDescriptor(int index) {
+        DescriptorImpl retVal = materialized.get(index);
+        if (retVal != null) return retVal;
+        
+        retVal = readRecord(offsets[index]);
+        if (materialized.compareAndSet(index, null, retVal)) {
+            return retVal;
+        }
+        
+        return materialized.get(index);
+    }
+    
+    /**
+     * Returns all of the descriptors in this index in the order
+     * in which they were written, materializing any that have not
+     * yet been materialized
+     * 
+     * @return A non-null, possibly empty list of all descriptors
+     */
+    public List<DescriptorImpl> getDescriptors() {
+        List<DescriptorImpl> retVal = new ArrayList<DescriptorImpl>(offsets.length);
+        for (int lcv = 0; lcv < offsets.length; lcv++) {
+            retVal.add(getDescriptor(lcv));
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Returns the descriptors advertising the given contract, using
+     * the pre-sorted contract index.  Only the descriptors returned
+     * are materialized
+     * 
+     * @param contract The fully qualified name of the contract.  May not be null
+     * @return A non-null, possibly empty list of descriptors that have
+     * the given contract in their set of advertised contracts
+     */
+    public List<DescriptorImpl> getDescriptorsWithContract(String contract) {
+        int found = Arrays.binarySearch(sortedContracts, contract);
+        int[] indexes = (found < 0) ? NO_DESCRIPTORS : contractDescriptors[found] ;
+        
+        List<DescriptorImpl> retVal = new ArrayList<DescriptorImpl>(indexes.length);
+        for (int index : indexes) {
+            retVal.add(getDescriptor(index));
+        }
+        
+        return retVal;
+    }
+    
+    private DescriptorImpl readRecord(int offset) {
+        ByteBuffer buffer = records.duplicate();
+        buffer.position(offset);
+        
+        DescriptorImpl retVal = new DescriptorImpl();
+        
+        retVal.setImplementation(getString(buffer.getInt()));
+        retVal.setName(getString(buffer.getInt()));
+        retVal.setScope(getString(buffer.getInt()));
+        retVal.setClassAnalysisName(getString(buffer.getInt()));
+        retVal.setDescriptorType(DescriptorType.values()[buffer.get()]);
+        retVal.setDescriptorVisibility(DescriptorVisibility.values()[buffer.get()]);
+        retVal.setRanking(buffer.getInt());
+        retVal.setProxiable(getBoolean(buffer.get()));
+        retVal.setProxyForSameScope(getBoolean(buffer.get()));
+        
+        int numContracts = buffer.getInt();
+        for (int lcv = 0; lcv < numContracts; lcv++) {
+            retVal.addAdvertisedContract(strings[buffer.getInt()]);
+        }
+        
+        int numQualifiers = buffer.getInt();
+        for (int lcv = 0; lcv < numQualifiers; lcv++) {
+            retVal.addQualifier(strings[buffer.getInt()]);
+        }
+        
+        int numMetadatas = buffer.getInt();
+        for (int lcv = 0; lcv < numMetadatas; lcv++) {
+            String key = strings[buffer.getInt()];
+            
+            int numValues = buffer.getInt();
+            for (int inner = 0; inner < numValues; inner++) {
+                retVal.addMetadata(key, strings[buffer.getInt()]);
+            }
+        }
+        
+        return retVal;
+    }
+    
+    private String getString(int index) {
+        if (index < 0) return null;
+        return strings[index];
+    }
+    
+    private static Boolean getBoolean(byte value) {
+        if (value == NULL_BOOLEAN) return null;
+        return (value == TRUE_BOOLEAN) ? Boolean.TRUE : Boolean.FALSE ;
+    }
+    
+    private static byte putBoolean(Boolean value) {
+        if (value == null) return NULL_BOOLEAN;
+        return value.booleanValue() ? TRUE_BOOLEAN : FALSE_BOOLEAN ;
+    }
+    
+    /**
+     * Tells whether or not the given stream is positioned at the start of
+     * a binary descriptor index.  The stream must support mark and reset,
+     * and is left positioned where it was on entry
+     * 
+     * @param is An input stream that supports mark and reset.  May not be null
+     * @return true if the next bytes of the stream are the binary index
+     * magic number
+     * @throws IOException on failure reading the stream
+     * @throws IllegalArgumentException if the stream does not support mark
+     */
+    public static boolean isDescriptorIndex(InputStream is) throws IOException {
+        if (!is.markSupported()) {
+            throw new IllegalArgumentException("The stream passed to isDescriptorIndex must support mark");
+        }
+        
+        is.mark(4);
+        try {
+            int magic = 0;
+            for (int lcv = 0; lcv < 4; lcv++) {
+                int b = is.read();
+                if (b < 0) return false;
+                
+                magic = (magic << 8) | b;
+            }
+            
+            return magic == MAGIC;
+        }
+        finally {
+            is.reset();
+        }
+    }
+    
+    /**
+     * Reads all of the descriptors of an hk2 descriptor file, such as
+     * META-INF/hk2-locator/default, which may either be a binary
+     * descriptor index or the text format read by
+     * {@link DescriptorImpl#readObject(BufferedReader)}.  Every reader of
+     * hk2 descriptor files should use this rather than parsing the text
+     * format directly.  The stream is read fully but is not closed
+     * 
+     * @param is The stream of the descriptor file.  May not be null
+     * @return A non-null, possibly empty list of the descriptors of the
+     * file in the order in which they were written
+     * @throws IOException if the stream could not be read or is not
+     * a valid descriptor file
+     */
+    public static List<DescriptorImpl> readDescriptors(InputStream is) throws IOException {
+        if (!is.markSupported()) {
+            is = new BufferedInputStream(is);
+        }
+        
+        if (isDescriptorIndex(is)) {
+            return read(is).getDescriptors();
+        }
+        
+        BufferedReader br = new BufferedReader(new InputStreamReader(is));
+        
+        List<DescriptorImpl> retVal = new ArrayList<DescriptorImpl>();
+        while (true) {
+            DescriptorImpl descriptor = new DescriptorImpl();
+            if (!descriptor.readObject(br)) break;
+            
+            retVal.add(descriptor);
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Reads a binary descriptor index from the given stream.  The
+     * stream is read fully but is not closed
+     * 
+     * @param is The stream to read the index from.  May not be null
+     * @return The index read from the stream
+     * @throws IOException if the stream could not be read or does not
+     * contain a valid binary descriptor index
+     */
+    public static DescriptorIndex read(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        
+        int len;
+        while ((len = is.read(buffer)) >= 0) {
+            baos.write(buffer, 0, len);
+        }
+        
+        return read(ByteBuffer.wrap(baos.toByteArray()));
+    }
+    
+    /**
+     * Reads a binary descriptor index from the given buffer starting at
+     * its current position.  The records are not copied out of the buffer,
+     * so the buffer may be a memory mapped file and must not be modified
+     * while the returned index is in use
+     * 
+     * @param buffer The buffer to read the index from.  May not be null
+     * @return The index read from the buffer
+     * @throws IOException if the buffer does not contain a valid binary
+     * descriptor index
+     */
+    public static DescriptorIndex read(ByteBuffer buffer) throws IOException {
+        ByteBuffer in = buffer.slice();
+        
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("The data is not a binary hk2 descriptor index");
+            }
+            
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary hk2 descriptor index version " + version);
+            }
+            
+            String[] strings = new String[in.getInt()];
+            for (int lcv = 0; lcv < strings.length; lcv++) {
+                byte[] utf8 = new byte[in.getInt()];
+                in.get(utf8);
+                
+                strings[lcv] = new String(utf8, UTF8);
+            }
+            
+            String[] sortedContracts = new String[in.getInt()];
+            int[][] contractDescriptors = new int[sortedContracts.length][];
+            for (int lcv = 0; lcv < sortedContracts.length; lcv++) {
+                sortedContracts[lcv] = strings[in.getInt()];
+                
+                int[] indexes = new int[in.getInt()];
+                for (int inner = 0; inner < indexes.length; inner++) {
+                    indexes[inner] = in.getInt();
+                }
+                
+                contractDescriptors[lcv] = indexes;
+            }
+            
+            int[] offsets = new int[in.getInt()];
+            for (int lcv = 0; lcv < offsets.length; lcv++) {
+                offsets[lcv] = in.getInt();
+            }
+            
+            ByteBuffer records = in.slice();
+            for (int offset : offsets) {
+                if (offset < 0 || offset >= records.limit()) {
+                    throw new IOException("Corrupt binary hk2 descriptor index, bad record offset " + offset);
+                }
+            }
+            
+            return new DescriptorIndex(records, strings, offsets, sortedContracts, contractDescriptors);
+        }
+        catch (BufferUnderflowException bue) {
+            throw new IOException("Truncated binary hk2 descriptor index", bue);
+        }
+        catch (IndexOutOfBoundsException ioobe) {
+            throw new IOException("Corrupt binary hk2 descriptor index", ioobe);
+        }
+        catch (NegativeArraySizeException nase) {
+            throw new IOException("Corrupt binary hk2 descriptor index", nase);
+        }
+    }
+    
+    /**
+     * Writes the given descriptors to the output stream in the binary
+     * descriptor index format.  The stream is flushed but not closed.
+     * Only the fields written by {@link DescriptorImpl#writeObject(java.io.PrintWriter)}
+     * are preserved
+     * 
+     * @param descriptors The descriptors to write.  May not be null
+     * @param os The stream to write the index to.  May not be null
+     * @throws IOException on failure writing to the stream
+     */
+    public static void write(List<? extends Descriptor> descriptors, OutputStream os) throws IOException {
+        Map<String, Integer> stringTable = new LinkedHashMap<String, Integer>();
+        TreeMap<String, List<Integer>> contractIndex = new TreeMap<String, List<Integer>>();
+        
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(recordBytes);
+        int[] offsets = new int[descriptors.size()];
+        
+        int lcv = 0;
+        for (Descriptor descriptor : descriptors) {
+            offsets[lcv] = records.size();
+            
+            records.writeInt(intern(stringTable, descriptor.getImplementation()));
+            records.writeInt(intern(stringTable, descriptor.getName()));
+            records.writeInt(intern(stringTable, descriptor.getScope()));
+            records.writeInt(intern(stringTable, descriptor.getClassAnalysisName()));
+            
+            DescriptorType type = descriptor.getDescriptorType();
+            records.writeByte((type == null) ? DescriptorType.CLASS.ordinal() : type.ordinal());
+            
+            DescriptorVisibility visibility = descriptor.getDescriptorVisibility();
+            records.writeByte((visibility == null) ? DescriptorVisibility.NORMAL.ordinal() : visibility.ordinal());
+            
+            records.writeInt(descriptor.getRanking());
+            records.writeByte(putBoolean(descriptor.isProxiable()));
+            records.writeByte(putBoolean(descriptor.isProxyForSameScope()));
+            
+            records.writeInt(descriptor.getAdvertisedContracts().size());
+            for (String contract : descriptor.getAdvertisedContracts()) {
+                records.writeInt(intern(stringTable, contract));
+                
+                List<Integer> indexes = contractIndex.get(contract);
+                if (indexes == null) {
+                    indexes = new ArrayList<Integer>();
+                    contractIndex.put(contract, indexes);
+                }
+                indexes.add(lcv);
+            }
+            
+            records.writeInt(descriptor.getQualifiers().size());
+            for (String qualifier : descriptor.getQualifiers()) {
+                records.writeInt(intern(stringTable, qualifier));
+            }
+            
+            Map<String, List<String>> metadatas = descriptor.getMetadata();
+            records.writeInt(metadatas.size());
+            for (Map.Entry<String, List<String>> entry : metadatas.entrySet()) {
+                records.writeInt(intern(stringTable, entry.getKey()));
+                
+                records.writeInt(entry.getValue().size());
+                for (String value : entry.getValue()) {
+                    records.writeInt(intern(stringTable, value));
+                }
+            }
+            
+            lcv++;
+        }
+        
+        records.flush();
+        
+        DataOutputStream out = new DataOutputStream(os);
+        
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        
+        out.writeInt(stringTable.size());
+        for (String string : stringTable.keySet()) {
+            byte[] utf8 = string.getBytes(UTF8);
+            
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+        
+        out.writeInt(contractIndex.size());
+        for (Map.Entry<String, List<Integer>> entry : contractIndex.entrySet()) {
+            out.writeInt(stringTable.get(entry.getKey()));
+            
+            out.writeInt(entry.getValue().size());
+            for (Integer index : entry.getValue()) {
+                out.writeInt(index);
+            }
+        }
+        
+        out.writeInt(offsets.length);
+        for (int offset : offsets) {
+            out.writeInt(offset);
+        }
+        
+        recordBytes.writeTo(out);
+        
+        out.flush();
+    }
+    
+    private static int intern(Map<String, Integer> stringTable, String value) {
+        if (value == null) return -1;
+        
+        Integer retVal = stringTable.get(value);
+        if (retVal != null) return retVal;
+        
+        retVal = stringTable.size();
+        stringTable.put(value, retVal);
+        
+        return retVal;
+    }
+}
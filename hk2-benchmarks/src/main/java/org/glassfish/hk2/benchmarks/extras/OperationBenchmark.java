@@ -0,0 +1,219 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.benchmarks.extras;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.AnnotationLiteral;
+import org.glassfish.hk2.api.Proxiable;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.glassfish.hk2.extras.ExtrasUtilities;
+import org.glassfish.hk2.extras.operation.OperationContext;
+import org.glassfish.hk2.extras.operation.OperationHandle;
+import org.glassfish.hk2.extras.operation.OperationManager;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures request style use of an Operation scope.  Each request creates
+ * and starts an operation, calls a proxied service in the operation scope
+ * a few times and then closes the operation.  The request benchmark does
+ * this from 200 platform threads.  The concurrentRequests benchmark starts
+ * the given number of threads at once that each run a single request,
+ * which is how operations are used with a thread per request server
+ * running on virtual threads.  The virtual thread kind needs to be run
+ * on JDK 21 or later
+ * 
+ * @author jwells
+ *
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperationBenchmark {
+    private final static RequestOperation REQUEST_OPERATION = new RequestOperationImpl();
+    private final static int CALLS_PER_REQUEST = 5;
+    
+    private ServiceLocator locator;
+    private OperationManager operationManager;
+    private RequestData requestData;
+    
+    @Setup
+    public void setup() {
+        locator = ServiceLocatorFactory.getInstance().create(null);
+        ExtrasUtilities.enableOperations(locator);
+        ServiceLocatorUtilities.addClasses(locator, RequestOperationContext.class, RequestData.class);
+        
+        operationManager = locator.getService(OperationManager.class);
+        requestData = locator.getService(RequestData.class);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        locator.shutdown();
+    }
+    
+    private int doRequest() {
+        OperationHandle<RequestOperation> operation = operationManager.createAndStartOperation(REQUEST_OPERATION);
+        try {
+            int retVal = 0;
+            for (int lcv = 0; lcv < CALLS_PER_REQUEST; lcv++) {
+                retVal += requestData.increment();
+            }
+            
+            return retVal;
+        }
+        finally {
+            operation.closeOperation();
+        }
+    }
+    
+    @Benchmark
+    @Threads(200)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int request() {
+        return doRequest();
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void concurrentRequests(ConcurrentRequests requests) throws Exception {
+        Runnable request = new Runnable() {
+
+            @Override
+            public void run() {
+                doRequest();
+            }
+            
+        };
+        
+        Thread threads[] = new Thread[requests.numThreads];
+        for (int lcv = 0; lcv < threads.length; lcv++) {
+            if (requests.startVirtualThread != null) {
+                threads[lcv] = (Thread) requests.startVirtualThread.invoke(null, request);
+            }
+            else {
+                threads[lcv] = new Thread(request);
+                threads[lcv].start();
+            }
+        }
+        
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+    
+    @State(Scope.Benchmark)
+    public static class ConcurrentRequests {
+        @Param({"platform", "virtual"})
+        public String threadKind;
+        
+        @Param({"10000"})
+        public int numThreads;
+        
+        private Method startVirtualThread;
+        
+        @Setup
+        public void setup() {
+            if (!"virtual".equals(threadKind)) return;
+            
+            try {
+                startVirtualThread = Thread.class.getMethod("startVirtualThread", Runnable.class);
+            }
+            catch (NoSuchMethodException nsme) {
+                throw new IllegalStateException("Virtual threads require JDK 21 or later", nsme);
+            }
+        }
+    }
+    
+    @javax.inject.Scope
+    @Retention(RUNTIME)
+    @Target( { TYPE, METHOD })
+    @Proxiable(proxyForSameScope=false)
+    public @interface RequestOperation {
+    }
+    
+    public static class RequestOperationImpl extends AnnotationLiteral<RequestOperation> implements RequestOperation {
+        private static final long serialVersionUID = 5386461349598839582L;
+    }
+    
+    @Singleton
+    public static class RequestOperationContext extends OperationContext<RequestOperation> {
+        @Override
+        public Class<? extends Annotation> getScope() {
+            return RequestOperation.class;
+        }
+    }
+    
+    @RequestOperation
+    public static class RequestData {
+        private int count;
+        
+        public int increment() {
+            return ++count;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.benchmarks.extras;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.glassfish.hk2.api.messaging.MessageReceiver;
+import org.glassfish.hk2.api.messaging.SubscribeTo;
+import org.glassfish.hk2.api.messaging.Topic;
+import org.glassfish.hk2.api.messaging.TopicDistributionService;
+import org.glassfish.hk2.extras.ExtrasUtilities;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the default TopicDistributionService delivering an event
+ * to three singleton subscribers, both through the Topic itself and
+ * by calling distributeMessage directly.  A service that subscribes to
+ * a different event type is also registered so that the cost of
+ * skipping uninterested subscribers is included
+ * 
+ * @author jwells
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicDistributionBenchmark {
+    private final static Event EVENT = new Event();
+    
+    private ServiceLocator locator;
+    private TopicDistributionService distributor;
+    private Topic<Event> topic;
+    
+    @Setup
+    public void setup() {
+        locator = ServiceLocatorFactory.getInstance().create(null);
+        ExtrasUtilities.enableTopicDistribution(locator);
+        
+        ServiceLocatorUtilities.addClasses(locator,
+                SubscriberA.class,
+                SubscriberB.class,
+                SubscriberC.class,
+                OtherSubscriber.class,
+                Publisher.class);
+        
+        // Subscribers must be created before they receive events
+        locator.getService(SubscriberA.class);
+        locator.getService(SubscriberB.class);
+        locator.getService(SubscriberC.class);
+        locator.getService(OtherSubscriber.class);
+        
+        distributor = locator.getService(TopicDistributionService.class,
+                TopicDistributionService.HK2_DEFAULT_TOPIC_DISTRIBUTOR);
+        topic = locator.getService(Publisher.class).getTopic();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        locator.shutdown();
+    }
+    
+    @Benchmark
+    public void publish() {
+        topic.publish(EVENT);
+    }
+    
+    @Benchmark
+    public void distributeMessage() {
+        distributor.distributeMessage(topic, EVENT);
+    }
+    
+    public static class Event {
+    }
+    
+    public static class OtherEvent {
+    }
+    
+    @Singleton
+    public static class Publisher {
+        @Inject
+        private Topic<Event> topic;
+        
+        public Topic<Event> getTopic() {
+            return topic;
+        }
+    }
+    
+    @Singleton @MessageReceiver
+    public static class SubscriberA {
+        private int numEvents;
+        
+        public void subscription(@SubscribeTo Event event) {
+            numEvents++;
+        }
+        
+        public int getNumEvents() {
+            return numEvents;
+        }
+    }
+    
+    @Singleton @MessageReceiver
+    public static class SubscriberB {
+        private int numEvents;
+        
+        public void subscription(@SubscribeTo Event event) {
+            numEvents++;
+        }
+        
+        public int getNumEvents() {
+            return numEvents;
+        }
+    }
+    
+    @Singleton @MessageReceiver
+    public static class SubscriberC {
+        private int numEvents;
+        
+        public void subscription(@SubscribeTo Event event) {
+            numEvents++;
+        }
+        
+        public int getNumEvents() {
+            return numEvents;
+        }
+    }
+    
+    @Singleton @MessageReceiver
+    public static class OtherSubscriber {
+        private int numEvents;
+        
+        public void subscription(@SubscribeTo OtherEvent event) {
+            numEvents++;
+        }
+        
+        public int getNumEvents() {
+            return numEvents;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.benchmarks.hub;
+
+import java.beans.PropertyChangeEvent;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.glassfish.hk2.configuration.hub.api.Hub;
+import org.glassfish.hk2.configuration.hub.api.Instance;
+import org.glassfish.hk2.configuration.hub.api.ManagerUtilities;
+import org.glassfish.hk2.configuration.hub.api.WriteableBeanDatabase;
+import org.glassfish.hk2.configuration.hub.api.WriteableType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures committing a change to a single instance of a Hub
+ * that holds 1k, 10k or 100k beans of one type, committing the
+ * addition and removal of an instance of that type, and reading
+ * a single instance from the current database.  The change
+ * events are passed to modifyInstance so that the bean
+ * reflection cost does not hide the cost of the database copy
+ * 
+ * @author jwells
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HubUpdateBenchmark {
+    private final static String TYPE_NAME = "BenchmarkType";
+    private final static String VALUE_PROPERTY = "value";
+    
+    @Param({ "1000", "10000", "100000" })
+    private int numberOfBeans;
+    
+    private ServiceLocator locator;
+    private Hub hub;
+    private int nextKey;
+    private int nextValue;
+    
+    @Setup
+    public void setup() {
+        locator = ServiceLocatorFactory.getInstance().create(null);
+        ManagerUtilities.enableConfigurationHub(locator);
+        
+        hub = locator.getService(Hub.class);
+        
+        WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+        WriteableType wt = wbd.addType(TYPE_NAME);
+        for (int lcv = 0; lcv < numberOfBeans; lcv++) {
+            wt.addInstance(Integer.toString(lcv), new BenchmarkBean(lcv));
+        }
+        
+        wbd.commit();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        locator.shutdown();
+    }
+    
+    @Benchmark
+    public Object updateOneInstance() {
+        String key = Integer.toString(nextKey);
+        nextKey = (nextKey + 1) % numberOfBeans;
+        
+        WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+        WriteableType wt = wbd.getWriteableType(TYPE_NAME);
+        
+        Instance oldInstance = wt.getInstance(key);
+        BenchmarkBean newBean = new BenchmarkBean(nextValue++);
+        
+        wt.modifyInstance(key, newBean, new PropertyChangeEvent(newBean, VALUE_PROPERTY,
+                ((BenchmarkBean) oldInstance.getBean()).getValue(), newBean.getValue()));
+        
+        wbd.commit();
+        
+        return wbd;
+    }
+    
+    @Benchmark
+    public Object addAndRemoveInstance() {
+        String key = "added";
+        
+        WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+        wbd.getWriteableType(TYPE_NAME).addInstance(key, new BenchmarkBean(nextValue++));
+        wbd.commit();
+        
+        wbd = hub.getWriteableDatabaseCopy();
+        wbd.getWriteableType(TYPE_NAME).removeInstance(key);
+        wbd.commit();
+        
+        return wbd;
+    }
+    
+    @Benchmark
+    public Object readOneInstance() {
+        String key = Integer.toString(nextKey);
+        nextKey = (nextKey + 1) % numberOfBeans;
+        
+        return hub.getCurrentDatabase().getInstance(TYPE_NAME, key);
+    }
+    
+    public static class BenchmarkBean {
+        private final int value;
+        
+        public BenchmarkBean(int value) {
+            this.value = value;
+        }
+        
+        public int getValue() {
+            return value;
+        }
+    }
+}
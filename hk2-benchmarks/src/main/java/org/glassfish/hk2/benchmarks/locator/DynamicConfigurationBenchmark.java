@@ -0,0 +1,132 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.benchmarks.locator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.DynamicConfiguration;
+import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures binding and committing 1 to 10k descriptors in a single
+ * DynamicConfiguration.  Every invocation commits into a new
+ * ServiceLocator so that the size of the locator does not grow
+ * from one invocation to the next.  The descriptors are never
+ * reified, so no classes are loaded during the measurement
+ * 
+ * @author jwells
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DynamicConfigurationBenchmark {
+    @Param({"1", "100", "1000", "10000"})
+    public int numDescriptors;
+    
+    private final List<DescriptorImpl> descriptors = new ArrayList<DescriptorImpl>();
+    
+    private ServiceLocator locator;
+    private DynamicConfigurationService dcs;
+    
+    @Setup(Level.Trial)
+    public void createDescriptors() {
+        descriptors.clear();
+        
+        for (int lcv = 0; lcv < numDescriptors; lcv++) {
+            descriptors.add(BuilderHelper.link("org.glassfish.hk2.benchmarks.Service" + lcv).
+                to(Contract.class.getName()).
+                in(Singleton.class.getName()).
+                named("Service" + lcv).build());
+        }
+    }
+    
+    @Setup(Level.Invocation)
+    public void setup() {
+        locator = ServiceLocatorFactory.getInstance().create(null);
+        dcs = locator.getService(DynamicConfigurationService.class);
+    }
+    
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        locator.shutdown();
+    }
+    
+    @Benchmark
+    public DynamicConfiguration commit() {
+        DynamicConfiguration config = dcs.createDynamicConfiguration();
+        
+        for (DescriptorImpl descriptor : descriptors) {
+            config.bind(descriptor);
+        }
+        
+        config.commit();
+        
+        return config;
+    }
+    
+    @org.jvnet.hk2.annotations.Contract
+    public static interface Contract {
+    }
+}
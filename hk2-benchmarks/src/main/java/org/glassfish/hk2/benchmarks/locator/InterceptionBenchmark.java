@@ -0,0 +1,174 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.benchmarks.locator;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Singleton;
+
+import org.aopalliance.intercept.ConstructorInterceptor;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.glassfish.hk2.api.Filter;
+import org.glassfish.hk2.api.InterceptionService;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures calling a method of an AOP proxied service that has 0, 1
+ * or 5 pass-through interceptors.  The service always has another
+ * intercepted method, so with 0 interceptors the call still goes
+ * through the proxy of the service.  When the context class loader
+ * is kept neutral the methods without interceptors are also handled
+ * by the proxy
+ * 
+ * @author jwells
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterceptionBenchmark {
+    private static int numInterceptorsToUse;
+    
+    @Param({"0", "1", "5"})
+    public int numInterceptors;
+    
+    @Param({"true", "false"})
+    public boolean neutralContextClassLoader;
+    
+    private ServiceLocator locator;
+    private InterceptedService service;
+    private int value;
+    
+    @Setup
+    public void setup() {
+        numInterceptorsToUse = numInterceptors;
+        
+        locator = ServiceLocatorFactory.getInstance().create(null);
+        locator.setNeutralContextClassLoader(neutralContextClassLoader);
+        ServiceLocatorUtilities.addClasses(locator,
+                BenchmarkInterceptionService.class,
+                InterceptedService.class);
+        
+        service = locator.getService(InterceptedService.class);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        locator.shutdown();
+    }
+    
+    @Benchmark
+    public int call() {
+        return service.increment(value++);
+    }
+    
+    @Singleton
+    public static class InterceptedService {
+        public int increment(int input) {
+            return input + 1;
+        }
+        
+        public void alwaysIntercepted() {
+        }
+    }
+    
+    @Singleton
+    public static class BenchmarkInterceptionService implements InterceptionService {
+        private final static Filter FILTER = BuilderHelper.createContractFilter(InterceptedService.class.getName());
+        private final static MethodInterceptor PASS_THROUGH = new MethodInterceptor() {
+
+            @Override
+            public Object invoke(MethodInvocation invocation) throws Throwable {
+                return invocation.proceed();
+            }
+            
+        };
+
+        @Override
+        public Filter getDescriptorFilter() {
+            return FILTER;
+        }
+
+        @Override
+        public List<MethodInterceptor> getMethodInterceptors(Method method) {
+            if (method.getName().equals("alwaysIntercepted")) {
+                return Collections.singletonList(PASS_THROUGH);
+            }
+            
+            if (!method.getName().equals("increment")) return null;
+            
+            List<MethodInterceptor> retVal = new ArrayList<MethodInterceptor>(numInterceptorsToUse);
+            for (int lcv = 0; lcv < numInterceptorsToUse; lcv++) {
+                retVal.add(PASS_THROUGH);
+            }
+            
+            return retVal;
+        }
+
+        @Override
+        public List<ConstructorInterceptor> getConstructorInterceptors(Constructor<?> constructor) {
+            return null;
+        }
+    }
+}
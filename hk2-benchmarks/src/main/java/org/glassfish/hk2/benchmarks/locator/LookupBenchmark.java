@@ -0,0 +1,170 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.benchmarks.locator;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Qualifier;
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.AnnotationLiteral;
+import org.glassfish.hk2.api.IterableProvider;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the common ways of looking up singleton services:
+ * by class, by name, by qualifier, all services of a contract
+ * and iteration over an injected IterableProvider
+ * 
+ * @author jwells
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+    private final static String ALICE = "Alice";
+    private final static Blue BLUE = new BlueImpl();
+    
+    private ServiceLocator locator;
+    private IterableProvider<Contract> iterableProvider;
+    
+    @Setup
+    public void setup() {
+        locator = ServiceLocatorFactory.getInstance().create(null);
+        
+        ServiceLocatorUtilities.addClasses(locator,
+                AliceService.class,
+                BlueService.class,
+                PlainService.class,
+                IterableHolder.class);
+        
+        iterableProvider = locator.getService(IterableHolder.class).getProvider();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        locator.shutdown();
+    }
+    
+    @Benchmark
+    public Object getServiceByClass() {
+        return locator.getService(PlainService.class);
+    }
+    
+    @Benchmark
+    public Object getServiceByName() {
+        return locator.getService(Contract.class, ALICE);
+    }
+    
+    @Benchmark
+    public Object getServiceByQualifier() {
+        return locator.getService(Contract.class, BLUE);
+    }
+    
+    @Benchmark
+    public List<Contract> getAllServices() {
+        return locator.getAllServices(Contract.class);
+    }
+    
+    @Benchmark
+    public void iterableProviderIteration(Blackhole blackhole) {
+        for (Contract contract : iterableProvider) {
+            blackhole.consume(contract);
+        }
+    }
+    
+    @org.jvnet.hk2.annotations.Contract
+    public static interface Contract {
+    }
+    
+    @Qualifier
+    @Retention(RetentionPolicy.RUNTIME)
+    public static @interface Blue {
+    }
+    
+    private static class BlueImpl extends AnnotationLiteral<Blue> implements Blue {
+        private static final long serialVersionUID = -2718461520950946385L;
+    }
+    
+    @Singleton @Named(ALICE)
+    public static class AliceService implements Contract {
+    }
+    
+    @Singleton @Blue
+    public static class BlueService implements Contract {
+    }
+    
+    @Singleton
+    public static class PlainService implements Contract {
+    }
+    
+    @Singleton
+    public static class IterableHolder {
+        @Inject
+        private IterableProvider<Contract> provider;
+        
+        public IterableProvider<Contract> getProvider() {
+            return provider;
+        }
+    }
+}
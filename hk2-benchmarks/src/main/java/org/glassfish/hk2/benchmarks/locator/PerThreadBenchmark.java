@@ -0,0 +1,157 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.benchmarks.locator;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.hk2.api.PerThread;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.glassfish.hk2.utilities.PerThreadScopeModule;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the PerThread scope as enabled by {@link PerThreadScopeModule}.
+ * The lookup benchmark looks up an existing PerThread service from 200
+ * platform threads.  The manyThreads benchmark starts the given number of
+ * threads that each look up the PerThread service once and then die, which
+ * is how the scope is used with virtual threads.  The virtual thread kind
+ * needs to be run on JDK 21 or later
+ * 
+ * @author jwells
+ *
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PerThreadBenchmark {
+    private ServiceLocator locator;
+    
+    @Setup
+    public void setup() {
+        locator = ServiceLocatorFactory.getInstance().create(null);
+        ServiceLocatorUtilities.bind(locator, new PerThreadScopeModule());
+        ServiceLocatorUtilities.addClasses(locator, PerThreadService.class);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        locator.shutdown();
+    }
+    
+    @Benchmark
+    @Threads(200)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object lookup() {
+        return locator.getService(PerThreadService.class);
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void manyThreads(ThreadChurn churn) throws Exception {
+        Runnable lookup = new Runnable() {
+
+            @Override
+            public void run() {
+                locator.getService(PerThreadService.class);
+            }
+            
+        };
+        
+        Thread threads[] = new Thread[churn.numThreads];
+        for (int lcv = 0; lcv < threads.length; lcv++) {
+            if (churn.startVirtualThread != null) {
+                threads[lcv] = (Thread) churn.startVirtualThread.invoke(null, lookup);
+            }
+            else {
+                threads[lcv] = new Thread(lookup);
+                threads[lcv].start();
+            }
+        }
+        
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+    
+    @State(Scope.Benchmark)
+    public static class ThreadChurn {
+        @Param({"platform", "virtual"})
+        public String threadKind;
+        
+        @Param({"1000", "100000"})
+        public int numThreads;
+        
+        private Method startVirtualThread;
+        
+        @Setup
+        public void setup() {
+            if (!"virtual".equals(threadKind)) return;
+            
+            try {
+                startVirtualThread = Thread.class.getMethod("startVirtualThread", Runnable.class);
+            }
+            catch (NoSuchMethodException nsme) {
+                throw new IllegalStateException("Virtual threads require JDK 21 or later", nsme);
+            }
+        }
+    }
+    
+    @PerThread
+    public static class PerThreadService {
+    }
+}
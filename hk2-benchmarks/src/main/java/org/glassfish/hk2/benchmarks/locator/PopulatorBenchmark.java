@@ -0,0 +1,184 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.benchmarks.locator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.DescriptorFileFinder;
+import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.glassfish.hk2.utilities.DescriptorIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures Populator.populate reading descriptor files in either the
+ * text format or the binary index format.  The descriptors are spread
+ * over a number of in-memory files so that the parallel parse of the
+ * Populator is exercised.  Every invocation populates a new ServiceLocator
+ * 
+ * @author jwells
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PopulatorBenchmark {
+    private final static int NUM_FILES = 8;
+    
+    @Param({"false", "true"})
+    public boolean binary;
+    
+    @Param({"100", "1000"})
+    public int numDescriptors;
+    
+    private final List<byte[]> files = new ArrayList<byte[]>();
+    
+    private ServiceLocator locator;
+    
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        files.clear();
+        
+        int perFile = Math.max(1, numDescriptors / NUM_FILES);
+        
+        List<DescriptorImpl> current = new ArrayList<DescriptorImpl>();
+        for (int lcv = 0; lcv < numDescriptors; lcv++) {
+            current.add(BuilderHelper.link("org.glassfish.hk2.benchmarks.Service" + lcv).
+                to(Contract.class.getName()).
+                in(Singleton.class.getName()).
+                named("Service" + lcv).
+                has("key", "value" + lcv).build());
+            
+            if (current.size() >= perFile) {
+                files.add(toBytes(current));
+                current.clear();
+            }
+        }
+        
+        if (!current.isEmpty()) {
+            files.add(toBytes(current));
+        }
+    }
+    
+    private byte[] toBytes(List<DescriptorImpl> descriptors) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        
+        if (binary) {
+            DescriptorIndex.write(descriptors, baos);
+        }
+        else {
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(baos, "UTF-8"));
+            for (DescriptorImpl descriptor : descriptors) {
+                descriptor.writeObject(writer);
+            }
+            writer.close();
+        }
+        
+        return baos.toByteArray();
+    }
+    
+    @Setup(Level.Invocation)
+    public void setup() {
+        locator = ServiceLocatorFactory.getInstance().create(null);
+    }
+    
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        locator.shutdown();
+    }
+    
+    @Benchmark
+    public List<ActiveDescriptor<?>> populate() throws IOException {
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        
+        return dcs.getPopulator().populate(new InMemoryFinder(files));
+    }
+    
+    private static class InMemoryFinder implements DescriptorFileFinder {
+        private final List<byte[]> files;
+        
+        private InMemoryFinder(List<byte[]> files) {
+            this.files = files;
+        }
+
+        @Override
+        public List<InputStream> findDescriptorFiles() throws IOException {
+            List<InputStream> retVal = new ArrayList<InputStream>(files.size());
+            for (byte[] file : files) {
+                retVal.add(new ByteArrayInputStream(file));
+            }
+            
+            return retVal;
+        }
+    }
+    
+    @org.jvnet.hk2.annotations.Contract
+    public static interface Contract {
+    }
+}
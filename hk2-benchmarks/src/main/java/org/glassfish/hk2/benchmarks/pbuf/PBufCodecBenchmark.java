@@ -0,0 +1,143 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.benchmarks.pbuf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.glassfish.hk2.pbuf.api.PBufUtilities;
+import org.glassfish.hk2.xml.api.XmlRootHandle;
+import org.glassfish.hk2.xml.api.XmlService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares marshalling and unmarshalling a tree of beans with the
+ * protocol buffer XmlService when going through a DynamicMessage and
+ * when streaming directly to and from the wire.  Run with -prof gc to
+ * also see the allocation rate of each
+ * 
+ * @author jwells
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PBufCodecBenchmark {
+    @Param({ "true", "false" })
+    private boolean dynamicMessage;
+    
+    @Param({ "10", "1000" })
+    private int numRecords;
+    
+    private ServiceLocator locator;
+    private XmlService xmlService;
+    private XmlRootHandle<RecordBlockBean> handle;
+    private Map<String, Object> options;
+    private byte[] encoded;
+    
+    @Setup
+    public void setup() throws IOException {
+        locator = ServiceLocatorFactory.getInstance().create(null);
+        PBufUtilities.enablePBufService(locator);
+        
+        xmlService = locator.getService(XmlService.class, PBufUtilities.PBUF_SERVICE_NAME);
+        
+        handle = xmlService.createEmptyHandle(RecordBlockBean.class);
+        handle.addRoot();
+        
+        RecordBlockBean root = handle.getRoot();
+        root.setSequenceNumber(13L);
+        
+        for (int lcv = 0; lcv < numRecords; lcv++) {
+            RecordBean record = xmlService.createBean(RecordBean.class);
+            
+            record.setName("record-" + lcv);
+            record.setId(lcv * 1000L);
+            record.setActive((lcv % 2) == 0);
+            record.setScore(lcv / 3.0);
+            
+            root.addRecord(record);
+        }
+        
+        options = new HashMap<String, Object>();
+        options.put(PBufUtilities.PBUF_OPTION_DYNAMIC_MESSAGE, dynamicMessage);
+        
+        encoded = marshal();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        locator.shutdown();
+    }
+    
+    @Benchmark
+    public byte[] marshal() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        handle.marshal(baos, options);
+        
+        return baos.toByteArray();
+    }
+    
+    @Benchmark
+    public XmlRootHandle<RecordBlockBean> unmarshal() {
+        return xmlService.unmarshal(new ByteArrayInputStream(encoded), RecordBlockBean.class,
+                false, false, options);
+    }
+}
@@ -79,9 +79,11 @@
 package org.glassfish.hk2.configuration.hub.internal;
 
 import java.io.PrintStream;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.glassfish.hk2.configuration.hub.api.BeanDatabase;
@@ -94,36 +96,49 @@ import org.glassfish.hk2.configuration.hub.api.Type;
  */
 public class BeanDatabaseImpl implements BeanDatabase {
     private final long revision;
-    private final HashMap<String, TypeImpl> types = new HashMap<String, TypeImpl>();
+    private final Map<String, TypeImpl> types;
+    private final Set<Type> allTypes;
     
     /**
      * Creates a new, fresh database
      */
     /* package */ BeanDatabaseImpl(long revision) {
         this.revision = revision;
+        types = Collections.emptyMap();
+        allTypes = Collections.emptySet();
     }
     
-    /* package */ BeanDatabaseImpl(long revision, BeanDatabase beanDatabase) {
-        this(revision);
+    /**
+     * Creates the database that results from committing the given
+     * writeable database.  The instances of each type are shared with
+     * the writeable database rather than copied.  This database is never
+     * modified after construction, and so is read without locking
+     */
+    /* package */ BeanDatabaseImpl(long revision, WriteableBeanDatabaseImpl beanDatabase) {
+        this.revision = revision;
         
-        for (Type type : beanDatabase.getAllTypes()) {
-            types.put(type.getName(), new TypeImpl(type, ((WriteableTypeImpl) type).getHelper()));
+        HashMap<String, TypeImpl> newTypes = new HashMap<String, TypeImpl>();
+        for (WriteableTypeImpl type : beanDatabase.getWriteableTypeImpls()) {
+            newTypes.put(type.getName(), new TypeImpl(type));
         }
+        
+        types = newTypes;
+        allTypes = Collections.unmodifiableSet(new HashSet<Type>(newTypes.values()));
     }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.configuration.hub.api.BeanDatabase#getAllTypes()
      */
     @Override
-    public synchronized Set<Type> getAllTypes() {
-        return Collections.unmodifiableSet(new HashSet<Type>(types.values()));
+    public Set<Type> getAllTypes() {
+        return allTypes;
     }
     
     /* (non-Javadoc)
      * @see org.glassfish.hk2.configuration.hub.api.BeanDatabase#getInstance(java.lang.String, java.lang.Object)
      */
     @Override
-    public synchronized Instance getInstance(String type, String instanceKey) {
+    public Instance getInstance(String type, String instanceKey) {
         Type t = getType(type);
         if (t == null) return null;
         
@@ -134,10 +149,14 @@ public class BeanDatabaseImpl implements BeanDatabase {
      * @see org.glassfish.hk2.configuration.hub.api.BeanDatabase#getType(java.lang.String)
      */
     @Override
-    public synchronized Type getType(String type) {
+    public Type getType(String type) {
         return types.get(type);
     }
     
+    /* package */ Collection<TypeImpl> getTypeImpls() {
+        return types.values();
+    }
+    
     /* package */ long getRevision() {
         return revision;
     }
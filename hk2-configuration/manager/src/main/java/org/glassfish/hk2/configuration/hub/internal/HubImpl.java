@@ -72,7 +72,12 @@ public class HubImpl implements Hub {
     private static final AtomicLong revisionCounter = new AtomicLong(1);
     
     private final Object lock = new Object();
-    private BeanDatabaseImpl currentDatabase = new BeanDatabaseImpl(revisionCounter.getAndIncrement());
+    
+    /**
+     * Databases are never modified once created, so the current one
+     * is published with a volatile write and read without the lock
+     */
+    private volatile BeanDatabaseImpl currentDatabase = new BeanDatabaseImpl(revisionCounter.getAndIncrement());
     
     @Inject
     private IterableProvider<BeanDatabaseUpdateListener> listeners;
@@ -82,9 +87,7 @@ public class HubImpl implements Hub {
      */
     @Override
     public BeanDatabase getCurrentDatabase() {
-        synchronized (lock) {
-            return currentDatabase;
-        }
+        return currentDatabase;
     }
 
     /* (non-Javadoc)
@@ -92,9 +95,7 @@ public class HubImpl implements Hub {
      */
     @Override
     public WriteableBeanDatabase getWriteableDatabaseCopy() {
-        synchronized (lock) {
-            return new WriteableBeanDatabaseImpl(this, currentDatabase);
-        }
+        return new WriteableBeanDatabaseImpl(this, currentDatabase);
     }
     
     private int inTransaction = 0;
@@ -0,0 +1,556 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.configuration.hub.internal;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable hash array mapped trie.  Every put or remove returns
+ * a new map that shares all of the unchanged parts of the trie with
+ * the map it was derived from, so keeping many revisions of a large
+ * map costs only the nodes along the changed paths.  Instances are
+ * immutable and therefore may be read from any thread without locking
+ * 
+ * @author jwells
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+/* package */ final class PersistentHashMap<K, V> {
+    private final static int BITS = 5;
+    private final static int MASK = (1 << BITS) - 1;
+    
+    @SuppressWarnings("rawtypes")
+    private final static PersistentHashMap EMPTY = new PersistentHashMap<Object, Object>(null, 0);
+    
+    /** Either null, a Leaf, a BitmapNode or a CollisionNode */
+    private final Object root;
+    private final int size;
+    private volatile Map<K, V> asMap;
+    
+    private PersistentHashMap(Object root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+    
+    /**
+     * Returns the empty map
+     * 
+     * @return The empty map
+     */
+    @SuppressWarnings("unchecked")
+    /* package */ static <K, V> PersistentHashMap<K, V> empty() {
+        return EMPTY;
+    }
+    
+    /**
+     * The number of entries in this map
+     * 
+     * @return The number of entries in this map
+     */
+    /* package */ int size() {
+        return size;
+    }
+    
+    /**
+     * Gets the value associated with the key
+     * 
+     * @param key The non-null key to look up
+     * @return The value associated with the key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    /* package */ V get(Object key) {
+        Leaf<K, V> leaf = find(root, hash(key), key, 0);
+        if (leaf == null) return null;
+        
+        return leaf.value;
+    }
+    
+    /**
+     * Tells if the given key is in this map
+     * 
+     * @param key The non-null key to look up
+     * @return true if the key is in this map
+     */
+    /* package */ boolean containsKey(Object key) {
+        return find(root, hash(key), key, 0) != null;
+    }
+    
+    /**
+     * Returns a map with the given key associated with the given value.
+     * This map is not modified
+     * 
+     * @param key The non-null key
+     * @param value The value to associate with the key
+     * @return A map with the key associated with the value, which is
+     * this map if the key is already associated with this exact value
+     */
+    /* package */ PersistentHashMap<K, V> put(K key, V value) {
+        boolean added[] = new boolean[1];
+        Object newRoot = put(root, new Leaf<K, V>(hash(key), key, value), 0, added);
+        if (newRoot == root) return this;
+        
+        return new PersistentHashMap<K, V>(newRoot, added[0] ? size + 1 : size);
+    }
+    
+    /**
+     * Returns a map without the given key.  This map is not modified
+     * 
+     * @param key The non-null key to remove
+     * @return A map without the key, which is this map if the key
+     * was not present
+     */
+    /* package */ PersistentHashMap<K, V> remove(Object key) {
+        Object newRoot = remove(root, hash(key), key, 0);
+        if (newRoot == root) return this;
+        
+        if (newRoot == null) return empty();
+        return new PersistentHashMap<K, V>(newRoot, size - 1);
+    }
+    
+    /**
+     * Returns an unmodifiable {@link Map} view of this map.  Since this
+     * map never changes the view never changes either
+     * 
+     * @return An unmodifiable Map backed by this map
+     */
+    /* package */ Map<K, V> asMap() {
+        Map<K, V> retVal = asMap;
+        if (retVal != null) return retVal;
+        
+        retVal = new MapView();
+        asMap = retVal;
+        
+        return retVal;
+    }
+    
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        
+        // Spread the higher bits down, as the lower levels of the trie use the low bits
+        return h ^ (h >>> 16);
+    }
+    
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <K, V> Leaf<K, V> find(Object node, int hash, Object key, int shift) {
+        while (node != null) {
+            if (node instanceof Leaf) {
+                Leaf<K, V> leaf = (Leaf<K, V>) node;
+                if (leaf.hash == hash && leaf.key.equals(key)) return leaf;
+                
+                return null;
+            }
+            
+            if (node instanceof CollisionNode) {
+                CollisionNode collision = (CollisionNode) node;
+                if (collision.hash != hash) return null;
+                
+                for (Leaf<?, ?> leaf : collision.leaves) {
+                    if (leaf.key.equals(key)) return (Leaf<K, V>) leaf;
+                }
+                
+                return null;
+            }
+            
+            BitmapNode bitmapNode = (BitmapNode) node;
+            int bit = bit(hash, shift);
+            if ((bitmapNode.bitmap & bit) == 0) return null;
+            
+            node = bitmapNode.slots[bitmapNode.index(bit)];
+            shift += BITS;
+        }
+        
+        return null;
+    }
+    
+    private static Object put(Object node, Leaf<?, ?> newLeaf, int shift, boolean added[]) {
+        if (node == null) {
+            added[0] = true;
+            return newLeaf;
+        }
+        
+        if (node instanceof Leaf) {
+            Leaf<?, ?> leaf = (Leaf<?, ?>) node;
+            if (leaf.hash == newLeaf.hash && leaf.key.equals(newLeaf.key)) {
+                if (leaf.value == newLeaf.value) return node;
+                return newLeaf;
+            }
+            
+            added[0] = true;
+            if (leaf.hash == newLeaf.hash) {
+                return new CollisionNode(leaf.hash, new Leaf<?, ?>[] { leaf, newLeaf });
+            }
+            
+            return merge(leaf, leaf.hash, newLeaf, newLeaf.hash, shift);
+        }
+        
+        if (node instanceof CollisionNode) {
+            CollisionNode collision = (CollisionNode) node;
+            if (collision.hash != newLeaf.hash) {
+                added[0] = true;
+                return merge(collision, collision.hash, newLeaf, newLeaf.hash, shift);
+            }
+            
+            Leaf<?, ?> leaves[] = collision.leaves;
+            for (int lcv = 0; lcv < leaves.length; lcv++) {
+                if (leaves[lcv].key.equals(newLeaf.key)) {
+                    if (leaves[lcv].value == newLeaf.value) return node;
+                    
+                    Leaf<?, ?> newLeaves[] = leaves.clone();
+                    newLeaves[lcv] = newLeaf;
+                    return new CollisionNode(collision.hash, newLeaves);
+                }
+            }
+            
+            Leaf<?, ?> newLeaves[] = new Leaf<?, ?>[leaves.length + 1];
+            System.arraycopy(leaves, 0, newLeaves, 0, leaves.length);
+            newLeaves[leaves.length] = newLeaf;
+            
+            added[0] = true;
+            return new CollisionNode(collision.hash, newLeaves);
+        }
+        
+        BitmapNode bitmapNode = (BitmapNode) node;
+        int bit = bit(newLeaf.hash, shift);
+        int index = bitmapNode.index(bit);
+        
+        if ((bitmapNode.bitmap & bit) == 0) {
+            Object slots[] = new Object[bitmapNode.slots.length + 1];
+            System.arraycopy(bitmapNode.slots, 0, slots, 0, index);
+            slots[index] = newLeaf;
+            System.arraycopy(bitmapNode.slots, index, slots, index + 1, bitmapNode.slots.length - index);
+            
+            added[0] = true;
+            return new BitmapNode(bitmapNode.bitmap | bit, slots);
+        }
+        
+        Object oldChild = bitmapNode.slots[index];
+        Object newChild = put(oldChild, newLeaf, shift + BITS, added);
+        if (newChild == oldChild) return node;
+        
+        Object slots[] = bitmapNode.slots.clone();
+        slots[index] = newChild;
+        
+        return new BitmapNode(bitmapNode.bitmap, slots);
+    }
+    
+    /**
+     * Creates the node holding two children whose hashes differ
+     */
+    private static Object merge(Object first, int firstHash, Object second, int secondHash, int shift) {
+        int firstBit = bit(firstHash, shift);
+        int secondBit = bit(secondHash, shift);
+        
+        if (firstBit == secondBit) {
+            return new BitmapNode(firstBit,
+                    new Object[] { merge(first, firstHash, second, secondHash, shift + BITS) });
+        }
+        
+        if ((firstBit & 0xFFFFFFFFL) < (secondBit & 0xFFFFFFFFL)) {
+            return new BitmapNode(firstBit | secondBit, new Object[] { first, second });
+        }
+        
+        return new BitmapNode(firstBit | secondBit, new Object[] { second, first });
+    }
+    
+    private static Object remove(Object node, int hash, Object key, int shift) {
+        if (node == null) return null;
+        
+        if (node instanceof Leaf) {
+            Leaf<?, ?> leaf = (Leaf<?, ?>) node;
+            if (leaf.hash == hash && leaf.key.equals(key)) return null;
+            
+            return node;
+        }
+        
+        if (node instanceof CollisionNode) {
+            CollisionNode collision = (CollisionNode) node;
+            if (collision.hash != hash) return node;
+            
+            Leaf<?, ?> leaves[] = collision.leaves;
+            for (int lcv = 0; lcv < leaves.length; lcv++) {
+                if (!leaves[lcv].key.equals(key)) continue;
+                
+                if (leaves.length == 2) {
+                    // Collapse back down to a single leaf
+                    return leaves[1 - lcv];
+                }
+                
+                Leaf<?, ?> newLeaves[] = new Leaf<?, ?>[leaves.length - 1];
+                System.arraycopy(leaves, 0, newLeaves, 0, lcv);
+                System.arraycopy(leaves, lcv + 1, newLeaves, lcv, leaves.length - lcv - 1);
+                
+                return new CollisionNode(collision.hash, newLeaves);
+            }
+            
+            return node;
+        }
+        
+        BitmapNode bitmapNode = (BitmapNode) node;
+        int bit = bit(hash, shift);
+        if ((bitmapNode.bitmap & bit) == 0) return node;
+        
+        int index = bitmapNode.index(bit);
+        Object oldChild = bitmapNode.slots[index];
+        Object newChild = remove(oldChild, hash, key, shift + BITS);
+        if (newChild == oldChild) return node;
+        
+        if (newChild == null) {
+            if (bitmapNode.slots.length == 1) return null;
+            
+            if (bitmapNode.slots.length == 2 && !(bitmapNode.slots[1 - index] instanceof BitmapNode)) {
+                // A lone leaf or collision can move up and take the place of this node
+                return bitmapNode.slots[1 - index];
+            }
+            
+            Object slots[] = new Object[bitmapNode.slots.length - 1];
+            System.arraycopy(bitmapNode.slots, 0, slots, 0, index);
+            System.arraycopy(bitmapNode.slots, index + 1, slots, index, bitmapNode.slots.length - index - 1);
+            
+            return new BitmapNode(bitmapNode.bitmap & ~bit, slots);
+        }
+        
+        if (bitmapNode.slots.length == 1 && !(newChild instanceof BitmapNode)) {
+            return newChild;
+        }
+        
+        Object slots[] = bitmapNode.slots.clone();
+        slots[index] = newChild;
+        
+        return new BitmapNode(bitmapNode.bitmap, slots);
+    }
+    
+    private static class Leaf<K, V> implements Map.Entry<K, V> {
+        private final int hash;
+        private final K key;
+        private final V value;
+        
+        private Leaf(int hash, K key, V value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+        
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ ((value == null) ? 0 : value.hashCode());
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+            
+            if (!key.equals(other.getKey())) return false;
+            if (value == null) return other.getValue() == null;
+            return value.equals(other.getValue());
+        }
+        
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+    
+    private static class BitmapNode {
+        private final int bitmap;
+        private final Object slots[];
+        
+        private BitmapNode(int bitmap, Object slots[]) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+        
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+    }
+    
+    private static class CollisionNode {
+        private final int hash;
+        private final Leaf<?, ?> leaves[];
+        
+        private CollisionNode(int hash, Leaf<?, ?> leaves[]) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+    }
+    
+    /**
+     * Walks the trie depth first.  The stack can never be deeper
+     * than the number of levels of the trie plus the collision level
+     */
+    private static class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final Object stack[][] = new Object[(32 / BITS) + 3][];
+        private final int indexes[] = new int[stack.length];
+        private int depth = -1;
+        private Leaf<K, V> next;
+        
+        private EntryIterator(Object root) {
+            if (root == null) return;
+            
+            push(root);
+            advance();
+        }
+        
+        private void push(Object node) {
+            depth++;
+            indexes[depth] = 0;
+            
+            if (node instanceof BitmapNode) {
+                stack[depth] = ((BitmapNode) node).slots;
+            }
+            else if (node instanceof CollisionNode) {
+                stack[depth] = ((CollisionNode) node).leaves;
+            }
+            else {
+                stack[depth] = new Object[] { node };
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            
+            while (depth >= 0) {
+                Object level[] = stack[depth];
+                if (indexes[depth] >= level.length) {
+                    stack[depth] = null;
+                    depth--;
+                    continue;
+                }
+                
+                Object node = level[indexes[depth]++];
+                if (node instanceof Leaf) {
+                    next = (Leaf<K, V>) node;
+                    return;
+                }
+                
+                push(node);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) throw new NoSuchElementException();
+            
+            Leaf<K, V> retVal = next;
+            advance();
+            
+            return retVal;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+    
+    private class MapView extends AbstractMap<K, V> {
+        private Set<Map.Entry<K, V>> entrySet;
+
+        @Override
+        public V get(Object key) {
+            if (key == null) return null;
+            return PersistentHashMap.this.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            if (key == null) return false;
+            return PersistentHashMap.this.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            if (entrySet != null) return entrySet;
+            
+            entrySet = new AbstractSet<Map.Entry<K, V>>() {
+
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new EntryIterator<K, V>(root);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+                
+            };
+            
+            return entrySet;
+        }
+    }
+}
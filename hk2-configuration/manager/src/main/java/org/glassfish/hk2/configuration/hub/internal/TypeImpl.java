@@ -39,7 +39,6 @@
  */
 package org.glassfish.hk2.configuration.hub.internal;
 
-import java.util.Collections;
 import java.util.Map;
 
 import org.glassfish.hk2.configuration.hub.api.Instance;
@@ -52,15 +51,15 @@ import org.glassfish.hk2.utilities.reflection.ClassReflectionHelper;
  */
 public class TypeImpl implements Type {
     private final String name;
-    private final Map<String, Instance> instances;
+    private final PersistentHashMap<String, Instance> instances;
     private final ClassReflectionHelper helper;
     private Object metadata;
     
-    /* package */ TypeImpl(Type baseType, ClassReflectionHelper helper) {
+    /* package */ TypeImpl(WriteableTypeImpl baseType) {
         name = baseType.getName();
-        instances = Collections.unmodifiableMap(baseType.getInstances());
-        this.helper = helper;
-        this.metadata = baseType.getMetadata();
+        instances = baseType.getInstanceMap();
+        helper = baseType.getHelper();
+        metadata = baseType.getMetadata();
     }
 
     /* (non-Javadoc)
@@ -76,7 +75,7 @@ public class TypeImpl implements Type {
      */
     @Override
     public Map<String, Instance> getInstances() {
-        return instances;
+        return instances.asMap();
     }
 
     /* (non-Javadoc)
@@ -91,6 +90,10 @@ public class TypeImpl implements Type {
         return helper;
     }
     
+    /* package */ PersistentHashMap<String, Instance> getInstanceMap() {
+        return instances;
+    }
+    
     
 
     /* (non-Javadoc)
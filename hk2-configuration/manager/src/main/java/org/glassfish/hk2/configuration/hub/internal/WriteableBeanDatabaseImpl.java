@@ -40,10 +40,12 @@
 package org.glassfish.hk2.configuration.hub.internal;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -76,8 +78,8 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
         this.hub = hub;
         baseRevision = currentDatabase.getRevision();
         
-        for (Type type : currentDatabase.getAllTypes()) {
-            types.put(type.getName(), new WriteableTypeImpl(this, (TypeImpl) type));
+        for (TypeImpl type : currentDatabase.getTypeImpls()) {
+            types.put(type.getName(), new WriteableTypeImpl(this, type));
         }
         
     }
@@ -230,6 +232,10 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
         removedTypes.clear();
     }
     
+    /* package */ synchronized List<WriteableTypeImpl> getWriteableTypeImpls() {
+        return new ArrayList<WriteableTypeImpl>(types.values());
+    }
+    
     /* package */ long getBaseRevision() {
         return baseRevision;
     }
@@ -40,10 +40,10 @@
 package org.glassfish.hk2.configuration.hub.internal;
 
 import java.beans.PropertyChangeEvent;
+import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.glassfish.hk2.configuration.hub.api.Change;
 import org.glassfish.hk2.configuration.hub.api.Instance;
@@ -59,21 +59,29 @@ import org.glassfish.hk2.utilities.reflection.internal.ClassReflectionHelperImpl
 public class WriteableTypeImpl implements WriteableType {
     private final WriteableBeanDatabaseImpl parent;
     private final String name;
-    private final HashMap<String, Instance> beanMap = new HashMap<String, Instance>();
     private final ClassReflectionHelper helper;
+    private final Map<String, Instance> liveInstances = new LiveInstances();
     private Object metadata;
     
+    /**
+     * The current instances of this type.  The map is shared with the
+     * type this was copied from until the first change, and each change
+     * then replaces only the path to the changed instance.  Guarded by this
+     */
+    private PersistentHashMap<String, Instance> beanMap;
+    
     /* package */ WriteableTypeImpl(WriteableBeanDatabaseImpl parent, TypeImpl mother) {
         this.parent = parent;
         this.name = mother.getName();
         this.metadata = mother.getMetadata();
-        beanMap.putAll(mother.getInstances());
+        beanMap = mother.getInstanceMap();
         helper = mother.getHelper();
     }
     
     /* package */ WriteableTypeImpl(WriteableBeanDatabaseImpl parent, String name) {
         this.parent = parent;
         this.name = name;
+        beanMap = PersistentHashMap.empty();
         helper = new ClassReflectionHelperImpl();
     }
 
@@ -89,8 +97,8 @@ public class WriteableTypeImpl implements WriteableType {
      * @see org.glassfish.hk2.configuration.hub.api.Type#getInstances()
      */
     @Override
-    public synchronized Map<String, Instance> getInstances() {
-        return Collections.unmodifiableMap(beanMap);
+    public Map<String, Instance> getInstances() {
+        return liveInstances;
     }
     
     /* (non-Javadoc)
@@ -125,7 +133,7 @@ public class WriteableTypeImpl implements WriteableType {
                                    null,
                                    null));
         
-        beanMap.put(key, ii);
+        beanMap = beanMap.put(key, ii);
         
         return ii;
     }
@@ -137,9 +145,11 @@ public class WriteableTypeImpl implements WriteableType {
     public synchronized Instance removeInstance(String key) {
         if (key == null) throw new IllegalArgumentException();
         
-        Instance removedValue = beanMap.remove(key);
+        Instance removedValue = beanMap.get(key);
         if (removedValue == null) return null;
         
+        beanMap = beanMap.remove(key);
+        
         parent.addChange(new ChangeImpl(Change.ChangeCategory.REMOVE_INSTANCE,
                 this,
                 key,
@@ -169,7 +179,7 @@ public class WriteableTypeImpl implements WriteableType {
             propChanges = BeanReflectionHelper.getChangeEvents(helper, oldInstance.getBean(), newInstance.getBean());
         }
         
-        beanMap.put(key, newInstance);
+        beanMap = beanMap.put(key, newInstance);
 
         ArrayList<PropertyChangeEvent> propChangesList = new ArrayList<PropertyChangeEvent>(propChanges.length);
         for (PropertyChangeEvent pce : propChanges) {
@@ -189,6 +199,10 @@ public class WriteableTypeImpl implements WriteableType {
     ClassReflectionHelper getHelper() {
         return helper;
     }
+    
+    /* package */ synchronized PersistentHashMap<String, Instance> getInstanceMap() {
+        return beanMap;
+    }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.configuration.hub.api.Type#getMetadata()
@@ -210,5 +224,33 @@ public class WriteableTypeImpl implements WriteableType {
     public String toString() {
         return "WriteableTypeImpl(" + name + "," + metadata + "," + System.identityHashCode(this) + ")";
     }
+    
+    /**
+     * An unmodifiable view of the current instances of this type,
+     * which reflects later changes to this type
+     */
+    private class LiveInstances extends AbstractMap<String, Instance> {
+
+        @Override
+        public Instance get(Object key) {
+            return getInstanceMap().asMap().get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return getInstanceMap().asMap().containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return getInstanceMap().size();
+        }
+
+        @Override
+        public Set<Map.Entry<String, Instance>> entrySet() {
+            return getInstanceMap().asMap().entrySet();
+        }
+        
+    }
 
 }
@@ -48,6 +48,7 @@ import java.util.Map;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.configuration.hub.api.BeanDatabase;
 import org.glassfish.hk2.configuration.hub.api.Change;
 import org.glassfish.hk2.configuration.hub.api.CommitFailedException;
 import org.glassfish.hk2.configuration.hub.api.Hub;
@@ -80,6 +81,13 @@ public class HubTest extends HubTestBase {
     private final static String TYPE_TEN = "TypeTen";
     private final static String TYPE_ELEVEN = "TypeEleven";
     private final static String TYPE_TWELVE = "TypeTwelve";
+    private final static String TYPE_THIRTEEN = "TypeThirteen";
+    
+    private final static int MANY_INSTANCES = 5000;
+    
+    /** These two keys have the same String hashCode */
+    private final static String COLLIDING_KEY1 = "Aa";
+    private final static String COLLIDING_KEY2 = "BB";
     
     private final static String NAME_PROPERTY = "name";
     private final static String OTHER_PROPERTY = "other";
@@ -1305,5 +1313,79 @@ public class HubTest extends HubTestBase {
             removeType(TYPE_TWO);
         }
     }
+    
+    /**
+     * Tests that databases committed earlier are not changed by later
+     * changes to a large type, and that removals and collisions of
+     * instance keys are handled
+     */
+    @Test // @org.junit.Ignore
+    public void testOldDatabasesUnchangedByLaterCommits() {
+        WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+        WriteableType wt = wbd.addType(TYPE_THIRTEEN);
+        
+        for (int lcv = 0; lcv < MANY_INSTANCES; lcv++) {
+            wt.addInstance(Integer.toString(lcv), new GenericJavaBean(Integer.toString(lcv), OTHER_PROPERTY_VALUE1));
+        }
+        wt.addInstance(COLLIDING_KEY1, new GenericJavaBean(COLLIDING_KEY1, OTHER_PROPERTY_VALUE1));
+        wt.addInstance(COLLIDING_KEY2, new GenericJavaBean(COLLIDING_KEY2, OTHER_PROPERTY_VALUE1));
+        
+        wbd.commit();
+        
+        try {
+            BeanDatabase firstDatabase = hub.getCurrentDatabase();
+            Assert.assertEquals(MANY_INSTANCES + 2, firstDatabase.getType(TYPE_THIRTEEN).getInstances().size());
+            
+            wbd = hub.getWriteableDatabaseCopy();
+            wt = wbd.getWriteableType(TYPE_THIRTEEN);
+            
+            Map<String, Instance> liveInstances = wt.getInstances();
+            
+            wt.modifyInstance("0", new GenericJavaBean("0", OTHER_PROPERTY_VALUE2));
+            Assert.assertNotNull(wt.removeInstance("1"));
+            Assert.assertNotNull(wt.removeInstance(COLLIDING_KEY1));
+            Assert.assertNull(wt.removeInstance(COLLIDING_KEY1));
+            wt.addInstance(ALICE, new GenericJavaBean(ALICE, OTHER_PROPERTY_VALUE1));
+            
+            // The view of the writeable type follows the changes
+            Assert.assertEquals(MANY_INSTANCES + 1, liveInstances.size());
+            Assert.assertFalse(liveInstances.containsKey("1"));
+            Assert.assertTrue(liveInstances.containsKey(ALICE));
+            
+            // The current database does not see uncommitted changes
+            Assert.assertSame(firstDatabase, hub.getCurrentDatabase());
+            
+            wbd.commit();
+            
+            BeanDatabase secondDatabase = hub.getCurrentDatabase();
+            Type secondType = secondDatabase.getType(TYPE_THIRTEEN);
+            Assert.assertEquals(MANY_INSTANCES + 1, secondType.getInstances().size());
+            Assert.assertEquals(OTHER_PROPERTY_VALUE2,
+                    ((GenericJavaBean) secondType.getInstance("0").getBean()).getOther());
+            Assert.assertNull(secondType.getInstance("1"));
+            Assert.assertNull(secondType.getInstance(COLLIDING_KEY1));
+            Assert.assertNotNull(secondType.getInstance(COLLIDING_KEY2));
+            Assert.assertNotNull(secondType.getInstance(ALICE));
+            
+            HashSet<String> keys = new HashSet<String>();
+            for (Map.Entry<String, Instance> entry : secondType.getInstances().entrySet()) {
+                Assert.assertSame(entry.getValue(), secondType.getInstance(entry.getKey()));
+                keys.add(entry.getKey());
+            }
+            Assert.assertEquals(MANY_INSTANCES + 1, keys.size());
+            
+            // The first database is exactly as it was
+            Type firstType = firstDatabase.getType(TYPE_THIRTEEN);
+            Assert.assertEquals(MANY_INSTANCES + 2, firstType.getInstances().size());
+            Assert.assertEquals(OTHER_PROPERTY_VALUE1,
+                    ((GenericJavaBean) firstType.getInstance("0").getBean()).getOther());
+            Assert.assertNotNull(firstType.getInstance("1"));
+            Assert.assertNotNull(firstType.getInstance(COLLIDING_KEY1));
+            Assert.assertNull(firstType.getInstance(ALICE));
+        }
+        finally {
+            removeType(TYPE_THIRTEEN);
+        }
+    }
 
 }
@@ -60,6 +60,15 @@ public class PBufUtilities {
      */
     public final static String PBUF_OPTION_INT32_HEADER = "PbufInt32Header";
     
+    /**
+     * This option controls whether or not the marshaller/unmarshaller goes
+     * through an intermediate protobuf DynamicMessage.  The value must be
+     * of type {@link Boolean}.  By default this is false, and the beans are
+     * read from and written to the wire directly.  Both produce the same
+     * bytes on the wire, so this is mainly useful for comparing the two
+     */
+    public final static String PBUF_OPTION_DYNAMIC_MESSAGE = "PbufDynamicMessage";
+    
     private static boolean isDup(MultiException me) {
         if (me == null) return false;
         
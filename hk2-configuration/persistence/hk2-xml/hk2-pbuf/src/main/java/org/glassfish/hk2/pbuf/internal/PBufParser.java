@@ -107,6 +107,8 @@ public class PBufParser implements XmlServiceParser {
     private final WeakHashMap<OutputStream, CodedOutputStream> cosCache = new WeakHashMap<OutputStream, CodedOutputStream>();
     private final WeakHashMap<InputStream, CodedInputStream> cisCache = new WeakHashMap<InputStream, CodedInputStream>();
     
+    private final StreamingCodec codec = new StreamingCodec();
+    
     @Inject @Named(PBufUtilities.PBUF_SERVICE_NAME)
     private IterableProvider<XmlService> xmlService;
 
@@ -195,9 +197,23 @@ public class PBufParser implements XmlServiceParser {
             rawBytes = baos.toByteArray();
         }
             
-        DynamicMessage message;
+        XmlHk2ConfigurationBean retVal;
         try {
-            message = internalUnmarshal((ModelImpl) rootModel, rawBytes);
+            if (getUseDynamicMessage(options)) {
+                DynamicMessage message = internalUnmarshal((ModelImpl) rootModel, rawBytes);
+                
+                retVal = parseDynamicMessage((ModelImpl) rootModel,
+                        null,
+                        message,
+                        listener);
+            }
+            else {
+                retVal = codec.unmarshal((ModelImpl) rootModel,
+                        getDescriptor((ModelImpl) rootModel),
+                        rawBytes,
+                        xmlService.get(),
+                        listener);
+            }
         }
         catch (InvalidProtocolBufferException ipbe) {
             MultiException me = new MultiException(ipbe);
@@ -225,11 +241,6 @@ public class PBufParser implements XmlServiceParser {
             throw me;
         }
         
-        XmlHk2ConfigurationBean retVal = parseDynamicMessage((ModelImpl) rootModel,
-            null,
-            message,
-            listener);
-        
         return (T) retVal;
     }
     
@@ -281,8 +292,17 @@ public class PBufParser implements XmlServiceParser {
             throw new IOException(e);
         }
         
-        DynamicMessage dynamicMessage = internalMarshal(rootBean);
-        int size = dynamicMessage.getSerializedSize();
+        DynamicMessage dynamicMessage = null;
+        StreamingCodec.EncodedMessage encodedMessage = null;
+        int size;
+        if (getUseDynamicMessage(options)) {
+            dynamicMessage = internalMarshal(rootBean);
+            size = dynamicMessage.getSerializedSize();
+        }
+        else {
+            encodedMessage = codec.encode(rootBean, getDescriptor(model));
+            size = encodedMessage.getSize();
+        }
         
         CodedOutputStream cos;
         synchronized (cosCache) {
@@ -301,7 +321,12 @@ public class PBufParser implements XmlServiceParser {
               cos.writeInt32NoTag(size);
           }
           
-          dynamicMessage.writeTo(cos);
+          if (dynamicMessage != null) {
+              dynamicMessage.writeTo(cos);
+          }
+          else {
+              codec.write(encodedMessage, cos);
+          }
         }
         finally {
             cos.flush();
@@ -431,6 +456,19 @@ public class PBufParser implements XmlServiceParser {
         return bean;
     }
     
+    private Descriptors.Descriptor getDescriptor(ModelImpl model) throws IOException {
+        Descriptors.Descriptor descriptor;
+        synchronized (allProtos) {
+            descriptor = allProtos.get(model.getOriginalInterfaceAsClass());
+        }
+        if (descriptor == null) {
+            throw new IOException("Unknown model: " + model.getOriginalInterface() + " with protoName=" +
+                getSimpleName(model.getOriginalInterface()));
+        }
+        
+        return descriptor;
+    }
+    
     private DynamicMessage internalUnmarshal(ModelImpl model, byte[] bytes) throws Exception {
         Class<?> originalAsClass = model.getOriginalInterfaceAsClass();
         String originalInterface = model.getOriginalInterface();
@@ -1020,6 +1058,15 @@ public class PBufParser implements XmlServiceParser {
         return val;
     }
     
+    private static boolean getUseDynamicMessage(Map<String, Object> options) {
+        if (options == null) return false;
+        
+        Boolean val = (Boolean) options.get(PBufUtilities.PBUF_OPTION_DYNAMIC_MESSAGE);
+        if (val == null) return false;
+        
+        return val;
+    }
+    
     @Override
     public String toString() {
         return "PBufParser(" + System.identityHashCode(this) + ")";
@@ -0,0 +1,704 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.pbuf.internal;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.bind.Unmarshaller.Listener;
+import javax.xml.namespace.QName;
+
+import org.glassfish.hk2.xml.api.XmlHk2ConfigurationBean;
+import org.glassfish.hk2.xml.api.XmlService;
+import org.glassfish.hk2.xml.internal.ChildDataModel;
+import org.glassfish.hk2.xml.internal.ChildDescriptor;
+import org.glassfish.hk2.xml.internal.ModelImpl;
+import org.glassfish.hk2.xml.internal.ParentedModel;
+import org.glassfish.hk2.xml.internal.QNameUtilities;
+import org.glassfish.hk2.xml.jaxb.internal.BaseHK2JAXBBean;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Reads and writes hk2-xml beans directly from and to the protocol
+ * buffer wire format without building an intermediate DynamicMessage.
+ * The field numbers, types and oneof groups all come from the descriptors
+ * built by {@link PBufParser}, so the bytes on the wire are the same as
+ * the ones produced by the DynamicMessage path.  The per-model plan is
+ * computed once and then cached
+ * 
+ * @author jwells
+ */
+class StreamingCodec {
+    private final ConcurrentHashMap<Descriptors.Descriptor, MessagePlan> plans =
+            new ConcurrentHashMap<Descriptors.Descriptor, MessagePlan>();
+    
+    /**
+     * Parses the given bytes into a new bean tree
+     * 
+     * @param model The model of the root bean
+     * @param descriptor The descriptor built for the root model
+     * @param bytes The raw bytes of the root message
+     * @param xmlService The service used to create the beans
+     * @param listener The unmarshal listener
+     * @return The root bean
+     * @throws IOException If the bytes are not a valid protocol buffer
+     */
+    XmlHk2ConfigurationBean unmarshal(ModelImpl model, Descriptors.Descriptor descriptor,
+            byte[] bytes, XmlService xmlService, Listener listener) throws IOException {
+        MessagePlan plan = getPlan(model, descriptor);
+        
+        return read(plan, bytes, 0, bytes.length, null, xmlService, listener);
+    }
+    
+    /**
+     * Gathers all the values of the given bean tree and computes the
+     * size of every message in it, so that the tree can be written
+     * in one pass with {@link #write(EncodedMessage, CodedOutputStream)}
+     * 
+     * @param bean The root bean to encode
+     * @param descriptor The descriptor built for the model of the root bean
+     * @return The encoded tree, whose size is the size of the root message
+     * @throws IOException On an encoding failure
+     */
+    EncodedMessage encode(XmlHk2ConfigurationBean bean, Descriptors.Descriptor descriptor) throws IOException {
+        MessagePlan plan = getPlan(bean._getModel(), descriptor);
+        
+        return encode(plan, bean);
+    }
+    
+    /**
+     * Writes an encoded tree (without any length header) to the stream
+     * 
+     * @param message The message returned from {@link #encode(XmlHk2ConfigurationBean, Descriptors.Descriptor)}
+     * @param output The stream to write to
+     * @throws IOException On a failure writing to the stream
+     */
+    void write(EncodedMessage message, CodedOutputStream output) throws IOException {
+        FieldPlan fields[] = message.plan.fields;
+        Object values[] = message.values;
+        
+        for (int lcv = 0; lcv < fields.length; lcv++) {
+            Object value = values[lcv];
+            if (value == null) continue;
+            
+            FieldPlan field = fields[lcv];
+            int number = field.number;
+            
+            switch (field.kind) {
+            case STRING:
+            case CHAR:
+                output.writeString(number, (String) value);
+                break;
+            case INT32:
+            case SHORT:
+                output.writeInt32(number, ((Integer) value).intValue());
+                break;
+            case INT64:
+                output.writeInt64(number, ((Long) value).longValue());
+                break;
+            case BOOL:
+                output.writeBool(number, ((Boolean) value).booleanValue());
+                break;
+            case DOUBLE:
+                output.writeDouble(number, ((Double) value).doubleValue());
+                break;
+            case FLOAT:
+                output.writeFloat(number, ((Float) value).floatValue());
+                break;
+            case BYTE:
+                output.writeBytes(number, (ByteString) value);
+                break;
+            case ENUM:
+                output.writeEnum(number, ((Integer) value).intValue());
+                break;
+            case DIRECT:
+                writeMessage(number, (EncodedMessage) value, output);
+                break;
+            case LIST:
+            case ARRAY:
+                for (EncodedMessage child : (EncodedMessage[]) value) {
+                    writeMessage(number, child, output);
+                }
+                break;
+            default:
+                throw new AssertionError("Unknown field kind " + field.kind);
+            }
+        }
+    }
+    
+    private void writeMessage(int number, EncodedMessage message, CodedOutputStream output) throws IOException {
+        output.writeTag(number, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        output.writeUInt32NoTag(message.size);
+        write(message, output);
+    }
+    
+    private MessagePlan getPlan(ModelImpl model, Descriptors.Descriptor descriptor) throws IOException {
+        MessagePlan retVal = plans.get(descriptor);
+        if (retVal != null) return retVal;
+        
+        retVal = new MessagePlan(model, descriptor);
+        
+        MessagePlan existing = plans.putIfAbsent(descriptor, retVal);
+        if (existing != null) return existing;
+        
+        return retVal;
+    }
+    
+    private MessagePlan getChildPlan(FieldPlan field) throws IOException {
+        MessagePlan retVal = field.childPlan;
+        if (retVal != null) return retVal;
+        
+        // Resolved lazily since models are allowed to refer back to themselves
+        retVal = getPlan(field.childModel, field.descriptor.getMessageType());
+        field.childPlan = retVal;
+        
+        return retVal;
+    }
+    
+    private XmlHk2ConfigurationBean read(MessagePlan plan, byte[] buffer, int offset, int length,
+            XmlHk2ConfigurationBean parent, XmlService xmlService, Listener listener) throws IOException {
+        FieldPlan fields[] = plan.fields;
+        Object values[] = new Object[fields.length];
+        
+        CodedInputStream input = CodedInputStream.newInstance(buffer, offset, length);
+        
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            int number = WireFormat.getTagFieldNumber(tag);
+            FieldPlan field = ((number > 0) && (number <= fields.length)) ? fields[number - 1] : null;
+            if ((field == null) || (WireFormat.getTagWireType(tag) != field.wireType)) {
+                input.skipField(tag);
+                continue;
+            }
+            
+            int index = number - 1;
+            Object value;
+            
+            switch (field.kind) {
+            case STRING:
+            case CHAR:
+                value = input.readString();
+                break;
+            case INT32:
+            case SHORT:
+                value = input.readInt32();
+                break;
+            case INT64:
+                value = input.readInt64();
+                break;
+            case BOOL:
+                value = input.readBool();
+                break;
+            case DOUBLE:
+                value = input.readDouble();
+                break;
+            case FLOAT:
+                value = input.readFloat();
+                break;
+            case BYTE:
+                value = input.readBytes();
+                break;
+            case ENUM:
+                int enumNumber = input.readEnum();
+                if ((enumNumber < 0) || (enumNumber >= field.enumConstants.length)) {
+                    // An unknown enum value is not set, same as protobuf
+                    continue;
+                }
+                
+                value = field.enumConstants[enumNumber];
+                break;
+            case DIRECT:
+            case LIST:
+            case ARRAY:
+                int childLength = input.readRawVarint32();
+                int childOffset = offset + input.getTotalBytesRead();
+                input.skipRawBytes(childLength);
+                
+                Slice slice = new Slice(buffer, childOffset, childLength);
+                if (field.kind == FieldKind.DIRECT) {
+                    // A repeated singular message is merged, which in
+                    // protobuf is the same as concatenating the two
+                    value = (values[index] == null) ? slice : ((Slice) values[index]).concat(slice);
+                }
+                else {
+                    @SuppressWarnings("unchecked")
+                    List<Slice> slices = (List<Slice>) values[index];
+                    if (slices == null) {
+                        slices = new ArrayList<Slice>();
+                    }
+                    slices.add(slice);
+                    
+                    value = slices;
+                }
+                break;
+            default:
+                throw new AssertionError("Unknown field kind " + field.kind);
+            }
+            
+            if (field.oneOf >= 0) {
+                for (int member : plan.oneOfMembers[field.oneOf]) {
+                    values[member] = null;
+                }
+            }
+            
+            values[index] = value;
+        }
+        
+        BaseHK2JAXBBean bean = (BaseHK2JAXBBean) xmlService.createBean(plan.beanClass);
+        
+        listener.beforeUnmarshal(bean, parent);
+        
+        for (int lcv = 0; lcv < fields.length; lcv++) {
+            FieldPlan field = fields[lcv];
+            Object value = values[lcv];
+            
+            switch (field.kind) {
+            case DIRECT:
+                if (value == null) continue;
+                
+                Slice slice = (Slice) value;
+                bean._setProperty(field.qname, read(getChildPlan(field), slice.buffer, slice.offset, slice.length,
+                        bean, xmlService, listener));
+                break;
+            case LIST:
+            case ARRAY:
+                @SuppressWarnings("unchecked")
+                List<Slice> slices = (value == null) ? null : (List<Slice>) value;
+                int count = (slices == null) ? 0 : slices.size();
+                
+                MessagePlan childPlan = getChildPlan(field);
+                
+                if (field.kind == FieldKind.LIST) {
+                    ArrayList<XmlHk2ConfigurationBean> list = new ArrayList<XmlHk2ConfigurationBean>(count);
+                    for (int index = 0; index < count; index++) {
+                        Slice child = slices.get(index);
+                        list.add(read(childPlan, child.buffer, child.offset, child.length, bean, xmlService, listener));
+                    }
+                    
+                    bean._setProperty(field.qname, list);
+                }
+                else {
+                    Object array = Array.newInstance(childPlan.beanClass, count);
+                    for (int index = 0; index < count; index++) {
+                        Slice child = slices.get(index);
+                        Array.set(array, index, read(childPlan, child.buffer, child.offset, child.length, bean, xmlService, listener));
+                    }
+                    
+                    bean._setProperty(field.qname, array);
+                }
+                break;
+            default:
+                if (value == null) continue;
+                
+                bean._setProperty(field.qname, convertForUnmarshal(field, value));
+                break;
+            }
+        }
+        
+        listener.afterUnmarshal(bean, parent);
+        
+        return bean;
+    }
+    
+    private static Object convertForUnmarshal(FieldPlan field, Object value) {
+        switch (field.kind) {
+        case STRING:
+            // PBuf cannot tell the difference between null and empty
+            // string, so empty string goes back to null
+            String asString = (String) value;
+            return asString.isEmpty() ? null : asString;
+        case SHORT:
+            return ((Integer) value).shortValue();
+        case CHAR:
+            return ((String) value).charAt(0);
+        case BYTE:
+            return ((ByteString) value).byteAt(0);
+        default:
+            return value;
+        }
+    }
+    
+    private EncodedMessage encode(MessagePlan plan, XmlHk2ConfigurationBean bean) throws IOException {
+        FieldPlan fields[] = plan.fields;
+        Object values[] = new Object[fields.length];
+        
+        for (int lcv = 0; lcv < fields.length; lcv++) {
+            FieldPlan field = fields[lcv];
+            Object value;
+            
+            switch (field.kind) {
+            case DIRECT:
+                Object direct = bean._getProperty(field.namespace, field.localPart);
+                if (direct == null) continue;
+                
+                value = encode(getChildPlan(field), (XmlHk2ConfigurationBean) direct);
+                break;
+            case LIST:
+                List<?> list = (List<?>) bean._getProperty(field.namespace, field.localPart);
+                if ((list == null) || list.isEmpty()) continue;
+                
+                MessagePlan listPlan = getChildPlan(field);
+                EncodedMessage listMessages[] = new EncodedMessage[list.size()];
+                int index = 0;
+                for (Object child : list) {
+                    listMessages[index++] = encode(listPlan, (XmlHk2ConfigurationBean) child);
+                }
+                
+                value = listMessages;
+                break;
+            case ARRAY:
+                Object array = bean._getProperty(field.namespace, field.localPart);
+                int count = (array == null) ? 0 : Array.getLength(array);
+                if (count <= 0) continue;
+                
+                MessagePlan arrayPlan = getChildPlan(field);
+                EncodedMessage arrayMessages[] = new EncodedMessage[count];
+                for (int aIndex = 0; aIndex < count; aIndex++) {
+                    arrayMessages[aIndex] = encode(arrayPlan, (XmlHk2ConfigurationBean) Array.get(array, aIndex));
+                }
+                
+                value = arrayMessages;
+                break;
+            default:
+                if (!bean._isSet(field.namespace, field.localPart)) continue;
+                
+                value = convertForMarshal(field, bean._getProperty(field.namespace, field.localPart));
+                if (value == null) continue;
+                break;
+            }
+            
+            if (field.oneOf >= 0) {
+                // The last one set in a oneof wins
+                for (int member : plan.oneOfMembers[field.oneOf]) {
+                    values[member] = null;
+                }
+            }
+            
+            values[lcv] = value;
+        }
+        
+        int size = 0;
+        for (int lcv = 0; lcv < fields.length; lcv++) {
+            Object value = values[lcv];
+            if (value == null) continue;
+            
+            size += computeSize(fields[lcv], value);
+        }
+        
+        return new EncodedMessage(plan, values, size);
+    }
+    
+    private static int computeSize(FieldPlan field, Object value) {
+        int number = field.number;
+        
+        switch (field.kind) {
+        case STRING:
+        case CHAR:
+            return CodedOutputStream.computeStringSize(number, (String) value);
+        case INT32:
+        case SHORT:
+            return CodedOutputStream.computeInt32Size(number, ((Integer) value).intValue());
+        case INT64:
+            return CodedOutputStream.computeInt64Size(number, ((Long) value).longValue());
+        case BOOL:
+            return CodedOutputStream.computeBoolSize(number, ((Boolean) value).booleanValue());
+        case DOUBLE:
+            return CodedOutputStream.computeDoubleSize(number, ((Double) value).doubleValue());
+        case FLOAT:
+            return CodedOutputStream.computeFloatSize(number, ((Float) value).floatValue());
+        case BYTE:
+            return CodedOutputStream.computeBytesSize(number, (ByteString) value);
+        case ENUM:
+            return CodedOutputStream.computeEnumSize(number, ((Integer) value).intValue());
+        case DIRECT:
+            return computeMessageSize(number, (EncodedMessage) value);
+        case LIST:
+        case ARRAY:
+            int retVal = 0;
+            for (EncodedMessage child : (EncodedMessage[]) value) {
+                retVal += computeMessageSize(number, child);
+            }
+            return retVal;
+        default:
+            throw new AssertionError("Unknown field kind " + field.kind);
+        }
+    }
+    
+    private static int computeMessageSize(int number, EncodedMessage message) {
+        return CodedOutputStream.computeTagSize(number) +
+                CodedOutputStream.computeUInt32SizeNoTag(message.size) +
+                message.size;
+    }
+    
+    private static Object convertForMarshal(FieldPlan field, Object value) {
+        if (value == null) {
+            if (field.kind == FieldKind.STRING) return "";
+            
+            return null;
+        }
+        
+        switch (field.kind) {
+        case SHORT:
+            return new Integer(((Short) value).intValue());
+        case CHAR:
+            return value.toString();
+        case BYTE:
+            return ByteString.copyFrom(new byte[] { ((Byte) value).byteValue() });
+        case ENUM:
+            Integer retVal = field.enumNumbers.get(value.toString());
+            if (retVal == null) {
+                throw new IllegalStateException("Unknown enum value " + value + " in enumeration " +
+                    field.enumConstants.getClass().getComponentType().getName());
+            }
+            return retVal;
+        default:
+            return value;
+        }
+    }
+    
+    private static FieldKind getKind(Descriptors.FieldDescriptor fd, ChildDescriptor childDescriptor) {
+        ChildDataModel dataModel = childDescriptor.getChildDataModel();
+        if (dataModel == null) {
+            switch (childDescriptor.getParentedModel().getChildType()) {
+            case DIRECT:
+                return FieldKind.DIRECT;
+            case LIST:
+                return FieldKind.LIST;
+            case ARRAY:
+                return FieldKind.ARRAY;
+            default:
+                throw new AssertionError("Unknown child type: " + childDescriptor.getParentedModel().getChildType());
+            }
+        }
+        
+        Class<?> childClass = dataModel.getChildTypeAsClass();
+        if (childClass.equals(short.class) || childClass.equals(Short.class)) {
+            return FieldKind.SHORT;
+        }
+        if (childClass.equals(char.class) || childClass.equals(Character.class)) {
+            return FieldKind.CHAR;
+        }
+        
+        switch (fd.getType()) {
+        case STRING:
+            return FieldKind.STRING;
+        case INT32:
+            return FieldKind.INT32;
+        case INT64:
+            return FieldKind.INT64;
+        case BOOL:
+            return FieldKind.BOOL;
+        case DOUBLE:
+            return FieldKind.DOUBLE;
+        case FLOAT:
+            return FieldKind.FLOAT;
+        case BYTES:
+            return FieldKind.BYTE;
+        case ENUM:
+            return FieldKind.ENUM;
+        default:
+            throw new AssertionError("Unknown protocol buffer type " + fd.getType() + " for " + childClass.getName());
+        }
+    }
+    
+    private static enum FieldKind {
+        STRING(WireFormat.WIRETYPE_LENGTH_DELIMITED),
+        INT32(WireFormat.WIRETYPE_VARINT),
+        INT64(WireFormat.WIRETYPE_VARINT),
+        BOOL(WireFormat.WIRETYPE_VARINT),
+        DOUBLE(WireFormat.WIRETYPE_FIXED64),
+        FLOAT(WireFormat.WIRETYPE_FIXED32),
+        BYTE(WireFormat.WIRETYPE_LENGTH_DELIMITED),
+        CHAR(WireFormat.WIRETYPE_LENGTH_DELIMITED),
+        SHORT(WireFormat.WIRETYPE_VARINT),
+        ENUM(WireFormat.WIRETYPE_VARINT),
+        DIRECT(WireFormat.WIRETYPE_LENGTH_DELIMITED),
+        LIST(WireFormat.WIRETYPE_LENGTH_DELIMITED),
+        ARRAY(WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        
+        private final int wireType;
+        
+        private FieldKind(int wireType) {
+            this.wireType = wireType;
+        }
+    }
+    
+    /**
+     * Everything needed to read or write one message type, with the
+     * fields indexed by (field number - 1)
+     */
+    private static class MessagePlan {
+        private final Class<?> beanClass;
+        private final FieldPlan fields[];
+        private final int oneOfMembers[][];
+        
+        private MessagePlan(ModelImpl model, Descriptors.Descriptor descriptor) throws IOException {
+            beanClass = model.getOriginalInterfaceAsClass();
+            
+            Map<QName, ChildDescriptor> allChildren = model.getAllChildrenDescriptors();
+            fields = new FieldPlan[allChildren.size()];
+            
+            int number = 1;
+            for (Map.Entry<QName, ChildDescriptor> entry : allChildren.entrySet()) {
+                QName qname = entry.getKey();
+                String protoPart = PBUtilities.camelCaseToUnderscore(qname.getLocalPart());
+                
+                Descriptors.FieldDescriptor fd = descriptor.findFieldByName(protoPart);
+                if ((fd == null) || (fd.getNumber() != number)) {
+                    throw new IOException("Unknown field " + protoPart + " in " + descriptor.getFullName());
+                }
+                
+                fields[number - 1] = new FieldPlan(qname, fd, entry.getValue());
+                number++;
+            }
+            
+            List<Descriptors.OneofDescriptor> oneOfs = descriptor.getOneofs();
+            oneOfMembers = new int[oneOfs.size()][];
+            for (int lcv = 0; lcv < oneOfMembers.length; lcv++) {
+                Descriptors.OneofDescriptor oneOf = oneOfs.get(lcv);
+                
+                int members[] = new int[oneOf.getFieldCount()];
+                for (int index = 0; index < members.length; index++) {
+                    members[index] = oneOf.getField(index).getNumber() - 1;
+                }
+                
+                oneOfMembers[lcv] = members;
+            }
+        }
+    }
+    
+    private static class FieldPlan {
+        private final QName qname;
+        private final String namespace;
+        private final String localPart;
+        private final Descriptors.FieldDescriptor descriptor;
+        private final int number;
+        private final FieldKind kind;
+        private final int wireType;
+        private final int oneOf;
+        private final Object enumConstants[];
+        private final Map<String, Integer> enumNumbers;
+        private final ModelImpl childModel;
+        private volatile MessagePlan childPlan;
+        
+        private FieldPlan(QName qname, Descriptors.FieldDescriptor descriptor, ChildDescriptor childDescriptor) {
+            this.qname = qname;
+            this.namespace = QNameUtilities.getNamespace(qname);
+            this.localPart = qname.getLocalPart();
+            this.descriptor = descriptor;
+            this.number = descriptor.getNumber();
+            this.kind = getKind(descriptor, childDescriptor);
+            this.wireType = kind.wireType;
+            
+            Descriptors.OneofDescriptor containingOneOf = descriptor.getContainingOneof();
+            this.oneOf = (containingOneOf == null) ? -1 : containingOneOf.getIndex();
+            
+            if (kind == FieldKind.ENUM) {
+                enumConstants = childDescriptor.getChildDataModel().getChildTypeAsClass().getEnumConstants();
+                
+                enumNumbers = new HashMap<String, Integer>();
+                for (EnumValueDescriptor evd : descriptor.getEnumType().getValues()) {
+                    enumNumbers.put(evd.getName(), evd.getNumber());
+                }
+            }
+            else {
+                enumConstants = null;
+                enumNumbers = null;
+            }
+            
+            ParentedModel parentedModel = childDescriptor.getParentedModel();
+            childModel = (parentedModel == null) ? null : parentedModel.getChildModel();
+        }
+    }
+    
+    /**
+     * A message that has not yet been turned into a bean
+     */
+    private static class Slice {
+        private final byte buffer[];
+        private final int offset;
+        private final int length;
+        
+        private Slice(byte buffer[], int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+        
+        private Slice concat(Slice other) {
+            byte combined[] = new byte[length + other.length];
+            System.arraycopy(buffer, offset, combined, 0, length);
+            System.arraycopy(other.buffer, other.offset, combined, length, other.length);
+            
+            return new Slice(combined, 0, combined.length);
+        }
+    }
+    
+    /**
+     * The values and size of one message gathered from a bean,
+     * ready to be written
+     */
+    static class EncodedMessage {
+        private final MessagePlan plan;
+        private final Object values[];
+        private final int size;
+        
+        private EncodedMessage(MessagePlan plan, Object values[], int size) {
+            this.plan = plan;
+            this.values = values;
+            this.size = size;
+        }
+        
+        int getSize() {
+            return size;
+        }
+    }
+}
@@ -527,6 +527,113 @@ public class PBufParserTest {
         Assert.assertEquals(ACME, uRoot.getCountry());
     }
     
+    /**
+     * Tests that the streaming codec and the DynamicMessage codec
+     * produce the same bytes, and can each read what the other wrote
+     * 
+     * @throws Exception
+     */
+    @Test
+    // @org.junit.Ignore
+    public void testStreamingMatchesDynamicMessage() throws Exception {
+        ServiceLocator locator = Utilities.enableLocator();
+        
+        XmlService xmlService = locator.getService(XmlService.class, PBufUtilities.PBUF_SERVICE_NAME);
+        Assert.assertNotNull(xmlService);
+        
+        XmlRootHandle<ServiceRecordBlockBean> handle = getStandardTestBlock(xmlService);
+        
+        byte[] streamingBytes = marshal(handle, getDynamicOptions(false));
+        byte[] dynamicBytes = marshal(handle, getDynamicOptions(true));
+        
+        Assert.assertArrayEquals(dynamicBytes, streamingBytes);
+        
+        validateStandardBean(unmarshal(xmlService, streamingBytes, ServiceRecordBlockBean.class, getDynamicOptions(true)), 0);
+        validateStandardBean(unmarshal(xmlService, dynamicBytes, ServiceRecordBlockBean.class, getDynamicOptions(false)), 0);
+        
+        XmlRootHandle<org.glassfish.hk2.pbuf.test.beans.FooBean> fooHandle = getFooRoot(xmlService);
+        
+        streamingBytes = marshal(fooHandle, getDynamicOptions(false));
+        dynamicBytes = marshal(fooHandle, getDynamicOptions(true));
+        
+        Assert.assertArrayEquals(dynamicBytes, streamingBytes);
+        
+        validateFooBean(unmarshal(xmlService, streamingBytes, org.glassfish.hk2.pbuf.test.beans.FooBean.class,
+                getDynamicOptions(true)));
+        validateFooBean(unmarshal(xmlService, dynamicBytes, org.glassfish.hk2.pbuf.test.beans.FooBean.class,
+                getDynamicOptions(false)));
+    }
+    
+    /**
+     * Tests that every native type and oneof is encoded the same
+     * by the streaming codec and the DynamicMessage codec
+     * 
+     * @throws Exception
+     */
+    @Test
+    // @org.junit.Ignore
+    public void testStreamingTypesAndOneOfMatchDynamicMessage() throws Exception {
+        ServiceLocator locator = Utilities.enableLocator();
+        
+        XmlService xmlService = locator.getService(XmlService.class, PBufUtilities.PBUF_SERVICE_NAME);
+        Assert.assertNotNull(xmlService);
+        
+        XmlRootHandle<TypeBean> typeHandle = xmlService.createEmptyHandle(TypeBean.class);
+        typeHandle.addRoot();
+        
+        TypeBean typeRoot = typeHandle.getRoot();
+        
+        typeRoot.setIType(-13);
+        typeRoot.setJType(Long.MAX_VALUE);
+        typeRoot.setZType(true);
+        typeRoot.setBType((byte) -15);
+        typeRoot.setCType('E');
+        typeRoot.setSType((short) -16);
+        typeRoot.setFType((float) 17.5);
+        typeRoot.setDType(-18.25);
+        typeRoot.setIsType(false);
+        
+        byte[] streamingBytes = marshal(typeHandle, getDynamicOptions(false));
+        Assert.assertArrayEquals(marshal(typeHandle, getDynamicOptions(true)), streamingBytes);
+        
+        TypeBean uTypeRoot = unmarshal(xmlService, streamingBytes, TypeBean.class, getDynamicOptions(false)).getRoot();
+        
+        Assert.assertEquals(-13, uTypeRoot.getIType());
+        Assert.assertEquals(Long.MAX_VALUE, uTypeRoot.getJType());
+        Assert.assertEquals(true, uTypeRoot.getZType());
+        Assert.assertEquals((byte) -15, uTypeRoot.getBType());
+        Assert.assertEquals('E', uTypeRoot.getCType());
+        Assert.assertEquals((short) -16, uTypeRoot.getSType());
+        Assert.assertTrue(new Float(17.5).equals(uTypeRoot.getFType()));
+        Assert.assertTrue(new Double(-18.25).equals(uTypeRoot.getDType()));
+        Assert.assertFalse(uTypeRoot.isIsType());
+        
+        XmlRootHandle<OneOfRootBean> oneOfHandle = xmlService.createEmptyHandle(OneOfRootBean.class);
+        oneOfHandle.addRoot();
+        
+        OneOfRootBean oneOfRoot = oneOfHandle.getRoot();
+        
+        oneOfRoot.setMiss(ALICE);
+        oneOfRoot.setCEO(13);
+        oneOfRoot.setBetween(BOB);
+        oneOfRoot.setCountry(ACME);
+        
+        streamingBytes = marshal(oneOfHandle, getDynamicOptions(false));
+        Assert.assertArrayEquals(marshal(oneOfHandle, getDynamicOptions(true)), streamingBytes);
+        
+        OneOfRootBean uOneOfRoot = unmarshal(xmlService, streamingBytes, OneOfRootBean.class, getDynamicOptions(false)).getRoot();
+        XmlHk2ConfigurationBean asConfigBean = (XmlHk2ConfigurationBean) uOneOfRoot;
+        
+        Assert.assertEquals(ALICE, uOneOfRoot.getMiss());
+        Assert.assertFalse(asConfigBean._isSet("mr"));
+        Assert.assertFalse(asConfigBean._isSet("mrs"));
+        Assert.assertEquals(13, uOneOfRoot.getCEO());
+        Assert.assertFalse(asConfigBean._isSet("CFO"));
+        Assert.assertFalse(asConfigBean._isSet("CTO"));
+        Assert.assertEquals(BOB, uOneOfRoot.getBetween());
+        Assert.assertEquals(ACME, uOneOfRoot.getCountry());
+    }
+    
     /**
      * Tests that the camel case utility does what we want
      */
@@ -793,6 +900,37 @@ public class PBufParserTest {
         return handle;
     }
     
+    private static Map<String, Object> getDynamicOptions(boolean useDynamicMessage) {
+        Map<String, Object> retVal = new HashMap<String, Object>();
+        
+        retVal.put(PBufUtilities.PBUF_OPTION_DYNAMIC_MESSAGE, new Boolean(useDynamicMessage));
+        
+        return retVal;
+    }
+    
+    private static byte[] marshal(XmlRootHandle<?> handle, Map<String, Object> options) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+          handle.marshal(baos, options);
+        }
+        finally {
+            baos.close();
+        }
+        
+        return baos.toByteArray();
+    }
+    
+    private static <T> XmlRootHandle<T> unmarshal(XmlService xmlService, byte[] bytes, Class<T> rootClass,
+            Map<String, Object> options) throws Exception {
+        ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
+        try {
+            return xmlService.unmarshal(bais, rootClass, false, false, options);
+        }
+        finally {
+            bais.close();
+        }
+    }
+    
     private static Map<String, Object> getOptions(boolean withSize) {
         Map<String, Object> retVal = new HashMap<String, Object>();
         
@@ -159,7 +159,11 @@ public class DynamicChangeInfo<T> {
         changeDepth++;
         
         if (participant != null) {
+            // Copies must not see this change
+            participant.__detachCopiesOfPath();
+            
             participants.add(participant);
+            participant.__markCopyTouched();
         }
         
         if (dynamicChange != null) return dynamicChange;
@@ -115,6 +115,9 @@ public class ModelImpl implements Model {
     private String valueProperty;
     private ChildDataModel valueData;
     
+    /** The slot layout of all properties, computed on first use */
+    private transient volatile PropertySlots propertySlots;
+    
     public ModelImpl() {
     }
     
@@ -251,6 +254,26 @@ public class ModelImpl implements Model {
         return rootName;
     }
 
+    /**
+     * Gets the slot layout of the properties of this model.  The
+     * layout is computed the first time it is asked for, so this must
+     * not be called until all children have been added
+     * 
+     * @return The non-null slot layout for all properties of this model
+     */
+    public PropertySlots getPropertySlots() {
+        PropertySlots retVal = propertySlots;
+        if (retVal != null) return retVal;
+        
+        synchronized (lock) {
+            if (propertySlots == null) {
+                propertySlots = new PropertySlots(allChildren, nonChildProperty, childrenByName);
+            }
+            
+            return propertySlots;
+        }
+    }
+    
     /**
      * @return the keyProperty
      */
@@ -40,7 +40,9 @@
 package org.glassfish.hk2.xml.internal;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.namespace.QName;
@@ -49,24 +51,68 @@ import org.glassfish.hk2.xml.api.XmlService;
 import org.glassfish.hk2.xml.jaxb.internal.NamespaceBeanLikeMap;
 
 /**
+ * Properties that are part of the model are kept in slots given
+ * by the {@link PropertySlots} of the model, with primitive values
+ * kept unboxed.  Any other property is kept in a map keyed by namespace
+ * 
  * @author jwells
  *
  */
 public class NamespaceBeanLikeMapImpl implements NamespaceBeanLikeMap, Serializable {
     private static final long serialVersionUID = 7351909351649012181L;
-
-    private Map<String, Map<String, Object>> namespaceMap =
-            new LinkedHashMap<String, Map<String, Object>>();
     
+    /**
+     * Markers for slots that are set but do not hold their value
+     * directly.  An enum so that they survive serialization
+     */
+    private static enum Marker {
+        /** The slot was explicitly set to null */
+        NULL,
+        /** The value of the slot is in the primitive values */
+        PRIMITIVE
+    }
+    
+    /** The layout of the slots, or null if everything is in the map */
+    private final PropertySlots slots;
+    
+    /** A null entry means the slot is not set */
+    private Object values[];
+    
+    /** The unboxed values of the slots with primitive types */
+    private long primitives[];
+    
+    /** All properties that have no slot, created when first needed */
+    private Map<String, Map<String, Object>> namespaceMap;
+    
+    private boolean backedUp;
+    private Object backupValues[];
+    private long backupPrimitives[];
     private Map<String, Map<String, Object>> backupMap;
     
     public NamespaceBeanLikeMapImpl() {
-        namespaceMap.put(XmlService.DEFAULT_NAMESPACE, new LinkedHashMap<String, Object>());
+        this(null);
+    }
+    
+    /**
+     * Creates a map that keeps the properties of the
+     * given layout in slots
+     * 
+     * @param slots The layout of the model, or null if all
+     * properties should be kept in maps
+     */
+    public NamespaceBeanLikeMapImpl(PropertySlots slots) {
+        this.slots = slots;
+        
+        if (slots != null) {
+            values = new Object[slots.size()];
+            primitives = (slots.getNumPrimitives() > 0) ? new long[slots.getNumPrimitives()] : null;
+        }
     }
     
     private static Map<String, Map<String, Object>> deepCopyNamespaceBeanLikeMaps(Map<String, Map<String, Object>> copyMe) {
+        if (copyMe == null) return null;
+        
         Map<String, Map<String, Object>> retVal = new LinkedHashMap<String, Map<String, Object>>();
-        if (copyMe == null) return retVal;
         
         for (Map.Entry<String, Map<String,Object>> entry : copyMe.entrySet()) {
             String namespace = entry.getKey();
@@ -77,12 +123,49 @@ public class NamespaceBeanLikeMapImpl implements NamespaceBeanLikeMap, Serializa
         
         return retVal;
     }
+    
+    private int getSlot(String namespace, String key) {
+        if (slots == null) return -1;
+        
+        return slots.getSlot(namespace, key);
+    }
+    
+    private Object getSlotValue(int slot) {
+        Object retVal = values[slot];
+        if (retVal == null || retVal == Marker.NULL) return null;
+        if (retVal == Marker.PRIMITIVE) {
+            return PropertySlots.fromBits(primitives[slots.getPrimitiveIndex(slot)], slots.getPrimitiveType(slot));
+        }
+        
+        return retVal;
+    }
+    
+    private void setSlotValue(int slot, Object value) {
+        if (value == null) {
+            values[slot] = Marker.NULL;
+            return;
+        }
+        
+        Class<?> primitiveType = slots.getPrimitiveType(slot);
+        if (primitiveType != null && PropertySlots.isBoxOf(value, primitiveType)) {
+            primitives[slots.getPrimitiveIndex(slot)] = PropertySlots.toBits(value, primitiveType);
+            values[slot] = Marker.PRIMITIVE;
+            return;
+        }
+        
+        values[slot] = value;
+    }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.xml.jaxb.internal.NamespaceBeanLikeMap#getValue(java.lang.String, java.lang.String)
      */
     @Override
     public Object getValue(String namespace, String key) {
+        int slot = getSlot(namespace, key);
+        if (slot >= 0) return getSlotValue(slot);
+        
+        if (namespaceMap == null) return null;
+        
         namespace = QNameUtilities.fixNamespace(namespace);
         
         Map<String, Object> nMap = namespaceMap.get(namespace);
@@ -96,8 +179,18 @@ public class NamespaceBeanLikeMapImpl implements NamespaceBeanLikeMap, Serializa
      */
     @Override
     public void setValue(String namespace, String key, Object value) {
+        int slot = getSlot(namespace, key);
+        if (slot >= 0) {
+            setSlotValue(slot, value);
+            return;
+        }
+        
         namespace = QNameUtilities.fixNamespace(namespace);
         
+        if (namespaceMap == null) {
+            namespaceMap = new LinkedHashMap<String, Map<String, Object>>();
+        }
+        
         Map<String, Object> narrowedMap = namespaceMap.get(namespace);
         if (narrowedMap == null) {
             narrowedMap = new LinkedHashMap<String, Object>();
@@ -112,6 +205,11 @@ public class NamespaceBeanLikeMapImpl implements NamespaceBeanLikeMap, Serializa
      */
     @Override
     public boolean isSet(String namespace, String key) {
+        int slot = getSlot(namespace, key);
+        if (slot >= 0) return (values[slot] != null);
+        
+        if (namespaceMap == null) return false;
+        
         namespace = QNameUtilities.fixNamespace(namespace);
         
         Map<String, Object> narrowedMap = namespaceMap.get(namespace);
@@ -119,14 +217,55 @@ public class NamespaceBeanLikeMapImpl implements NamespaceBeanLikeMap, Serializa
         
         return narrowedMap.containsKey(key);
     }
+    
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.xml.jaxb.internal.NamespaceBeanLikeMap#getPrimitiveSlot(java.lang.String, java.lang.String, java.lang.Class)
+     */
+    @Override
+    public int getPrimitiveSlot(String namespace, String key, Class<?> primitiveType) {
+        int slot = getSlot(namespace, key);
+        if (slot < 0) return -1;
+        
+        if (!primitiveType.equals(slots.getPrimitiveType(slot))) return -1;
+        
+        return slot;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.xml.jaxb.internal.NamespaceBeanLikeMap#hasPrimitive(int)
+     */
+    @Override
+    public boolean hasPrimitive(int slot) {
+        return (values[slot] == Marker.PRIMITIVE);
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.xml.jaxb.internal.NamespaceBeanLikeMap#getPrimitive(int)
+     */
+    @Override
+    public long getPrimitive(int slot) {
+        return primitives[slots.getPrimitiveIndex(slot)];
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.xml.jaxb.internal.NamespaceBeanLikeMap#setPrimitive(int, long)
+     */
+    @Override
+    public void setPrimitive(int slot, long bits) {
+        primitives[slots.getPrimitiveIndex(slot)] = bits;
+        values[slot] = Marker.PRIMITIVE;
+    }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.xml.jaxb.internal.NamespaceBeanLikeMap#backup()
      */
     @Override
     public void backup() {
-        if (backupMap != null) return;
+        if (backedUp) return;
         
+        backedUp = true;
+        backupValues = (values == null) ? null : values.clone();
+        backupPrimitives = (primitives == null) ? null : primitives.clone();
         backupMap = deepCopyNamespaceBeanLikeMaps(namespaceMap);
     }
 
@@ -136,7 +275,7 @@ public class NamespaceBeanLikeMapImpl implements NamespaceBeanLikeMap, Serializa
     @Override
     public void restoreBackup(boolean drop) {
         try {
-            if (backupMap == null) {
+            if (!backedUp) {
                 return;
             }
             
@@ -144,9 +283,14 @@ public class NamespaceBeanLikeMapImpl implements NamespaceBeanLikeMap, Serializa
                 return;
             }
             
+            values = backupValues;
+            primitives = backupPrimitives;
             namespaceMap = backupMap;
         }
         finally {
+            backedUp = false;
+            backupValues = null;
+            backupPrimitives = null;
             backupMap = null;
         }
     }
@@ -156,35 +300,28 @@ public class NamespaceBeanLikeMapImpl implements NamespaceBeanLikeMap, Serializa
      */
     @Override
     public Map<String, Object> getBeanLikeMap(
-            Map<String, String> namespaceToPrefixMap) {
-        LinkedHashMap<String, Object> retVal = new LinkedHashMap<String, Object>();
+            final Map<String, String> namespaceToPrefixMap) {
+        final LinkedHashMap<String, Object> retVal = new LinkedHashMap<String, Object>();
         
-        for (Map.Entry<String, Map<String, Object>> outerEntry : namespaceMap.entrySet()) {
-            String namespace = outerEntry.getKey();
-            Map<String, Object> blm = outerEntry.getValue();
-            
-            boolean addNamespace = !XmlService.DEFAULT_NAMESPACE.equals(namespace);
-            String prefix = addNamespace ? namespaceToPrefixMap.get(namespace) : null ;
-            
-            if (addNamespace && prefix == null) {
-                // could not find the namespace prefix to use
-                continue;
-            }
+        visitProperties(new PropertyVisitor() {
             
-            for (Map.Entry<String, Object> innerEntry : blm.entrySet()) {
-                String key;
-                Object value = innerEntry.getValue();
-            
-                if (addNamespace) {
-                    key = prefix + ":" + innerEntry.getKey();
+            @Override
+            public void visit(String namespace, String name, Object value) {
+                if (XmlService.DEFAULT_NAMESPACE.equals(namespace)) {
+                    retVal.put(name, value);
+                    return;
                 }
-                else {
-                    key = innerEntry.getKey();
+                
+                String prefix = namespaceToPrefixMap.get(namespace);
+                if (prefix == null) {
+                    // could not find the namespace prefix to use
+                    return;
                 }
                 
-                retVal.put(key, value);
+                retVal.put(prefix + ":" + name, value);
             }
-        }
+            
+        });
         
         return retVal;
     }
@@ -194,7 +331,38 @@ public class NamespaceBeanLikeMapImpl implements NamespaceBeanLikeMap, Serializa
      */
     @Override
     public void shallowCopy(NamespaceBeanLikeMap copyFrom, ModelImpl copyModel, boolean copyReferences) {
-        for (Map.Entry<String, Map<String, Object>> outerEntry : copyFrom.getNamespaceBeanLikeMap().entrySet()) {
+        Map<String, Map<String, Object>> copyMap;
+        if ((slots != null) && (copyFrom instanceof NamespaceBeanLikeMapImpl) &&
+                (slots == ((NamespaceBeanLikeMapImpl) copyFrom).slots)) {
+            // Same layout, so the slots can be copied directly
+            NamespaceBeanLikeMapImpl other = (NamespaceBeanLikeMapImpl) copyFrom;
+            
+            for (int slot = 0; slot < values.length; slot++) {
+                Object value = other.values[slot];
+                if (value == null) continue;
+                
+                if (slots.getParentedModel(slot) != null) continue;
+                
+                ChildDataModel cdm = slots.getChildDataModel(slot);
+                if (!copyReferences && cdm != null && cdm.isReference()) {
+                    continue;
+                }
+                
+                values[slot] = value;
+                if (value == Marker.PRIMITIVE) {
+                    int primitiveIndex = slots.getPrimitiveIndex(slot);
+                    primitives[primitiveIndex] = other.primitives[primitiveIndex];
+                }
+            }
+            
+            copyMap = other.namespaceMap;
+            if (copyMap == null) return;
+        }
+        else {
+            copyMap = copyFrom.getNamespaceBeanLikeMap();
+        }
+        
+        for (Map.Entry<String, Map<String, Object>> outerEntry : copyMap.entrySet()) {
             String copyNamespace = outerEntry.getKey();
             Map<String, Object> copyBeanLikeMap = outerEntry.getValue();
             
@@ -222,7 +390,25 @@ public class NamespaceBeanLikeMapImpl implements NamespaceBeanLikeMap, Serializa
      */
     @Override
     public Map<String, Map<String, Object>> getNamespaceBeanLikeMap() {
-        return namespaceMap;
+        final Map<String, Map<String, Object>> retVal = new LinkedHashMap<String, Map<String, Object>>();
+        retVal.put(XmlService.DEFAULT_NAMESPACE, new LinkedHashMap<String, Object>());
+        
+        visitProperties(new PropertyVisitor() {
+            
+            @Override
+            public void visit(String namespace, String name, Object value) {
+                Map<String, Object> narrowedMap = retVal.get(namespace);
+                if (narrowedMap == null) {
+                    narrowedMap = new LinkedHashMap<String, Object>();
+                    retVal.put(namespace, narrowedMap);
+                }
+                
+                narrowedMap.put(name, value);
+            }
+            
+        });
+        
+        return retVal;
     }
     
     /* (non-Javadoc)
@@ -230,32 +416,74 @@ public class NamespaceBeanLikeMapImpl implements NamespaceBeanLikeMap, Serializa
      */
     @Override
     public Map<QName, Object> getQNameMap() {
-        Map<QName, Object> retVal = new LinkedHashMap<QName, Object>();
+        final Map<QName, Object> retVal = new LinkedHashMap<QName, Object>();
         
-        for (Map.Entry<String, Map<String, Object>> outerEntry : namespaceMap.entrySet()) {
-            String namespace = outerEntry.getKey();
-            Map<String, Object> innerMap = outerEntry.getValue();
+        visitProperties(new PropertyVisitor() {
             
-            for (Map.Entry<String, Object> innerEntry : innerMap.entrySet()) {
-                QName key = QNameUtilities.createQName(namespace, innerEntry.getKey());
-                Object value = innerEntry.getValue();
-                
-                retVal.put(key, value);
+            @Override
+            public void visit(String namespace, String name, Object value) {
+                retVal.put(QNameUtilities.createQName(namespace, name), value);
             }
             
-        }
+        });
         
         return retVal;
     }
     
+    /**
+     * Gives every set property to the visitor once, grouped by namespace
+     * with the default namespace first and the others in the order they
+     * are first found.  Within a namespace the slots come first and then
+     * the properties that have no slot
+     * 
+     * @param visitor The visitor to give the properties to
+     */
+    private void visitProperties(PropertyVisitor visitor) {
+        List<String> namespaces = new ArrayList<String>(2);
+        namespaces.add(XmlService.DEFAULT_NAMESPACE);
+        
+        if (slots != null) {
+            for (int slot = 0; slot < values.length; slot++) {
+                if (values[slot] == null) continue;
+                
+                String namespace = slots.getNamespace(slot);
+                if (!namespaces.contains(namespace)) namespaces.add(namespace);
+            }
+        }
+        
+        if (namespaceMap != null) {
+            for (String namespace : namespaceMap.keySet()) {
+                if (!namespaces.contains(namespace)) namespaces.add(namespace);
+            }
+        }
+        
+        for (String namespace : namespaces) {
+            if (slots != null) {
+                for (int slot = 0; slot < values.length; slot++) {
+                    if (values[slot] == null) continue;
+                    if (!namespace.equals(slots.getNamespace(slot))) continue;
+                    
+                    visitor.visit(namespace, slots.getName(slot), getSlotValue(slot));
+                }
+            }
+            
+            if (namespaceMap == null) continue;
+            
+            Map<String, Object> blm = namespaceMap.get(namespace);
+            if (blm == null) continue;
+            
+            for (Map.Entry<String, Object> entry : blm.entrySet()) {
+                visitor.visit(namespace, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+    
+    private interface PropertyVisitor {
+        void visit(String namespace, String name, Object value);
+    }
+    
     @Override
     public String toString() {
         return "NamespaceBeanLikeMapImpl(" + System.identityHashCode(this) + ")";
     }
-
-
-
-    
-
-    
 }
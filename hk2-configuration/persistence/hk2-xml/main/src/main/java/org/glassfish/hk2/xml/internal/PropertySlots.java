@@ -0,0 +1,305 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.xml.internal;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+/**
+ * The fixed layout of the properties of one model.  Every property
+ * known to the model gets an index (slot) so that beans can keep their
+ * values in arrays rather than in maps, and every property with a
+ * primitive type also gets an index into an array of unboxed values.
+ * This object is immutable and is shared by all beans of the model
+ * 
+ * @author jwells
+ *
+ */
+public final class PropertySlots implements Serializable {
+    private static final long serialVersionUID = -3390946563294097536L;
+    
+    private final String namespaces[];
+    private final String names[];
+    private final ChildDataModel dataModels[];
+    private final ParentedModel parentedModels[];
+    private final Class<?> primitiveTypes[];
+    private final int primitiveIndexes[];
+    private final int numPrimitives;
+    
+    /** Slots by local name only, when the local name is in one namespace */
+    private final HashMap<String, Integer> byName = new HashMap<String, Integer>();
+    
+    /** Slots of local names that are used in more than one namespace */
+    private final HashMap<QName, Integer> byQName = new HashMap<QName, Integer>();
+    
+    PropertySlots(Map<QName, ChildDescriptor> allChildren,
+            Map<QName, ChildDataModel> nonChildProperties,
+            Map<QName, ParentedModel> childrenByName) {
+        int size = allChildren.size();
+        
+        namespaces = new String[size];
+        names = new String[size];
+        dataModels = new ChildDataModel[size];
+        parentedModels = new ParentedModel[size];
+        primitiveTypes = new Class<?>[size];
+        primitiveIndexes = new int[size];
+        
+        HashSet<String> sharedNames = new HashSet<String>();
+        int slot = 0;
+        int primitives = 0;
+        for (QName qName : allChildren.keySet()) {
+            String namespace = QNameUtilities.getNamespace(qName);
+            String name = qName.getLocalPart();
+            
+            namespaces[slot] = namespace;
+            names[slot] = name;
+            
+            // Same precedence as ModelImpl.getModelPropertyType
+            ChildDataModel cdm = nonChildProperties.get(qName);
+            if (cdm != null) {
+                dataModels[slot] = cdm;
+                primitiveTypes[slot] = getPrimitiveType(cdm.getChildType());
+            }
+            else {
+                parentedModels[slot] = childrenByName.get(qName);
+            }
+            
+            primitiveIndexes[slot] = (primitiveTypes[slot] == null) ? -1 : primitives++;
+            
+            if (sharedNames.contains(name)) {
+                byQName.put(QNameUtilities.createQName(namespace, name), slot);
+            }
+            else {
+                Integer existing = byName.put(name, slot);
+                if (existing != null) {
+                    byName.remove(name);
+                    sharedNames.add(name);
+                    
+                    byQName.put(QNameUtilities.createQName(namespaces[existing], name), existing);
+                    byQName.put(QNameUtilities.createQName(namespace, name), slot);
+                }
+            }
+            
+            slot++;
+        }
+        
+        numPrimitives = primitives;
+    }
+    
+    private static Class<?> getPrimitiveType(String childType) {
+        if ("int".equals(childType)) return int.class;
+        if ("long".equals(childType)) return long.class;
+        if ("boolean".equals(childType)) return boolean.class;
+        if ("double".equals(childType)) return double.class;
+        if ("float".equals(childType)) return float.class;
+        if ("short".equals(childType)) return short.class;
+        if ("byte".equals(childType)) return byte.class;
+        if ("char".equals(childType)) return char.class;
+        
+        return null;
+    }
+    
+    /**
+     * Gets the slot of the given property
+     * 
+     * @param namespace The namespace of the property, where null or
+     * empty means the default namespace
+     * @param name The non-null local name of the property
+     * @return The slot of the property, or -1 if the property
+     * is not part of the model
+     */
+    public int getSlot(String namespace, String name) {
+        Integer slot = byName.get(name);
+        if (slot != null) {
+            int retVal = slot.intValue();
+            String slotNamespace = namespaces[retVal];
+            
+            if (slotNamespace.equals(namespace) ||
+                    slotNamespace.equals(QNameUtilities.fixNamespace(namespace))) {
+                return retVal;
+            }
+            
+            return -1;
+        }
+        
+        if (byQName.isEmpty()) return -1;
+        
+        slot = byQName.get(QNameUtilities.createQName(QNameUtilities.fixNamespace(namespace), name));
+        if (slot == null) return -1;
+        
+        return slot.intValue();
+    }
+    
+    /**
+     * @return The number of slots
+     */
+    public int size() {
+        return names.length;
+    }
+    
+    /**
+     * @return The number of slots with a primitive type
+     */
+    public int getNumPrimitives() {
+        return numPrimitives;
+    }
+    
+    /**
+     * @param slot A valid slot
+     * @return The namespace of the property in the slot
+     */
+    public String getNamespace(int slot) {
+        return namespaces[slot];
+    }
+    
+    /**
+     * @param slot A valid slot
+     * @return The local name of the property in the slot
+     */
+    public String getName(int slot) {
+        return names[slot];
+    }
+    
+    /**
+     * @param slot A valid slot
+     * @return The data model of the slot, or null if the slot holds children
+     */
+    public ChildDataModel getChildDataModel(int slot) {
+        return dataModels[slot];
+    }
+    
+    /**
+     * @param slot A valid slot
+     * @return The child model of the slot, or null if the slot holds data
+     */
+    public ParentedModel getParentedModel(int slot) {
+        return parentedModels[slot];
+    }
+    
+    /**
+     * @param slot A valid slot
+     * @return The primitive type of the slot or null if the
+     * slot does not have a primitive type
+     */
+    public Class<?> getPrimitiveType(int slot) {
+        return primitiveTypes[slot];
+    }
+    
+    /**
+     * @param slot A valid slot
+     * @return The index of the slot in the primitive values or -1
+     * if the slot does not have a primitive type
+     */
+    public int getPrimitiveIndex(int slot) {
+        return primitiveIndexes[slot];
+    }
+    
+    /**
+     * Converts a boxed value of the given primitive type to its raw bits
+     * 
+     * @param value The boxed value, which must be of the boxed type of primitiveType
+     * @param primitiveType The primitive type
+     * @return The raw bits of the value
+     */
+    public static long toBits(Object value, Class<?> primitiveType) {
+        if (int.class.equals(primitiveType)) return ((Integer) value).intValue();
+        if (long.class.equals(primitiveType)) return ((Long) value).longValue();
+        if (boolean.class.equals(primitiveType)) return ((Boolean) value).booleanValue() ? 1L : 0L;
+        if (double.class.equals(primitiveType)) return Double.doubleToRawLongBits(((Double) value).doubleValue());
+        if (float.class.equals(primitiveType)) return Float.floatToRawIntBits(((Float) value).floatValue());
+        if (short.class.equals(primitiveType)) return ((Short) value).shortValue();
+        if (byte.class.equals(primitiveType)) return ((Byte) value).byteValue();
+        if (char.class.equals(primitiveType)) return ((Character) value).charValue();
+        
+        throw new AssertionError("Unknown primitive type " + primitiveType);
+    }
+    
+    /**
+     * Converts raw bits back to a boxed value of the given primitive type
+     * 
+     * @param bits The raw bits as returned from {@link #toBits(Object, Class)}
+     * @param primitiveType The primitive type
+     * @return The boxed value
+     */
+    public static Object fromBits(long bits, Class<?> primitiveType) {
+        if (int.class.equals(primitiveType)) return (int) bits;
+        if (long.class.equals(primitiveType)) return bits;
+        if (boolean.class.equals(primitiveType)) return (bits != 0L);
+        if (double.class.equals(primitiveType)) return Double.longBitsToDouble(bits);
+        if (float.class.equals(primitiveType)) return Float.intBitsToFloat((int) bits);
+        if (short.class.equals(primitiveType)) return (short) bits;
+        if (byte.class.equals(primitiveType)) return (byte) bits;
+        if (char.class.equals(primitiveType)) return (char) bits;
+        
+        throw new AssertionError("Unknown primitive type " + primitiveType);
+    }
+    
+    /**
+     * Tells if the value is exactly the boxed type of the primitive type
+     * 
+     * @param value The value, which may be null
+     * @param primitiveType The primitive type
+     * @return true if {@link #toBits(Object, Class)} can be called with the value
+     */
+    public static boolean isBoxOf(Object value, Class<?> primitiveType) {
+        if (value == null) return false;
+        
+        Class<?> valueClass = value.getClass();
+        if (int.class.equals(primitiveType)) return Integer.class.equals(valueClass);
+        if (long.class.equals(primitiveType)) return Long.class.equals(valueClass);
+        if (boolean.class.equals(primitiveType)) return Boolean.class.equals(valueClass);
+        if (double.class.equals(primitiveType)) return Double.class.equals(valueClass);
+        if (float.class.equals(primitiveType)) return Float.class.equals(valueClass);
+        if (short.class.equals(primitiveType)) return Short.class.equals(valueClass);
+        if (byte.class.equals(primitiveType)) return Byte.class.equals(valueClass);
+        if (char.class.equals(primitiveType)) return Character.class.equals(valueClass);
+        
+        return false;
+    }
+    
+    @Override
+    public String toString() {
+        return "PropertySlots(" + names.length + "," + numPrimitives + "," + System.identityHashCode(this) + ")";
+    }
+}
@@ -85,6 +85,7 @@ public class UnkeyedDiff {
     private HashSet<Integer> unusedLegacy;
     private HashMap<Integer, Differences> proposedAdds;
     private HashMap<Integer, SchrodingerSolution> quantumSolutions;
+    private HashMap<Long, List<Integer>> legacyByContent;
     
     public UnkeyedDiff(List<BaseHK2JAXBBean> legacy, List<BaseHK2JAXBBean> proposed, BaseHK2JAXBBean parent, ParentedModel parentModel) {
         if (legacy == null) legacy = Collections.emptyList();
@@ -196,9 +197,16 @@ public class UnkeyedDiff {
                 continue;
             }
             
-            int currentBestDiffIndex = -1;
+            int currentBestDiffIndex = findUnusedLegacyWithSameContent(proposedIndex);
             Differences currentBestDiffs = null;
-            for (int legacyIndex = 0; legacyIndex < legacyList.size(); legacyIndex++) {
+            boolean sameContent = (currentBestDiffIndex >= 0);
+            if (sameContent) {
+                // No need to diff against every unused legacy bean
+                currentBestDiffs = table.getDiff(currentBestDiffIndex, proposedIndex);
+                needsChangeOfList = true;
+            }
+            
+            for (int legacyIndex = 0; !sameContent && legacyIndex < legacyList.size(); legacyIndex++) {
                 if (usedLegacy.contains(legacyIndex)) {
                     if (UNKEYED_DEBUG) {
                         Logger.getLogger().debug("Skipping legacyIndex " + legacyIndex + " for proposedIndex " +
@@ -331,6 +339,38 @@ public class UnkeyedDiff {
         
         proposedAdds = new HashMap<Integer, Differences>();
         quantumSolutions = new HashMap<Integer, SchrodingerSolution>();
+        
+        legacyByContent = new HashMap<Long, List<Integer>>();
+        for (int lcv = 0; lcv < legacyList.size(); lcv++) {
+            Long contentHash = legacyList.get(lcv).__getContentHash();
+            
+            List<Integer> sameContent = legacyByContent.get(contentHash);
+            if (sameContent == null) {
+                sameContent = new ArrayList<Integer>(1);
+                legacyByContent.put(contentHash, sameContent);
+            }
+            
+            sameContent.add(lcv);
+        }
+    }
+    
+    /**
+     * Finds the lowest unused legacy index whose bean has the
+     * same content as the given proposed bean
+     * 
+     * @param proposedIndex The index of the proposed bean
+     * @return The legacy index, or -1 if there is no unused legacy
+     * bean with the same content
+     */
+    private int findUnusedLegacyWithSameContent(int proposedIndex) {
+        List<Integer> sameContent = legacyByContent.get(proposedList.get(proposedIndex).__getContentHash());
+        if (sameContent == null) return -1;
+        
+        for (Integer legacyIndex : sameContent) {
+            if (!usedLegacy.contains(legacyIndex)) return legacyIndex;
+        }
+        
+        return -1;
     }
     
     private void addSolution(int legacyIndex, int proposedIndex, Differences minimum) {
@@ -1434,6 +1434,20 @@ public class Utilities {
         
         getAllDifferences(source, other, retVal);
         
+        // Beans that will be added to the source tree must no longer share
+        // anything with the source tree, since the source tree is about to change
+        for (Difference difference : retVal.getDifferences()) {
+            for (AddRemoveMoveDifference childChange : difference.getChildChanges().values()) {
+                for (AddData add : childChange.getAdds()) {
+                    add.getToAdd().__detachCopy();
+                }
+                
+                for (AddRemoveData replace : childChange.getDirectReplaces()) {
+                    replace.getAdd().getToAdd().__detachCopy();
+                }
+            }
+        }
+        
         return retVal;
     }
     
@@ -1480,6 +1494,16 @@ public class Utilities {
     private static void getAllDifferences(BaseHK2JAXBBean source,
             BaseHK2JAXBBean other,
             Differences differences) {
+        if (other.__isUntouchedCopyOf(source)) {
+            // Nothing in or under other has changed since it was copied from source
+            return;
+        }
+        
+        if (source.__getContentHash() == other.__getContentHash()) {
+            // Same content in and under both, nothing to find
+            return;
+        }
+        
         Difference localDifference = new Difference(source);
         
         ModelImpl sourceModel = source._getModel();
@@ -2506,6 +2530,35 @@ public class Utilities {
         return copy;
     }
     
+    /**
+     * Creates a copy of the given bean that only copies its children and
+     * references when they are first needed.  Until then the copy shares them
+     * with copyMe, which is why copyMe detaches its lazy copies before it or
+     * any of its descendants is changed.  Read lock of copyMe must be held
+     * 
+     * @param copyMe The non-null bean to copy
+     * @param copyController The change control of the copied tree
+     * @param theCopiedParent The parent of the copy, or null if this is the copy of the root
+     * @param rootHandle The root handle the copy is associated with
+     * @return A lazy copy of copyMe
+     */
+    public static <T> BaseHK2JAXBBean createLazyCopy(BaseHK2JAXBBean copyMe,
+            DynamicChangeInfo<T> copyController,
+            BaseHK2JAXBBean theCopiedParent,
+            XmlRootHandleImpl<?> rootHandle) {
+        BaseHK2JAXBBean retVal = Utilities.createBean(copyMe.getClass());
+        retVal._shallowCopyFrom(copyMe, false);
+        retVal.__setCopySource(copyMe);
+        
+        if (theCopiedParent != null) {
+            retVal._setParent(theCopiedParent);
+        }
+        
+        retVal._setDynamicChangeInfo(rootHandle, copyController, false);
+        
+        return retVal;
+    }
+    
     public static <T> BaseHK2JAXBBean doCopy(BaseHK2JAXBBean copyMe,
             DynamicChangeInfo<T> copyController,
             BaseHK2JAXBBean theCopiedParent,
@@ -44,7 +44,6 @@ import java.beans.VetoableChangeListener;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -220,21 +219,7 @@ public class XmlRootHandleImpl<T> implements XmlRootHandle<T> {
                 return new XmlRootCopyImpl<T>(this, changeControl.getChangeNumber(), null);
             }
         
-            BaseHK2JAXBBean copy;
-            try {
-                Map<ReferenceKey, BaseHK2JAXBBean> referenceMap = new HashMap<ReferenceKey, BaseHK2JAXBBean>();
-                List<UnresolvedReference> unresolved = new LinkedList<UnresolvedReference>();
-                
-                copy = Utilities.doCopy(bean, copyController, null, this, referenceMap, unresolved);
-                
-                Utilities.fillInUnfinishedReferences(referenceMap, unresolved);
-            }
-            catch (RuntimeException re) {
-                throw re;
-            }
-            catch (Throwable th) {
-                throw new RuntimeException(th);
-            }
+            BaseHK2JAXBBean copy = Utilities.createLazyCopy(bean, copyController, null, this);
         
             return new XmlRootCopyImpl<T>(this, changeControl.getChangeNumber(), (T) copy);
         }
@@ -41,6 +41,8 @@
 package org.glassfish.hk2.xml.jaxb.internal;
 
 import java.beans.PropertyChangeEvent;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
@@ -55,7 +57,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.bind.annotation.XmlTransient;
 import javax.xml.namespace.QName;
@@ -73,12 +77,14 @@ import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
 import org.glassfish.hk2.xml.api.XmlHk2ConfigurationBean;
 import org.glassfish.hk2.xml.api.XmlRootHandle;
 import org.glassfish.hk2.xml.api.XmlService;
+import org.glassfish.hk2.xml.internal.ChildDataModel;
 import org.glassfish.hk2.xml.internal.ChildType;
 import org.glassfish.hk2.xml.internal.DynamicChangeInfo;
 import org.glassfish.hk2.xml.internal.ModelImpl;
 import org.glassfish.hk2.xml.internal.ModelPropertyType;
 import org.glassfish.hk2.xml.internal.NamespaceBeanLikeMapImpl;
 import org.glassfish.hk2.xml.internal.ParentedModel;
+import org.glassfish.hk2.xml.internal.PropertySlots;
 import org.glassfish.hk2.xml.internal.QNameUtilities;
 import org.glassfish.hk2.xml.internal.Utilities;
 import org.glassfish.hk2.xml.internal.XmlDynamicChange;
@@ -104,11 +110,17 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
     private final static String EMPTY = "";
     public final static char XML_PATH_SEPARATOR = '/';
     
+    /** The content hash of a null value */
+    private final static long NULL_CONTENT_HASH = 0x6A09E667F3BCC908L;
+    
+    /** Values that can not be hashed by content are given unique hashes */
+    private final static AtomicLong UNIQUE_CONTENT_HASH = new AtomicLong();
+    
     /**
-     * All fields, including child lists and direct children for beans
-     * with no namespace specified (##default)
+     * All fields, including child lists and direct children, kept
+     * in the slots of the model of this bean
      */
-    private final NamespaceBeanLikeMap nBeanLikeMap = new NamespaceBeanLikeMapImpl();
+    private final NamespaceBeanLikeMap nBeanLikeMap = createBeanLikeMap();
     
     /**
      * All children whose type has an identifier.  First key is the xml parameter name, second
@@ -178,6 +190,48 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
      */
     private transient int addCost = -1;
     
+    /**
+     * If this bean is a lazy copy this is the bean it was copied
+     * from.  The children and references of a lazy copy are only
+     * copied from the source when they are first needed, which
+     * is always before the source can be changed
+     */
+    private volatile transient BaseHK2JAXBBean copySource;
+    
+    /**
+     * The lazy copies of this bean that may still share children or
+     * references with this bean, or that may still be taken to have
+     * the same contents as this bean.  Null until this bean is first
+     * copied.  Guarded by the set itself
+     */
+    private volatile transient Set<BaseHK2JAXBBean> sharingCopies;
+    
+    /** True while the children of copySource have not been copied into this bean */
+    private volatile transient boolean copyChildrenPending;
+    
+    /** True while the references of copySource have not been resolved in this bean */
+    private volatile transient boolean copyReferencesPending;
+    
+    /**
+     * True if this bean or any of its descendants may have been
+     * changed, in which case this bean can no longer be assumed to
+     * have the same contents as its copySource
+     */
+    private volatile transient boolean copyTouched;
+    
+    /**
+     * A hash of everything in this bean and its descendants that
+     * is compared when two trees are diffed.  Only valid while
+     * contentHashValid is true
+     */
+    private volatile transient long contentHash;
+    
+    /**
+     * Set to false whenever this bean or any of its descendants
+     * changes, so that contentHash is calculated again
+     */
+    private volatile transient boolean contentHashValid;
+    
     /**
      * A map from the namespace prefix to the namespace URI
      */
@@ -195,6 +249,13 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
         
     }
     
+    private NamespaceBeanLikeMap createBeanLikeMap() {
+        // The model of a generated bean is static, so it is available here
+        ModelImpl model = _getModel();
+        
+        return new NamespaceBeanLikeMapImpl((model == null) ? null : model.getPropertySlots());
+    }
+    
     @Override
     public void _setProperty(String propName, Object propValue) {
         _setProperty(XmlService.DEFAULT_NAMESPACE, propName, propValue);
@@ -228,6 +289,8 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
         if (propNamespace == null || propName == null) throw new IllegalArgumentException(
                 "properyName or propertyNamespace may not be null");
         
+        ensureCopied();
+        
         if (DEBUG_GETS_AND_SETS) {
             // Hidden behind static because of potential expensive toString costs
             Logger.getLogger().debug("XmlService setting property " + propName + " to " + propValue + " in " + this + " rawSet=" + rawSet);
@@ -252,6 +315,8 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
             else {
                 nBeanLikeMap.setValue(propNamespace, propName, propValue);
             }
+            
+            invalidateContentHash();
         }
         else {
             boolean doAdd = false;
@@ -384,6 +449,7 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
                     nBeanLikeMap.backup();
                 
                     nBeanLikeMap.setValue(propNamespace, propName, propValue);
+                    invalidateContentHash();
                     
                     success = true;
                 }
@@ -400,51 +466,131 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
     public void _setProperty(String propNamespace, String propName, byte propValue) {
         if (propName == null) throw new IllegalArgumentException("properyName may not be null");
         
+        if (_setPrimitive(propNamespace, propName, byte.class, propValue)) return;
+        
         _setProperty(propNamespace, propName, (Byte) propValue);
     }
     
     public void _setProperty(String propNamespace, String propName, boolean propValue) {
         if (propName == null) throw new IllegalArgumentException("properyName may not be null");
         
+        if (_setPrimitive(propNamespace, propName, boolean.class, (propValue ? 1L : 0L))) return;
+        
         _setProperty(propNamespace, propName, (Boolean) propValue);
     }
     
     public void _setProperty(String propNamespace, String propName, char propValue) {
         if (propName == null) throw new IllegalArgumentException("properyName may not be null");
         
+        if (_setPrimitive(propNamespace, propName, char.class, propValue)) return;
+        
         _setProperty(propNamespace, propName, (Character) propValue);
     }
     
     public void _setProperty(String propNamespace, String propName, short propValue) {
         if (propName == null) throw new IllegalArgumentException("properyName may not be null");
         
+        if (_setPrimitive(propNamespace, propName, short.class, propValue)) return;
+        
         _setProperty(propNamespace, propName, (Short) propValue);
     }
     
     public void _setProperty(String propNamespace, String propName, int propValue) {
         if (propName == null) throw new IllegalArgumentException("properyName may not be null");
         
+        if (_setPrimitive(propNamespace, propName, int.class, propValue)) return;
+        
         _setProperty(propNamespace, propName, (Integer) propValue);
     }
     
     public void _setProperty(String propNamespace, String propName, float propValue) {
         if (propName == null) throw new IllegalArgumentException("properyName may not be null");
         
+        if (_setPrimitive(propNamespace, propName, float.class, Float.floatToRawIntBits(propValue))) return;
+        
         _setProperty(propNamespace, propName, (Float) propValue);
     }
     
     public void _setProperty(String propNamespace, String propName, long propValue) {
         if (propName == null) throw new IllegalArgumentException("properyName may not be null");
         
+        if (_setPrimitive(propNamespace, propName, long.class, propValue)) return;
+        
         _setProperty(propNamespace, propName, (Long) propValue);
     }
     
     public void _setProperty(String propNamespace, String propName, double propValue) {
         if (propName == null) throw new IllegalArgumentException("properyName may not be null");
         
+        if (_setPrimitive(propNamespace, propName, double.class, Double.doubleToRawLongBits(propValue))) return;
+        
         _setProperty(propNamespace, propName, (Double) propValue);
     }
     
+    /**
+     * Sets a primitive property directly in its slot when this bean
+     * is not yet part of a tree, since then there are no listeners
+     * or hub to tell about the change
+     * 
+     * @return true if the value was set, false if the caller
+     * must go through the full set path
+     */
+    private boolean _setPrimitive(String propNamespace, String propName, Class<?> primitiveType, long bits) {
+        if (DEBUG_GETS_AND_SETS || (propNamespace == null) || (changeControl != null)) return false;
+        
+        int slot = nBeanLikeMap.getPrimitiveSlot(propNamespace, propName, primitiveType);
+        if (slot < 0) return false;
+        
+        if (active) {
+            synchronized (this) {
+                nBeanLikeMap.setPrimitive(slot, bits);
+            }
+        }
+        else {
+            nBeanLikeMap.setPrimitive(slot, bits);
+        }
+        
+        invalidateContentHash();
+        
+        return true;
+    }
+    
+    /**
+     * Gets a primitive property straight from its slot when it is
+     * set, otherwise goes through the full get path (with defaulting)
+     * 
+     * @return The raw bits of the value as defined by {@link PropertySlots#toBits(Object, Class)}
+     */
+    private long _getPrimitive(String propNamespace, String propName, Class<?> primitiveType) {
+        int slot = DEBUG_GETS_AND_SETS || (propNamespace == null) ? -1 :
+            nBeanLikeMap.getPrimitiveSlot(propNamespace, propName, primitiveType);
+        
+        if (slot >= 0) {
+            DynamicChangeInfo<?> control = changeControl;
+            if (control == null) {
+                if (active) {
+                    synchronized (this) {
+                        if (nBeanLikeMap.hasPrimitive(slot)) return nBeanLikeMap.getPrimitive(slot);
+                    }
+                }
+                else if (nBeanLikeMap.hasPrimitive(slot)) {
+                    return nBeanLikeMap.getPrimitive(slot);
+                }
+            }
+            else {
+                control.getReadLock().lock();
+                try {
+                    if (nBeanLikeMap.hasPrimitive(slot)) return nBeanLikeMap.getPrimitive(slot);
+                }
+                finally {
+                    control.getReadLock().unlock();
+                }
+            }
+        }
+        
+        return PropertySlots.toBits(_getProperty(propNamespace, propName, primitiveType), primitiveType);
+    }
+    
     private Object _getProperty(String propNamespace, String propName, Class<?> expectedClass) {
         return _getProperty(propNamespace, propName, expectedClass, null);
     }
@@ -452,6 +598,8 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
     private Object _getProperty(String propNamespace, String propName, Class<?> expectedClass, ParentedModel parentNode) {
         if (propNamespace == null) throw new IllegalArgumentException("propNamespace must not be null");
         
+        ensureCopied(propNamespace, propName);
+        
         boolean isSet;
         Object retVal;
         boolean doDefaulting = active ? true : false;
@@ -526,6 +674,20 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
     @Override
     public Object _getProperty(String propNamespace, String propName) {
         ModelImpl model = _getModel();
+        
+        PropertySlots slots = model.getPropertySlots();
+        int slot = slots.getSlot(propNamespace, propName);
+        if (slot >= 0) {
+            ChildDataModel childDataModel = slots.getChildDataModel(slot);
+            if (childDataModel != null) {
+                return _getProperty(propNamespace, propName, childDataModel.getChildTypeAsClass());
+            }
+            
+            ParentedModel parent = slots.getParentedModel(slot);
+            
+            return _getProperty(parent.getChildXmlNamespace(), parent.getChildXmlTag(), null, parent);
+        }
+        
         ModelPropertyType mpt = model.getModelPropertyType(propNamespace, propName);
         
         switch(mpt) {
@@ -553,7 +715,7 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
      * @return
      */
     public boolean _getPropertyZ(String propNamespace, String propName) {
-        return (Boolean) _getProperty(propNamespace, propName, boolean.class);
+        return (_getPrimitive(propNamespace, propName, boolean.class) != 0L);
     }
     
     /**
@@ -563,7 +725,7 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
      * @return
      */
     public byte _getPropertyB(String propNamespace, String propName) {
-        return (Byte) _getProperty(propNamespace, propName, byte.class);
+        return (byte) _getPrimitive(propNamespace, propName, byte.class);
     }
     
     /**
@@ -573,7 +735,7 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
      * @return
      */
     public char _getPropertyC(String propNamespace, String propName) {
-        return (Character) _getProperty(propNamespace, propName, char.class);
+        return (char) _getPrimitive(propNamespace, propName, char.class);
     }
     
     /**
@@ -583,7 +745,7 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
      * @return
      */
     public short _getPropertyS(String propNamespace, String propName) {
-        return (Short) _getProperty(propNamespace, propName, short.class);
+        return (short) _getPrimitive(propNamespace, propName, short.class);
     }
     
     /**
@@ -593,7 +755,7 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
      * @return
      */
     public int _getPropertyI(String propNamespace, String propName) {
-        return (Integer) _getProperty(propNamespace, propName, int.class);
+        return (int) _getPrimitive(propNamespace, propName, int.class);
     }
     
     /**
@@ -603,7 +765,7 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
      * @return
      */
     public float _getPropertyF(String propNamespace, String propName) {
-        return (Float) _getProperty(propNamespace, propName, float.class);
+        return Float.intBitsToFloat((int) _getPrimitive(propNamespace, propName, float.class));
     }
     
     /**
@@ -613,7 +775,7 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
      * @return
      */
     public long _getPropertyJ(String propNamespace, String propName) {
-        return (Long) _getProperty(propNamespace, propName, long.class);
+        return _getPrimitive(propNamespace, propName, long.class);
     }
     
     /**
@@ -623,7 +785,7 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
      * @return
      */
     public double _getPropertyD(String propNamespace, String propName) {
-        return (Double) _getProperty(propNamespace, propName, double.class);
+        return Double.longBitsToDouble(_getPrimitive(propNamespace, propName, double.class));
     }
     
     @SuppressWarnings("unchecked")
@@ -714,6 +876,8 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
     }
     
     public Object _doAdd(String propNamespace, String childProperty, Object rawChild, String childKey, int index, boolean changeList) {
+        ensureCopied();
+        
         if (changeControl == null) {
             return Utilities.internalAdd(this, propNamespace, childProperty, rawChild, childKey, index, null, XmlDynamicChange.EMPTY, new LinkedList<ActiveDescriptor<?>>(), changeList);
         }
@@ -906,6 +1070,8 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
     public Object _doRemove(String propNamespace, String childProperty, String childKey, int index, Object child, boolean changeList) {
         QName childPropQName = QNameUtilities.createQName(propNamespace, childProperty);
         
+        ensureCopied();
+        
         if (changeControl == null) {
             Object retVal = Utilities.internalRemove(this, propNamespace, childProperty, childKey, index, child, null, XmlDynamicChange.EMPTY, changeList);
             
@@ -955,6 +1121,8 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
     }
 
     public boolean _hasProperty(String propNamespace, String propName) {
+        ensureCopied(propNamespace, propName);
+        
         if (changeControl == null) {
             if (active) {
                 synchronized (this) {
@@ -979,6 +1147,8 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
      */
     @Override
     public Map<String, Object> _getBeanLikeMap() {
+        ensureCopied();
+        
         if (changeControl == null) {
             if (active) {
                 synchronized (this) {
@@ -998,6 +1168,8 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
     }
     
     public Map<QName, Object> _getQNameMap() {
+        ensureCopied();
+        
         if (changeControl == null) {
             if (active) {
                 synchronized (this) {
@@ -1168,6 +1340,10 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
      * @param copyMe The non-null bean to copy FROM
      */
     public void _shallowCopyFrom(BaseHK2JAXBBean copyMe, boolean copyReferences) {
+        if (copyReferences) {
+            copyMe.ensureReferencesCopied();
+        }
+        
         selfNamespace = copyMe.selfNamespace;
         selfXmlTag = copyMe.selfXmlTag;
         instanceName = copyMe.instanceName;
@@ -1301,6 +1477,7 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
      */
     public void __rollbackChange() {
         nBeanLikeMap.restoreBackup(false);
+        invalidateContentHash();
     }
     
     /**
@@ -1322,6 +1499,8 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
     
     @Override
     public boolean _isSet(String propNamespace, String propName) {
+        ensureCopied(propNamespace, propName);
+        
         if (changeControl == null) {
             if (active) {
                 synchronized (this) {
@@ -1350,6 +1529,502 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
         return addCost;
     }
     
+    /**
+     * Makes this bean a lazy copy of the given bean.  The non-child
+     * and non-reference fields must already have been copied, the
+     * children and references are copied when they are first needed
+     *
+     * @param copySource The non-null bean this is a copy of
+     */
+    public void __setCopySource(BaseHK2JAXBBean copySource) {
+        this.copySource = copySource;
+        copyChildrenPending = true;
+        copyReferencesPending = true;
+        
+        copySource.addSharingCopy(this);
+    }
+    
+    private void addSharingCopy(BaseHK2JAXBBean copy) {
+        Set<BaseHK2JAXBBean> copies = sharingCopies;
+        if (copies == null) {
+            synchronized (this) {
+                copies = sharingCopies;
+                if (copies == null) {
+                    copies = Collections.newSetFromMap(new WeakHashMap<BaseHK2JAXBBean, Boolean>());
+                    sharingCopies = copies;
+                }
+            }
+        }
+        
+        synchronized (copies) {
+            copies.add(copy);
+        }
+    }
+    
+    /**
+     * Called before this bean is changed.  The lazy copies of this bean
+     * and of its ancestors copy what they still share with them, so that
+     * a copy always shows the tree as it was when the copy was made.  Only
+     * the copies of the beans on the path from the root to this bean are
+     * visited, so the cost does not depend on the size of the tree.  Write
+     * lock must be held
+     */
+    public void __detachCopiesOfPath() {
+        boolean anyCopies = false;
+        for (BaseHK2JAXBBean current = this; current != null; current = (BaseHK2JAXBBean) current.parent) {
+            if (current.sharingCopies != null) {
+                anyCopies = true;
+                break;
+            }
+        }
+        if (!anyCopies) return;
+        
+        LinkedList<BaseHK2JAXBBean> path = new LinkedList<BaseHK2JAXBBean>();
+        for (BaseHK2JAXBBean current = this; current != null; current = (BaseHK2JAXBBean) current.parent) {
+            path.addFirst(current);
+        }
+        
+        // From the root down, since copying the children of the copy of
+        // an ancestor creates the copies of the next bean on the path
+        for (BaseHK2JAXBBean onPath : path) {
+            Set<BaseHK2JAXBBean> copies = onPath.sharingCopies;
+            if (copies == null) continue;
+            
+            List<BaseHK2JAXBBean> detachMe;
+            synchronized (copies) {
+                if (copies.isEmpty()) continue;
+                
+                detachMe = new ArrayList<BaseHK2JAXBBean>(copies);
+            }
+            
+            for (BaseHK2JAXBBean copy : detachMe) {
+                if (onPath == this) {
+                    copy.ensureCopied();
+                }
+                else {
+                    copy.ensureChildrenCopied();
+                }
+                
+                copy.__markCopyTouched();
+                
+                if (!copy.copyChildrenPending && !copy.copyReferencesPending) {
+                    // Shares nothing and is touched, no need to visit again
+                    synchronized (copies) {
+                        copies.remove(copy);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Gets the bean this bean is a lazy copy of
+     *
+     * @return The bean this bean was copied from, or null
+     * if this bean is not a lazy copy
+     */
+    public BaseHK2JAXBBean __getCopySource() {
+        return copySource;
+    }
+    
+    /**
+     * Tells whether or not this bean is a lazy copy of the given
+     * bean that has not been changed since it was copied, in which
+     * case the two beans have the same contents all the way down
+     *
+     * @param source The bean that may be the source of this copy
+     * @return true if this is an unchanged lazy copy of source
+     */
+    public boolean __isUntouchedCopyOf(BaseHK2JAXBBean source) {
+        return (source != null) && (copySource == source) && !copyTouched;
+    }
+    
+    /**
+     * Records that this bean is about to be changed, which means
+     * that neither this bean nor any of its parents can be assumed
+     * to be the same as the beans they were copied from.  Write
+     * lock must be held
+     */
+    public void __markCopyTouched() {
+        BaseHK2JAXBBean current = this;
+        while (current != null && !current.copyTouched) {
+            current.copyTouched = true;
+            
+            current = (BaseHK2JAXBBean) current.parent;
+        }
+    }
+    
+    /**
+     * Copies everything this lazy copy and its descendants still share
+     * with the beans they were copied from, so that the source beans
+     * can be changed without changing this copy.  Write lock of the
+     * source tree must be held
+     */
+    public void __detachCopy() {
+        if (copySource == null) return;
+        
+        ensureCopied();
+        copyTouched = true;
+        
+        for (QName childProperty : _getModel().getChildrenByName().keySet()) {
+            Object child = _getProperty(QNameUtilities.getNamespace(childProperty), childProperty.getLocalPart());
+            if (child == null) continue;
+            
+            if (child instanceof List) {
+                for (Object subChild : (List<?>) child) {
+                    ((BaseHK2JAXBBean) subChild).__detachCopy();
+                }
+            }
+            else if (child.getClass().isArray()) {
+                int length = Array.getLength(child);
+                for (int lcv = 0; lcv < length; lcv++) {
+                    ((BaseHK2JAXBBean) Array.get(child, lcv)).__detachCopy();
+                }
+            }
+            else {
+                ((BaseHK2JAXBBean) child).__detachCopy();
+            }
+        }
+    }
+    
+    private void ensureCopied() {
+        ensureChildrenCopied();
+        ensureReferencesCopied();
+    }
+    
+    /**
+     * Only copies what is needed in order to get or set
+     * the given property
+     */
+    private void ensureCopied(String propNamespace, String propName) {
+        if (!copyChildrenPending && !copyReferencesPending) return;
+        
+        ChildDataModel childDataModel = _getModel().getNonChildProperties().get(
+                QNameUtilities.createQName(propNamespace, propName));
+        if (childDataModel == null) {
+            ensureChildrenCopied();
+        }
+        else if (childDataModel.isReference()) {
+            ensureReferencesCopied();
+        }
+    }
+    
+    /**
+     * The children are copied as lazy copies themselves, so this only
+     * costs as much as the number of direct children.  The source is read
+     * without taking its locks since a source bean detaches the lazy
+     * copies of itself and of its ancestors before it changes
+     */
+    private void ensureChildrenCopied() {
+        if (!copyChildrenPending) return;
+        
+        synchronized (this) {
+            if (!copyChildrenPending) return;
+            
+            BaseHK2JAXBBean source = copySource;
+            for (ParentedModel childNode : _getModel().getChildrenByName().values()) {
+                String childNamespace = childNode.getChildXmlNamespace();
+                String childXmlTag = childNode.getChildXmlTag();
+                
+                Object child = source.nBeanLikeMap.getValue(childNamespace, childXmlTag);
+                if (child == null) continue;
+                
+                if (child instanceof List) {
+                    List<?> childList = (List<?>) child;
+                    
+                    ArrayList<Object> copiedList = new ArrayList<Object>(childList.size());
+                    for (Object subChild : childList) {
+                        copiedList.add(Utilities.createLazyCopy((BaseHK2JAXBBean) subChild, changeControl, this, root));
+                    }
+                    
+                    nBeanLikeMap.setValue(childNamespace, childXmlTag, Collections.unmodifiableList(copiedList));
+                }
+                else if (child.getClass().isArray()) {
+                    int length = Array.getLength(child);
+                    
+                    Object copiedArray = Array.newInstance(childNode.getChildModel().getOriginalInterfaceAsClass(), length);
+                    for (int lcv = 0; lcv < length; lcv++) {
+                        Array.set(copiedArray, lcv, Utilities.createLazyCopy((BaseHK2JAXBBean) Array.get(child, lcv), changeControl, this, root));
+                    }
+                    
+                    nBeanLikeMap.setValue(childNamespace, childXmlTag, copiedArray);
+                }
+                else {
+                    nBeanLikeMap.setValue(childNamespace, childXmlTag,
+                            Utilities.createLazyCopy((BaseHK2JAXBBean) child, changeControl, this, root));
+                }
+            }
+            
+            copyChildrenPending = false;
+        }
+    }
+    
+    /**
+     * A reference in the source points into the source tree, so the copy of
+     * the reference is the bean at the same place in the copied tree.  The
+     * references are found outside of the lock of this bean since finding
+     * them can copy the children of other beans in this tree
+     */
+    private void ensureReferencesCopied() {
+        if (!copyReferencesPending) return;
+        
+        BaseHK2JAXBBean source = copySource;
+        
+        Map<QName, BaseHK2JAXBBean> copiedReferences = new HashMap<QName, BaseHK2JAXBBean>();
+        for (Map.Entry<QName, ChildDataModel> nonChild : _getModel().getNonChildProperties().entrySet()) {
+            if (!nonChild.getValue().isReference()) continue;
+            
+            QName xmlTag = nonChild.getKey();
+            
+            Object reference = source.nBeanLikeMap.getValue(QNameUtilities.getNamespace(xmlTag), xmlTag.getLocalPart());
+            if (!(reference instanceof BaseHK2JAXBBean)) continue;
+            
+            copiedReferences.put(xmlTag, findCopyOf((BaseHK2JAXBBean) reference));
+        }
+        
+        synchronized (this) {
+            if (!copyReferencesPending) return;
+            
+            for (Map.Entry<QName, BaseHK2JAXBBean> copiedReference : copiedReferences.entrySet()) {
+                QName xmlTag = copiedReference.getKey();
+                
+                nBeanLikeMap.setValue(QNameUtilities.getNamespace(xmlTag), xmlTag.getLocalPart(), copiedReference.getValue());
+            }
+            
+            copyReferencesPending = false;
+        }
+    }
+    
+    /**
+     * Finds the bean in the tree of this lazy copy that was copied from
+     * the given bean of the source tree.  If there is no such bean (for
+     * example because it has since been removed from this tree) a new
+     * unparented lazy copy of the given bean is returned, which like
+     * any other lazy copy is detached before its source is changed
+     *
+     * @param original The bean in the source tree to find the copy of
+     * @return The copy of original in the tree of this bean
+     */
+    private BaseHK2JAXBBean findCopyOf(BaseHK2JAXBBean original) {
+        BaseHK2JAXBBean copyRoot = this;
+        while (copyRoot.parent != null) {
+            copyRoot = (BaseHK2JAXBBean) copyRoot.parent;
+        }
+        
+        LinkedList<BaseHK2JAXBBean> path = new LinkedList<BaseHK2JAXBBean>();
+        BaseHK2JAXBBean current = original;
+        while (current != null && current != copyRoot.copySource) {
+            path.addFirst(current);
+            
+            current = (BaseHK2JAXBBean) current.parent;
+        }
+        
+        BaseHK2JAXBBean retVal = (current == null) ? null : copyRoot;
+        for (BaseHK2JAXBBean step : path) {
+            if (retVal == null) break;
+            
+            retVal = retVal.findChildCopiedFrom(step);
+        }
+        
+        if (retVal == null) {
+            return Utilities.createLazyCopy(original, changeControl, null, root);
+        }
+        
+        return retVal;
+    }
+    
+    private BaseHK2JAXBBean findChildCopiedFrom(BaseHK2JAXBBean original) {
+        for (QName childProperty : _getModel().getChildrenByName().keySet()) {
+            Object child = _getProperty(QNameUtilities.getNamespace(childProperty), childProperty.getLocalPart());
+            if (child == null) continue;
+            
+            if (child instanceof List) {
+                for (Object subChild : (List<?>) child) {
+                    if (((BaseHK2JAXBBean) subChild).copySource == original) return (BaseHK2JAXBBean) subChild;
+                }
+            }
+            else if (child.getClass().isArray()) {
+                int length = Array.getLength(child);
+                for (int lcv = 0; lcv < length; lcv++) {
+                    BaseHK2JAXBBean subChild = (BaseHK2JAXBBean) Array.get(child, lcv);
+                    if (subChild.copySource == original) return subChild;
+                }
+            }
+            else if (((BaseHK2JAXBBean) child).copySource == original) {
+                return (BaseHK2JAXBBean) child;
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Gets a 64 bit hash of everything in this bean and its descendants
+     * that {@link Utilities#getDiff(BaseHK2JAXBBean, BaseHK2JAXBBean)}
+     * compares.  Two beans of the same type with the same content hash
+     * are taken to have no differences.  The hash is cached and only
+     * calculated again for beans that have changed or have changed
+     * descendants.  Read lock should be held
+     * 
+     * @return The content hash of this bean
+     */
+    public long __getContentHash() {
+        if (contentHashValid) return contentHash;
+        
+        long hash;
+        BaseHK2JAXBBean source = copySource;
+        if (source != null && !copyTouched) {
+            hash = source.__getContentHash();
+        }
+        else {
+            hash = calculateContentHash();
+        }
+        
+        contentHash = hash;
+        contentHashValid = true;
+        
+        return hash;
+    }
+    
+    private long calculateContentHash() {
+        ModelImpl model = _getModel();
+        Map<QName, Object> values = _getQNameMap();
+        
+        long hash = hashString(model.getOriginalInterface());
+        
+        for (Map.Entry<QName, ChildDataModel> nonChild : model.getNonChildProperties().entrySet()) {
+            Object value = values.get(nonChild.getKey());
+            if (value != null && nonChild.getValue().isReference()) {
+                // References are compared by key
+                String referenceKey = ((BaseHK2JAXBBean) value)._getKeyValue();
+                
+                hash = combineHashes(hash, ~hashValue(referenceKey));
+            }
+            else {
+                hash = combineHashes(hash, hashValue(value));
+            }
+        }
+        
+        for (QName childProperty : model.getChildrenByName().keySet()) {
+            Object child = values.get(childProperty);
+            
+            if (child == null) {
+                // An unset list is the same as an empty one
+                hash = combineHashes(hash, 0L);
+            }
+            else if (child instanceof List) {
+                List<?> childList = (List<?>) child;
+                
+                hash = combineHashes(hash, childList.size());
+                for (Object subChild : childList) {
+                    hash = combineHashes(hash, ((BaseHK2JAXBBean) subChild).__getContentHash());
+                }
+            }
+            else if (child.getClass().isArray()) {
+                int length = Array.getLength(child);
+                
+                hash = combineHashes(hash, length);
+                for (int lcv = 0; lcv < length; lcv++) {
+                    hash = combineHashes(hash, ((BaseHK2JAXBBean) Array.get(child, lcv)).__getContentHash());
+                }
+            }
+            else {
+                hash = combineHashes(hash, ((BaseHK2JAXBBean) child).__getContentHash());
+            }
+        }
+        
+        return hash;
+    }
+    
+    private void invalidateContentHash() {
+        // Walks all the way up since children created when a lazy copy is
+        // materialized may start out invalid underneath a valid parent
+        BaseHK2JAXBBean current = this;
+        while (current != null) {
+            current.contentHashValid = false;
+            
+            current = (BaseHK2JAXBBean) current.parent;
+        }
+    }
+    
+    /**
+     * Hashes values the same way they are compared by the diff, which
+     * uses equals.  Values of types not known here get unique hashes,
+     * which means beans holding them are always diffed in full
+     */
+    private static long hashValue(Object value) {
+        if (value == null) return NULL_CONTENT_HASH;
+        if (value instanceof String) return hashString((String) value);
+        
+        long typeHash = hashString(value.getClass().getName());
+        
+        if (value instanceof Integer || value instanceof Long ||
+                value instanceof Short || value instanceof Byte) {
+            return combineHashes(typeHash, ((Number) value).longValue());
+        }
+        if (value instanceof Boolean) {
+            return combineHashes(typeHash, ((Boolean) value).booleanValue() ? 1L : 0L);
+        }
+        if (value instanceof Character) {
+            return combineHashes(typeHash, ((Character) value).charValue());
+        }
+        if (value instanceof Double) {
+            return combineHashes(typeHash, Double.doubleToLongBits((Double) value));
+        }
+        if (value instanceof Float) {
+            return combineHashes(typeHash, Float.floatToIntBits((Float) value));
+        }
+        if (value instanceof Enum) {
+            return combineHashes(typeHash, hashString(((Enum<?>) value).name()));
+        }
+        if (value instanceof QName) {
+            QName qName = (QName) value;
+            
+            return combineHashes(combineHashes(typeHash, hashString(qName.getNamespaceURI())),
+                    hashString(qName.getLocalPart()));
+        }
+        
+        return combineHashes(typeHash, UNIQUE_CONTENT_HASH.incrementAndGet());
+    }
+    
+    /**
+     * 64 bit FNV-1a
+     */
+    private static long hashString(String value) {
+        long hash = 0xcbf29ce484222325L;
+        
+        int length = value.length();
+        for (int lcv = 0; lcv < length; lcv++) {
+            hash ^= value.charAt(lcv);
+            hash *= 0x100000001b3L;
+        }
+        
+        return hash;
+    }
+    
+    /**
+     * Order dependent, the value is scrambled with the
+     * finalizer of 64 bit murmur3 before it is combined
+     */
+    private static long combineHashes(long hash, long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        
+        return (Long.rotateLeft(hash, 31) ^ value) * 0x9e3779b97f4a7c15L;
+    }
+    
+    /**
+     * A lazy copy must be completely copied before it is written
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ensureCopied();
+        
+        out.defaultWriteObject();
+    }
+    
     @SuppressWarnings("unchecked")
     public void __fixAlias(String propNamespace, String propName, String baseName) {
         Object propNameValueRaw = nBeanLikeMap.getValue(propNamespace, propName);
@@ -1374,6 +2049,7 @@ public abstract class BaseHK2JAXBBean implements XmlHk2ConfigurationBean, Serial
         List<Object> baseNameProperty = (List<Object>) baseNamePropertyRaw;
         
         baseNameProperty.addAll(propNameValue);
+        invalidateContentHash();
     }
     
     @Override
@@ -87,6 +87,48 @@ public interface NamespaceBeanLikeMap {
      */
     public boolean isSet(String nanmespace, String key);
     
+    /**
+     * Gets the slot that holds the given property unboxed.
+     * The slot layout never changes, so no locking is needed
+     * 
+     * @param namespace if null or the empty string the
+     * default namespace will be used
+     * @param key the non-null key
+     * @param primitiveType the primitive type the caller expects
+     * @return the slot of the property, or -1 if the property
+     * is not kept unboxed with the given primitive type
+     */
+    public int getPrimitiveSlot(String namespace, String key, Class<?> primitiveType);
+    
+    /**
+     * Tells if the given slot currently holds an unboxed value.
+     * Locking must be done by the caller
+     * 
+     * @param slot a slot from {@link #getPrimitiveSlot(String, String, Class)}
+     * @return true if {@link #getPrimitive(int)} returns the value of the slot
+     */
+    public boolean hasPrimitive(int slot);
+    
+    /**
+     * Gets the raw bits of the unboxed value in the given slot.
+     * Locking must be done by the caller
+     * 
+     * @param slot a slot for which {@link #hasPrimitive(int)} is true
+     * @return the raw bits of the value, as defined by
+     * {@link org.glassfish.hk2.xml.internal.PropertySlots#toBits(Object, Class)}
+     */
+    public long getPrimitive(int slot);
+    
+    /**
+     * Sets the unboxed value of the given slot.
+     * Locking must be done by the caller
+     * 
+     * @param slot a slot from {@link #getPrimitiveSlot(String, String, Class)}
+     * @param bits the raw bits of the value, as defined by
+     * {@link org.glassfish.hk2.xml.internal.PropertySlots#toBits(Object, Class)}
+     */
+    public void setPrimitive(int slot, long bits);
+    
     /**
      * Create a backup of all namespaces at this point.
      * Locking must be done by the caller
@@ -141,8 +183,8 @@ public interface NamespaceBeanLikeMap {
      * Gets a raw copy of the bean-like map.  The outer map has
      * namespace keys (including one for default) and the inner
      * map is the bean-like map for that namespace.  The map returned
-     * is not a copy, so any changes to it will affect the underlying
-     * object (so don't change it)
+     * is a snapshot, so changes to it do not affect the underlying
+     * object.  Locking must be done by the caller
      * 
      * @return
      */
@@ -41,9 +41,11 @@ package org.glassfish.hk2.xml.test.copy;
 
 import java.net.URL;
 import java.util.List;
+import java.util.Map;
 
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.configuration.hub.api.Hub;
+import org.glassfish.hk2.configuration.hub.api.Instance;
 import org.glassfish.hk2.xml.api.XmlHk2ConfigurationBean;
 import org.glassfish.hk2.xml.api.XmlRootCopy;
 import org.glassfish.hk2.xml.api.XmlRootHandle;
@@ -67,6 +69,12 @@ import org.junit.Test;
  *
  */
 public class CopyTest {
+    private final static String ALICE_ADDRESS = "10.0.0.1";
+    private final static int ALICE_PORT = 12345;
+    private final static String NEW_ADDRESS = "10.0.0.2";
+    private final static int NEW_PORT = 54321;
+    private final static String SERVER0_INSTANCE = "domain.Alice.Server-0";
+    private final static String PORT_TAG = "port";
     
     /**
      * Tests a deep tree including all metadata
@@ -158,6 +166,158 @@ public class CopyTest {
         }
     }
     
+    /**
+     * Tests that changes made to the original after the copy
+     * was made are not seen in the copy, and that the references
+     * in the copy point to beans in the copy
+     * 
+     * @throws Exception
+     */
+    @Test
+    // @org.junit.Ignore
+    public void testCopyDoesNotSeeLaterChangesToOriginal() throws Exception {
+        ServiceLocator locator = Utilities.createLocator(UpdateListener.class);
+        XmlService xmlService = locator.getService(XmlService.class);
+        
+        URL url = getClass().getClassLoader().getResource(MergeTest.DOMAIN1_FILE);
+        
+        XmlRootHandle<DomainBean> rootHandle = xmlService.unmarshal(url.toURI(), DomainBean.class);
+        
+        XmlRootCopy<DomainBean> copy = rootHandle.getXmlRootCopy();
+        
+        DomainBean domainOriginal = rootHandle.getRoot();
+        
+        MachineBean machineOriginal = domainOriginal.getMachines().get(0);
+        ServerBean serverOriginal = machineOriginal.getServers().get(0);
+        
+        machineOriginal.setAddress(NEW_ADDRESS);
+        serverOriginal.setPort(NEW_PORT);
+        domainOriginal.removeMachine(MergeTest.ALICE_NAME);
+        
+        DomainBean domainCopy = copy.getChildRoot();
+        
+        MachineBean machineCopy = domainCopy.getMachines().get(0);
+        Assert.assertNotSame(machineOriginal, machineCopy);
+        Assert.assertEquals(MergeTest.ALICE_NAME, machineCopy.getName());
+        Assert.assertEquals(ALICE_ADDRESS, machineCopy.getAddress());
+        
+        ServerBean serverCopy = machineCopy.getServers().get(0);
+        Assert.assertEquals(ALICE_PORT, serverCopy.getPort());
+        
+        // References must resolve to the beans of the copy
+        Assert.assertSame(serverCopy, domainCopy.getJMSServers()[0].getServer());
+        Assert.assertSame(machineCopy, domainCopy.getSecurityManager().getAuthorizationProviders().get(0).getMachine());
+        
+        Assert.assertTrue(domainOriginal.getMachines().isEmpty());
+    }
+    
+    /**
+     * Tests that a reference in the copy to a bean that was
+     * removed from the copy does not see later changes made
+     * to the original bean or to its children
+     *
+     * @throws Exception
+     */
+    @Test
+    // @org.junit.Ignore
+    public void testReferenceToRemovedBeanDoesNotSeeLaterChanges() throws Exception {
+        ServiceLocator locator = Utilities.createLocator(UpdateListener.class);
+        XmlService xmlService = locator.getService(XmlService.class);
+        
+        URL url = getClass().getClassLoader().getResource(MergeTest.DOMAIN1_FILE);
+        
+        XmlRootHandle<DomainBean> rootHandle = xmlService.unmarshal(url.toURI(), DomainBean.class);
+        
+        XmlRootCopy<DomainBean> copy = rootHandle.getXmlRootCopy();
+        DomainBean domainCopy = copy.getChildRoot();
+        
+        domainCopy.removeMachine(MergeTest.ALICE_NAME);
+        
+        MachineBean referencedMachine = domainCopy.getSecurityManager().getAuthorizationProviders().get(0).getMachine();
+        Assert.assertNotNull(referencedMachine);
+        
+        MachineBean machineOriginal = rootHandle.getRoot().getMachines().get(0);
+        Assert.assertNotSame(machineOriginal, referencedMachine);
+        
+        machineOriginal.getServers().get(0).setPort(NEW_PORT);
+        machineOriginal.setAddress(NEW_ADDRESS);
+        
+        Assert.assertEquals(ALICE_ADDRESS, referencedMachine.getAddress());
+        Assert.assertEquals(ALICE_PORT, referencedMachine.getServers().get(0).getPort());
+    }
+    
+    /**
+     * Tests that only what was changed in the copy is
+     * merged back into the original, and that the copy
+     * is still a copy of the original after the merge
+     * 
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    // @org.junit.Ignore
+    public void testMergeOfChangedLeaf() throws Exception {
+        ServiceLocator locator = Utilities.createLocator(UpdateListener.class);
+        XmlService xmlService = locator.getService(XmlService.class);
+        Hub hub = locator.getService(Hub.class);
+        
+        URL url = getClass().getClassLoader().getResource(MergeTest.DOMAIN1_FILE);
+        
+        XmlRootHandle<DomainBean> rootHandle = xmlService.unmarshal(url.toURI(), DomainBean.class);
+        
+        XmlRootCopy<DomainBean> copy = rootHandle.getXmlRootCopy();
+        DomainBean domainCopy = copy.getChildRoot();
+        
+        domainCopy.getMachines().get(0).getServers().get(0).setPort(NEW_PORT);
+        
+        copy.merge();
+        
+        DomainBean domainOriginal = rootHandle.getRoot();
+        ServerBean serverOriginal = domainOriginal.getMachines().get(0).getServers().get(0);
+        
+        Assert.assertEquals(NEW_PORT, serverOriginal.getPort());
+        Assert.assertEquals(ALICE_ADDRESS, domainOriginal.getMachines().get(0).getAddress());
+        Assert.assertSame(serverOriginal, domainOriginal.getJMSServers()[0].getServer());
+        Assert.assertEquals(2, domainOriginal.getJMSServers().length);
+        
+        // The copy must not see changes made to the original after the merge
+        domainOriginal.getMachines().get(0).setAddress(NEW_ADDRESS);
+        
+        Assert.assertEquals(ALICE_ADDRESS, domainCopy.getMachines().get(0).getAddress());
+        Assert.assertEquals(NEW_PORT, domainCopy.getMachines().get(0).getServers().get(0).getPort());
+        
+        Instance server0Instance = hub.getCurrentDatabase().getInstance(MergeTest.SERVER_TYPE, SERVER0_INSTANCE);
+        Assert.assertNotNull(server0Instance);
+        
+        Map<String, Object> server0Map = (Map<String, Object>) server0Instance.getBean();
+        Assert.assertEquals(NEW_PORT, server0Map.get(PORT_TAG));
+    }
+    
+    /**
+     * Tests that a copy that was never changed merges
+     * without changing the original
+     * 
+     * @throws Exception
+     */
+    @Test
+    // @org.junit.Ignore
+    public void testMergeOfUnchangedCopy() throws Exception {
+        ServiceLocator locator = Utilities.createLocator(UpdateListener.class);
+        XmlService xmlService = locator.getService(XmlService.class);
+        Hub hub = locator.getService(Hub.class);
+        
+        URL url = getClass().getClassLoader().getResource(MergeTest.DOMAIN1_FILE);
+        
+        XmlRootHandle<DomainBean> rootHandle = xmlService.unmarshal(url.toURI(), DomainBean.class);
+        
+        XmlRootCopy<DomainBean> copy = rootHandle.getXmlRootCopy();
+        
+        copy.merge();
+        
+        MergeTest.verifyDomain1Xml(rootHandle, hub, locator);
+        MergeTest.verifyDomain1Xml(rootHandle, copy, null, null);
+    }
+    
     private static void verifyMetadataTheSame(XmlHk2ConfigurationBean original, XmlHk2ConfigurationBean copy) {
         Assert.assertEquals("xmlPath does not match", original._getXmlPath(), copy._getXmlPath());
         Assert.assertEquals("instanceName does not match", original._getInstanceName(), copy._getInstanceName());
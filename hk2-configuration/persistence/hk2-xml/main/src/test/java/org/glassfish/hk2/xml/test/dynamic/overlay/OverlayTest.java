@@ -66,6 +66,9 @@ import org.junit.Test;
  *
  */
 public class OverlayTest {
+    private final static String COLLIDING_NAME_1 = "Aa";
+    private final static String COLLIDING_NAME_2 = "BB";
+    
     /**
      * Overlays original file with new file
      * 
@@ -644,4 +647,79 @@ public class OverlayTest {
                   )        
          );
     }
+    
+    /**
+     * Overlays the same tree over and over, each time changing only
+     * a leaf deep in the tree, both through the overlay and through
+     * a direct set on the original tree.  Makes sure no stale
+     * information about unchanged subtrees is used
+     * 
+     * @throws Exception
+     */
+    @Test
+    // @org.junit.Ignore
+    public void testRepeatedOverlaysOfDeepLeaf() throws Exception {
+        ServiceLocator locator = Utilities.createLocator(UpdateListener.class);
+        XmlService xmlService = locator.getService(XmlService.class);
+        Hub hub = locator.getService(Hub.class);
+        
+        XmlRootHandle<OverlayRootABean> originalHandle = xmlService.createEmptyHandle(OverlayRootABean.class, true, true);
+        OverlayUtilities.generateOverlayRootABean(originalHandle, "A(B(C)D)");
+        
+        String overlays[] = { "A(B(C)D)", "A(B(E)D)", "A(B(E)D)", "A(B(C)D)" };
+        for (String overlay : overlays) {
+            XmlRootHandle<OverlayRootABean> overlayHandle = xmlService.createEmptyHandle(OverlayRootABean.class, false, false);
+            OverlayUtilities.generateOverlayRootABean(overlayHandle, overlay);
+            
+            originalHandle.overlay(overlayHandle);
+            
+            Assert.assertEquals(overlay, OverlayUtilities.getStringVersionOfTree(originalHandle.getRoot(), true));
+            Assert.assertEquals(overlay, OverlayUtilities.getStringVersionOfTree(originalHandle.getRoot(), false));
+            
+            OverlayUtilities.checkSingleLetterOveralyRootA(originalHandle, hub, true, true, overlay);
+        }
+        
+        // Change the deep leaf of the original directly, then put it back with an overlay
+        originalHandle.getRoot().getUnkeyedLeafList().get(0).getListLeaf().get(0).getListLeaf().get(0).setName("E");
+        originalHandle.getRoot().getUnkeyedLeafArray()[0].getArrayLeaf()[0].getArrayLeaf()[0].setName("E");
+        
+        Assert.assertEquals("A(B(E)D)", OverlayUtilities.getStringVersionOfTree(originalHandle.getRoot(), true));
+        Assert.assertEquals("A(B(E)D)", OverlayUtilities.getStringVersionOfTree(originalHandle.getRoot(), false));
+        
+        XmlRootHandle<OverlayRootABean> overlayHandle = xmlService.createEmptyHandle(OverlayRootABean.class, false, false);
+        OverlayUtilities.generateOverlayRootABean(overlayHandle, "A(B(C)D)");
+        
+        originalHandle.overlay(overlayHandle);
+        
+        Assert.assertEquals("A(B(C)D)", OverlayUtilities.getStringVersionOfTree(originalHandle.getRoot(), true));
+        Assert.assertEquals("A(B(C)D)", OverlayUtilities.getStringVersionOfTree(originalHandle.getRoot(), false));
+        
+        OverlayUtilities.checkSingleLetterOveralyRootA(originalHandle, hub, true, true, "A(B(C)D)");
+    }
+    
+    /**
+     * Overlays a leaf name with one that has the same String hashCode
+     * 
+     * @throws Exception
+     */
+    @Test
+    // @org.junit.Ignore
+    public void testOverlayOfNameWithSameStringHashCode() throws Exception {
+        ServiceLocator locator = Utilities.createLocator(UpdateListener.class);
+        XmlService xmlService = locator.getService(XmlService.class);
+        
+        Assert.assertEquals(COLLIDING_NAME_1.hashCode(), COLLIDING_NAME_2.hashCode());
+        
+        XmlRootHandle<OverlayRootABean> originalHandle = xmlService.createEmptyHandle(OverlayRootABean.class, true, true);
+        OverlayUtilities.generateOverlayRootABean(originalHandle, "A(B)");
+        originalHandle.getRoot().getUnkeyedLeafList().get(0).getListLeaf().get(0).setName(COLLIDING_NAME_1);
+        
+        XmlRootHandle<OverlayRootABean> overlayHandle = xmlService.createEmptyHandle(OverlayRootABean.class, false, false);
+        OverlayUtilities.generateOverlayRootABean(overlayHandle, "A(B)");
+        overlayHandle.getRoot().getUnkeyedLeafList().get(0).getListLeaf().get(0).setName(COLLIDING_NAME_2);
+        
+        originalHandle.overlay(overlayHandle);
+        
+        Assert.assertEquals(COLLIDING_NAME_2, originalHandle.getRoot().getUnkeyedLeafList().get(0).getListLeaf().get(0).getName());
+    }
 }
@@ -47,8 +47,10 @@ import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.configuration.hub.api.Hub;
 import org.glassfish.hk2.configuration.hub.api.Instance;
 import org.glassfish.hk2.xml.api.XmlHandleTransaction;
+import org.glassfish.hk2.xml.api.XmlHk2ConfigurationBean;
 import org.glassfish.hk2.xml.api.XmlRootHandle;
 import org.glassfish.hk2.xml.api.XmlService;
+import org.glassfish.hk2.xml.test.basic.beans.TypeBean;
 import org.glassfish.hk2.xml.test.beans.DomainBean;
 import org.glassfish.hk2.xml.test.beans.JMSServerBean;
 import org.glassfish.hk2.xml.test.beans.MachineBean;
@@ -339,5 +341,67 @@ public class TransactionTest {
         // This is another modify, not on the same bean
         carol.setCompressionAlgorithm(MergeTest.LZ_COMPRESSION);
     }
+    
+    /**
+     * Tests that primitive properties keep their values when set before
+     * the bean is in a tree, and that a change to them in an abandoned
+     * transaction is rolled back
+     * 
+     * @throws Exception
+     */
+    @Test 
+    // @org.junit.Ignore
+    public void testPrimitivePropertiesRollBack() throws Exception {
+        ServiceLocator locator = Utilities.createLocator();
+        XmlService xmlService = locator.getService(XmlService.class);
+        
+        TypeBean types = xmlService.createBean(TypeBean.class);
+        
+        types.setIType(13);
+        types.setJType(-13L);
+        types.setZType(true);
+        types.setBType((byte) 120);
+        types.setCType('E');
+        types.setSType((short) 161);
+        types.setFType((float) 3.14);
+        types.setDType(2.71828);
+        
+        Map<String, Object> beanLikeMap = ((XmlHk2ConfigurationBean) types)._getBeanLikeMap();
+        Assert.assertEquals(new Integer(13), beanLikeMap.get("int"));
+        Assert.assertEquals(new Long(-13L), beanLikeMap.get("long"));
+        Assert.assertEquals(Boolean.TRUE, beanLikeMap.get("boolean"));
+        Assert.assertEquals(new Character('E'), beanLikeMap.get("char"));
+        Assert.assertEquals(new Double(2.71828), beanLikeMap.get("double"));
+        
+        XmlRootHandle<TypeBean> rootHandle = xmlService.createEmptyHandle(TypeBean.class);
+        rootHandle.addRoot(types);
+        
+        TypeBean root = rootHandle.getRoot();
+        
+        XmlHandleTransaction<TypeBean> transaction = rootHandle.lockForTransaction();
+        try {
+            root.setIType(14);
+            root.setDType(1.5);
+            
+            Assert.assertEquals(14, root.getIType());
+            Assert.assertEquals(0, Double.compare(1.5, root.getDType()));
+        }
+        finally {
+            transaction.abandon();
+        }
+        
+        Assert.assertEquals(13, root.getIType());
+        Assert.assertEquals(-13L, root.getJType());
+        Assert.assertEquals(true, root.getZType());
+        Assert.assertEquals((byte) 120, root.getBType());
+        Assert.assertEquals('E', root.getCType());
+        Assert.assertEquals((short) 161, root.getSType());
+        Assert.assertEquals(0, Float.compare((float) 3.14, root.getFType()));
+        Assert.assertEquals(0, Double.compare(2.71828, root.getDType()));
+        
+        root.setIType(15);
+        Assert.assertEquals(15, root.getIType());
+        Assert.assertEquals(new Integer(15), ((XmlHk2ConfigurationBean) root)._getBeanLikeMap().get("int"));
+    }
 
 }
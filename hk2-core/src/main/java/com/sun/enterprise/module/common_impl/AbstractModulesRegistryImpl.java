@@ -62,8 +62,10 @@ import org.glassfish.hk2.bootstrap.HK2Populator;
 import org.glassfish.hk2.utilities.BuilderHelper;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.net.URI;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -115,6 +117,19 @@ public abstract class AbstractModulesRegistryImpl implements ModulesRegistry {
      */
     protected final Map<String,Module> providers = new HashMap<String,Module>();
 
+    /**
+     * Packages of the resolved modules and the one module that holds each of them.
+     *
+     * <p>
+     * This lets a module class loader go straight to the imported module that
+     * holds a class or resource instead of probing every import in turn.
+     * Packages that are found in more than one module are left out, so that
+     * lookups of those still search all imports in order.
+     */
+    private final ConcurrentMap<String,Module> packageOwners = new ConcurrentHashMap<String,Module>();
+    private final Set<String> splitPackages = new HashSet<String>();
+    private final Map<Module,Set<String>> modulePackages = new HashMap<Module,Set<String>>();
+
     private Map<ServiceLocator, String> habitats = new Hashtable<ServiceLocator, String>();
 
     Map<Module, Map<ServiceLocator, List<ActiveDescriptor>>> moduleDescriptors = new ConcurrentHashMap<Module, Map<ServiceLocator, List<ActiveDescriptor>>>();
@@ -464,6 +479,8 @@ public abstract class AbstractModulesRegistryImpl implements ModulesRegistry {
 		// TODO: modules comes right back when getModules() is called.
 		// the modeling is incorrect
 
+		unindexPackages(module);
+
 		Map<ServiceLocator, List<ActiveDescriptor>> descriptorsByServiceLocator = moduleDescriptors
 				.get(module);
 
@@ -671,6 +688,75 @@ public abstract class AbstractModulesRegistryImpl implements ModulesRegistry {
         return providers.get(providerClassName);
     }
 
+    /**
+     * Adds the packages held in the locations of the given module to the
+     * package index.  This is called once the module has been resolved.
+     *
+     * @param module the resolved module
+     */
+    public void indexPackages(Module module) {
+        synchronized (packageOwners) {
+            if (modulePackages.containsKey(module)) return;
+        }
+
+        Set<String> packages = new HashSet<String>();
+        for (URI location : module.getModuleDefinition().getLocations()) {
+            if (!"file".equals(location.getScheme())) continue;
+
+            File file = new File(location);
+            if (!file.exists()) continue;
+
+            try {
+                Jar jar = Jar.create(file);
+                try {
+                    jar.getPackages(packages);
+                } finally {
+                    jar.close();
+                }
+            } catch (IOException e) {
+                LogHelper.getDefaultLogger().log(Level.FINE, "Cannot index packages of " + file, e);
+            }
+        }
+
+        synchronized (packageOwners) {
+            if (modulePackages.containsKey(module)) return;
+            modulePackages.put(module, packages);
+
+            for (String packageName : packages) {
+                if (splitPackages.contains(packageName)) continue;
+
+                Module owner = packageOwners.putIfAbsent(packageName, module);
+                if (owner != null && owner != module) {
+                    packageOwners.remove(packageName);
+                    splitPackages.add(packageName);
+                }
+            }
+        }
+    }
+
+    private void unindexPackages(Module module) {
+        synchronized (packageOwners) {
+            Set<String> packages = modulePackages.remove(module);
+            if (packages == null) return;
+
+            for (String packageName : packages) {
+                packageOwners.remove(packageName, module);
+            }
+        }
+    }
+
+    /**
+     * Returns the one resolved module of this registry that holds the
+     * given package.
+     *
+     * @param packageName the '.' separated package name
+     * @return the module holding the package or null if no resolved module
+     * or more than one resolved module holds it
+     */
+    public Module getPackageOwner(String packageName) {
+        return packageOwners.get(packageName);
+    }
+
     public void dumpState(PrintStream writer) {
 
         StringBuilder sb = new StringBuilder("Registry Info:: Total repositories: " + repositories.size()
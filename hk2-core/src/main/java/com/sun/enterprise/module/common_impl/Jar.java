@@ -46,6 +46,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URL;
 import java.util.Enumeration;
+import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
@@ -64,6 +65,8 @@ import com.sun.enterprise.module.ModuleMetadata;
 public abstract class Jar {
     protected Jar() {}
 
+    private static final String META_INF = "META-INF/";
+
     /**
      * See {@link JarFile#getManifest()} for the contract.
      */
@@ -82,6 +85,36 @@ public abstract class Jar {
      */
     public abstract String getBaseName();
 
+    /**
+     * Adds the names of all the packages that hold classes or resources
+     * in this jar to the given set.  Entries under <tt>META-INF</tt> are
+     * not part of any package.
+     *
+     * <p>
+     * This implementation adds nothing, so the packages of the jar are
+     * simply not indexed.  Subclasses that can list their entries should
+     * override it.
+     */
+    public void getPackages(Set<String> result) {
+    }
+
+    /**
+     * Releases any file handle held by this jar.
+     */
+    public void close() throws IOException {
+    }
+
+    /**
+     * Adds the package of the given '/' separated entry name, if any.
+     */
+    private static void addPackage(String entryName, Set<String> result) {
+        int idx = entryName.lastIndexOf('/');
+        if(idx<=0) return;
+        if(entryName.startsWith(META_INF)) return;
+
+        result.add(entryName.substring(0,idx).replace('/','.'));
+    }
+
     public static Jar create(File file) throws IOException {
         if(file.isDirectory())
             return new Directory(file);
@@ -122,6 +155,20 @@ public abstract class Jar {
             return dir.getName();
         }
 
+        public void getPackages(Set<String> result) {
+            getPackages(dir, "", result);
+        }
+
+        private void getPackages(File d, String prefix, Set<String> result) {
+            for (File f : fixNull(d.listFiles())) {
+                if(f.isDirectory()) {
+                    getPackages(f, prefix + f.getName() + '/', result);
+                } else {
+                    addPackage(prefix + f.getName(), result);
+                }
+            }
+        }
+
         private byte[] readFully(File f) throws IOException {
             byte[] buf = new byte[(int)f.length()];
             DataInputStream in = new DataInputStream(new FileInputStream(f));
@@ -164,5 +211,20 @@ public abstract class Jar {
                 name = name.substring(0,idx);
             return name;
         }
+
+        public void getPackages(Set<String> result) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while(entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if(entry.isDirectory()) continue;
+
+                addPackage(entry.getName(), result);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            jar.close();
+        }
     }
 }
@@ -56,6 +56,14 @@ import java.util.ArrayList;
  * @author dochez
  */
 final class ClassLoaderFacade extends URLClassLoader {
+
+    static {
+        try {
+            registerAsParallelCapable();
+        } catch (NoSuchMethodError e) {
+            // Java 6, loading stays serialized on the class loader
+        }
+    }
  
     private final static URL[] EMPTY_URLS = new URL[0];
     private HashSet<String> publicPkgs = null;
@@ -177,6 +185,13 @@ final class ClassLoaderFacade extends URLClassLoader {
         
     }
 
+    /**
+     * Returns the module whose classes this facade exposes.
+     */
+    ModuleImpl getOwner() {
+        return privateLoader.getOwner();
+    }
+
     /**
      * Works like {@link #findResource(String)} but only looks at
      * this module, without delegating to ancestors.
@@ -45,18 +45,34 @@ import com.sun.enterprise.module.common_impl.FlattenEnumeration;
 import java.net.URLClassLoader;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.io.IOException;
 
 /**
  * ClassLoaderProxy capable of loading classes from itself but also from other class loaders
  *
+ * <p>
+ * This class loader is parallel capable.  Loading a class only locks on the
+ * name of that class, so different classes can be loaded from the same module
+ * by many threads at once.
+ *
  * @author Jerome Dochez
  */
 public class ClassLoaderProxy extends URLClassLoader {
 
+    static {
+        try {
+            registerAsParallelCapable();
+        } catch (NoSuchMethodError e) {
+            // Java 6, loading stays serialized on the class loader
+        }
+    }
+
     private final List<ClassLoader> surrogates = new CopyOnWriteArrayList<ClassLoader>();
     private final List<ClassLoaderFacade> facadeSurrogates = new CopyOnWriteArrayList<ClassLoaderFacade>();
+    private final Map<ModuleImpl, ClassLoaderFacade> facadesByModule = new ConcurrentHashMap<ModuleImpl, ClassLoaderFacade>();
+    private final ConcurrentHashMap<String, Object> classLoadingLocks = new ConcurrentHashMap<String, Object>();
 
     /** Creates a new instance of ClassLoader */
     public ClassLoaderProxy(URL[] shared, ClassLoader parent) {
@@ -112,7 +128,19 @@ public class ClassLoaderProxy extends URLClassLoader {
         } catch(ClassNotFoundException cfne) {
             if (followImports) {
                 Class c=null;
+                ClassLoaderFacade owner = getImportedFacade(name, '.');
+                if (owner != null) {
+                    try {
+                        c = owner.getClass(name);
+                    } catch(ClassNotFoundException e) {
+                        // ignored, search all the imports.
+                    }
+                    if (c!=null) {
+                        return c;
+                    }
+                }
                 for (ClassLoaderFacade classLoader : facadeSurrogates) {
+                    if (classLoader == owner) continue;
                     try {
                         c = classLoader.getClass(name);
                     } catch(ClassNotFoundException e) {
@@ -140,21 +168,81 @@ public class ClassLoaderProxy extends URLClassLoader {
     /**
      * {@link #findClass(String)} except the classloader punch-in hack.
      */
-    /*package*/ synchronized Class findClassDirect(String name) throws ClassNotFoundException {
-        Class c = findLoadedClass(name);
-        if(c!=null) return c;
-        try {
-            return super.findClass(name);
-        } catch (NoClassDefFoundError e) {
-            throw new ClassNotFoundException(e.getMessage());
+    /*package*/ Class findClassDirect(String name) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            Class c = findLoadedClass(name);
+            if(c!=null) return c;
+            try {
+                return super.findClass(name);
+            } catch (NoClassDefFoundError e) {
+                throw new ClassNotFoundException(e.getMessage());
+            }
         }
     }
 
+    /**
+     * Returns the lock to hold while loading the given class.  There is one
+     * lock per class name, which is also what {@link ClassLoader} uses when
+     * running on Java 7 or later.
+     *
+     * @param className the name of the class being loaded
+     * @return the lock for the class name
+     */
+    protected Object getClassLoadingLock(String className) {
+        Object lock = classLoadingLocks.get(className);
+        if (lock != null) return lock;
+
+        Object newLock = new Object();
+        lock = classLoadingLocks.putIfAbsent(className, newLock);
+        return (lock != null) ? lock : newLock;
+    }
+
+    /**
+     * Returns the module that holds the given package, if known.  The class
+     * loader then looks for classes and resources of that package in that
+     * module before searching its other imports.
+     *
+     * @param packageName the '.' separated package name
+     * @return the module holding the package or null if not known
+     */
+    protected ModuleImpl getPackageOwner(String packageName) {
+        return null;
+    }
+
+    /**
+     * Finds the imported module facade that holds the package of the given
+     * class or resource name.
+     */
+    private ClassLoaderFacade getImportedFacade(String name, char separator) {
+        if (facadesByModule.isEmpty()) return null;
+
+        int idx = name.lastIndexOf(separator);
+        if (idx <= 0) return null;
+
+        String packageName = name.substring(0, idx);
+        if (separator != '.') {
+            packageName = packageName.replace(separator, '.');
+        }
+
+        ModuleImpl owner = getPackageOwner(packageName);
+        if (owner == null) return null;
+
+        return facadesByModule.get(owner);
+    }
+
     public URL findResource(String name) {
         URL url = super.findResource(name);
         if (url!=null)  return url;
 
+        ClassLoaderFacade owner = getImportedFacade(name, '/');
+        if (owner != null) {
+            url = owner.findResourceDirect(name);
+            if (url!=null) {
+                return url;
+            }
+        }
         for (ClassLoaderFacade classLoader : facadeSurrogates) {
+            if (classLoader == owner) continue;
             url = classLoader.findResourceDirect(name);
             if (url!=null) {
                 return url;
@@ -202,7 +290,11 @@ public class ClassLoaderProxy extends URLClassLoader {
 
     public void addDelegate(ClassLoader cl) {
         if (cl instanceof ClassLoaderFacade) {
-            facadeSurrogates.add((ClassLoaderFacade) cl);
+            ClassLoaderFacade facade = (ClassLoaderFacade) cl;
+            facadeSurrogates.add(facade);
+            if (!facadesByModule.containsKey(facade.getOwner())) {
+                facadesByModule.put(facade.getOwner(), facade);
+            }
         } else {
             surrogates.add(cl);
         }
@@ -210,7 +302,11 @@ public class ClassLoaderProxy extends URLClassLoader {
 
     public void removeDelegate(ClassLoader cl) {
         if (cl instanceof ClassLoaderFacade) {
-            facadeSurrogates.remove(cl);
+            ClassLoaderFacade facade = (ClassLoaderFacade) cl;
+            facadeSurrogates.remove(facade);
+            if (facadesByModule.get(facade.getOwner()) == facade) {
+                facadesByModule.remove(facade.getOwner());
+            }
         } else {
             surrogates.remove(cl);
         }
@@ -228,6 +324,7 @@ public class ClassLoaderProxy extends URLClassLoader {
     public void stop() {
        surrogates.clear();
        facadeSurrogates.clear();
+       facadesByModule.clear();
     }
 
     public String toString() {
@@ -58,13 +58,23 @@ import java.util.Vector;
  * @author dochez
  */
 final class ModuleClassLoader extends ClassLoaderProxy {
-    
+
+    static {
+        try {
+            registerAsParallelCapable();
+        } catch (NoSuchMethodError e) {
+            // Java 6, loading stays serialized on the class loader
+        }
+    }
+
     private final ModuleImpl module;
 
     /**
      * Module will be initialized when this classloader is consulted for the first time.
      */
     private volatile boolean initialized = false;
+    /** The thread inside module.start(), guarded by this */
+    private Thread startingThread;
     private StackTraceElement[] initializerThread;
     private String initializerClassName;
 
@@ -80,11 +90,16 @@ final class ModuleClassLoader extends ClassLoaderProxy {
     }
 
 
-    protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
         initialize(name);
         return super.loadClass(name, resolve);
     }
 
+    @Override
+    protected ModuleImpl getPackageOwner(String packageName) {
+        return module.getRegistry().getPackageOwner(packageName);
+    }
+
     protected Class<?> findClass(String name) throws ClassNotFoundException {
         try {
             return super.findClass(name);
@@ -151,19 +166,31 @@ final class ModuleClassLoader extends ClassLoaderProxy {
 
     /**
      * Lazily initialize this module if not done so yet.
+     * Since loadClass is not synchronized, initialized is only set once
+     * the module has been started.  Until then every other thread waits
+     * here, while the thread starting the module may load from it
      */
     private void initialize(String name) {
         if (initialized)    return;
 
         synchronized(this) {
             if(!initialized) {
+                // the thread starting the module is loading classes for it
+                if (startingThread == Thread.currentThread()) {
+                    return;
+                }
                 // if we are preparing, we should just not initiate initialization.
                 if (module.getState().equals(ModuleState.PREPARING)) {
                     return;
                 }
-                initialized = true;
 
-                module.start();
+                startingThread = Thread.currentThread();
+                try {
+                    module.start();
+                } finally {
+                    startingThread = null;
+                    initialized = true;
+                }
                 // remember who started us to assist debugging.
                 initializerThread = Thread.currentThread().getStackTrace();
                 initializerClassName = name;
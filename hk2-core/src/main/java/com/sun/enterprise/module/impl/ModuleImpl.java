@@ -375,6 +375,7 @@ public final class ModuleImpl implements Module {
 
         //Logger.global.info("Module " + getName() + " resolved");
         state = ModuleState.RESOLVED;
+        registry.indexPackages(this);
         for (ModuleLifecycleListener l : registry.getLifecycleListeners()) {
             l.moduleResolved(this);
         }
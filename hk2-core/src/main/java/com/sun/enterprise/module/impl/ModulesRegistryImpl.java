@@ -126,6 +126,11 @@ public class ModulesRegistryImpl extends AbstractModulesRegistryImpl {
         return ModuleImpl.class.cast(super.getProvidingModule(providerClassName));
     }
 
+    @Override
+    public ModuleImpl getPackageOwner(String packageName) {
+        return ModuleImpl.class.cast(super.getPackageOwner(packageName));
+    }
+
     /**
      * Sets the classloader parenting the class loaders created by the modules
      * associated with this registry.
@@ -0,0 +1,288 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.enterprise.module.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.enterprise.module.ManifestConstants;
+import com.sun.enterprise.module.Module;
+import com.sun.enterprise.module.ModuleLifecycleListener;
+import com.sun.enterprise.module.common_impl.DefaultModuleDefinition;
+
+/**
+ * Tests for the package index used by {@link ModuleClassLoader}
+ *
+ * @author jwells
+ */
+public class ModuleClassLoaderTest {
+    private static final long WAIT_SECONDS = 20;
+    private static final long WAIT_MILLIS_FOR_OTHER_THREAD = 500;
+    
+    private File root;
+    private ModulesRegistryImpl registry;
+
+    @Before
+    public void before() throws IOException {
+        HK2Factory.initialize();
+
+        root = File.createTempFile("modules", "");
+        root.delete();
+        root.mkdirs();
+
+        registry = new ModulesRegistryImpl(null);
+        registry.setParentClassLoader(getClass().getClassLoader());
+    }
+
+    @After
+    public void after() {
+        registry.shutdown();
+        delete(root);
+    }
+
+    /**
+     * The module class loaders lock per class name, and are registered
+     * as parallel capable where the JDK can tell
+     */
+    @Test
+    public void testParallelCapable() throws Exception {
+        ModuleImpl alpha = addModule("alpha", "alpha/pkg/alpha.txt");
+        alpha.resolve();
+
+        ModuleClassLoader loader = alpha.getPrivateClassLoader();
+        assertSame(loader.getClassLoadingLock("alpha.pkg.A"), loader.getClassLoadingLock("alpha.pkg.A"));
+        assertNotSame(loader.getClassLoadingLock("alpha.pkg.A"), loader.getClassLoadingLock("alpha.pkg.B"));
+        assertNotSame(loader, loader.getClassLoadingLock("alpha.pkg.A"));
+
+        Method isParallel;
+        try {
+            isParallel = ClassLoader.class.getMethod("isRegisteredAsParallelCapable");
+        }
+        catch (NoSuchMethodException e) {
+            // Only available on Java 9 and later
+            return;
+        }
+
+        assertEquals(Boolean.TRUE, isParallel.invoke(loader));
+        assertEquals(Boolean.TRUE, isParallel.invoke(alpha.getClassLoader()));
+    }
+
+    /**
+     * Resolved modules are indexed by package, and resources of an imported
+     * package are found in the owning module
+     */
+    @Test
+    public void testPackageIndex() throws Exception {
+        ModuleImpl alpha = addModule("alpha", "alpha/pkg/alpha.txt", "shared/alpha.txt");
+        ModuleImpl beta = addModule("beta", "beta/pkg/beta.txt", "shared/beta.txt");
+        ModuleImpl gamma = addModule("gamma", "gamma/gamma.txt");
+        alpha.resolve();
+        beta.resolve();
+        gamma.addImport(alpha);
+        gamma.addImport(beta);
+        gamma.resolve();
+
+        assertSame(alpha, registry.getPackageOwner("alpha.pkg"));
+        assertSame(beta, registry.getPackageOwner("beta.pkg"));
+        assertSame(gamma, registry.getPackageOwner("gamma"));
+
+        // In more than one module, so not indexed
+        assertNull(registry.getPackageOwner("shared"));
+        assertNull(registry.getPackageOwner("META-INF"));
+
+        ModuleClassLoader loader = gamma.getPrivateClassLoader();
+        assertFound(loader.getResource("alpha/pkg/alpha.txt"), "alpha");
+        assertFound(loader.getResource("beta/pkg/beta.txt"), "beta");
+        assertFound(loader.getResource("shared/alpha.txt"), "alpha");
+        assertFound(loader.getResource("shared/beta.txt"), "beta");
+        assertNull(loader.getResource("alpha/pkg/beta.txt"));
+
+        registry.remove(beta);
+        assertNull(registry.getPackageOwner("beta.pkg"));
+        assertSame(alpha, registry.getPackageOwner("alpha.pkg"));
+    }
+
+    /**
+     * While one thread is starting the module other threads wait before
+     * using its class loader, but the starting thread can use it
+     */
+    @Test
+    public void testOtherThreadsWaitForStart() throws Exception {
+        final ModuleImpl alpha = addModule("alpha", "alpha/pkg/alpha.txt");
+        alpha.resolve();
+        
+        final ModuleClassLoader loader = alpha.getPrivateClassLoader();
+        final CountDownLatch starting = new CountDownLatch(1);
+        final CountDownLatch finishStart = new CountDownLatch(1);
+        final AtomicReference<URL> fromStartingThread = new AtomicReference<URL>();
+        
+        registry.register(new ModuleLifecycleListener() {
+            
+            @Override
+            public void moduleStarted(Module module) {
+                if (module != alpha) return;
+                
+                fromStartingThread.set(loader.getResource("alpha/pkg/alpha.txt"));
+                starting.countDown();
+                
+                try {
+                    finishStart.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            
+            @Override
+            public void moduleInstalled(Module module) {
+            }
+            
+            @Override
+            public void moduleResolved(Module module) {
+            }
+            
+            @Override
+            public void moduleStopped(Module module) {
+            }
+            
+            @Override
+            public void moduleUpdated(Module module) {
+            }
+            
+        });
+        
+        final AtomicReference<URL> fromOtherThread = new AtomicReference<URL>();
+        Thread startingThread = new Thread() {
+            @Override
+            public void run() {
+                loader.getResource("alpha/pkg/alpha.txt");
+            }
+        };
+        Thread otherThread = new Thread() {
+            @Override
+            public void run() {
+                fromOtherThread.set(loader.getResource("alpha/pkg/alpha.txt"));
+            }
+        };
+        
+        startingThread.start();
+        try {
+            assertTrue(starting.await(WAIT_SECONDS, TimeUnit.SECONDS));
+            assertFound(fromStartingThread.get(), "alpha");
+            
+            otherThread.start();
+            otherThread.join(WAIT_MILLIS_FOR_OTHER_THREAD);
+            assertTrue("Module was used before it was started", otherThread.isAlive());
+            assertNull(fromOtherThread.get());
+        }
+        finally {
+            finishStart.countDown();
+        }
+        
+        startingThread.join();
+        otherThread.join();
+        
+        assertFound(fromOtherThread.get(), "alpha");
+    }
+    
+    private void assertFound(URL url, String moduleName) {
+        assertNotNull(url);
+        assertTrue(url.toString(), url.toString().contains("/" + moduleName + "/"));
+    }
+
+    private ModuleImpl addModule(String name, String... resources) throws IOException {
+        File dir = new File(root, name);
+
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue(ManifestConstants.BUNDLE_NAME, name);
+
+        File manifestFile = new File(dir, JarFile.MANIFEST_NAME);
+        manifestFile.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(manifestFile);
+        try {
+            manifest.write(out);
+        }
+        finally {
+            out.close();
+        }
+
+        for (String resource : resources) {
+            File file = new File(dir, resource);
+            file.getParentFile().mkdirs();
+            out = new FileOutputStream(file);
+            try {
+                out.write(name.getBytes("UTF-8"));
+            }
+            finally {
+                out.close();
+            }
+        }
+
+        return (ModuleImpl) registry.add(new DefaultModuleDefinition(dir), false);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
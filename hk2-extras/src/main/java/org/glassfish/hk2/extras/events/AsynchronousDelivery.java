@@ -0,0 +1,96 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.extras.events;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * When using the TopicDistributionService added with
+ * {@link org.glassfish.hk2.extras.ExtrasUtilities#enableTopicDistribution(org.glassfish.hk2.api.ServiceLocator)}
+ * a subscription method (a method with a parameter marked with
+ * {@link org.glassfish.hk2.api.messaging.SubscribeTo}) that has this
+ * annotation will not be called on the thread that published the message.
+ * Instead the message is queued and delivered later by a thread of the
+ * {@link DefaultTopicDistributionExecutor}.  When placed on a class all
+ * subscription methods of that class are delivered asynchronously
+ * <p>
+ * Messages for one subscription method are always delivered in the order
+ * in which they were published, and consecutive messages are delivered
+ * in batches of at most {@link #maxBatchSize()} on one thread.  When more
+ * than {@link #maxPending()} messages are waiting for a subscription method
+ * the publisher will wait until the subscriber has caught up.
+ * <p>
+ * Failures of asynchronous subscribers are reported to the
+ * {@link DefaultTopicDistributionErrorService} once per failed message
+ * 
+ * @author jwells
+ *
+ */
+@Target({ METHOD, TYPE })
+@Retention(RUNTIME)
+@Documented
+public @interface AsynchronousDelivery {
+    /**
+     * The number of messages that may be waiting to be delivered
+     * to the subscription method before publishers must wait
+     * 
+     * @return The maximum number of undelivered messages, must be
+     * greater than zero
+     */
+    public int maxPending() default 1024;
+    
+    /**
+     * The largest number of messages delivered to the subscription
+     * method in one go before the delivery thread is given back
+     * to the executor
+     * 
+     * @return The maximum number of messages delivered in one batch,
+     * must be greater than zero
+     */
+    public int maxBatchSize() default 64;
+
+}
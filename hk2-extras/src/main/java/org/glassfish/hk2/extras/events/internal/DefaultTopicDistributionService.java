@@ -45,14 +45,24 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
@@ -80,7 +90,9 @@ import org.glassfish.hk2.api.messaging.MessageReceiver;
 import org.glassfish.hk2.api.messaging.SubscribeTo;
 import org.glassfish.hk2.api.messaging.Topic;
 import org.glassfish.hk2.api.messaging.TopicDistributionService;
+import org.glassfish.hk2.extras.events.AsynchronousDelivery;
 import org.glassfish.hk2.extras.events.DefaultTopicDistributionErrorService;
+import org.glassfish.hk2.extras.events.DefaultTopicDistributionExecutor;
 import org.glassfish.hk2.utilities.InjecteeImpl;
 import org.glassfish.hk2.utilities.MethodParameterImpl;
 import org.glassfish.hk2.utilities.reflection.ClassReflectionHelper;
@@ -114,9 +126,21 @@ public class DefaultTopicDistributionService implements
     @Inject
     private ServiceLocator locator;
     
+    private final static int MAX_DELIVERY_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private final static ThreadPoolExecutor DEFAULT_EXECUTOR = new ThreadPoolExecutor(MAX_DELIVERY_THREADS, MAX_DELIVERY_THREADS,
+            60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new DeliveryThreadFactory());
+    static {
+        DEFAULT_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+    
     @Inject
     private IterableProvider<DefaultTopicDistributionErrorService> errorHandlers;
     
+    @Inject
+    private IterableProvider<DefaultTopicDistributionExecutor> executors;
+    
     @Inject @Self
     private ActiveDescriptor<TopicDistributionService> selfDescriptor;
     
@@ -124,32 +148,33 @@ public class DefaultTopicDistributionService implements
     private final HashMap<ActiveDescriptor<?>, Set<Class<?>>> descriptor2Classes = new HashMap<ActiveDescriptor<?>, Set<Class<?>>>();
     private final HashMap<ActivatorClassKey, List<SubscriberInfo>> class2Subscribers = new HashMap<ActivatorClassKey, List<SubscriberInfo>>();
     
+    /** Every known subscriber, in the order they were found */
+    private final Set<SubscriberInfo> allSubscribers = new LinkedHashSet<SubscriberInfo>();
+    
+    /**
+     * Maps a topic type plus topic qualifiers to the subscribers that should get
+     * messages sent to that topic.  Entries are created by the first publish to a topic
+     * and are kept up to date as subscribers come and go, so that the cost of a publish
+     * is the number of interested subscribers rather than the number of all subscribers
+     */
+    private final ConcurrentHashMap<TopicKey, List<SubscriberInfo>> topic2Subscribers = new ConcurrentHashMap<TopicKey, List<SubscriberInfo>>();
+    
     private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
     private final WriteLock wLock = readWriteLock.writeLock();
     private final ReadLock rLock = readWriteLock.readLock();
     
     private void fire(Object message, Method subscription, SubscriberInfo subscriptionInfo, Object target, ServiceLocator locator) throws Throwable {
-        List<MethodParameter> mps = new ArrayList<MethodParameter>(subscriptionInfo.otherInjectees.length);
-        
-        
-        for (int lcv = 0; lcv < subscriptionInfo.otherInjectees.length; lcv++) {
-            InjecteeImpl injectee = subscriptionInfo.otherInjectees[lcv];
-            if (injectee == null) {
-                mps.add(new MethodParameterImpl(lcv, message));
-            }
-            else {
-                if (injectee.isSelf()) {
-                    mps.add(new MethodParameterImpl(lcv, injectee.getInjecteeDescriptor()));
-                    continue;
-                }
-            }
-        }
+        SubscriptionParameters parameters = new SubscriptionParameters(subscriptionInfo);
             
         // OK, everything filled in!
         ServiceHandle<TopicDistributionService> handle = locator.getServiceHandle(selfDescriptor);
             
-        locator.assistedInject(target, subscription, handle, mps.toArray(new MethodParameter[mps.size()]));
-            
+        locator.assistedInject(target, subscription, handle, parameters.forMessage(message));
+        
+        destroyPerLookupSubHandles(handle);
+    }
+    
+    private static void destroyPerLookupSubHandles(ServiceHandle<?> handle) {
         List<ServiceHandle<?>> subHandles = handle.getSubHandles();
         for (ServiceHandle<?> subHandle : subHandles) {
             ActiveDescriptor<?> ad = subHandle.getActiveDescriptor();
@@ -161,61 +186,95 @@ public class DefaultTopicDistributionService implements
         }
     }
     
-    private List<FireResults> handleDescriptorToClass(ActiveDescriptor<?> descriptor, Class<?> clazz, Type eventType, Topic<?> topic) {
-        LinkedList<FireResults> retVal = new LinkedList<FireResults>();
-        
-        List<SubscriberInfo> subscribers = class2Subscribers.get(new ActivatorClassKey(descriptor, clazz));
-        if (subscribers == null) subscribers = Collections.emptyList();
+    private static boolean isSubscribed(SubscriberInfo subscriberInfo, Type eventType, Set<Annotation> topicQualifiers) {
+        Type subscriptionType = subscriberInfo.eventType;
         
-        for (SubscriberInfo subscriberInfo : subscribers) {    
-            Type subscriptionType = subscriberInfo.eventType;
+        if (!TypeChecker.isRawTypeSafe(subscriptionType, eventType)) {
+            // Not a type match
+            return false;
+        }
             
-            if (!TypeChecker.isRawTypeSafe(subscriptionType, eventType)) {
-                // Not a type match
-                continue;
+        if (!subscriberInfo.eventQualifiers.isEmpty()) {
+            if (!ReflectionHelper.annotationContainsAll(topicQualifiers, subscriberInfo.eventQualifiers)) {
+                // The qualifiers do not match
+                return false;
             }
-                
-            if (!subscriberInfo.eventQualifiers.isEmpty()) {
-                if (!ReflectionHelper.annotationContainsAll(topic.getTopicQualifiers(), subscriberInfo.eventQualifiers)) {
-                    // The qualifiers do not match
-                    continue;
-                }
+        }
+        
+        if ((subscriberInfo.unqualified != null) && !topicQualifiers.isEmpty()) {
+            if (subscriberInfo.unqualified.value().length == 0) {
+                // publisher must not have any qualifiers,
+                // but it DOES have some, so forget it!
+                return false;
             }
             
-            if ((subscriberInfo.unqualified != null) && !topic.getTopicQualifiers().isEmpty()) {
-                if (subscriberInfo.unqualified.value().length == 0) {
-                    // publisher must not have any qualifiers,
-                    // but it DOES have some, so forget it!
-                    continue;
-                }
+            Set<Class<? extends Annotation>> topicQualifierClasses = new HashSet<Class<? extends Annotation>>();
+            for (Annotation topicQualifier : topicQualifiers) {
+                topicQualifierClasses.add(topicQualifier.annotationType());
+            }
                 
-                Set<Class<? extends Annotation>> topicQualifierClasses = new HashSet<Class<? extends Annotation>>();
-                for (Annotation topicQualifier : topic.getTopicQualifiers()) {
-                    topicQualifierClasses.add(topicQualifier.annotationType());
-                }
-                    
-                boolean found = false;
-                for (Class<? extends Annotation> verbotenQualifier : subscriberInfo.unqualified.value()) {
-                    if (topicQualifierClasses.contains(verbotenQualifier)) {
-                        found = true;
-                        break;
-                    }
-                }
-                    
-                if (found) {
+            for (Class<? extends Annotation> verbotenQualifier : subscriberInfo.unqualified.value()) {
+                if (topicQualifierClasses.contains(verbotenQualifier)) {
                     // Found one of the qualifiers we are not allowed to have!
-                    continue;
+                    return false;
                 }
             }
-            
-            for (WeakReference<Object> targetReference : subscriberInfo.targets) {
-                Object target = targetReference.get();
-                retVal.add(new FireResults(subscriberInfo.method, subscriberInfo, target));
-            }    
         }
         
+        return true;
+    }
+    
+    /**
+     * Gets the subscribers for the given topic, indexing them if this is
+     * the first time a message has been sent to this topic.  The read
+     * lock must be held
+     */
+    private List<SubscriberInfo> getSubscribers(TopicKey topicKey) {
+        List<SubscriberInfo> retVal = topic2Subscribers.get(topicKey);
+        if (retVal != null) return retVal;
+        
+        retVal = new ArrayList<SubscriberInfo>();
+        for (SubscriberInfo subscriberInfo : allSubscribers) {
+            if (isSubscribed(subscriberInfo, topicKey.eventType, topicKey.topicQualifiers)) {
+                retVal.add(subscriberInfo);
+            }
+        }
+        
+        // Writers are excluded by the read lock, so any other thread computed the same list
+        List<SubscriberInfo> existing = topic2Subscribers.putIfAbsent(topicKey, retVal);
+        if (existing != null) return existing;
+        
         return retVal;
     }
+    
+    /**
+     * Adds a new subscriber to the index.  The write lock must be held
+     */
+    private void addSubscriber(SubscriberInfo subscriberInfo) {
+        allSubscribers.add(subscriberInfo);
+        
+        for (Map.Entry<TopicKey, List<SubscriberInfo>> entry : topic2Subscribers.entrySet()) {
+            TopicKey topicKey = entry.getKey();
+            
+            if (isSubscribed(subscriberInfo, topicKey.eventType, topicKey.topicQualifiers)) {
+                entry.getValue().add(subscriberInfo);
+            }
+        }
+    }
+    
+    /**
+     * Removes subscribers from the index.  The write lock must be held
+     */
+    private void removeSubscribers(Collection<SubscriberInfo> subscriberInfos) {
+        if (subscriberInfos.isEmpty()) return;
+        
+        Set<SubscriberInfo> removeMe = new HashSet<SubscriberInfo>(subscriberInfos);
+        
+        allSubscribers.removeAll(removeMe);
+        for (List<SubscriberInfo> subscribers : topic2Subscribers.values()) {
+            subscribers.removeAll(removeMe);
+        }
+    }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.api.messaging.TopicDistributionService#distributeMessage(org.glassfish.hk2.api.messaging.Topic, java.lang.Object)
@@ -223,14 +282,15 @@ public class DefaultTopicDistributionService implements
     @Override
     public void distributeMessage(Topic<?> topic, Object message) {
         
-        Type eventType = topic.getTopicType();
+        TopicKey topicKey = new TopicKey(topic.getTopicType(), topic.getTopicQualifiers());
         
         LinkedList<FireResults> fireResults = new LinkedList<FireResults>();
         rLock.lock();
         try {
-            for (Map.Entry<ActiveDescriptor<?>, Set<Class<?>>> d2cEntry : descriptor2Classes.entrySet()) {
-                for (Class<?> clazz : d2cEntry.getValue()) {
-                    fireResults.addAll(handleDescriptorToClass(d2cEntry.getKey(), clazz, eventType, topic));
+            for (SubscriberInfo subscriberInfo : getSubscribers(topicKey)) {
+                for (WeakReference<Object> targetReference : subscriberInfo.targets) {
+                    Object target = targetReference.get();
+                    fireResults.add(new FireResults(subscriberInfo.method, subscriberInfo, target));
                 }
             }
         }
@@ -246,6 +306,9 @@ public class DefaultTopicDistributionService implements
             if (fireResult.target == null) {
                 hasDeadReferences.add(fireResult.subscriberInfo);
             }
+            else if (fireResult.subscriberInfo.mailbox != null) {
+                fireResult.subscriberInfo.mailbox.offer(new Delivery(topic, message, fireResult));
+            }
             else {
                 try {
                     fire(message,
@@ -266,18 +329,7 @@ public class DefaultTopicDistributionService implements
         }
         
         if (errors != null) {
-            for (ServiceHandle<DefaultTopicDistributionErrorService> handle : errorHandlers.handleIterator()) {
-                try {
-                    handle.getService().subscribersFailed(topic, message, errors);
-                    
-                    if (handle.getActiveDescriptor().getScope().equals(PerLookup.class.getName())) {
-                        handle.destroy();
-                    }
-                }
-                catch (Throwable ignore) {
-                    // ignore it
-                }
-            }
+            reportErrors(topic, message, errors);
         }
         
         if (!hasDeadReferences.isEmpty()) {
@@ -302,6 +354,62 @@ public class DefaultTopicDistributionService implements
         
     }
 
+    private void reportErrors(Topic<?> topic, Object message, MultiException errors) {
+        for (ServiceHandle<DefaultTopicDistributionErrorService> handle : errorHandlers.handleIterator()) {
+            try {
+                handle.getService().subscribersFailed(topic, message, errors);
+                
+                if (handle.getActiveDescriptor().getScope().equals(PerLookup.class.getName())) {
+                    handle.destroy();
+                }
+            }
+            catch (Throwable ignore) {
+                // ignore it
+            }
+        }
+    }
+    
+    private Executor getExecutor() {
+        Executor retVal = executors.get();
+        if (retVal == null) return DEFAULT_EXECUTOR;
+        
+        return retVal;
+    }
+    
+    /**
+     * Delivers one batch of queued messages to an asynchronous subscriber.  Each
+     * message is delivered on its own, so a failure of one message does not stop
+     * the delivery of the following messages.  All the messages of a mailbox are
+     * for the same subscription, so the handle and the parameters are set up once
+     * for the batch, and any PerLookup services created for the parameters are
+     * destroyed once the whole batch has been delivered
+     */
+    private void deliver(List<Delivery> batch) {
+        if (batch.isEmpty()) return;
+        
+        SubscriptionParameters parameters = new SubscriptionParameters(batch.get(0).fireResult.subscriberInfo);
+        ServiceHandle<TopicDistributionService> handle = locator.getServiceHandle(selfDescriptor);
+        
+        try {
+            for (Delivery delivery : batch) {
+                FireResults fireResult = delivery.fireResult;
+                
+                try {
+                    locator.assistedInject(fireResult.target,
+                            fireResult.subscriberMethod,
+                            handle,
+                            parameters.forMessage(delivery.message));
+                }
+                catch (Throwable th) {
+                    reportErrors(delivery.topic, delivery.message, new MultiException(th));
+                }
+            }
+        }
+        finally {
+            destroyPerLookupSubHandles(handle);
+        }
+    }
+
     @Override
     public Filter getFilter() {
         return SUBSCRIBER_FILTER;
@@ -402,7 +510,14 @@ public class DefaultTopicDistributionService implements
             SubscriberInfo si = generateSubscriberInfo(descriptor, methodWrapper.getMethod(), useMethod, foundPosition, paramAnnotations);
             si.targets.add(new WeakReference<Object>(target));
             
+            AsynchronousDelivery asynchronous = methodWrapper.getMethod().getAnnotation(AsynchronousDelivery.class);
+            if (asynchronous == null) asynchronous = resolvedClass.getAnnotation(AsynchronousDelivery.class);
+            if (asynchronous != null) {
+                si.mailbox = new SubscriberMailbox(asynchronous.maxPending(), asynchronous.maxBatchSize());
+            }
+            
             existingMethods.add(si);
+            addSubscriber(si);
         }
         
     }
@@ -572,7 +687,8 @@ public class DefaultTopicDistributionService implements
                 if (clazzes == null) continue;
                 
                 for (Class<?> clazz : clazzes) {
-                    class2Subscribers.remove(new ActivatorClassKey(parent, clazz));
+                    List<SubscriberInfo> removed = class2Subscribers.remove(new ActivatorClassKey(parent, clazz));
+                    if (removed != null) removeSubscribers(removed);
                 }
             }
         }
@@ -590,6 +706,7 @@ public class DefaultTopicDistributionService implements
         private final Set<Annotation> eventQualifiers;
         private final Unqualified unqualified;
         private final InjecteeImpl otherInjectees[];  // There will be a null in the slot for the event
+        private SubscriberMailbox mailbox;  // null if this subscriber is synchronous
         
         private SubscriberInfo(Method method,
                 Type eventType,
@@ -617,6 +734,202 @@ public class DefaultTopicDistributionService implements
         
     }
     
+    /**
+     * The parameters given to a subscription method for the message and for
+     * any {@link Self} parameters.  The same parameters are used for every
+     * message of a batch, only the message parameter is replaced
+     * 
+     * @author jwells
+     *
+     */
+    private static class SubscriptionParameters {
+        private final MethodParameter parameters[];
+        private final int messageIndex;
+        private final int messagePosition;
+        
+        private SubscriptionParameters(SubscriberInfo subscriptionInfo) {
+            List<MethodParameter> mps = new ArrayList<MethodParameter>(subscriptionInfo.otherInjectees.length);
+            
+            int index = -1;
+            int position = -1;
+            for (int lcv = 0; lcv < subscriptionInfo.otherInjectees.length; lcv++) {
+                InjecteeImpl injectee = subscriptionInfo.otherInjectees[lcv];
+                if (injectee == null) {
+                    index = mps.size();
+                    position = lcv;
+                    mps.add(null);
+                }
+                else if (injectee.isSelf()) {
+                    mps.add(new MethodParameterImpl(lcv, injectee.getInjecteeDescriptor()));
+                }
+            }
+            
+            parameters = mps.toArray(new MethodParameter[mps.size()]);
+            messageIndex = index;
+            messagePosition = position;
+        }
+        
+        private MethodParameter[] forMessage(Object message) {
+            if (messageIndex >= 0) {
+                parameters[messageIndex] = new MethodParameterImpl(messagePosition, message);
+            }
+            
+            return parameters;
+        }
+    }
+    
+    private static class Delivery {
+        private final Topic<?> topic;
+        private final Object message;
+        private final FireResults fireResult;
+        
+        private Delivery(Topic<?> topic, Object message, FireResults fireResult) {
+            this.topic = topic;
+            this.message = message;
+            this.fireResult = fireResult;
+        }
+    }
+    
+    /**
+     * The queue of messages waiting for one asynchronous subscriber.  At
+     * most one task per mailbox is given to the executor at any time,
+     * which keeps the messages for the subscriber in publish order.  When
+     * the mailbox is full publishers wait, unless the publisher is the
+     * thread currently delivering from this mailbox
+     * 
+     * @author jwells
+     *
+     */
+    private class SubscriberMailbox implements Runnable {
+        private final int maxPending;
+        private final int maxBatchSize;
+        private final LinkedList<Delivery> pending = new LinkedList<Delivery>();
+        private boolean scheduled;
+        private Thread deliveryThread;
+        
+        /** Resolved when the mailbox is scheduled and used until it is empty again */
+        private volatile Executor executor;
+        
+        private SubscriberMailbox(int maxPending, int maxBatchSize) {
+            this.maxPending = Math.max(1, maxPending);
+            this.maxBatchSize = Math.max(1, maxBatchSize);
+        }
+        
+        private void offer(Delivery delivery) {
+            synchronized (this) {
+                while (pending.size() >= maxPending && deliveryThread != Thread.currentThread()) {
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException ie) {
+                        // Give up waiting, but keep the message
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                
+                pending.add(delivery);
+                if (scheduled) return;
+                
+                scheduled = true;
+            }
+            
+            schedule();
+        }
+        
+        private void schedule() {
+            executor = getExecutor();
+            
+            try {
+                executor.execute(this);
+            }
+            catch (RejectedExecutionException ree) {
+                // Deliver on this thread instead
+                run();
+            }
+        }
+
+        @Override
+        public void run() {
+            for (;;) {
+                List<Delivery> batch = new ArrayList<Delivery>(Math.min(maxBatchSize, maxPending));
+                synchronized (this) {
+                    while (!pending.isEmpty() && batch.size() < maxBatchSize) {
+                        batch.add(pending.removeFirst());
+                    }
+                    
+                    deliveryThread = Thread.currentThread();
+                    notifyAll();
+                }
+                
+                // Failures are reported by deliver, it does not throw
+                deliver(batch);
+                
+                synchronized (this) {
+                    deliveryThread = null;
+                    
+                    if (pending.isEmpty()) {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                
+                try {
+                    // Give other subscribers a turn before the next batch
+                    executor.execute(this);
+                    return;
+                }
+                catch (RejectedExecutionException ree) {
+                    // Deliver the next batch on this thread
+                }
+            }
+        }
+    }
+    
+    private static class DeliveryThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread retVal = new Thread(runnable, "HK2-TopicDelivery-" + threadNumber.getAndIncrement());
+            retVal.setDaemon(true);
+            
+            return retVal;
+        }
+    }
+    
+    /**
+     * The key of the subscriber index, made up of the type of a
+     * topic and the qualifiers of that topic
+     * 
+     * @author jwells
+     *
+     */
+    private static class TopicKey {
+        private final Type eventType;
+        private final Set<Annotation> topicQualifiers;
+        private final int hashCode;
+        
+        private TopicKey(Type eventType, Set<Annotation> topicQualifiers) {
+            this.eventType = eventType;
+            this.topicQualifiers = Collections.unmodifiableSet(new HashSet<Annotation>(topicQualifiers));
+            this.hashCode = eventType.hashCode() ^ this.topicQualifiers.hashCode();
+        }
+        
+        public int hashCode() {
+            return hashCode;
+        }
+        
+        public boolean equals(Object o) {
+            if (o == null) return false;
+            if (!(o instanceof TopicKey)) return false;
+            
+            TopicKey other = (TopicKey) o;
+            
+            return eventType.equals(other.eventType) && topicQualifiers.equals(other.topicQualifiers);
+        }
+    }
+    
     /**
      * This is here to handle the case where a PerLookup Factory (or the like)
      * could possibly return different classes every time it is looked up.  For
@@ -40,12 +40,10 @@
 package org.glassfish.hk2.extras.operation;
 
 import java.lang.annotation.Annotation;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.LinkedList;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.Context;
@@ -84,11 +82,16 @@ import org.jvnet.hk2.annotations.Contract;
  */
 @Contract
 public abstract class OperationContext<T extends Annotation> implements Context<T> {
-    private SingleOperationManager<T> manager;
-    private final HashMap<OperationHandleImpl<T>, LinkedHashMap<ActiveDescriptor<?>, Object>> operationMap =
-            new HashMap<OperationHandleImpl<T>, LinkedHashMap<ActiveDescriptor<?>, Object>>();
+    /** Stands in for a null service, which the service maps can not hold */
+    private final static Object NULL_SERVICE = new Object();
+    
+    private volatile SingleOperationManager<T> manager;
+    /** Read without a lock, only modified with the lock of this context held */
+    private final ConcurrentHashMap<OperationHandleImpl<T>, OperationServices> operationMap =
+            new ConcurrentHashMap<OperationHandleImpl<T>, OperationServices>();
     private final HashSet<ActiveDescriptor<?>> creating = new HashSet<ActiveDescriptor<?>>();
-    private final HashMap<Long, LinkedList<OperationHandleImpl<T>>> closingOperations = new HashMap<Long, LinkedList<OperationHandleImpl<T>>>();
+    /** Each stack is only ever touched by the thread whose id keys it */
+    private final ConcurrentHashMap<Long, LinkedList<OperationHandleImpl<T>>> closingOperations = new ConcurrentHashMap<Long, LinkedList<OperationHandleImpl<T>>>();
     private boolean shuttingDown = false;
 
     /* (non-Javadoc)
@@ -98,15 +101,9 @@ public abstract class OperationContext<T extends Annotation> implements Context<
     @Override
     public <U> U findOrCreate(ActiveDescriptor<U> activeDescriptor,
             ServiceHandle<?> root) {
-        SingleOperationManager<T> localManager;
-        LinkedList<OperationHandleImpl<T>> closingOperationStack;
-        boolean closingOperation;
-        
-        synchronized (this) {
-            localManager = manager;
-            closingOperationStack = closingOperations.get(Thread.currentThread().getId());
-            closingOperation = (closingOperationStack != null && !closingOperationStack.isEmpty());
-        }
+        SingleOperationManager<T> localManager = manager;
+        LinkedList<OperationHandleImpl<T>> closingOperationStack = closingOperations.get(Thread.currentThread().getId());
+        boolean closingOperation = (closingOperationStack != null && !closingOperationStack.isEmpty());
         
         if (localManager == null) {
             throw new IllegalStateException("There is no manager for " +
@@ -115,17 +112,21 @@ public abstract class OperationContext<T extends Annotation> implements Context<
         
         OperationHandleImpl<T> operation = localManager.getCurrentOperationOnThisThread();
         if (operation == null) {
-            synchronized (this) {
-                if (!closingOperation) {
-                    throw new IllegalStateException("There is no current operation of type " +
-                            getScope().getName() + " on thread " + Thread.currentThread().getId());
-                }
-                
-                operation = closingOperationStack.get(0);
+            if (!closingOperation) {
+                throw new IllegalStateException("There is no current operation of type " +
+                        getScope().getName() + " on thread " + Thread.currentThread().getId());
             }
+                
+            operation = closingOperationStack.get(0);
+        }
+        
+        OperationServices serviceMap = operationMap.get(operation);
+        if (serviceMap != null) {
+            // The service has usually already been created, which needs no lock
+            Object retVal = serviceMap.services.get(activeDescriptor);
+            if (retVal != null) return (U) fromService(retVal);
         }
         
-        LinkedHashMap<ActiveDescriptor<?>, Object> serviceMap;
         synchronized (this) {
             serviceMap = operationMap.get(operation);
             if (serviceMap == null) {
@@ -135,16 +136,12 @@ public abstract class OperationContext<T extends Annotation> implements Context<
                             " cannot be created");
                 }
                 
-                serviceMap = new LinkedHashMap<ActiveDescriptor<?>, Object>();
+                serviceMap = new OperationServices();
                 operationMap.put(operation, serviceMap);
             }
             
-            Object retVal = serviceMap.get(activeDescriptor);
-            if (retVal != null) return (U) retVal;
-            
-            if (supportsNullCreation() && serviceMap.containsKey(activeDescriptor)) {
-                return null;
-            }
+            Object retVal = serviceMap.services.get(activeDescriptor);
+            if (retVal != null) return (U) fromService(retVal);
             
             if (closingOperation || shuttingDown) {
                 throw new IllegalStateException("The operation " + operation.getIdentifier() +
@@ -162,12 +159,8 @@ public abstract class OperationContext<T extends Annotation> implements Context<
                 }
             }
             
-            retVal = serviceMap.get(activeDescriptor);
-            if (retVal != null) return (U) retVal;
-            
-            if (supportsNullCreation() && serviceMap.containsKey(activeDescriptor)) {
-                return null;
-            }
+            retVal = serviceMap.services.get(activeDescriptor);
+            if (retVal != null) return (U) fromService(retVal);
             
             // Not in creating, and not created.  Create it ourselves
             creating.add(activeDescriptor);
@@ -187,7 +180,8 @@ public abstract class OperationContext<T extends Annotation> implements Context<
         finally {
             synchronized (this) {
                 if (success) {
-                    serviceMap.put(activeDescriptor, retVal);
+                    serviceMap.services.put(activeDescriptor, (retVal == null) ? NULL_SERVICE : retVal);
+                    serviceMap.creationOrder.add(activeDescriptor);
                 }
                 
                 creating.remove(activeDescriptor);
@@ -203,24 +197,16 @@ public abstract class OperationContext<T extends Annotation> implements Context<
      */
     @Override
     public boolean containsKey(ActiveDescriptor<?> descriptor) {
-        SingleOperationManager<T> localManager;
-        synchronized (this) {
-            localManager = manager;
-        }
+        SingleOperationManager<T> localManager = manager;
         if (localManager == null) return false;
         
         OperationHandleImpl<T> operation = localManager.getCurrentOperationOnThisThread();
         if (operation == null) return false;
         
-        synchronized (this) {
-            HashMap<ActiveDescriptor<?>, Object> serviceMap;
-            
-            serviceMap = operationMap.get(operation);
-            if (serviceMap == null) return false;
-            
-            return serviceMap.containsKey(descriptor);
-        }
+        OperationServices serviceMap = operationMap.get(operation);
+        if (serviceMap == null) return false;
         
+        return serviceMap.services.containsKey(descriptor);
     }
 
     /* (non-Javadoc)
@@ -230,10 +216,13 @@ public abstract class OperationContext<T extends Annotation> implements Context<
     @Override
     public void destroyOne(ActiveDescriptor<?> descriptor) {
         synchronized (this) {
-            for (HashMap<ActiveDescriptor<?>, Object> serviceMap : operationMap.values()) {
-                Object killMe = serviceMap.remove(descriptor);
+            for (OperationServices serviceMap : operationMap.values()) {
+                Object killMe = serviceMap.services.remove(descriptor);
                 if (killMe == null) continue;
                 
+                serviceMap.creationOrder.remove(descriptor);
+                if (killMe == NULL_SERVICE) continue;
+                
                 ((ActiveDescriptor<Object>) descriptor).dispose(killMe);
             }
         }
@@ -242,7 +231,8 @@ public abstract class OperationContext<T extends Annotation> implements Context<
     @SuppressWarnings("unchecked")
     public void closeOperation(OperationHandleImpl<T> operation) {
         long tid = Thread.currentThread().getId();
-        HashMap<ActiveDescriptor<?>, Object> serviceMap;
+        OperationServices serviceMap;
+        LinkedList<ActiveDescriptor<?>> destructionList = new LinkedList<ActiveDescriptor<?>>();
         LinkedList<OperationHandleImpl<T>> stack;
         
         synchronized (this) {
@@ -255,25 +245,26 @@ public abstract class OperationContext<T extends Annotation> implements Context<
             stack.addFirst(operation);
             
             serviceMap = operationMap.get(operation);
+            if (serviceMap != null) {
+                // Reverses creation order
+                for (ActiveDescriptor<?> created : serviceMap.creationOrder) {
+                    destructionList.addFirst(created);
+                }
+            }
         }
         
         try {
             // Must be done outside of the lock
             
             if (serviceMap == null) return;
-        
-            // Reverses creation order
-            LinkedList<Map.Entry<ActiveDescriptor<?>, Object>> destructionList = new LinkedList<Map.Entry<ActiveDescriptor<?>, Object>>();
-            for (Map.Entry<ActiveDescriptor<?>, Object> entry : serviceMap.entrySet()) {
-                destructionList.addFirst(entry);
-            }
             
-            for (Map.Entry<ActiveDescriptor<?>, Object> entry : destructionList) {
-                ActiveDescriptor<Object> desc = (ActiveDescriptor<Object>) entry.getKey();
-                Object value = entry.getValue();
+            for (ActiveDescriptor<?> created : destructionList) {
+                ActiveDescriptor<Object> desc = (ActiveDescriptor<Object>) created;
+                Object value = serviceMap.services.get(desc);
+                if (value == null) continue;
             
                 try {
-                    desc.dispose(value);
+                    desc.dispose(fromService(value));
                 }
                 catch (Throwable th) {
                     Logger.getLogger().debug(getClass().getName(), "closeOperation", th);
@@ -332,7 +323,7 @@ public abstract class OperationContext<T extends Annotation> implements Context<
         return true;
     }
 
-    public synchronized void setOperationManager(SingleOperationManager<T> manager) {
+    public void setOperationManager(SingleOperationManager<T> manager) {
         this.manager = manager;
     }
     
@@ -340,4 +331,19 @@ public abstract class OperationContext<T extends Annotation> implements Context<
     public String toString() {
         return "OperationContext(" + getScope().getName() + "," + System.identityHashCode(this) + ")";
     }
+    
+    private static Object fromService(Object service) {
+        return (service == NULL_SERVICE) ? null : service;
+    }
+    
+    /**
+     * The services created in one operation.  The services are read
+     * without a lock and are only added or removed with the lock of
+     * the context held, which also guards the creation order
+     */
+    private static class OperationServices {
+        private final ConcurrentHashMap<ActiveDescriptor<?>, Object> services =
+                new ConcurrentHashMap<ActiveDescriptor<?>, Object>();
+        private final LinkedList<ActiveDescriptor<?>> creationOrder = new LinkedList<ActiveDescriptor<?>>();
+    }
 }
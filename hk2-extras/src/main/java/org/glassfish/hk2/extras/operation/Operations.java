@@ -0,0 +1,104 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.extras.operation;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * Utilities for working with Operations
+ * 
+ * @author jwells
+ *
+ */
+public class Operations {
+    /**
+     * Returns a Runnable that can be used to hand the given Operation off
+     * to another thread, for example as an asynchronous continuation
+     * given to an executor.  When the returned Runnable is run it
+     * resumes the Operation on the running thread, runs the given
+     * Runnable and then suspends the Operation on the running thread.
+     * If the Operation is already associated with the running thread
+     * it is left associated with that thread afterwards
+     *
+     * @param operation The non-null Operation to run the Runnable within
+     * @param runnable The non-null Runnable to run within the Operation
+     * @return A non-null Runnable that runs the given Runnable within
+     * the Operation on whatever thread it is run on.  Running it will
+     * throw IllegalStateException if the Operation has been closed or
+     * if the running thread is associated with a different Operation of
+     * the same type
+     * @throws IllegalStateException if the Operation is closed
+     */
+    public static <T extends Annotation> Runnable wrap(final OperationHandle<T> operation, final Runnable runnable)
+            throws IllegalStateException {
+        if (operation == null || runnable == null) throw new IllegalArgumentException();
+        if (OperationState.CLOSED.equals(operation.getState())) {
+            throw new IllegalStateException(operation + " is closed");
+        }
+        
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                long threadId = Thread.currentThread().getId();
+                boolean resumedHere = !operation.getActiveThreads().contains(threadId);
+                if (resumedHere) {
+                    operation.resume(threadId);
+                }
+                
+                try {
+                    runnable.run();
+                }
+                finally {
+                    if (resumedHere) {
+                        operation.suspend(threadId);
+                    }
+                }
+            }
+            
+            @Override
+            public String toString() {
+                return "OperationRunnable(" + operation.getIdentifier() + "," + runnable + ")";
+            }
+            
+        };
+    }
+
+}
@@ -41,8 +41,8 @@ package org.glassfish.hk2.extras.operation.internal;
 
 import java.lang.annotation.Annotation;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.extras.operation.OperationHandle;
@@ -50,28 +50,30 @@ import org.glassfish.hk2.extras.operation.OperationIdentifier;
 import org.glassfish.hk2.extras.operation.OperationState;
 
 /**
+ * The state of the operation is derived from the set of
+ * active threads and the closed flag, so it can be read
+ * without a lock.  Changes to the set of active threads
+ * are serialized by a lock private to this handle, which
+ * is never contended by other operations
+ * 
  * @author jwells
  *
  */
 public class OperationHandleImpl<T extends Annotation> implements OperationHandle<T> {
     private final SingleOperationManager<T> parent;
     private final OperationIdentifier<T> identifier;
-    private final Object operationLock;
-    private OperationState state;
-    private final HashSet<Long> activeThreads = new HashSet<Long>();
+    private final Object handleLock = new Object();
+    private final Set<Long> activeThreads = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private volatile boolean closed = false;
     
-    // Not controlled by operationLock
-    private Object userData;
+    private volatile Object userData;
     
     /* package */ OperationHandleImpl(
             SingleOperationManager<T> parent,
             OperationIdentifier<T> identifier,
-            Object operationLock,
             ServiceLocator locator) {
         this.parent = parent;
         this.identifier = identifier;
-        this.operationLock = operationLock;
-        this.state = OperationState.SUSPENDED;
     }
 
     /* (non-Javadoc)
@@ -87,23 +89,21 @@ public class OperationHandleImpl<T extends Annotation> implements OperationHandl
      */
     @Override
     public OperationState getState() {
-        synchronized (operationLock) {
-            return state;
-        }
+        if (closed) return OperationState.CLOSED;
+        
+        return activeThreads.isEmpty() ? OperationState.SUSPENDED : OperationState.ACTIVE;
     }
     
     /**
-     * operationLock must be held
+     * Called when the parent manager is shut down
      */
     /* package */ void shutdownByFiat() {
-        state = OperationState.CLOSED;
+        closed = true;
     }
     
     private void checkState() {
-        synchronized (operationLock) {
-            if (OperationState.CLOSED.equals(state)) {
-                throw new IllegalStateException(this + " is closed");
-            }
+        if (closed) {
+            throw new IllegalStateException(this + " is closed");
         }
     }
 
@@ -112,9 +112,7 @@ public class OperationHandleImpl<T extends Annotation> implements OperationHandl
      */
     @Override
     public Set<Long> getActiveThreads() {
-        synchronized (operationLock) {
-            return Collections.unmodifiableSet(activeThreads);
-        }
+        return Collections.unmodifiableSet(activeThreads);
     }
 
     /* (non-Javadoc)
@@ -122,16 +120,12 @@ public class OperationHandleImpl<T extends Annotation> implements OperationHandl
      */
     @Override
     public void suspend(long threadId) {
-        synchronized (operationLock) {
-            if (OperationState.CLOSED.equals(state)) return;
+        if (closed) return;
+        
+        synchronized (handleLock) {
+            if (!activeThreads.remove(threadId)) return;
             
             parent.disassociateThread(threadId, this);
-            
-            if (activeThreads.remove(threadId)) {
-                if (activeThreads.isEmpty()) {
-                    state = OperationState.SUSPENDED;
-                }
-            }
         }
         
     }
@@ -149,23 +143,21 @@ public class OperationHandleImpl<T extends Annotation> implements OperationHandl
      */
     @Override
     public void resume(long threadId) throws IllegalStateException {
-        synchronized (operationLock) {
+        checkState();
+        
+        if (activeThreads.contains(threadId)) return;
+        
+        synchronized (handleLock) {
             checkState();
             
             if (activeThreads.contains(threadId)) return;
             
-            // Check parent
-            OperationHandleImpl<T> existing = parent.getCurrentOperationOnThisThread(threadId);
-            if (existing != null) {
+            OperationHandleImpl<T> existing = parent.associateWithThread(threadId, this);
+            if (existing != null && existing != this) {
                 throw new IllegalStateException("The operation " + existing + " is active on " + threadId);
             }
             
-            if (activeThreads.isEmpty()) {
-                state = OperationState.ACTIVE;
-            }
             activeThreads.add(threadId);
-            
-            parent.associateWithThread(threadId, this);
         }
         
     }
@@ -177,7 +169,7 @@ public class OperationHandleImpl<T extends Annotation> implements OperationHandl
     public void resume() throws IllegalStateException {
         resume(Thread.currentThread().getId());
     }
-
+    
     /* (non-Javadoc)
      * @see org.glassfish.hk2.extras.operation.OperationHandle#closeOperation()
      */
@@ -186,24 +178,24 @@ public class OperationHandleImpl<T extends Annotation> implements OperationHandl
         // outside the lock
         parent.disposeAllOperationServices(this);
         
-        synchronized (operationLock) {
+        synchronized (handleLock) {
+            closed = true;
+            
             for (long threadId : activeThreads) {
                 parent.disassociateThread(threadId, this);
             }
             
             activeThreads.clear();
-            state = OperationState.CLOSED;
-            parent.closeOperation(this);
         }
         
-        
+        parent.closeOperation(this);
     }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.extras.operation.OperationHandle#getOperationData()
      */
     @Override
-    public synchronized Object getOperationData() {
+    public Object getOperationData() {
         return userData;
     }
 
@@ -211,7 +203,7 @@ public class OperationHandleImpl<T extends Annotation> implements OperationHandl
      * @see org.glassfish.hk2.extras.operation.OperationHandle#setOperationData(java.lang.Object)
      */
     @Override
-    public synchronized void setOperationData(Object data) {
+    public void setOperationData(Object data) {
         userData = data;
     }
     
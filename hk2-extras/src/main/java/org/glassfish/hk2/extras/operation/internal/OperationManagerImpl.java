@@ -41,8 +41,8 @@ package org.glassfish.hk2.extras.operation.internal;
 
 import java.lang.annotation.Annotation;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -57,8 +57,8 @@ import org.glassfish.hk2.extras.operation.OperationManager;
  */
 @Singleton
 public class OperationManagerImpl implements OperationManager {
-    private final HashMap<Class<? extends Annotation>, SingleOperationManager<?>> children =
-            new HashMap<Class<? extends Annotation>, SingleOperationManager<?>>();
+    private final ConcurrentHashMap<Class<? extends Annotation>, SingleOperationManager<?>> children =
+            new ConcurrentHashMap<Class<? extends Annotation>, SingleOperationManager<?>>();
     
     @Inject
     private ServiceLocator locator;
@@ -69,13 +69,16 @@ public class OperationManagerImpl implements OperationManager {
     @SuppressWarnings("unchecked")
     @Override
     public <T extends Annotation> OperationHandle<T> createOperation(T scope) {
-        SingleOperationManager<T> manager;
-        synchronized (this) {
-            manager = (SingleOperationManager<T>) children.get(scope.annotationType());
+        SingleOperationManager<T> manager = (SingleOperationManager<T>) children.get(scope.annotationType());
+        if (manager == null) {
+            // Creating a manager has side effects so it must only be done once
+            synchronized (this) {
+                manager = (SingleOperationManager<T>) children.get(scope.annotationType());
         
-            if (manager == null) {
-                manager = new SingleOperationManager<T>(scope, locator);
-                children.put(scope.annotationType(), manager);
+                if (manager == null) {
+                    manager = new SingleOperationManager<T>(scope, locator);
+                    children.put(scope.annotationType(), manager);
+                }
             }
         }
         
@@ -99,11 +102,8 @@ public class OperationManagerImpl implements OperationManager {
     @SuppressWarnings("unchecked")
     @Override
     public <T extends Annotation> Set<OperationHandle<T>> getCurrentOperations(T scope) {
-        SingleOperationManager<T> manager;
-        synchronized (this) {
-            manager = (SingleOperationManager<T>) children.get(scope.annotationType());
-            if (manager == null) return Collections.emptySet();
-        }
+        SingleOperationManager<T> manager = (SingleOperationManager<T>) children.get(scope.annotationType());
+        if (manager == null) return Collections.emptySet();
         
         return manager.getAllOperations();
     }
@@ -114,11 +114,8 @@ public class OperationManagerImpl implements OperationManager {
     @SuppressWarnings("unchecked")
     @Override
     public <T extends Annotation> OperationHandle<T> getCurrentOperation(T scope) {
-        SingleOperationManager<T> manager;
-        synchronized (this) {
-            manager = (SingleOperationManager<T>) children.get(scope.annotationType());
-            if (manager == null) return null;  
-        }
+        SingleOperationManager<T> manager = (SingleOperationManager<T>) children.get(scope.annotationType());
+        if (manager == null) return null;
         
         return manager.getCurrentOperationOnThisThread();
     }
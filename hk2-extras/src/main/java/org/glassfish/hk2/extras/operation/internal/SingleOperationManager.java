@@ -41,9 +41,11 @@ package org.glassfish.hk2.extras.operation.internal;
 
 import java.lang.annotation.Annotation;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.ServiceLocator;
@@ -53,21 +55,31 @@ import org.glassfish.hk2.extras.operation.OperationIdentifier;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 
 /**
+ * Manages all of the operations of a single scope type.
+ * <p>
+ * None of the per-thread operations take a lock.  The thread to
+ * operation association is kept in a concurrent map, and a thread
+ * is claimed by an operation with a single putIfAbsent, which is
+ * what enforces that only one operation of a given type can be
+ * active on a thread at a time.  This keeps the lookup of the current
+ * operation (which is done on every method call through an operation
+ * scoped proxy) free of contention even with very large numbers of
+ * (possibly virtual) threads
+ * 
  * @author jwells
  *
  */
 public class SingleOperationManager<T extends Annotation> {
     private final static String ID_PREAMBLE = "OperationIdentifier(";
     
-    private final Object operationLock = new Object();
     private final T scope;
-    private final HashMap<OperationIdentifier<T>, OperationHandleImpl<T>> openScopes = new HashMap<OperationIdentifier<T>, OperationHandleImpl<T>>();
-    private final HashMap<Long, OperationHandleImpl<T>> threadToHandleMap = new HashMap<Long, OperationHandleImpl<T>>();
+    private final ConcurrentHashMap<OperationIdentifier<T>, OperationHandleImpl<T>> openScopes = new ConcurrentHashMap<OperationIdentifier<T>, OperationHandleImpl<T>>();
+    private final ConcurrentHashMap<Long, OperationHandleImpl<T>> threadToHandleMap = new ConcurrentHashMap<Long, OperationHandleImpl<T>>();
     private final ServiceLocator locator;
     private final OperationContext<T> context;
-    private long scopedIdentifier;
+    private final AtomicLong scopedIdentifier = new AtomicLong();
     private final ActiveDescriptor<?> operationDescriptor;
-    private boolean closed = false;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
     
     /* package */ @SuppressWarnings("unchecked")
     SingleOperationManager(T scope,
@@ -97,28 +109,33 @@ public class SingleOperationManager<T extends Annotation> {
     
     private OperationIdentifierImpl<T> allocateNewIdentifier() {
         return new OperationIdentifierImpl<T>(
-                ID_PREAMBLE + scopedIdentifier++ + "," + scope.annotationType().getName() + ")",
+                ID_PREAMBLE + scopedIdentifier.getAndIncrement() + "," + scope.annotationType().getName() + ")",
                 scope);
     }
     
     public OperationHandleImpl<T> createOperation() {
+        if (closed.get()) {
+            throw new IllegalStateException("This manager has been closed");
+        }
         
-        synchronized (operationLock) {
-            if (closed) {
-                throw new IllegalStateException("This manager has been closed");
-            }
-            
-            OperationIdentifierImpl<T> id = allocateNewIdentifier();
-            OperationHandleImpl<T> created = new OperationHandleImpl<T>(this, id, operationLock, locator);
-            
-            openScopes.put(id, created);
+        OperationIdentifierImpl<T> id = allocateNewIdentifier();
+        OperationHandleImpl<T> created = new OperationHandleImpl<T>(this, id, locator);
+        
+        openScopes.put(id, created);
+        
+        if (closed.get()) {
+            // Raced with shutdown, which may or may not have seen this one
+            openScopes.remove(id);
+            created.shutdownByFiat();
             
-            return created;
+            throw new IllegalStateException("This manager has been closed");
         }
+        
+        return created;
     }
 
     /**
-     * Called with the operationLock held
+     * Removes the operation from the set of open operations
      * 
      * @param closeMe The non-null operation to close
      */
@@ -127,7 +144,7 @@ public class SingleOperationManager<T extends Annotation> {
     }
     
     /**
-     * Explicitly called WITHOUT the operationLock held to avoid any deadlock
+     * Explicitly called WITHOUT any handle state changed to avoid any deadlock
      * with the context lock
      * 
      * @param closeMe The non-null operation to close
@@ -137,30 +154,34 @@ public class SingleOperationManager<T extends Annotation> {
     }
     
     /**
-     * OperationLock must be held
+     * Associates the given thread with the handle, unless the thread is
+     * already associated with some operation of this type
      * 
      * @param threadId The threadId to associate with this handle
      * @param handle The handle to be associated with this thread
+     * @return The handle that was already associated with the thread (which
+     * may be the given handle), or null if the given handle is now associated
+     * with the thread
      */
-    /* package */ void associateWithThread(long threadId, OperationHandleImpl<T> handle) {
-        threadToHandleMap.put(threadId, handle);
+    /* package */ OperationHandleImpl<T> associateWithThread(long threadId, OperationHandleImpl<T> handle) {
+        return threadToHandleMap.putIfAbsent(threadId, handle);
     }
     
     /**
-     * OperationLock must be held
+     * Removes the association between the thread and the handle if the
+     * thread is currently associated with the given handle
      * 
      * @param threadId The threadId to disassociate with this handle
+     * @param toRemove The handle that must be associated with the thread
      */
     /* package */ void disassociateThread(long threadId, OperationHandleImpl<T> toRemove) {
-        OperationHandleImpl<T> activeOnThread = threadToHandleMap.get(threadId);
-        if (activeOnThread == null || !activeOnThread.equals(toRemove)) return;
-        
-        threadToHandleMap.remove(threadId);
+        threadToHandleMap.remove(threadId, toRemove);
     }
     
     /**
-     * OperationLock must be held
+     * Gets the operation associated with the given thread
      * 
+     * @param threadId The thread to get the operation for
      * @return The operation associated with the given thread
      */
     /* package */ OperationHandleImpl<T> getCurrentOperationOnThisThread(long threadId) {
@@ -168,49 +189,43 @@ public class SingleOperationManager<T extends Annotation> {
     }
     
     /**
-     * OperationLock need NOT be held
+     * Gets the operation associated with the current thread.  Takes no locks
      * 
      * @return The operation associated with the current thread
      */
     public OperationHandleImpl<T> getCurrentOperationOnThisThread() {
-        long threadId = Thread.currentThread().getId();
+        if (closed.get()) return null;
         
-        synchronized (operationLock) {
-            if (closed) return null;
-            return getCurrentOperationOnThisThread(threadId);
-        }
+        return threadToHandleMap.get(Thread.currentThread().getId());
     }
     
     /* package */ Set<OperationHandle<T>> getAllOperations() {
-        HashSet<OperationHandle<T>> retVal = new HashSet<OperationHandle<T>>();
+        if (closed.get()) return Collections.emptySet();
         
-        synchronized (operationLock) {
-            if (closed) return Collections.emptySet();
-            
-            retVal.addAll(openScopes.values());
+        HashSet<OperationHandle<T>> retVal = new HashSet<OperationHandle<T>>(openScopes.values());
             
-            return Collections.unmodifiableSet(retVal);
-        }
+        return Collections.unmodifiableSet(retVal);
+    }
+    
+    /* package */ boolean isClosed() {
+        return closed.get();
     }
     
     /* package */ void shutdown() {
-        synchronized (operationLock) {
-            if (closed) return;
-            closed = true;
+        if (!closed.compareAndSet(false, true)) return;
             
-            for (OperationHandleImpl<T> closeMe : openScopes.values()) {
-                closeMe.shutdownByFiat();
-            }
+        for (OperationHandleImpl<T> closeMe : openScopes.values()) {
+            closeMe.shutdownByFiat();
+        }
             
-            openScopes.clear();
-            threadToHandleMap.clear();
+        openScopes.clear();
+        threadToHandleMap.clear();
             
-            ServiceLocatorUtilities.removeOneDescriptor(locator, operationDescriptor);
-        }
+        ServiceLocatorUtilities.removeOneDescriptor(locator, operationDescriptor);
     }
     
     @Override
     public String toString() {
-        return "SingleOperationManager(" + scope.annotationType().getName() + ",closed=" + closed + "," + System.identityHashCode(this) + ")";
+        return "SingleOperationManager(" + scope.annotationType().getName() + ",closed=" + closed.get() + "," + System.identityHashCode(this) + ")";
     }
 }
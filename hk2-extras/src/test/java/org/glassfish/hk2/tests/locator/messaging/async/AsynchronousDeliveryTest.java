@@ -0,0 +1,116 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.tests.locator.messaging.async;
+
+import java.util.List;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.extras.internal.Utilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author jwells
+ *
+ */
+public class AsynchronousDeliveryTest {
+    private final static int NUM_EVENTS = 100;
+    private final static long TIMEOUT = 20L * 1000L;
+    
+    /**
+     * Tests that an asynchronous subscriber gets all of the
+     * events, in order, on a thread other than the publisher
+     * 
+     * @throws InterruptedException 
+     */
+    @Test // @org.junit.Ignore
+    public void testAsynchronousDeliveryKeepsOrder() throws InterruptedException {
+        ServiceLocator locator = Utilities.getLocatorWithTopics(AsyncPublisher.class,
+                AsynchronousSubscriber.class,
+                SynchronousSubscriber.class);
+        
+        AsyncPublisher publisher = locator.getService(AsyncPublisher.class);
+        AsynchronousSubscriber asynchronous = locator.getService(AsynchronousSubscriber.class);
+        SynchronousSubscriber synchronous = locator.getService(SynchronousSubscriber.class);
+        
+        for (int lcv = 0; lcv < NUM_EVENTS; lcv++) {
+            publisher.publish(lcv);
+        }
+        
+        // The synchronous subscriber has already gotten everything
+        Assert.assertEquals(NUM_EVENTS, synchronous.getNumberOfEvents());
+        Assert.assertEquals(Thread.currentThread(), synchronous.getLastThread());
+        
+        List<Integer> values = asynchronous.waitForEvents(NUM_EVENTS, TIMEOUT);
+        Assert.assertEquals(NUM_EVENTS, values.size());
+        
+        for (int lcv = 0; lcv < NUM_EVENTS; lcv++) {
+            Assert.assertEquals(new Integer(lcv), values.get(lcv));
+        }
+        
+        Assert.assertFalse(asynchronous.getThreads().contains(Thread.currentThread()));
+    }
+    
+    /**
+     * Tests that a user supplied executor is used to
+     * deliver the events to asynchronous subscribers
+     */
+    @Test // @org.junit.Ignore
+    public void testUserSuppliedExecutor() {
+        ServiceLocator locator = Utilities.getLocatorWithTopics(AsyncPublisher.class,
+                AsynchronousSubscriber.class,
+                InlineExecutor.class);
+        
+        AsyncPublisher publisher = locator.getService(AsyncPublisher.class);
+        AsynchronousSubscriber asynchronous = locator.getService(AsynchronousSubscriber.class);
+        InlineExecutor executor = locator.getService(InlineExecutor.class);
+        
+        for (int lcv = 0; lcv < 10; lcv++) {
+            publisher.publish(lcv);
+        }
+        
+        // The executor runs the deliveries on this thread, so they are done
+        Assert.assertEquals(10, asynchronous.getNumberOfEvents());
+        Assert.assertEquals(10, executor.getNumberOfTasks());
+        Assert.assertTrue(asynchronous.getThreads().contains(Thread.currentThread()));
+    }
+
+}
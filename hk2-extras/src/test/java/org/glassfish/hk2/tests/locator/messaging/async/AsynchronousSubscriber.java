@@ -0,0 +1,102 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.tests.locator.messaging.async;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.messaging.MessageReceiver;
+import org.glassfish.hk2.api.messaging.SubscribeTo;
+import org.glassfish.hk2.extras.events.AsynchronousDelivery;
+
+/**
+ * Records the events it gets and the threads they were delivered on
+ * 
+ * @author jwells
+ *
+ */
+@Singleton @MessageReceiver
+public class AsynchronousSubscriber {
+    private final List<Integer> values = new ArrayList<Integer>();
+    private final Set<Thread> threads = new HashSet<Thread>();
+    
+    @AsynchronousDelivery(maxPending=4, maxBatchSize=3)
+    private synchronized void onEvent(@SubscribeTo AsyncEvent event) {
+        values.add(event.getValue());
+        threads.add(Thread.currentThread());
+        
+        notifyAll();
+    }
+    
+    /**
+     * Waits until the given number of events have been delivered
+     * 
+     * @param count The number of events to wait for
+     * @param timeout The maximum number of milliseconds to wait
+     * @return The values of the events delivered so far, in delivery order
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized List<Integer> waitForEvents(int count, long timeout) throws InterruptedException {
+        long waitUntil = System.currentTimeMillis() + timeout;
+        
+        while (values.size() < count) {
+            long waitTime = waitUntil - System.currentTimeMillis();
+            if (waitTime <= 0L) break;
+            
+            wait(waitTime);
+        }
+        
+        return new ArrayList<Integer>(values);
+    }
+    
+    public synchronized int getNumberOfEvents() {
+        return values.size();
+    }
+    
+    public synchronized Set<Thread> getThreads() {
+        return new HashSet<Thread>(threads);
+    }
+
+}
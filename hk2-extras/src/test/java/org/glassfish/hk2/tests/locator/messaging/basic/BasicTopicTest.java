@@ -396,6 +396,46 @@ public class BasicTopicTest {
         Assert.assertTrue(subscriber.isSubscriptionServiceDead());
     }
     
+    /**
+     * Tests that subscribers created after messages have already
+     * been sent to a topic get the messages sent after they
+     * were created
+     */
+    @Test
+    public void testSubscriberCreatedAfterPublishGetsLaterEvents() {
+        ServiceLocator locator = Utilities.getLocatorWithTopics();
+        
+        ServiceLocatorUtilities.addClasses(locator, FooPublisher.class,
+                ColorPublisher.class,
+                PerLookupSubscriber.class,
+                SingletonSubscriber.class);
+        
+        FooPublisher publisher = locator.getService(FooPublisher.class);
+        ColorPublisher colorPublisher = locator.getService(ColorPublisher.class);
+        SingletonSubscriber singletonSubscriber = locator.getService(SingletonSubscriber.class);
+        
+        publisher.publishFoo(5);
+        colorPublisher.publishRedEvent();
+        
+        Assert.assertEquals(5, singletonSubscriber.getAndClearLastEvent().getFooValue());
+        
+        ServiceLocatorUtilities.addClasses(locator, DifferentTypesSubscriber.class,
+                ColorSubscriber.class);
+        
+        DifferentTypesSubscriber typesSubscriber = locator.getService(DifferentTypesSubscriber.class);
+        ColorSubscriber colorSubscriber = locator.getService(ColorSubscriber.class);
+        
+        publisher.publishFoo(6);
+        colorPublisher.publishRedEvent();
+        
+        Assert.assertEquals(6, singletonSubscriber.getAndClearLastEvent().getFooValue());
+        Assert.assertEquals(6, typesSubscriber.getFooValue());
+        
+        Assert.assertEquals(1, colorSubscriber.getRedCount());
+        Assert.assertEquals(0, colorSubscriber.getGreenCount());
+        Assert.assertEquals(0, colorSubscriber.getNotRedCount());
+    }
+    
     /**
      * Tests that a publisher that never had any subscribers is a-ok
      */
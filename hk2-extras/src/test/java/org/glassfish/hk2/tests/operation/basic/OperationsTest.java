@@ -49,6 +49,7 @@ import org.glassfish.hk2.extras.ExtrasUtilities;
 import org.glassfish.hk2.extras.operation.OperationHandle;
 import org.glassfish.hk2.extras.operation.OperationManager;
 import org.glassfish.hk2.extras.operation.OperationState;
+import org.glassfish.hk2.extras.operation.Operations;
 import org.glassfish.hk2.tests.extras.internal.Utilities;
 import org.junit.Assert;
 import org.junit.Test;
@@ -1081,7 +1082,154 @@ public class OperationsTest {
         
         operation1.closeOperation();
     }
-    
+
+    /**
+     * Tests that a wrapped Runnable carries the operation to
+     * the thread it runs on, and takes it off that thread afterwards
+     *
+     * @throws InterruptedException
+     */
+    @Test // @org.junit.Ignore
+    public void testWrapHandsOperationOffToAnotherThread() throws InterruptedException {
+        ServiceLocator locator = createLocator(BasicOperationScopeContext.class,
+                OperationUserFactory.class, SingletonThatUsesOperationService.class);
+
+        OperationManager operationManager = locator.getService(OperationManager.class);
+        final SingletonThatUsesOperationService singleton = locator.getService(SingletonThatUsesOperationService.class);
+
+        final OperationHandle<BasicOperationScope> aliceOperation = operationManager.createOperation(BASIC_OPERATION_ANNOTATION);
+        aliceOperation.setOperationData(ALICE);
+
+        final String[] found = new String[1];
+        final Set<Long> activeDuringRun = new HashSet<Long>();
+        Thread continuation = new Thread(Operations.wrap(aliceOperation, new Runnable() {
+
+            @Override
+            public void run() {
+                found[0] = singleton.getCurrentUserName();
+                activeDuringRun.addAll(aliceOperation.getActiveThreads());
+            }
+
+        }));
+
+        continuation.start();
+        continuation.join();
+
+        Assert.assertEquals(ALICE_NM, found[0]);
+        Assert.assertEquals(1, activeDuringRun.size());
+        Assert.assertTrue(activeDuringRun.contains(continuation.getId()));
+
+        Assert.assertEquals(OperationState.SUSPENDED, aliceOperation.getState());
+        Assert.assertTrue(aliceOperation.getActiveThreads().isEmpty());
+
+        // A wrap run on a thread already in the operation leaves it there
+        aliceOperation.resume();
+        Operations.wrap(aliceOperation, new Runnable() {
+
+            @Override
+            public void run() {
+                found[0] = singleton.getCurrentUserName();
+            }
+
+        }).run();
+
+        Assert.assertEquals(ALICE_NM, found[0]);
+        Assert.assertEquals(OperationState.ACTIVE, aliceOperation.getState());
+        Assert.assertEquals(aliceOperation, operationManager.getCurrentOperation(BASIC_OPERATION_ANNOTATION));
+
+        aliceOperation.closeOperation();
+
+        try {
+            Operations.wrap(aliceOperation, new Runnable() {
+
+                @Override
+                public void run() {
+                    Assert.fail("Should not get here");
+                }
+
+            });
+            Assert.fail("Should not be able to wrap a closed operation");
+        }
+        catch (IllegalStateException ise) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests that many threads can each run in their own operation
+     * of the same type at the same time
+     *
+     * @throws InterruptedException
+     */
+    @Test // @org.junit.Ignore
+    public void testManyConcurrentOperationsOfSameType() throws InterruptedException {
+        ServiceLocator locator = createLocator(BasicOperationScopeContext.class,
+                OperationUserFactory.class, SingletonThatUsesOperationService.class);
+
+        final OperationManager operationManager = locator.getService(OperationManager.class);
+        final SingletonThatUsesOperationService singleton = locator.getService(SingletonThatUsesOperationService.class);
+
+        final int numThreads = 50;
+        final String[] results = new String[numThreads];
+        Thread[] threads = new Thread[numThreads];
+        for (int lcv = 0; lcv < numThreads; lcv++) {
+            final int index = lcv;
+
+            threads[lcv] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    final String name = "User" + index;
+
+                    OperationHandle<BasicOperationScope> operation = operationManager.createAndStartOperation(BASIC_OPERATION_ANNOTATION);
+                    operation.setOperationData(new OperationUser() {
+
+                        @Override
+                        public String getName() {
+                            return name;
+                        }
+
+                        @Override
+                        public byte[] getPassword() {
+                            return null;
+                        }
+
+                    });
+
+                    try {
+                        for (int inner = 0; inner < 100; inner++) {
+                            String current = singleton.getCurrentUserName();
+                            if (!name.equals(current)) {
+                                results[index] = current;
+                                return;
+                            }
+                        }
+
+                        results[index] = name;
+                    }
+                    finally {
+                        operation.closeOperation();
+                    }
+                }
+
+            });
+        }
+
+        for (int lcv = 0; lcv < numThreads; lcv++) {
+            threads[lcv].start();
+        }
+
+        for (int lcv = 0; lcv < numThreads; lcv++) {
+            threads[lcv].join();
+        }
+
+        for (int lcv = 0; lcv < numThreads; lcv++) {
+            Assert.assertEquals("User" + lcv, results[lcv]);
+        }
+
+        Assert.assertTrue(operationManager.getCurrentOperations(BASIC_OPERATION_ANNOTATION).isEmpty());
+    }
+
     private static class Closer implements Runnable {
         private final Object notifier;
         private final OperationHandle<BasicOperationScope> closeMe;
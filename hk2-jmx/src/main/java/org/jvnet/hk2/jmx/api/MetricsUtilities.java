@@ -0,0 +1,194 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.jmx.api;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.glassfish.hk2.api.ServiceLocatorListener;
+import org.jvnet.hk2.external.runtime.ServiceLocatorMetrics;
+import org.jvnet.hk2.external.runtime.ServiceLocatorMetricsRuntimeBean;
+import org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean;
+import org.jvnet.hk2.jmx.internal.ServiceLocatorMetricsImpl;
+
+/**
+ * Utilities for collecting the metrics of a ServiceLocator
+ * and publishing them in the platform MBeanServer as a
+ * {@link ServiceLocatorMetricsMXBean}
+ * 
+ * @author jwells
+ *
+ */
+public class MetricsUtilities {
+    /** The domain of the ObjectName of every {@link ServiceLocatorMetricsMXBean} */
+    public final static String METRICS_DOMAIN = "org.glassfish.hk2";
+    
+    private final static Object lock = new Object();
+    private static boolean listening = false;
+    
+    /**
+     * Starts collecting the metrics of the given ServiceLocator and
+     * registers them in the platform MBeanServer under the name
+     * returned by {@link #getObjectName(ServiceLocator)}.  The
+     * metrics are unregistered when the ServiceLocator is shut down.
+     * If metrics are already being collected for the ServiceLocator
+     * by this class the existing metrics are returned
+     * 
+     * @param locator The non-null ServiceLocator to collect metrics for
+     * @return The metrics of the ServiceLocator
+     * @throws MultiException if the metrics could not be registered
+     * with the platform MBeanServer
+     */
+    public static ServiceLocatorMetricsMXBean enableMetrics(ServiceLocator locator) throws MultiException {
+        if (locator == null) throw new IllegalArgumentException();
+        
+        ServiceLocatorRuntimeBean runtime = locator.getService(ServiceLocatorRuntimeBean.class);
+        ServiceLocatorMetricsRuntimeBean metricsRuntime = locator.getService(ServiceLocatorMetricsRuntimeBean.class);
+        
+        synchronized (lock) {
+            ServiceLocatorMetrics current = metricsRuntime.getMetrics();
+            if (current instanceof ServiceLocatorMetricsImpl) {
+                return (ServiceLocatorMetricsImpl) current;
+            }
+            
+            if (!listening) {
+                ServiceLocatorFactory.getInstance().addListener(new DestroyedListener());
+                listening = true;
+            }
+            
+            ServiceLocatorMetricsImpl retVal = new ServiceLocatorMetricsImpl(runtime, metricsRuntime);
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(retVal, getObjectName(locator));
+            }
+            catch (JMException e) {
+                throw new MultiException(e);
+            }
+            
+            metricsRuntime.setMetrics(retVal);
+            
+            return retVal;
+        }
+    }
+    
+    /**
+     * Stops collecting the metrics of the given ServiceLocator and
+     * removes them from the platform MBeanServer.  If metrics are
+     * not being collected for the ServiceLocator by this class this
+     * method does nothing
+     * 
+     * @param locator The non-null ServiceLocator to stop collecting
+     * metrics for
+     */
+    public static void disableMetrics(ServiceLocator locator) {
+        if (locator == null) throw new IllegalArgumentException();
+        
+        ServiceLocatorMetricsRuntimeBean metricsRuntime = locator.getService(ServiceLocatorMetricsRuntimeBean.class);
+        if (metricsRuntime == null) return;
+        
+        synchronized (lock) {
+            if (!(metricsRuntime.getMetrics() instanceof ServiceLocatorMetricsImpl)) return;
+            
+            metricsRuntime.setMetrics(null);
+            
+            unregister(locator);
+        }
+    }
+    
+    /**
+     * Gets the name under which the metrics of the given ServiceLocator
+     * are registered.  The name has the {@link #METRICS_DOMAIN} domain,
+     * the type ServiceLocatorMetrics and the name and id of the
+     * ServiceLocator
+     * 
+     * @param locator The non-null ServiceLocator
+     * @return The ObjectName of the metrics of the ServiceLocator
+     */
+    public static ObjectName getObjectName(ServiceLocator locator) {
+        try {
+            return new ObjectName(METRICS_DOMAIN + ":type=ServiceLocatorMetrics,name=" +
+                ObjectName.quote(String.valueOf(locator.getName())) + ",id=" + locator.getLocatorId());
+        }
+        catch (MalformedObjectNameException e) {
+            throw new AssertionError(e);
+        }
+    }
+    
+    private static void unregister(ServiceLocator locator) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = getObjectName(locator);
+        
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+        catch (JMException e) {
+            throw new MultiException(e);
+        }
+    }
+    
+    private static class DestroyedListener implements ServiceLocatorListener {
+
+        @Override
+        public void initialize(Set<ServiceLocator> initialLocators) {
+        }
+
+        @Override
+        public void locatorAdded(ServiceLocator added) {
+        }
+
+        @Override
+        public void locatorDestroyed(ServiceLocator destroyed) {
+            synchronized (lock) {
+                unregister(destroyed);
+            }
+        }
+        
+    }
+
+}
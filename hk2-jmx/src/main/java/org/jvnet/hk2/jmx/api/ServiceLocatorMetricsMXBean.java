@@ -0,0 +1,210 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.jmx.api;
+
+import java.util.Map;
+
+/**
+ * The metrics of one ServiceLocator as seen through JMX.
+ * All times are in nanoseconds.  Counts and times are
+ * collected from the moment the metrics were enabled
+ * with {@link MetricsUtilities#enableMetrics(org.glassfish.hk2.api.ServiceLocator)}
+ * or last reset, while the cache statistics and sizes
+ * are read from the ServiceLocator itself
+ * 
+ * @author jwells
+ *
+ */
+public interface ServiceLocatorMetricsMXBean {
+    /**
+     * Returns the number of lookups done
+     * 
+     * @return The number of lookups done
+     */
+    public long getLookupCount();
+    
+    /**
+     * Returns the mean time of a lookup
+     * 
+     * @return The mean time of a lookup
+     */
+    public long getLookupTimeMean();
+    
+    /**
+     * Returns an upper bound of the median time
+     * of a lookup
+     * 
+     * @return The median time of a lookup, rounded
+     * up to the next power of two
+     */
+    public long getLookupTimeMedian();
+    
+    /**
+     * Returns an upper bound of the 99th percentile of
+     * the time of a lookup
+     * 
+     * @return The 99th percentile of the time of a lookup,
+     * rounded up to the next power of two
+     */
+    public long getLookupTime99thPercentile();
+    
+    /**
+     * Returns the time of the slowest lookup
+     * 
+     * @return The time of the slowest lookup
+     */
+    public long getLookupTimeMax();
+    
+    /**
+     * Returns the number of dynamic configurations
+     * committed
+     * 
+     * @return The number of commits
+     */
+    public long getCommitCount();
+    
+    /**
+     * Returns the mean time of a commit
+     * 
+     * @return The mean time of a commit
+     */
+    public long getCommitTimeMean();
+    
+    /**
+     * Returns the time of the slowest commit
+     * 
+     * @return The time of the slowest commit
+     */
+    public long getCommitTimeMax();
+    
+    /**
+     * Returns the number of service instances created
+     * 
+     * @return The number of service instances created
+     */
+    public long getServiceCreationCount();
+    
+    /**
+     * Returns the total time spent creating instances of
+     * each service, keyed by the implementation of the
+     * descriptor of the service
+     * 
+     * @return A non-null map from implementation to the
+     * total time spent creating its instances
+     */
+    public Map<String, Long> getServiceCreationTimes();
+    
+    /**
+     * Returns the number of instances created of each
+     * service, keyed by the implementation of the
+     * descriptor of the service
+     * 
+     * @return A non-null map from implementation to the
+     * number of instances created
+     */
+    public Map<String, Long> getServiceCreationCounts();
+    
+    /**
+     * Returns the postConstruct methods with the longest
+     * single call, keyed by the implementation of the service
+     * followed by a dot and the name of the method.  At most
+     * ten methods are returned
+     * 
+     * @return A non-null map from postConstruct method to the
+     * time of its slowest call
+     */
+    public Map<String, Long> getSlowestPostConstructMethods();
+    
+    /**
+     * Returns the fraction of lookups that found their
+     * result in the service cache
+     * 
+     * @return A number between zero and one
+     */
+    public double getServiceCacheHitRate();
+    
+    /**
+     * Returns the number of entries evicted from the
+     * service cache
+     * 
+     * @return The number of service cache evictions
+     */
+    public long getServiceCacheEvictionCount();
+    
+    /**
+     * Returns the fraction of lookups that found their
+     * result in the service handle cache
+     * 
+     * @return A number between zero and one
+     */
+    public double getHandleCacheHitRate();
+    
+    /**
+     * Returns the number of entries evicted from the
+     * service handle cache
+     * 
+     * @return The number of service handle cache evictions
+     */
+    public long getHandleCacheEvictionCount();
+    
+    /**
+     * Returns the number of descriptors in the ServiceLocator
+     * 
+     * @return The number of descriptors in the ServiceLocator,
+     * not including those of its parents
+     */
+    public int getNumberOfDescriptors();
+    
+    /**
+     * Returns the number of contracts advertised in the
+     * ServiceLocator
+     * 
+     * @return The number of contracts in the ServiceLocator,
+     * not including those of its parents
+     */
+    public int getNumberOfContracts();
+    
+    /**
+     * Forgets all counts and times collected so far.  Does
+     * not change the cache statistics of the ServiceLocator
+     */
+    public void reset();
+
+}
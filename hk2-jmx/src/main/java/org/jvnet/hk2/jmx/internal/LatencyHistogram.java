@@ -0,0 +1,207 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.jmx.internal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds with one bucket per
+ * power of two.  Recording a duration costs two atomic additions
+ * on a stripe chosen by the id of the recording thread, so that
+ * threads recording at the same time rarely touch the same counters.
+ * Reading the histogram adds up the stripes and is therefore only
+ * approximately consistent while durations are being recorded
+ * 
+ * @author jwells
+ *
+ */
+public class LatencyHistogram {
+    /** Bucket n holds durations from 2^(n-1) to 2^n - 1, bucket 0 holds zero */
+    private final static int BUCKETS = 64;
+    private final static int TOTAL = BUCKETS;
+    private final static int MAX = BUCKETS + 1;
+    private final static int STRIPE_SIZE = BUCKETS + 2;
+    
+    private final static int STRIPES;
+    static {
+        int processors = Runtime.getRuntime().availableProcessors();
+        
+        int stripes = 1;
+        while (stripes < processors && stripes < 64) {
+            stripes = stripes << 1;
+        }
+        
+        STRIPES = stripes;
+    }
+    
+    private final AtomicLongArray stripes[] = new AtomicLongArray[STRIPES];
+    
+    public LatencyHistogram() {
+        for (int lcv = 0; lcv < STRIPES; lcv++) {
+            stripes[lcv] = new AtomicLongArray(STRIPE_SIZE);
+        }
+    }
+    
+    /**
+     * Records one duration
+     * 
+     * @param nanos The duration in nanoseconds.  Negative
+     * durations are recorded as zero
+     */
+    public void record(long nanos) {
+        if (nanos < 0L) nanos = 0L;
+        
+        AtomicLongArray stripe = stripes[((int) Thread.currentThread().getId()) & (STRIPES - 1)];
+        
+        stripe.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos));
+        stripe.addAndGet(TOTAL, nanos);
+        
+        long max = stripe.get(MAX);
+        while (nanos > max) {
+            if (stripe.compareAndSet(MAX, max, nanos)) break;
+            max = stripe.get(MAX);
+        }
+    }
+    
+    /**
+     * Returns the number of durations recorded
+     * 
+     * @return The number of durations recorded since this
+     * histogram was created or last reset
+     */
+    public long getCount() {
+        long retVal = 0L;
+        for (AtomicLongArray stripe : stripes) {
+            for (int lcv = 0; lcv < BUCKETS; lcv++) {
+                retVal += stripe.get(lcv);
+            }
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Returns the mean of the durations recorded
+     * 
+     * @return The mean duration in nanoseconds, or zero
+     * if nothing has been recorded
+     */
+    public long getMean() {
+        long count = getCount();
+        if (count == 0L) return 0L;
+        
+        long total = 0L;
+        for (AtomicLongArray stripe : stripes) {
+            total += stripe.get(TOTAL);
+        }
+        
+        return total / count;
+    }
+    
+    /**
+     * Returns the longest duration recorded
+     * 
+     * @return The longest duration in nanoseconds, or zero
+     * if nothing has been recorded
+     */
+    public long getMax() {
+        long retVal = 0L;
+        for (AtomicLongArray stripe : stripes) {
+            retVal = Math.max(retVal, stripe.get(MAX));
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Returns an upper bound of the given percentile of the
+     * durations recorded.  The value returned is the top of the
+     * bucket holding the percentile, so it is at most twice the
+     * real value, and is never larger than the longest duration
+     * 
+     * @param percentile A number greater than zero and at most 100
+     * @return The upper bound of the percentile in nanoseconds, or
+     * zero if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        if (percentile <= 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException("Invalid percentile " + percentile);
+        }
+        
+        long counts[] = new long[BUCKETS];
+        long count = 0L;
+        for (AtomicLongArray stripe : stripes) {
+            for (int lcv = 0; lcv < BUCKETS; lcv++) {
+                long bucketCount = stripe.get(lcv);
+                
+                counts[lcv] += bucketCount;
+                count += bucketCount;
+            }
+        }
+        if (count == 0L) return 0L;
+        
+        long needed = (long) Math.ceil((count * percentile) / 100.0);
+        
+        long seen = 0L;
+        for (int lcv = 0; lcv < BUCKETS; lcv++) {
+            seen += counts[lcv];
+            if (seen >= needed) {
+                long top = (lcv == 0) ? 0L : (lcv == BUCKETS - 1) ? Long.MAX_VALUE : (1L << lcv) - 1L;
+                
+                return Math.min(top, getMax());
+            }
+        }
+        
+        return getMax();
+    }
+    
+    /**
+     * Forgets every duration recorded so far.  Durations recorded
+     * while this method runs may or may not be forgotten
+     */
+    public void reset() {
+        for (AtomicLongArray stripe : stripes) {
+            for (int lcv = 0; lcv < STRIPE_SIZE; lcv++) {
+                stripe.set(lcv, 0L);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,354 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.jmx.internal;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.jvnet.hk2.external.runtime.ServiceLocatorMetrics;
+import org.jvnet.hk2.external.runtime.ServiceLocatorMetricsRuntimeBean;
+import org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean;
+import org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean;
+
+/**
+ * Collects the timings of one ServiceLocator and serves
+ * them to JMX
+ * 
+ * @author jwells
+ *
+ */
+public class ServiceLocatorMetricsImpl implements ServiceLocatorMetrics, ServiceLocatorMetricsMXBean {
+    private final static int SLOWEST_POST_CONSTRUCTS = 10;
+    
+    private final ServiceLocatorRuntimeBean runtime;
+    private final ServiceLocatorMetricsRuntimeBean metricsRuntime;
+    
+    private final LatencyHistogram lookups = new LatencyHistogram();
+    private final LatencyHistogram commits = new LatencyHistogram();
+    private final AtomicLong creations = new AtomicLong();
+    private final ConcurrentHashMap<String, Timing> creationTimes = new ConcurrentHashMap<String, Timing>();
+    private final ConcurrentHashMap<String, Timing> postConstructTimes = new ConcurrentHashMap<String, Timing>();
+    
+    public ServiceLocatorMetricsImpl(ServiceLocatorRuntimeBean runtime,
+            ServiceLocatorMetricsRuntimeBean metricsRuntime) {
+        this.runtime = runtime;
+        this.metricsRuntime = metricsRuntime;
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorMetrics#lookupCompleted(long)
+     */
+    @Override
+    public void lookupCompleted(long nanos) {
+        lookups.record(nanos);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorMetrics#commitCompleted(long)
+     */
+    @Override
+    public void commitCompleted(long nanos) {
+        commits.record(nanos);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorMetrics#serviceCreated(org.glassfish.hk2.api.ActiveDescriptor, long)
+     */
+    @Override
+    public void serviceCreated(ActiveDescriptor<?> descriptor, long nanos) {
+        creations.incrementAndGet();
+        
+        getTiming(creationTimes, descriptor.getImplementation()).record(nanos);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorMetrics#postConstructCompleted(org.glassfish.hk2.api.ActiveDescriptor, java.lang.reflect.Method, long)
+     */
+    @Override
+    public void postConstructCompleted(ActiveDescriptor<?> descriptor,
+            Method method, long nanos) {
+        // Keyed by implementation so that nothing is allocated per call
+        Timing timing = getTiming(postConstructTimes, descriptor.getImplementation());
+        if (timing.method == null) {
+            timing.method = method.getName();
+        }
+        
+        timing.record(nanos);
+    }
+    
+    private static Timing getTiming(ConcurrentHashMap<String, Timing> timings, String key) {
+        if (key == null) key = "";
+        
+        Timing retVal = timings.get(key);
+        if (retVal != null) return retVal;
+        
+        retVal = new Timing();
+        Timing existing = timings.putIfAbsent(key, retVal);
+        
+        return (existing == null) ? retVal : existing;
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getLookupCount()
+     */
+    @Override
+    public long getLookupCount() {
+        return lookups.getCount();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getLookupTimeMean()
+     */
+    @Override
+    public long getLookupTimeMean() {
+        return lookups.getMean();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getLookupTimeMedian()
+     */
+    @Override
+    public long getLookupTimeMedian() {
+        return lookups.getPercentile(50.0);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getLookupTime99thPercentile()
+     */
+    @Override
+    public long getLookupTime99thPercentile() {
+        return lookups.getPercentile(99.0);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getLookupTimeMax()
+     */
+    @Override
+    public long getLookupTimeMax() {
+        return lookups.getMax();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getCommitCount()
+     */
+    @Override
+    public long getCommitCount() {
+        return commits.getCount();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getCommitTimeMean()
+     */
+    @Override
+    public long getCommitTimeMean() {
+        return commits.getMean();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getCommitTimeMax()
+     */
+    @Override
+    public long getCommitTimeMax() {
+        return commits.getMax();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getServiceCreationCount()
+     */
+    @Override
+    public long getServiceCreationCount() {
+        return creations.get();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getServiceCreationTimes()
+     */
+    @Override
+    public Map<String, Long> getServiceCreationTimes() {
+        TreeMap<String, Long> retVal = new TreeMap<String, Long>();
+        for (Map.Entry<String, Timing> entry : creationTimes.entrySet()) {
+            retVal.put(entry.getKey(), entry.getValue().total.get());
+        }
+        
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getServiceCreationCounts()
+     */
+    @Override
+    public Map<String, Long> getServiceCreationCounts() {
+        TreeMap<String, Long> retVal = new TreeMap<String, Long>();
+        for (Map.Entry<String, Timing> entry : creationTimes.entrySet()) {
+            retVal.put(entry.getKey(), entry.getValue().count.get());
+        }
+        
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getSlowestPostConstructMethods()
+     */
+    @Override
+    public Map<String, Long> getSlowestPostConstructMethods() {
+        final HashMap<String, Long> all = new HashMap<String, Long>();
+        for (Map.Entry<String, Timing> entry : postConstructTimes.entrySet()) {
+            all.put(entry.getKey() + "." + entry.getValue().method, entry.getValue().max.get());
+        }
+        
+        List<String> slowest = new ArrayList<String>(all.keySet());
+        Collections.sort(slowest, new Comparator<String>() {
+
+            @Override
+            public int compare(String o1, String o2) {
+                return all.get(o2).compareTo(all.get(o1));
+            }
+            
+        });
+        
+        LinkedHashMap<String, Long> retVal = new LinkedHashMap<String, Long>();
+        for (String method : slowest) {
+            if (retVal.size() >= SLOWEST_POST_CONSTRUCTS) break;
+            
+            retVal.put(method, all.get(method));
+        }
+        
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getServiceCacheHitRate()
+     */
+    @Override
+    public double getServiceCacheHitRate() {
+        return getHitRate(metricsRuntime.getServiceCacheHitCount(), metricsRuntime.getServiceCacheMissCount());
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getServiceCacheEvictionCount()
+     */
+    @Override
+    public long getServiceCacheEvictionCount() {
+        return metricsRuntime.getServiceCacheEvictionCount();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getHandleCacheHitRate()
+     */
+    @Override
+    public double getHandleCacheHitRate() {
+        return getHitRate(metricsRuntime.getHandleCacheHitCount(), metricsRuntime.getHandleCacheMissCount());
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getHandleCacheEvictionCount()
+     */
+    @Override
+    public long getHandleCacheEvictionCount() {
+        return metricsRuntime.getHandleCacheEvictionCount();
+    }
+    
+    private static double getHitRate(long hits, long misses) {
+        long total = hits + misses;
+        if (total == 0L) return 0.0;
+        
+        return ((double) hits) / ((double) total);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getNumberOfDescriptors()
+     */
+    @Override
+    public int getNumberOfDescriptors() {
+        return runtime.getNumberOfDescriptors();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#getNumberOfContracts()
+     */
+    @Override
+    public int getNumberOfContracts() {
+        return metricsRuntime.getNumberOfContracts();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean#reset()
+     */
+    @Override
+    public void reset() {
+        lookups.reset();
+        commits.reset();
+        creations.set(0L);
+        creationTimes.clear();
+        postConstructTimes.clear();
+    }
+    
+    /**
+     * The count, total and longest of a set of durations
+     */
+    private static class Timing {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+        private volatile String method;
+        
+        private void record(long nanos) {
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+            
+            long currentMax = max.get();
+            while (nanos > currentMax) {
+                if (max.compareAndSet(currentMax, nanos)) break;
+                currentMax = max.get();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.jmx;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+import org.jvnet.hk2.external.runtime.ServiceLocatorMetricsRuntimeBean;
+import org.jvnet.hk2.jmx.api.MetricsUtilities;
+import org.jvnet.hk2.jmx.api.ServiceLocatorMetricsMXBean;
+import org.jvnet.hk2.jmx.internal.LatencyHistogram;
+
+/**
+ * @author jwells
+ *
+ */
+public class MetricsTest {
+    private final static String LOCATOR_NAME = "MetricsTest";
+    
+    /**
+     * Tests the count, mean, max and percentiles of the histogram
+     */
+    @Test // @org.junit.Ignore
+    public void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        
+        Assert.assertEquals(0L, histogram.getCount());
+        Assert.assertEquals(0L, histogram.getMean());
+        Assert.assertEquals(0L, histogram.getPercentile(99.0));
+        
+        for (int lcv = 0; lcv < 99; lcv++) {
+            histogram.record(100L);
+        }
+        histogram.record(10000L);
+        
+        Assert.assertEquals(100L, histogram.getCount());
+        Assert.assertEquals(199L, histogram.getMean());
+        Assert.assertEquals(10000L, histogram.getMax());
+        
+        // 100 is in the bucket from 64 to 127
+        Assert.assertEquals(127L, histogram.getPercentile(50.0));
+        Assert.assertEquals(127L, histogram.getPercentile(99.0));
+        Assert.assertEquals(10000L, histogram.getPercentile(100.0));
+        
+        histogram.reset();
+        
+        Assert.assertEquals(0L, histogram.getCount());
+        Assert.assertEquals(0L, histogram.getMax());
+    }
+    
+    /**
+     * Tests that enabled metrics are in the platform MBeanServer, count
+     * what the locator does, and are gone after the locator is shut down
+     * 
+     * @throws Exception
+     */
+    @Test // @org.junit.Ignore
+    public void testMetricsRegisteredUntilShutdown() throws Exception {
+        ServiceLocator locator = ServiceLocatorFactory.getInstance().create(LOCATOR_NAME);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = MetricsUtilities.getObjectName(locator);
+        
+        try {
+            ServiceLocatorMetricsMXBean metrics = MetricsUtilities.enableMetrics(locator);
+            Assert.assertSame(metrics, MetricsUtilities.enableMetrics(locator));
+            Assert.assertTrue(server.isRegistered(name));
+            
+            ServiceLocatorUtilities.addClasses(locator, SimpleService.class);
+            
+            for (int lcv = 0; lcv < 10; lcv++) {
+                Assert.assertNotNull(locator.getService(SimpleService.class));
+            }
+            
+            Assert.assertEquals(1L, metrics.getCommitCount());
+            Assert.assertTrue(metrics.getLookupCount() >= 10L);
+            Assert.assertTrue(metrics.getLookupTimeMax() >= metrics.getLookupTimeMedian());
+            Assert.assertTrue(metrics.getServiceCacheHitRate() > 0.0);
+            
+            Map<String, Long> counts = metrics.getServiceCreationCounts();
+            Assert.assertEquals(new Long(1L), counts.get(SimpleService.class.getName()));
+            Assert.assertTrue(metrics.getSlowestPostConstructMethods().containsKey(
+                    SimpleService.class.getName() + ".postConstruct"));
+            
+            // Also readable through JMX
+            Assert.assertEquals(metrics.getNumberOfDescriptors(), server.getAttribute(name, "NumberOfDescriptors"));
+            Assert.assertNotNull(server.getAttribute(name, "ServiceCreationTimes"));
+            
+            metrics.reset();
+            Assert.assertEquals(0L, metrics.getLookupCount());
+            Assert.assertTrue(metrics.getServiceCreationCounts().isEmpty());
+        }
+        finally {
+            locator.shutdown();
+        }
+        
+        Assert.assertFalse(server.isRegistered(name));
+    }
+    
+    /**
+     * Tests that disabled metrics are taken out of the locator
+     * and the platform MBeanServer
+     */
+    @Test // @org.junit.Ignore
+    public void testDisableMetrics() {
+        ServiceLocator locator = ServiceLocatorFactory.getInstance().create(null);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = MetricsUtilities.getObjectName(locator);
+        
+        try {
+            MetricsUtilities.enableMetrics(locator);
+            Assert.assertTrue(server.isRegistered(name));
+            
+            MetricsUtilities.disableMetrics(locator);
+            Assert.assertFalse(server.isRegistered(name));
+            Assert.assertNull(locator.getService(ServiceLocatorMetricsRuntimeBean.class).getMetrics());
+            
+            // Does nothing
+            MetricsUtilities.disableMetrics(locator);
+        }
+        finally {
+            locator.shutdown();
+        }
+    }
+
+}
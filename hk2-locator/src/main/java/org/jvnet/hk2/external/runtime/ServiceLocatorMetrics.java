@@ -0,0 +1,106 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.external.runtime;
+
+import java.lang.reflect.Method;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+
+/**
+ * Receives timings of the internal operations of a ServiceLocator.
+ * An implementation is installed with
+ * {@link ServiceLocatorMetricsRuntimeBean#setMetrics(ServiceLocatorMetrics)}.
+ * When no implementation is installed the ServiceLocator does not
+ * read the clock at all.
+ * <p>
+ * The methods of this interface are called on the lookup and
+ * creation paths of the ServiceLocator, from any number of threads
+ * at once and sometimes while ServiceLocator locks are held.  They
+ * must therefore be thread safe, must return quickly, must not throw
+ * exceptions and must not call back into the ServiceLocator
+ * 
+ * @author jwells
+ *
+ */
+public interface ServiceLocatorMetrics {
+    /**
+     * Called after a lookup of a service, service handle or
+     * list of services has been done
+     * 
+     * @param nanos The time the lookup took in nanoseconds
+     */
+    public void lookupCompleted(long nanos);
+    
+    /**
+     * Called after a dynamic configuration has been committed
+     * to the ServiceLocator, including the time spent notifying
+     * children and configuration listeners
+     * 
+     * @param nanos The time the commit took in nanoseconds
+     */
+    public void commitCompleted(long nanos);
+    
+    /**
+     * Called after an instance of a service has been created,
+     * either by the ServiceLocator or by a Factory.  The time
+     * includes resolving and injecting the dependencies of the
+     * service and calling its postConstruct method
+     * 
+     * @param descriptor The non-null descriptor of the service
+     * that was created
+     * @param nanos The time the creation took in nanoseconds
+     */
+    public void serviceCreated(ActiveDescriptor<?> descriptor, long nanos);
+    
+    /**
+     * Called after the postConstruct method of a service created
+     * by the ServiceLocator has returned
+     * 
+     * @param descriptor The non-null descriptor of the service
+     * that was created
+     * @param method The non-null postConstruct method that was
+     * called.  If the service implements PostConstruct this is
+     * the method of the PostConstruct interface
+     * @param nanos The time the postConstruct method took in
+     * nanoseconds
+     */
+    public void postConstructCompleted(ActiveDescriptor<?> descriptor, Method method, long nanos);
+
+}
@@ -0,0 +1,177 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.external.runtime;
+
+import java.util.Map;
+
+import org.jvnet.hk2.annotations.Contract;
+
+/**
+ * Runtime counters of the ServiceLocator and the hook used to
+ * collect timings from it.  This is kept apart from
+ * {@link ServiceLocatorRuntimeBean} so that existing implementations
+ * of that interface are not broken.  Like the ServiceLocatorRuntimeBean
+ * this is specific to this implementation of the HK2 API, and
+ * none of the values or operations on this bean are guaranteed to
+ * be meaningful in the next version of HK2
+ * 
+ * @author jwells
+ *
+ */
+@Contract
+public interface ServiceLocatorMetricsRuntimeBean {
+    /**
+     * Returns the number of distinct contracts advertised
+     * by the descriptors in this ServiceLocator.  Does not
+     * include the contracts of parent services
+     * 
+     * @return The number of entries in the contract index
+     * of this ServiceLocator
+     */
+    public int getNumberOfContracts();
+    
+    /**
+     * Returns the number of lookups that found their
+     * result in the HK2 service cache since the cache
+     * was created or last cleared.  The maximum size
+     * of the service cache is taken from the
+     * org.jvnet.hk2.properties.lookupCacheSize system
+     * property, which defaults to 20000
+     * 
+     * @return The number of service cache hits
+     */
+    public long getServiceCacheHitCount();
+    
+    /**
+     * Returns the number of lookups that did not find
+     * their result in the HK2 service cache since the
+     * cache was created or last cleared
+     * 
+     * @return The number of service cache misses
+     */
+    public long getServiceCacheMissCount();
+    
+    /**
+     * Returns the number of entries that have been removed
+     * from the HK2 service cache in order to keep it under
+     * its maximum size since the cache was created or last
+     * cleared.  A high number of evictions may mean that the
+     * maximum size of the service cache should be raised
+     * 
+     * @return The number of service cache evictions
+     */
+    public long getServiceCacheEvictionCount();
+    
+    /**
+     * Returns the current size of the HK2 service handle
+     * cache.  The service handle cache is used to optimize
+     * frequent lookups of all of the services or service
+     * handles of a contract
+     * 
+     * @return The current size of the HK2 service handle
+     * cache
+     */
+    public int getHandleCacheSize();
+    
+    /**
+     * Returns the number of lookups that found their
+     * result in the HK2 service handle cache since the
+     * cache was created
+     * 
+     * @return The number of service handle cache hits
+     */
+    public long getHandleCacheHitCount();
+    
+    /**
+     * Returns the number of lookups that did not find
+     * their result in the HK2 service handle cache since
+     * the cache was created
+     * 
+     * @return The number of service handle cache misses
+     */
+    public long getHandleCacheMissCount();
+    
+    /**
+     * Returns the number of entries that have been removed
+     * from the HK2 service handle cache in order to keep it
+     * under its maximum size since the cache was created
+     * 
+     * @return The number of service handle cache evictions
+     */
+    public long getHandleCacheEvictionCount();
+    
+    /**
+     * Returns the time in nanoseconds it took to read and
+     * parse each descriptor file the last time it was
+     * loaded by the Populator of this ServiceLocator.  The
+     * key is the identifier of the file, which for files
+     * found on the classpath is the URI of the file.  This
+     * can be used to find the jar files that slow down
+     * the population of the ServiceLocator
+     * 
+     * @return A non-null, possibly empty map from descriptor
+     * file identifier to parse time in nanoseconds, in the
+     * order the files were first populated
+     */
+    public Map<String, Long> getDescriptorFileParseTimes();
+    
+    /**
+     * Returns the metrics currently receiving the timings
+     * of this ServiceLocator
+     * 
+     * @return The metrics receiving the timings of this
+     * ServiceLocator, or null if no metrics are being collected
+     */
+    public ServiceLocatorMetrics getMetrics();
+    
+    /**
+     * Sets the metrics that will receive the timings of
+     * lookups, commits and service creations done by this
+     * ServiceLocator.  Metrics are not inherited by children
+     * of this ServiceLocator.  When no metrics are set the
+     * ServiceLocator does not time anything
+     * 
+     * @param metrics The metrics that should receive the
+     * timings of this ServiceLocator, or null to stop
+     * collecting metrics
+     */
+    public void setMetrics(ServiceLocatorMetrics metrics);
+
+}
@@ -0,0 +1,112 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.external.runtime;
+
+import org.jvnet.hk2.annotations.Contract;
+
+/**
+ * Runtime settings that change the algorithms used by the
+ * ServiceLocator.  This is kept apart from
+ * {@link ServiceLocatorRuntimeBean} so that existing implementations
+ * of that interface are not broken.  Like the ServiceLocatorRuntimeBean
+ * this is specific to this implementation of the HK2 API, and
+ * none of the settings on this bean are guaranteed to
+ * be meaningful in the next version of HK2
+ * 
+ * @author jwells
+ *
+ */
+@Contract
+public interface ServiceLocatorTuningRuntimeBean {
+    /**
+     * Returns true if lookups in this ServiceLocator read
+     * an immutable snapshot of the descriptor indexes rather
+     * than taking the ServiceLocator lock.  The initial
+     * value is taken from the
+     * org.jvnet.hk2.properties.lockFreeLookups system
+     * property, which defaults to false
+     * 
+     * @return true if lookups do not take the
+     * ServiceLocator lock
+     */
+    public boolean isLockFreeLookups();
+    
+    /**
+     * Sets whether or not lookups in this ServiceLocator
+     * read an immutable snapshot of the descriptor indexes
+     * rather than taking the ServiceLocator lock.  With
+     * lock free lookups enabled a new snapshot is built by
+     * the first lookup after every configuration change,
+     * which makes lookups scale with the number of threads
+     * at the cost of some extra work per change
+     * 
+     * @param lockFreeLookups true if lookups should not
+     * take the ServiceLocator lock
+     */
+    public void setLockFreeLookups(boolean lockFreeLookups);
+    
+    /**
+     * Returns true if commits of dynamic configurations that
+     * arrive while another commit is in progress are applied
+     * together.  The initial value is taken from the
+     * org.jvnet.hk2.properties.groupCommits system property,
+     * which defaults to false
+     * 
+     * @return true if concurrent commits are grouped
+     */
+    public boolean isGroupCommits();
+    
+    /**
+     * Sets whether or not commits of dynamic configurations
+     * that arrive while another commit is in progress are
+     * applied together.  Each grouped commit is still
+     * validated and applied on its own, and a commit that
+     * fails does not affect the others, but the caches are
+     * invalidated and the children and the
+     * DynamicConfigurationListeners are notified only once
+     * per group.  With group commits enabled the listeners
+     * may be called on the thread of another committer
+     * 
+     * @param groupCommits true if concurrent commits
+     * should be grouped
+     */
+    public void setGroupCommits(boolean groupCommits);
+
+}
@@ -177,6 +177,17 @@ public class CacheKey {
         return true;
     }
     
+    /**
+     * Gets the name of the contract that, when removed from
+     * the system, causes this CacheKey to be removed
+     * 
+     * @return The name of the raw class of the lookup type, or
+     * null if the lookup type has no raw class
+     */
+    public String getRemovalName() {
+        return removalName;
+    }
+    
     /**
      * Used when bulk removing a contract that has
      * been removed from the system
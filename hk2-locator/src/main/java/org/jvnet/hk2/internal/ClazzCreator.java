@@ -45,6 +45,8 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -65,6 +67,7 @@ import org.glassfish.hk2.api.PostConstruct;
 import org.glassfish.hk2.api.PreDestroy;
 import org.glassfish.hk2.api.ServiceHandle;
 import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
+import org.jvnet.hk2.external.runtime.ServiceLocatorMetrics;
 
 /**
  * @author jwells
@@ -72,6 +75,16 @@ import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
  *
  */
 public class ClazzCreator<T> implements Creator<T> {
+    private final static Method POST_CONSTRUCT_METHOD;
+    static {
+        try {
+            POST_CONSTRUCT_METHOD = PostConstruct.class.getMethod("postConstruct");
+        }
+        catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+    }
+    
     private final ServiceLocatorImpl locator;
     private final Class<?> implClass;
     private final Set<ResolutionInfo> myInitializers = new LinkedHashSet<ResolutionInfo>();
@@ -83,6 +96,9 @@ public class ClazzCreator<T> implements Creator<T> {
 
     private Method postConstructMethod;
     private Method preDestroyMethod;
+    
+    /** Built by the first create, after which the injection points no longer change */
+    private volatile CreationPlan creationPlan;
 
     /* package */ ClazzCreator(ServiceLocatorImpl locator,
             Class<?> implClass) {
@@ -197,53 +213,40 @@ public class ClazzCreator<T> implements Creator<T> {
         }
     }
 
-    private void resolve(Map<SystemInjecteeImpl, Object> addToMe,
-                         InjectionResolver<?> resolver,
-                         SystemInjecteeImpl injectee,
-                         ServiceHandle<?> root,
-                         Collector errorCollection) {
-        if (injectee.isSelf()) {
-            addToMe.put(injectee, selfDescriptor);
-            return;
-        }
-
-        Object addIn = null;
-        try {
-            addIn = resolver.resolve(injectee, root);
-        } catch (Throwable th) {
-            errorCollection.addThrowable(th);
-        }
-
-        if (addIn != null) {
-            addToMe.put(injectee, addIn);
-        }
+    private CreationPlan getCreationPlan() {
+        CreationPlan retVal = creationPlan;
+        if (retVal != null) return retVal;
+        
+        // Two threads may both build a plan, they will be the same
+        retVal = new CreationPlan(myConstructor, myFields, myInitializers);
+        creationPlan = retVal;
+        
+        return retVal;
     }
 
-    private Map<SystemInjecteeImpl, Object> resolveAllDependencies(final ServiceHandle<?> root) throws MultiException, IllegalStateException {
-        Collector errorCollector = new Collector();
-
-        final Map<SystemInjecteeImpl, Object> retVal = new LinkedHashMap<SystemInjecteeImpl, Object>();
+    private Object[] resolveAllDependencies(CreationPlan plan, final ServiceHandle<?> root) throws MultiException, IllegalStateException {
+        Collector errorCollector = null;
 
-        for (SystemInjecteeImpl injectee : myConstructor.injectees) {
-            InjectionResolver<?> resolver = locator.getInjectionResolverForInjectee(injectee);
-            resolve(retVal, resolver, injectee, root, errorCollector);
-        }
+        final SystemInjecteeImpl injectees[] = plan.injectees;
+        final Object retVal[] = new Object[injectees.length];
 
-        for (ResolutionInfo fieldRI : myFields) {
-            for (SystemInjecteeImpl injectee : fieldRI.injectees) {
-                InjectionResolver<?> resolver = locator.getInjectionResolverForInjectee(injectee);
-                resolve(retVal, resolver, injectee, root, errorCollector);
+        for (int slot = 0; slot < injectees.length; slot++) {
+            SystemInjecteeImpl injectee = injectees[slot];
+            if (injectee.isSelf()) {
+                retVal[slot] = selfDescriptor;
+                continue;
             }
-        }
-
-        for (ResolutionInfo methodRI : myInitializers) {
-            for (SystemInjecteeImpl injectee : methodRI.injectees) {
-                InjectionResolver<?> resolver = locator.getInjectionResolverForInjectee(injectee);
-                resolve(retVal, resolver, injectee, root, errorCollector);
+            
+            InjectionResolver<?> resolver = locator.getInjectionResolverForInjectee(injectee);
+            try {
+                retVal[slot] = resolver.resolve(injectee, root);
+            } catch (Throwable th) {
+                if (errorCollector == null) errorCollector = new Collector();
+                errorCollector.addThrowable(th);
             }
         }
 
-        if (errorCollector.hasErrors()) {
+        if (errorCollector != null) {
             errorCollector.addThrowable(new IllegalArgumentException("While attempting to resolve the dependencies of "
                     + implClass.getName() + " errors were found"));
 
@@ -252,15 +255,39 @@ public class ClazzCreator<T> implements Creator<T> {
 
         return retVal;
     }
+    
+    /**
+     * Only used to give the resolved dependencies to instance
+     * lifecycle listeners, in the order they were resolved
+     */
+    private static Map<Injectee, Object> getResolvedMap(CreationPlan plan, Object resolved[]) {
+        Map<Injectee, Object> retVal = new LinkedHashMap<Injectee, Object>();
+        
+        for (int slot = 0; slot < resolved.length; slot++) {
+            if (resolved[slot] == null) continue;
+            
+            retVal.put(plan.injectees[slot], resolved[slot]);
+        }
+        
+        return retVal;
+    }
+    
+    private static Object[] getArguments(int slots[], Object resolved[]) {
+        Object retVal[] = new Object[slots.length];
+        for (int position = 0; position < slots.length; position++) {
+            int slot = slots[position];
+            if (slot < 0) continue;
+            
+            retVal[position] = resolved[slot];
+        }
+        
+        return retVal;
+    }
 
-    private Object createMe(Map<SystemInjecteeImpl, Object> resolved) throws Throwable {
+    private Object createMe(CreationPlan plan, Object resolved[]) throws Throwable {
         final Constructor<?> c = (Constructor<?>) myConstructor.baseElement;
-        List<SystemInjecteeImpl> injectees = myConstructor.injectees;
 
-        final Object args[] = new Object[injectees.size()];
-        for (Injectee injectee : injectees) {
-            args[injectee.getPosition()] = resolved.get(injectee);
-        }
+        final Object args[] = getArguments(plan.constructorSlots, resolved);
         
         Utilities.Interceptors interceptors = Utilities.getAllInterceptors(locator, selfDescriptor, implClass, c);
         final Map<Method, List<MethodInterceptor>> methodInterceptors = interceptors.getMethodInterceptors();
@@ -290,47 +317,52 @@ public class ClazzCreator<T> implements Creator<T> {
                 new ConstructorActionImpl<T>(this, methodInterceptors));
     }
 
-    private void fieldMe(Map<SystemInjecteeImpl, Object> resolved, T t) throws Throwable {
-        for (ResolutionInfo ri : myFields) {
-            Field field = (Field) ri.baseElement;
-            List<SystemInjecteeImpl> injectees = ri.injectees;  // Should be only one injectee, itself!
-
-            Injectee fieldInjectee = null;
-            for (Injectee candidate : injectees) {
-                fieldInjectee = candidate;
-            }
-
-            Object putMeIn = resolved.get(fieldInjectee);
+    private void fieldMe(CreationPlan plan, Object resolved[], T t) throws Throwable {
+        final Field fields[] = plan.fields;
+        final int fieldSlots[] = plan.fieldSlots;
+        
+        for (int lcv = 0; lcv < fields.length; lcv++) {
+            int slot = fieldSlots[lcv];
+            Object putMeIn = (slot < 0) ? null : resolved[slot];
 
-            ReflectionHelper.setField(field, t, putMeIn);
+            ReflectionHelper.setField(fields[lcv], t, putMeIn);
         }
     }
 
-    private void methodMe(Map<SystemInjecteeImpl, Object> resolved, T t) throws Throwable {
-        for (ResolutionInfo ri : myInitializers) {
-            Method m = (Method) ri.baseElement;
-            List<SystemInjecteeImpl> injectees = ri.injectees;
-
-            Object args[] = new Object[injectees.size()];
-            for (Injectee injectee : injectees) {
-                args[injectee.getPosition()] = resolved.get(injectee);
-            }
+    private void methodMe(CreationPlan plan, Object resolved[], T t) throws Throwable {
+        final Method methods[] = plan.methods;
+        final int methodSlots[][] = plan.methodSlots;
+        
+        for (int lcv = 0; lcv < methods.length; lcv++) {
+            Object args[] = getArguments(methodSlots[lcv], resolved);
 
-            ReflectionHelper.invoke(t, m, args, locator.getNeutralContextClassLoader());
+            ReflectionHelper.invoke(t, methods[lcv], args, locator.getNeutralContextClassLoader());
         }
     }
 
-    private void postConstructMe(T t) throws Throwable {
+    private void postConstructMe(T t, ActiveDescriptor<?> eventThrower, ServiceLocatorMetrics metrics) throws Throwable {
         if (t == null) return;
 
         if (t instanceof PostConstruct) {
+            long start = (metrics == null) ? 0L : System.nanoTime();
+            
             ((PostConstruct) t).postConstruct();
+            
+            if (metrics != null) {
+                metrics.postConstructCompleted(eventThrower, POST_CONSTRUCT_METHOD, System.nanoTime() - start);
+            }
             return;
         }
 
         if (postConstructMethod == null) return;
 
+        long start = (metrics == null) ? 0L : System.nanoTime();
+        
         ReflectionHelper.invoke(t, postConstructMethod, new Object[0], locator.getNeutralContextClassLoader());
+        
+        if (metrics != null) {
+            metrics.postConstructCompleted(eventThrower, postConstructMethod, System.nanoTime() - start);
+        }
     }
 
     private void preDestroyMe(T t) throws Throwable {
@@ -352,31 +384,44 @@ public class ClazzCreator<T> implements Creator<T> {
     @SuppressWarnings("unchecked")
     @Override
     public T create(ServiceHandle<?> root, SystemDescriptor<?> eventThrower) {
+        // Instances created without a descriptor are not timed
+        final ServiceLocatorMetrics metrics = (eventThrower == null) ? null : locator.getMetrics();
+        final long start = (metrics == null) ? 0L : System.nanoTime();
+        
         String failureLocation = "resolve";
         try {
+            final CreationPlan plan = getCreationPlan();
 
-            final Map<SystemInjecteeImpl, Object> allResolved = resolveAllDependencies(root);
+            final Object allResolved[] = resolveAllDependencies(plan, root);
+            
+            // Listeners are told what was resolved, build the map only if someone is listening
+            final Map<Injectee, Object> resolvedMap = ((eventThrower != null) && eventThrower.hasInstanceListeners()) ?
+                    getResolvedMap(plan, allResolved) : null;
 
-            if (eventThrower != null) {
+            if (resolvedMap != null) {
                 eventThrower.invokeInstanceListeners(new InstanceLifecycleEventImpl(InstanceLifecycleEventType.PRE_PRODUCTION,
-                    null, ReflectionHelper.<Map<Injectee,Object>>cast(allResolved), eventThrower));
+                    null, resolvedMap, eventThrower));
             }
 
             failureLocation = "create";
-            T retVal = (T) createMe(allResolved);
+            T retVal = (T) createMe(plan, allResolved);
 
             failureLocation = "field inject";
-            fieldMe(allResolved, retVal);
+            fieldMe(plan, allResolved, retVal);
 
             failureLocation = "method inject";
-            methodMe(allResolved, retVal);
+            methodMe(plan, allResolved, retVal);
 
             failureLocation = "post construct";
-            postConstructMe(retVal);
+            postConstructMe(retVal, eventThrower, metrics);
 
-            if (eventThrower != null) {
+            if (resolvedMap != null) {
                 eventThrower.invokeInstanceListeners(new InstanceLifecycleEventImpl(InstanceLifecycleEventType.POST_PRODUCTION,
-                    retVal, ReflectionHelper.<Map<Injectee, Object>>cast(allResolved), eventThrower));
+                    retVal, resolvedMap, eventThrower));
+            }
+            
+            if (metrics != null) {
+                metrics.serviceCreated(eventThrower, System.nanoTime() - start);
             }
 
             return retVal;
@@ -437,6 +482,74 @@ public class ClazzCreator<T> implements Creator<T> {
         return "ClazzCreator(" + locator + "," + implClass.getName() + "," + System.identityHashCode(this) + ")";
     }
 
+    /**
+     * The injection points of the class laid out in flat arrays.  Every
+     * injectee has a slot, and the values resolved for one create are
+     * kept in an array indexed by slot, so creating an instance does not
+     * need any map or any walk of the ResolutionInfo lists
+     * 
+     * @author jwells
+     *
+     */
+    private static class CreationPlan {
+        /** All injectees in the order they are resolved */
+        private final SystemInjecteeImpl injectees[];
+        /** The slot for each constructor parameter position, or -1 */
+        private final int constructorSlots[];
+        private final Field fields[];
+        /** The slot for each field, or -1 */
+        private final int fieldSlots[];
+        private final Method methods[];
+        /** The slot for each method parameter position, or -1 */
+        private final int methodSlots[][];
+        
+        private CreationPlan(ResolutionInfo constructor, Set<ResolutionInfo> fieldInfos, Set<ResolutionInfo> methodInfos) {
+            List<SystemInjecteeImpl> all = new ArrayList<SystemInjecteeImpl>();
+            
+            constructorSlots = addSlots(constructor.injectees, all);
+            
+            fields = new Field[fieldInfos.size()];
+            fieldSlots = new int[fields.length];
+            int lcv = 0;
+            for (ResolutionInfo fieldRI : fieldInfos) {
+                fields[lcv] = (Field) fieldRI.baseElement;
+                
+                // Should be only one injectee, itself!
+                fieldSlots[lcv] = -1;
+                for (SystemInjecteeImpl injectee : fieldRI.injectees) {
+                    fieldSlots[lcv] = all.size();
+                    all.add(injectee);
+                }
+                
+                lcv++;
+            }
+            
+            methods = new Method[methodInfos.size()];
+            methodSlots = new int[methods.length][];
+            lcv = 0;
+            for (ResolutionInfo methodRI : methodInfos) {
+                methods[lcv] = (Method) methodRI.baseElement;
+                methodSlots[lcv] = addSlots(methodRI.injectees, all);
+                
+                lcv++;
+            }
+            
+            injectees = all.toArray(new SystemInjecteeImpl[all.size()]);
+        }
+        
+        private static int[] addSlots(List<SystemInjecteeImpl> injectees, List<SystemInjecteeImpl> all) {
+            int retVal[] = new int[injectees.size()];
+            Arrays.fill(retVal, -1);
+            
+            for (SystemInjecteeImpl injectee : injectees) {
+                retVal[injectee.getPosition()] = all.size();
+                all.add(injectee);
+            }
+            
+            return retVal;
+        }
+    }
+
     private static class ResolutionInfo {
         private final AnnotatedElement baseElement;
         private final List<SystemInjecteeImpl> injectees = new LinkedList<SystemInjecteeImpl>();
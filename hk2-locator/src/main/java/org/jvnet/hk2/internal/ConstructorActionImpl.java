@@ -60,17 +60,6 @@ import org.glassfish.hk2.utilities.reflection.Logger;
  */
 final class ConstructorActionImpl<T> implements ConstructorAction {
     private final static Class<?> ADDED_INTERFACES[] = { AOPProxyCtl.class };
-    private final static MethodFilter METHOD_FILTER = new MethodFilter() {
-
-        @Override
-        public boolean isHandled(Method method) {
-            // We do not allow interception of finalize
-            if (method.getName().equals("finalize")) return false;
-            
-            return true;
-        }
-        
-    };
     
     /**
      * 
@@ -102,7 +91,7 @@ final class ConstructorActionImpl<T> implements ConstructorAction {
             
         final ProxyFactory proxyFactory = new ProxyFactory();
         proxyFactory.setSuperclass(clazzCreator.getImplClass());
-        proxyFactory.setFilter(METHOD_FILTER);
+        proxyFactory.setFilter(new InterceptedMethodFilter(methodInterceptors, neutralCCL));
         proxyFactory.setInterfaces(ADDED_INTERFACES);
         
         return AccessController.doPrivileged(new PrivilegedExceptionAction<Object>() {
@@ -134,4 +123,43 @@ final class ConstructorActionImpl<T> implements ConstructorAction {
                 
         });
     }
-}
\ No newline at end of file
+    
+    /**
+     * When the locator does not keep the context class loader neutral only
+     * the methods that have interceptors (and the method of {@link AOPProxyCtl})
+     * are handled by the proxy, all other methods are not overridden and so
+     * are called without going through the {@link MethodInterceptorHandler}.
+     * When the context class loader is kept neutral every method of the
+     * service is handled, since it is the handler that puts back the context
+     * class loader after a method that is not intercepted.  The methods of
+     * Object that the service does not override never change the context
+     * class loader, so they are not handled.  ProxyFactory caches proxy classes
+     * by the set of handled methods, so services with the same intercepted
+     * methods share a proxy class
+     */
+    private static class InterceptedMethodFilter implements MethodFilter {
+        private final Map<Method, List<MethodInterceptor>> methodInterceptors;
+        private final boolean neutralCCL;
+        
+        private InterceptedMethodFilter(Map<Method, List<MethodInterceptor>> methodInterceptors,
+                boolean neutralCCL) {
+            this.methodInterceptors = methodInterceptors;
+            this.neutralCCL = neutralCCL;
+        }
+
+        @Override
+        public boolean isHandled(Method method) {
+            // We do not allow interception of finalize
+            if (method.getName().equals("finalize")) return false;
+            
+            if (method.getName().equals(AOPProxyCtl.UNDERLYING_METHOD_NAME) &&
+                    method.getDeclaringClass().equals(AOPProxyCtl.class)) return true;
+            
+            List<MethodInterceptor> interceptors = methodInterceptors.get(method);
+            if (interceptors != null && !interceptors.isEmpty()) return true;
+            
+            return neutralCCL && !Object.class.equals(method.getDeclaringClass());
+        }
+        
+    }
+}
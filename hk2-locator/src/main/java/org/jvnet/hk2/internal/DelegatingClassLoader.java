@@ -41,6 +41,7 @@
 package org.jvnet.hk2.internal;
 
 import java.net.URL;
+import java.security.ProtectionDomain;
 
 import org.glassfish.hk2.utilities.reflection.Pretty;
 
@@ -104,6 +105,18 @@ class DelegatingClassLoader extends ClassLoader {
 		return null;
 	}
 	
+	/**
+	 * Defines a proxy class generated for this loader
+	 * 
+	 * @param name The name of the proxy class
+	 * @param bytes The class file of the proxy class
+	 * @param domain The protection domain of the proxy class
+	 * @return The defined proxy class
+	 */
+	Class<?> defineProxyClass(String name, byte[] bytes, ProtectionDomain domain) {
+	    return defineClass(name, bytes, 0, bytes.length, domain);
+	}
+	
 	@Override
 	public String toString() {
 	    return "DelegatingClassLoader(" + getParent() + "," +
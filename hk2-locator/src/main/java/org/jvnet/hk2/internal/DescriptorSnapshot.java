@@ -0,0 +1,175 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.jvnet.hk2.internal;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.glassfish.hk2.api.ErrorService;
+import org.glassfish.hk2.api.Filter;
+import org.glassfish.hk2.api.IndexedFilter;
+
+/**
+ * An immutable copy of the indexes of a {@link ServiceLocatorImpl}
+ * taken at a particular configuration generation.  Once published
+ * a snapshot is never modified, and hence may be read without
+ * holding the locator lock
+ * 
+ * @author jwells
+ *
+ */
+public class DescriptorSnapshot {
+    private final long generation;
+    private final List<SystemDescriptor<?>> allDescriptors;
+    private final Map<String, List<SystemDescriptor<?>>> descriptorsByAdvertisedContract;
+    private final Map<String, List<SystemDescriptor<?>>> descriptorsByName;
+    private final ValidatorList allValidators;
+    private final List<ErrorService> errorHandlers;
+    
+    /**
+     * Must be called with the locator read lock held
+     */
+    /* package */ DescriptorSnapshot(long generation,
+            IndexedListData allDescriptors,
+            Map<String, IndexedListData> descriptorsByAdvertisedContract,
+            Map<String, IndexedListData> descriptorsByName,
+            ValidatorList allValidators,
+            Collection<ErrorService> errorHandlers) {
+        this.generation = generation;
+        this.allDescriptors = allDescriptors.getImmutableSortedList();
+        this.descriptorsByAdvertisedContract = copyIndex(descriptorsByAdvertisedContract);
+        this.descriptorsByName = copyIndex(descriptorsByName);
+        this.allValidators = allValidators;
+        this.errorHandlers = Collections.unmodifiableList(new LinkedList<ErrorService>(errorHandlers));
+    }
+    
+    private static Map<String, List<SystemDescriptor<?>>> copyIndex(Map<String, IndexedListData> index) {
+        HashMap<String, List<SystemDescriptor<?>>> retVal =
+                new HashMap<String, List<SystemDescriptor<?>>>((index.size() * 4) / 3 + 1);
+        
+        for (Map.Entry<String, IndexedListData> entry : index.entrySet()) {
+            retVal.put(entry.getKey(), entry.getValue().getImmutableSortedList());
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * The configuration generation of the locator at the time this
+     * snapshot was taken
+     * 
+     * @return The generation of this snapshot
+     */
+    /* package */ long getGeneration() {
+        return generation;
+    }
+    
+    /**
+     * Returns the sorted list of descriptors that should be checked
+     * against the given filter, using the indexes if the filter is
+     * an {@link IndexedFilter}
+     * 
+     * @param filter The non-null filter to get candidates for
+     * @return A non-null sorted list of candidates that must still
+     * be matched against the filter
+     */
+    /* package */ Collection<SystemDescriptor<?>> getCandidates(Filter filter) {
+        if (!(filter instanceof IndexedFilter)) return allDescriptors;
+        
+        IndexedFilter df = (IndexedFilter) filter;
+        String name = df.getName();
+        String advertisedContract = df.getAdvertisedContract();
+        
+        if (name != null) {
+            List<SystemDescriptor<?>> scopedByName = descriptorsByName.get(name);
+            if (scopedByName == null) return Collections.emptyList();
+            
+            if (advertisedContract == null) return scopedByName;
+            
+            LinkedList<SystemDescriptor<?>> retVal = new LinkedList<SystemDescriptor<?>>();
+            for (SystemDescriptor<?> candidate : scopedByName) {
+                if (candidate.getAdvertisedContracts().contains(advertisedContract)) {
+                    retVal.add(candidate);
+                }
+            }
+            
+            return retVal;
+        }
+        
+        if (advertisedContract != null) {
+            List<SystemDescriptor<?>> retVal = descriptorsByAdvertisedContract.get(advertisedContract);
+            if (retVal == null) return Collections.emptyList();
+            
+            return retVal;
+        }
+        
+        return allDescriptors;
+    }
+    
+    /**
+     * All of the validation services of this locator and its parents
+     * 
+     * @return A non-null list of validation services merged at the
+     * generation of this snapshot
+     */
+    /* package */ ValidatorList getAllValidators() {
+        return allValidators;
+    }
+    
+    /**
+     * The error services of the locator
+     * 
+     * @return A non-null unmodifiable list of error services
+     */
+    /* package */ List<ErrorService> getErrorHandlers() {
+        return errorHandlers;
+    }
+    
+    @Override
+    public String toString() {
+        return "DescriptorSnapshot(" + generation + "," + allDescriptors.size() + "," +
+            System.identityHashCode(this) + ")";
+    }
+}
@@ -52,9 +52,9 @@ import org.glassfish.hk2.api.InstanceLifecycleEventType;
 import org.glassfish.hk2.api.InstantiationService;
 import org.glassfish.hk2.api.MultiException;
 import org.glassfish.hk2.api.ServiceHandle;
-import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.utilities.general.ThreadSpecificObject;
 import org.glassfish.hk2.utilities.reflection.Pretty;
+import org.jvnet.hk2.external.runtime.ServiceLocatorMetrics;
 
 /**
  * @author jwells
@@ -65,11 +65,11 @@ public class FactoryCreator<T> implements Creator<T> {
     private final ConcurrentHashMap<ThreadSpecificObject<ActiveDescriptor<?>>, Object> cycleFinder =
             new ConcurrentHashMap<ThreadSpecificObject<ActiveDescriptor<?>>, Object>();
     
-    private final ServiceLocator locator;
+    private final ServiceLocatorImpl locator;
     private final ActiveDescriptor<?> factoryDescriptor;
     private final InstantiationServiceImpl instantiationService;
     
-    /* package */ FactoryCreator(ServiceLocator locator, ActiveDescriptor<?> factoryDescriptor) {
+    /* package */ FactoryCreator(ServiceLocatorImpl locator, ActiveDescriptor<?> factoryDescriptor) {
         this.locator = locator;
         this.factoryDescriptor = factoryDescriptor;
         
@@ -112,6 +112,9 @@ public class FactoryCreator<T> implements Creator<T> {
      */
     @Override
     public T create(ServiceHandle<?> root, SystemDescriptor<?> eventThrower) throws MultiException {
+        final ServiceLocatorMetrics metrics = locator.getMetrics();
+        final long start = (metrics == null) ? 0L : System.nanoTime();
+        
         ServiceHandle<Factory<T>> handle = getFactoryHandle();
         
         eventThrower.invokeInstanceListeners(new InstanceLifecycleEventImpl(
@@ -161,6 +164,10 @@ public class FactoryCreator<T> implements Creator<T> {
         eventThrower.invokeInstanceListeners(new InstanceLifecycleEventImpl(
                 InstanceLifecycleEventType.POST_PRODUCTION, retVal, eventThrower));
         
+        if (metrics != null) {
+            metrics.serviceCreated(eventThrower, System.nanoTime() - start);
+        }
+        
         return retVal;
     }
 
@@ -43,6 +43,7 @@ package org.jvnet.hk2.internal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.ListIterator;
 
 /**
@@ -57,6 +58,7 @@ import java.util.ListIterator;
 public class IndexedListData {
     private final ArrayList<SystemDescriptor<?>> unsortedList = new ArrayList<SystemDescriptor<?>>();
     private volatile boolean sorted = true;
+    private volatile List<SystemDescriptor<?>> immutableSortedList = null;
     
     public Collection<SystemDescriptor<?>> getSortedList() {
         if (sorted) return unsortedList;
@@ -76,8 +78,32 @@ public class IndexedListData {
         }
     }
     
+    /**
+     * Returns a sorted copy of this list that will never change.  The
+     * copy is kept until the next modification of this list, so
+     * that unchanged lists need not be copied again when a new
+     * snapshot of the locator indexes is taken.  May be called
+     * without the locator lock held
+     * 
+     * @return A non-null unmodifiable sorted copy of this list
+     */
+    public List<SystemDescriptor<?>> getImmutableSortedList() {
+        List<SystemDescriptor<?>> retVal = immutableSortedList;
+        if (retVal != null) return retVal;
+        
+        synchronized (this) {
+            if (immutableSortedList != null) return immutableSortedList;
+            
+            immutableSortedList = Collections.unmodifiableList(
+                    new ArrayList<SystemDescriptor<?>>(getSortedList()));
+            
+            return immutableSortedList;
+        }
+    }
+    
     public synchronized void addDescriptor(SystemDescriptor<?> descriptor) {
         unsortedList.add(descriptor);
+        immutableSortedList = null;
         
         if (unsortedList.size() > 1) {
             sorted = false;
@@ -98,6 +124,7 @@ public class IndexedListData {
                 break;
             }
         }
+        immutableSortedList = null;
         
         if (unsortedList.size() > 1) {
             sorted = false;
@@ -119,6 +146,7 @@ public class IndexedListData {
     public synchronized void unSort() {
         if (unsortedList.size() > 1) {
             sorted = false;
+            immutableSortedList = null;
         }
     }
     
@@ -128,6 +156,7 @@ public class IndexedListData {
         }
         
         unsortedList.clear();
+        immutableSortedList = null;
     }
     
     public synchronized int size() {
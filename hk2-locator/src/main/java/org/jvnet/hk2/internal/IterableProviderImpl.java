@@ -50,6 +50,7 @@ import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
+import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.Injectee;
 import org.glassfish.hk2.utilities.InjecteeImpl;
 import org.glassfish.hk2.api.IterableProvider;
@@ -71,6 +72,13 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
     private final Unqualified unqualified;
     private final Injectee originalInjectee;
     private final boolean isIterable;
+    private final Annotation[] qualifierArray;
+    
+    /*
+     * The result of the last lookup done by iterator or getSize, which
+     * is used until the configuration of the locator changes
+     */
+    private volatile StampedDescriptors lastLookup = null;
     
     /* package */ IterableProviderImpl(
             ServiceLocatorImpl locator,
@@ -85,6 +93,7 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
         this.unqualified = unqualified;
         this.originalInjectee = originalInjectee;
         this.isIterable = isIterable;
+        this.qualifierArray = this.requiredQualifiers.toArray(new Annotation[this.requiredQualifiers.size()]);
     }
     
     private void justInTime() {
@@ -98,6 +107,27 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
         // This does nothing more than run the JIT resolvers
         locator.getInjecteeDescriptor(injectee);
     }
+    
+    /**
+     * Gets the descriptors this provider iterates over, re-using the
+     * result of the last lookup if the configuration of the locator
+     * has not changed since then
+     * 
+     * @return The non-null unmodifiable list of descriptors to iterate over
+     */
+    private List<ActiveDescriptor<?>> getDescriptors() {
+        StampedDescriptors lookup = lastLookup;
+        if (lookup != null && lookup.getGeneration() == locator.getGeneration()) {
+            return lookup.getDescriptors();
+        }
+        
+        justInTime();
+        
+        lookup = locator.getAllUnqualifiedDescriptors(requiredType, unqualified, isIterable, qualifierArray);
+        lastLookup = lookup;
+        
+        return lookup.getDescriptors();
+    }
 
     /* (non-Javadoc)
      * @see javax.inject.Provider#get()
@@ -109,7 +139,7 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
         
         // Must do this in this way to ensure that the generated item is properly associated with the root
         return (T) locator.getUnqualifiedService(requiredType, unqualified,
-                isIterable, requiredQualifiers.toArray(new Annotation[requiredQualifiers.size()]));
+                isIterable, qualifierArray);
     }
     
     /* (non-Javadoc)
@@ -121,7 +151,7 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
         justInTime();
         
         return (ServiceHandle<T>) locator.getUnqualifiedServiceHandle(requiredType, unqualified,
-                isIterable, requiredQualifiers.toArray(new Annotation[requiredQualifiers.size()]));
+                isIterable, qualifierArray);
     }
     
 
@@ -130,13 +160,7 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
      */
     @Override
     public Iterator<T> iterator() {
-        justInTime();
-        
-        List<ServiceHandle<T>> handles;
-        handles = ReflectionHelper.<List<ServiceHandle<T>>>cast(locator.getAllUnqualifiedServiceHandles(requiredType,
-                    unqualified, isIterable, requiredQualifiers.toArray(new Annotation[requiredQualifiers.size()])));
-        
-        return new MyIterator<T>(handles);
+        return new MyIterator<T>(locator, requiredType, getDescriptors());
     }
 
     /* (non-Javadoc)
@@ -144,10 +168,7 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
      */
     @Override
     public int getSize() {
-        justInTime();
-        
-        return locator.getAllUnqualifiedServiceHandles(requiredType, unqualified, isIterable,
-                requiredQualifiers.toArray(new Annotation[requiredQualifiers.size()])).size();
+        return getDescriptors().size();
     }
 
     /* (non-Javadoc)
@@ -187,16 +208,21 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
         justInTime();
         
         List<ServiceHandle<T>> handles = ReflectionHelper.<List<ServiceHandle<T>>>cast(locator.getAllServiceHandles(requiredType,
-                requiredQualifiers.toArray(new Annotation[requiredQualifiers.size()])));
+                qualifierArray));
         
         return new HandleIterable<T>(handles);
     }
     
     private static class MyIterator<U> implements Iterator<U> {
-        private final LinkedList<ServiceHandle<U>> handles;
+        private final ServiceLocatorImpl locator;
+        private final Type requiredType;
+        private final List<ActiveDescriptor<?>> descriptors;
+        private int index = 0;
         
-        private MyIterator(List<ServiceHandle<U>> handles) {
-            this.handles = new LinkedList<ServiceHandle<U>>(handles);
+        private MyIterator(ServiceLocatorImpl locator, Type requiredType, List<ActiveDescriptor<?>> descriptors) {
+            this.locator = locator;
+            this.requiredType = requiredType;
+            this.descriptors = descriptors;
         }
 
         /* (non-Javadoc)
@@ -204,19 +230,20 @@ public class IterableProviderImpl<T> implements IterableProvider<T> {
          */
         @Override
         public boolean hasNext() {
-            return !handles.isEmpty();
+            return index < descriptors.size();
         }
 
         /* (non-Javadoc)
          * @see java.util.Iterator#next()
          */
+        @SuppressWarnings("unchecked")
         @Override
         public U next() {
-            if (handles.isEmpty()) throw new NoSuchElementException();
+            if (index >= descriptors.size()) throw new NoSuchElementException();
             
-            ServiceHandle<U> nextHandle = handles.removeFirst();
+            ActiveDescriptor<U> nextDescriptor = (ActiveDescriptor<U>) descriptors.get(index++);
             
-            return nextHandle.getService();
+            return locator.getLookupServiceHandle(nextDescriptor, requiredType).getService();
         }
 
         /* (non-Javadoc)
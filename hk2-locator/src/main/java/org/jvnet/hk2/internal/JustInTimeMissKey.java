@@ -0,0 +1,185 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.internal;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Type;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Set;
+
+import org.glassfish.hk2.api.Injectee;
+import org.glassfish.hk2.api.Unqualified;
+import org.glassfish.hk2.utilities.general.GeneralUtilities;
+
+/**
+ * The key of the cache of injection points that none of the
+ * {@link org.glassfish.hk2.api.JustInTimeInjectionResolver}s could
+ * resolve.  Two injection points are the same if they require the same
+ * type with the same qualifiers into the same class at the same
+ * position of the same field, constructor or method.  Resolvers may look
+ * at the other annotations of the injection point, so two parameters that
+ * only differ by non-qualifier annotations are not the same.  All lookups
+ * (which have no parent) of the same type and qualifiers are the same
+ * 
+ * @author jwells
+ *
+ */
+public class JustInTimeMissKey {
+    private final Type requiredType;
+    private final Set<Annotation> qualifiers;
+    private final Unqualified unqualified;
+    private final Class<?> injecteeClass;
+    private final AnnotatedElement parent;
+    private final int position;
+    private final boolean optional;
+    
+    /** Pre-calculated in order to improve hashMap lookups */
+    private final int hashCode;
+    
+    /**
+     * Creates the key for the given injection point
+     * 
+     * @param injectee The non-null injection point that could not be resolved
+     */
+    public JustInTimeMissKey(Injectee injectee) {
+        requiredType = injectee.getRequiredType();
+        qualifiers = injectee.getRequiredQualifiers();
+        unqualified = injectee.getUnqualified();
+        injecteeClass = injectee.getInjecteeClass();
+        parent = injectee.getParent();
+        position = injectee.getPosition();
+        optional = injectee.isOptional();
+        
+        int retVal = 0;
+        
+        if (requiredType != null) {
+            retVal ^= requiredType.hashCode();
+        }
+        
+        if (qualifiers != null) {
+            for (Annotation qualifier : qualifiers) {
+                retVal ^= qualifier.hashCode();
+            }
+        }
+        
+        if (unqualified != null) {
+            retVal ^= 0xffffffff;
+            
+            for (Class<?> clazz : unqualified.value()) {
+                retVal ^= clazz.hashCode();
+            }
+        }
+        
+        if (injecteeClass != null) {
+            retVal ^= injecteeClass.hashCode();
+        }
+        
+        if (parent != null) {
+            retVal ^= parent.hashCode();
+            retVal ^= position * 31;
+        }
+        else {
+            retVal ^= 0x55555555;
+        }
+        
+        if (optional) retVal ^= 0x0f0f0f0f;
+        
+        hashCode = retVal;
+    }
+    
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (o == null) return false;
+        if (!(o instanceof JustInTimeMissKey)) return false;
+        
+        final JustInTimeMissKey other = (JustInTimeMissKey) o;
+        
+        if (hashCode != other.hashCode) return false;
+        if (position != other.position) return false;
+        if (optional != other.optional) return false;
+        if (!GeneralUtilities.safeEquals(requiredType, other.requiredType)) return false;
+        if (!GeneralUtilities.safeEquals(injecteeClass, other.injecteeClass)) return false;
+        if (!GeneralUtilities.safeEquals(parent, other.parent)) return false;
+        
+        boolean sameQualifiers = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+
+            @Override
+            public Boolean run() {
+                if (qualifiers == null || qualifiers.isEmpty()) {
+                    return (other.qualifiers == null || other.qualifiers.isEmpty());
+                }
+                
+                return qualifiers.equals(other.qualifiers);
+            }
+            
+        });
+        if (!sameQualifiers) return false;
+        
+        if (unqualified != null) {
+            if (other.unqualified == null) return false;
+            
+            Class<?> myClazzes[] = unqualified.value();
+            Class<?> otherClazzes[] = other.unqualified.value();
+            
+            if (myClazzes.length != otherClazzes.length) return false;
+            
+            for (int lcv = 0; lcv < myClazzes.length; lcv++) {
+                if (!GeneralUtilities.safeEquals(myClazzes[lcv], otherClazzes[lcv])) return false;
+            }
+        }
+        else if (other.unqualified != null) return false;
+        
+        return true;
+    }
+    
+    @Override
+    public String toString() {
+        return "JustInTimeMissKey(" + requiredType + "," + qualifiers + "," + injecteeClass + "," +
+            parent + "," + position + "," + optional + "," + System.identityHashCode(this) + ")";
+    }
+
+}
@@ -44,11 +44,9 @@ import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Method;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.RandomAccess;
 
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
@@ -61,7 +59,14 @@ import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
 import javassist.util.proxy.MethodHandler;
 
 /**
- * This is the handler that runs the aopalliance method interception
+ * This is the handler that runs the aopalliance method interception.
+ * <p>
+ * The interceptors of each method are resolved into an array when the
+ * handler is created, and each interceptor of a call is given a small
+ * invocation holding its position in that array.  Methods without
+ * interceptors are only handed to this handler when the context class
+ * loader is kept neutral (see {@link ConstructorActionImpl}), otherwise
+ * they are called directly
  * 
  * @author jwells
  *
@@ -77,44 +82,48 @@ public class MethodInterceptorHandler implements MethodHandler {
     });
     
     private final ServiceLocatorImpl locator;
-    private final Map<Method, List<MethodInterceptor>> interceptorLists;
+    private final Map<Method, MethodInterceptor[]> interceptorChains;
     private final ActiveDescriptor<?> underlyingDescriptor;
     
     /* package */ MethodInterceptorHandler(ServiceLocatorImpl locator,
             ActiveDescriptor<?> underlyingDescriptor,
             Map<Method, List<MethodInterceptor>> interceptorLists) {
         this.locator = locator;
-        this.interceptorLists = interceptorLists;
         this.underlyingDescriptor = underlyingDescriptor;
+        
+        interceptorChains = new HashMap<Method, MethodInterceptor[]>(
+                (interceptorLists.size() * 4 / 3) + 1);
+        for (Map.Entry<Method, List<MethodInterceptor>> entry : interceptorLists.entrySet()) {
+            List<MethodInterceptor> interceptors = entry.getValue();
+            if (interceptors == null || interceptors.isEmpty()) continue;
+            
+            interceptorChains.put(entry.getKey(),
+                    interceptors.toArray(new MethodInterceptor[interceptors.size()]));
+        }
     }
-
+    
     /* (non-Javadoc)
      * @see javassist.util.proxy.MethodHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.reflect.Method, java.lang.Object[])
      */
     @Override
     public Object invoke(Object self, Method thisMethod, Method proceed, Object[] args)
             throws Throwable {
-        if (thisMethod.getName().equals(AOPProxyCtl.UNDERLYING_METHOD_NAME)) {
-            return underlyingDescriptor;
-        }
-        
-        List<MethodInterceptor> interceptors = interceptorLists.get(thisMethod);
-        if (interceptors == null || interceptors.isEmpty()) {
+        MethodInterceptor[] interceptors = interceptorChains.get(thisMethod);
+        if (interceptors == null) {
+            if (thisMethod.getName().equals(AOPProxyCtl.UNDERLYING_METHOD_NAME)) {
+                return underlyingDescriptor;
+            }
+            
             return ReflectionHelper.invoke(self, proceed, args, locator.getNeutralContextClassLoader());
         }
         
-        if (!(interceptors instanceof RandomAccess)) {
-            // Make sure we are indexable
-            interceptors = new ArrayList<MethodInterceptor>(interceptors);
-        }
-        
-        MethodInterceptor nextInterceptor = interceptors.get(0);
+        MethodInterceptor nextInterceptor = interceptors[0];
         
         long aggregateInterceptionTime = 0L;
         if (DEBUG_INTERCEPTION) {
             aggregateInterceptionTime = System.currentTimeMillis();
             Logger.getLogger().debug("Invoking interceptor " + nextInterceptor.getClass().getName() +
-                    " index 0 in stack of " + interceptors.size() + " of method " + thisMethod);
+                    " index 0 in stack of " + interceptors.length + " of method " + thisMethod);
         }
         
         try {
@@ -130,29 +139,37 @@ public class MethodInterceptorHandler implements MethodHandler {
         }
     }
     
+    /**
+     * The invocation passed to one interceptor of a call.  It never
+     * changes, so an interceptor may call proceed more than once, or
+     * keep the invocation and proceed later or on another thread.  The
+     * user data is kept by the first invocation of the call, so it is
+     * shared by every interceptor of the call
+     */
     private class MethodInvocationImpl implements MethodInvocation, HK2Invocation {
         private final Object[] arguments;  // Live!
         private final Method method;
         private final Object myself;
-        private final List<MethodInterceptor> interceptors;
+        private final MethodInterceptor[] interceptors;
         private final int index;
         private final Method proceed;
+        private final MethodInvocationImpl first;
         private HashMap<String, Object> userData;
         
         private MethodInvocationImpl(Object[] arguments,
                 Method method,
                 Object myself,
-                List<MethodInterceptor> interceptors,
+                MethodInterceptor[] interceptors,
                 int index,
                 Method proceed,
-                HashMap<String, Object> userData) {
+                MethodInvocationImpl first) {
             this.arguments = arguments;
             this.method = method;
             this.myself = myself;
             this.interceptors = interceptors;
             this.index = index;
             this.proceed = proceed;
-            this.userData = userData;
+            this.first = (first == null) ? this : first;
         }
 
         @Override
@@ -178,7 +195,7 @@ public class MethodInterceptorHandler implements MethodHandler {
         @Override
         public Object proceed() throws Throwable {
             int newIndex = index + 1;
-            if (newIndex >= interceptors.size()) {
+            if (newIndex >= interceptors.length) {
                 long methodTime = 0L;
                 if (DEBUG_INTERCEPTION) {
                     methodTime = System.currentTimeMillis();
@@ -197,19 +214,19 @@ public class MethodInterceptorHandler implements MethodHandler {
             }
             
             // Invoke the next interceptor
-            MethodInterceptor nextInterceptor = interceptors.get(newIndex);
+            MethodInterceptor nextInterceptor = interceptors[newIndex];
             
             long aggregateInterceptionTime = 0L;
             if (DEBUG_INTERCEPTION) {
                 aggregateInterceptionTime = System.currentTimeMillis();
                 Logger.getLogger().debug("Invoking interceptor " + nextInterceptor.getClass().getName() +
-                        " index " + newIndex + " in stack of " + interceptors.size() +
+                        " index " + newIndex + " in stack of " + interceptors.length +
                         " of method " + method);
             }
             
             try {
                 return nextInterceptor.invoke(new MethodInvocationImpl(arguments,
-                    method, myself, interceptors, newIndex, proceed, userData));
+                    method, myself, interceptors, newIndex, proceed, first));
             }
             finally {
                 if (DEBUG_INTERCEPTION) {
@@ -228,13 +245,13 @@ public class MethodInterceptorHandler implements MethodHandler {
         public void setUserData(String key, Object data) {
             if (key == null) throw new IllegalArgumentException();
             
-            if (userData == null) userData = new HashMap<String, Object>();
+            if (first.userData == null) first.userData = new HashMap<String, Object>();
             
             if (data == null) {
-                userData.remove(key);
+                first.userData.remove(key);
             }
             else {
-                userData.put(key, data);
+                first.userData.put(key, data);
             }
         }
 
@@ -245,8 +262,8 @@ public class MethodInterceptorHandler implements MethodHandler {
         public Object getUserData(String key) {
             if (key == null) throw new IllegalArgumentException();
             
-            if (userData == null) return null;
-            return userData.get(key);
+            if (first.userData == null) return null;
+            return first.userData.get(key);
         }
         
     }
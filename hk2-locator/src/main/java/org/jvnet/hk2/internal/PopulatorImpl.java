@@ -40,12 +40,28 @@
 
 package org.jvnet.hk2.internal;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.DescriptorFileFinder;
@@ -58,22 +74,56 @@ import org.glassfish.hk2.api.PopulatorPostProcessor;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.utilities.ClasspathDescriptorFileFinder;
 import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.glassfish.hk2.utilities.DescriptorIndex;
 
 /**
- * Implementation of the Populator for DynamicConfigurationService
+ * Implementation of the Populator for DynamicConfigurationService.
+ * <p>
+ * When more than one descriptor file is found the files are read and
+ * parsed in parallel on a small shared pool of daemon threads.  The
+ * post-processors are then run, and the descriptors bound, on the
+ * calling thread in the order the files were returned by the
+ * {@link DescriptorFileFinder}, so the result does not depend on
+ * which file finished parsing first.  Parallel parsing can be turned
+ * off by setting the org.jvnet.hk2.properties.parallelPopulate system
+ * property to false, in which case every file is parsed on the calling
+ * thread
  * 
  * @author jwells
  */
 public class PopulatorImpl implements Populator {
+    private final static String PARALLEL_POPULATE_PROPERTY = "org.jvnet.hk2.properties.parallelPopulate";
+    private final static boolean PARALLEL_POPULATE = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+        @Override
+        public Boolean run() {
+            return Boolean.parseBoolean(
+                System.getProperty(PARALLEL_POPULATE_PROPERTY, "true"));
+        }
+            
+    });
+    
+    private final static int MAX_POPULATOR_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    
+    private final static ThreadPoolExecutor PARSE_EXECUTOR = new ThreadPoolExecutor(MAX_POPULATOR_THREADS, MAX_POPULATOR_THREADS,
+            60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new PopulatorThreadFactory());
+    static {
+        PARSE_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+    
     private final ServiceLocator serviceLocator;
     private final DynamicConfigurationService dcs;
     
+    /** Guarded by this */
+    private final Map<String, Long> parseTimes = new LinkedHashMap<String, Long>();
+    
     /* package */ PopulatorImpl(ServiceLocator serviceLocator,
             DynamicConfigurationService dcs) {
         this.serviceLocator = serviceLocator;
         this.dcs = dcs;
     }
-
+    
     @Override
     public List<ActiveDescriptor<?>> populate(DescriptorFileFinder fileFinder,
             PopulatorPostProcessor... postProcessors) throws IOException {
@@ -111,18 +161,188 @@ public class PopulatorImpl implements Populator {
             throw new MultiException(th);
         }
         
+        boolean parallel = PARALLEL_POPULATE && (descriptorFileInputStreams.size() > 1);
+        
+        List<Future<ParsedFile>> parsedFiles = new ArrayList<Future<ParsedFile>>(descriptorFileInputStreams.size());
+        
+        int lcv = 0;
+        for (InputStream is : descriptorFileInputStreams) {
+            String identifier = (descriptorInformation == null) ? null : descriptorInformation.get(lcv) ;
+            lcv++;
+            
+            ParseTask parseTask = new ParseTask(is, identifier);
+            FutureTask<ParsedFile> parse = new FutureTask<ParsedFile>(parseTask, parseTask.parsedFile);
+            parsedFiles.add(parse);
+            
+            if (parallel) {
+                try {
+                    PARSE_EXECUTOR.execute(parse);
+                }
+                catch (RejectedExecutionException ree) {
+                    parse.run();
+                }
+            }
+            else {
+                parse.run();
+            }
+        }
+        
         Collector collector = new Collector();
 
         DynamicConfiguration config = dcs.createDynamicConfiguration();
 
-        int lcv = 0;
-        for (InputStream is : descriptorFileInputStreams) {
-            String identifier = (descriptorInformation == null) ? null : descriptorInformation.get(lcv) ;
+        lcv = 0;
+        for (Future<ParsedFile> future : parsedFiles) {
             lcv++;
+            
+            ParsedFile parsedFile;
+            try {
+                parsedFile = future.get();
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new MultiException(ie);
+            }
+            catch (ExecutionException ee) {
+                collector.addThrowable(ee.getCause());
+                continue;
+            }
+            
+            synchronized (this) {
+                String timingKey = (parsedFile.identifier == null) ?
+                        fileFinder.getClass().getName() + "[" + (lcv - 1) + "]" : parsedFile.identifier ;
+                
+                parseTimes.put(timingKey, parsedFile.parseTime);
+            }
+            
+            for (Throwable error : parsedFile.errors) {
+                collector.addThrowable(error);
+            }
+            
+            for (DescriptorImpl descriptorImpl : parsedFile.descriptors) {
+                descriptorImpl = postProcess(descriptorImpl, postProcessors, parsedFile.identifier, collector);
+                
+                if (descriptorImpl != null) {
+                    descriptors.add(config.bind(descriptorImpl, false));
+                }
+            }
+        }
+        
+        // Prior to commit!
+        collector.throwIfErrors();
+
+        config.commit();
 
-            BufferedReader br = new BufferedReader(new InputStreamReader(is));
+        return descriptors;
+    }
+    
+    /**
+     * Returns the time in nanoseconds it took to read and parse each descriptor
+     * file the last time it was populated by this populator.  The key is the
+     * identifier given by the {@link DescriptorFileFinderInformation} for the
+     * file, or the name of the DescriptorFileFinder class followed by the
+     * index of the file if the finder did not supply identifiers
+     * 
+     * @return A copy of the parse times of all files populated so far
+     */
+    /* package */ synchronized Map<String, Long> getParseTimes() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, Long>(parseTimes));
+    }
+    
+    private DescriptorImpl postProcess(DescriptorImpl descriptorImpl,
+            PopulatorPostProcessor postProcessors[],
+            String identifier,
+            Collector collector) {
+        for (PopulatorPostProcessor pp : postProcessors) {
+            try {
+                descriptorImpl = pp.process(serviceLocator, descriptorImpl);
+            }
+            catch (Throwable th) {
+                collector.addThrowable(wrap(th, identifier));
+                descriptorImpl = null;
+            }
 
+            if (descriptorImpl == null) {
+                break;
+            }
+        }
+        
+        return descriptorImpl;
+    }
+    
+    private static Throwable wrap(Throwable th, String identifier) {
+        if (identifier == null) return th;
+        
+        return new IOException("InputStream with identifier \"" + identifier + "\" failed", th);
+    }
+    
+    /**
+     * The descriptors read from a single descriptor file, along with
+     * any errors found while reading it
+     */
+    private static class ParsedFile {
+        private final String identifier;
+        private final List<DescriptorImpl> descriptors = new LinkedList<DescriptorImpl>();
+        private final List<Throwable> errors = new LinkedList<Throwable>();
+        private long parseTime;
+        
+        private ParsedFile(String identifier) {
+            this.identifier = identifier;
+        }
+    }
+    
+    /**
+     * Reads and parses one descriptor file, in either the binary index
+     * or the text format.  Never throws, all errors are recorded in the
+     * returned ParsedFile
+     */
+    private static class ParseTask implements Runnable {
+        private final InputStream is;
+        private final ParsedFile parsedFile;
+        
+        private ParseTask(InputStream is, String identifier) {
+            this.is = is;
+            parsedFile = new ParsedFile(identifier);
+        }
+        
+        /* (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            
+            try {
+                parse();
+            }
+            catch (Throwable th) {
+                parsedFile.errors.add(wrap(th, parsedFile.identifier));
+            }
+            finally {
+                parsedFile.parseTime = System.nanoTime() - start;
+            }
+        }
+        
+        private void parse() throws IOException {
+            BufferedInputStream bis = new BufferedInputStream(is);
+            
             try {
+                if (DescriptorIndex.isDescriptorIndex(bis)) {
+                    DescriptorIndex index;
+                    try {
+                        index = DescriptorIndex.read(bis);
+                    }
+                    catch (IOException ioe) {
+                        parsedFile.errors.add(wrap(ioe, parsedFile.identifier));
+                        return;
+                    }
+                    
+                    parsedFile.descriptors.addAll(index.getDescriptors());
+                    return;
+                }
+                
+                BufferedReader br = new BufferedReader(new InputStreamReader(bis));
+                
                 boolean readOne = false;
 
                 do {
@@ -132,53 +352,48 @@ public class PopulatorImpl implements Populator {
                         readOne = descriptorImpl.readObject(br);
                     }
                     catch (IOException ioe) {
-                        if (identifier != null) {
-                            collector.addThrowable(new IOException("InputStream with identifier \"" + identifier + "\" failed", ioe));
-                        }
-                        else {
-                            collector.addThrowable(ioe);
-                        }
+                        parsedFile.errors.add(wrap(ioe, parsedFile.identifier));
                     }
 
                     if (readOne) {
-                            
-                        for (PopulatorPostProcessor pp : postProcessors) {
-                            try {
-                                descriptorImpl = pp.process(serviceLocator, descriptorImpl);
-                            }
-                            catch (Throwable th) {
-                                if (identifier != null) {
-                                    collector.addThrowable(new IOException("InputStream with identifier \"" + identifier + "\" failed", th));
-                                }
-                                else {
-                                    collector.addThrowable(th);
-                                }
-                                descriptorImpl = null;
-                            }
-
-                            if (descriptorImpl == null) {
-                                break;
-                            }
-                        }
-                            
-                        if (descriptorImpl != null) {
-                            descriptors.add(config.bind(descriptorImpl, false));
-                        }
-
+                        parsedFile.descriptors.add(descriptorImpl);
                     }
                 } while (readOne);
-
-            } finally {
-                br.close();
+            }
+            finally {
+                bis.close();
             }
         }
-        
-        // Prior to commit!
-        collector.throwIfErrors();
-
-        config.commit();
+    }
+    
+    /**
+     * The parse threads are shared by every populator, so they are created
+     * in a privileged block (so they do not inherit the access control context
+     * of whichever caller happened to need a new thread) and are given the
+     * class loader of this class as their context class loader (rather than
+     * the one of that caller)
+     */
+    private static class PopulatorThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
 
-        return descriptors;
+        /* (non-Javadoc)
+         * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+         */
+        @Override
+        public Thread newThread(final Runnable r) {
+            return AccessController.doPrivileged(new PrivilegedAction<Thread>() {
+                
+                @Override
+                public Thread run() {
+                    Thread retVal = new Thread(r, "HK2-Populator-" + threadNumber.getAndIncrement());
+                    retVal.setDaemon(true);
+                    retVal.setContextClassLoader(PopulatorImpl.class.getClassLoader());
+                    
+                    return retVal;
+                }
+                
+            });
+        }
     }
 
     /* (non-Javadoc)
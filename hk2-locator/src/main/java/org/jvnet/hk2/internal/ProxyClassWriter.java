@@ -0,0 +1,147 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.internal;
+
+import java.io.File;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.glassfish.hk2.api.ProxyCtl;
+
+import javassist.util.proxy.ProxyFactory;
+
+/**
+ * Writes the proxy classes of services at build time so that they do not
+ * have to be generated when the services are first proxied.  The written
+ * classes are named after the superclass with the suffix
+ * {@link ProxyUtilities#PREGENERATED_PROXY_SUFFIX} and must be packaged
+ * with the superclass.  They are only used when the
+ * org.jvnet.hk2.properties.pregeneratedProxies system property is true.
+ * <p>
+ * The main method takes the output directory followed by one argument per
+ * proxy of the form superclass[:interface,interface...].  The interfaces
+ * should be the interface contracts of the service, since a written class
+ * is only used for a proxy whose interfaces it all implements.  ProxyCtl
+ * is always added
+ * 
+ * @author jwells
+ *
+ */
+public class ProxyClassWriter {
+    /**
+     * Writes the proxy class of the given superclass into the directory
+     * 
+     * @param directory The root directory to write the class file into
+     * @param superclass The non-interface class to proxy
+     * @param interfaces The interfaces the proxy should implement in
+     * addition to ProxyCtl
+     * @return The name of the written proxy class
+     */
+    public static String writeProxyClass(File directory, Class<?> superclass, Class<?>... interfaces) {
+        if (superclass.isInterface()) {
+            throw new IllegalArgumentException(superclass.getName() +
+                    " is an interface, and interfaces are proxied with JDK proxies");
+        }
+        if (superclass.getName().startsWith("java.")) {
+            throw new IllegalArgumentException("Can not write a proxy class for " + superclass.getName());
+        }
+        
+        Set<Class<?>> allInterfaces = new LinkedHashSet<Class<?>>();
+        allInterfaces.add(ProxyCtl.class);
+        for (Class<?> iFace : interfaces) {
+            allInterfaces.add(iFace);
+        }
+        
+        ClassLoader superLoader = superclass.getClassLoader();
+        if (superLoader == null) superLoader = ClassLoader.getSystemClassLoader();
+        
+        ProxyUtilities.DelegatingProxyFactory proxyFactory = new ProxyUtilities.DelegatingProxyFactory(new DelegatingClassLoader(
+                superLoader,
+                ProxyFactory.class.getClassLoader(),
+                ProxyCtl.class.getClassLoader()));
+        proxyFactory.setSuperclass(superclass);
+        proxyFactory.setInterfaces(allInterfaces.toArray(new Class<?>[allInterfaces.size()]));
+        proxyFactory.writeDirectory = directory.getAbsolutePath();
+        
+        return proxyFactory.generateClass(superclass.getName() + ProxyUtilities.PREGENERATED_PROXY_SUFFIX).getName();
+    }
+    
+    /**
+     * Writes proxy classes
+     * 
+     * @param args The output directory followed by arguments of
+     * the form superclass[:interface,interface...]
+     * @throws ClassNotFoundException if one of the classes could not be found
+     */
+    public static void main(String[] args) throws ClassNotFoundException {
+        if (args.length < 2) {
+            System.err.println("Usage: ProxyClassWriter <outputDirectory> <superclass>[:<interface>,<interface>...]...");
+            System.exit(1);
+        }
+        
+        File directory = new File(args[0]);
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) loader = ProxyClassWriter.class.getClassLoader();
+        
+        for (int lcv = 1; lcv < args.length; lcv++) {
+            String arg = args[lcv];
+            
+            String superclassName;
+            String interfaceNames[];
+            int colon = arg.indexOf(':');
+            if (colon < 0) {
+                superclassName = arg;
+                interfaceNames = new String[0];
+            }
+            else {
+                superclassName = arg.substring(0, colon);
+                interfaceNames = arg.substring(colon + 1).split(",");
+            }
+            
+            Class<?> superclass = Class.forName(superclassName.trim(), false, loader);
+            Class<?> interfaces[] = new Class<?>[interfaceNames.length];
+            for (int inner = 0; inner < interfaceNames.length; inner++) {
+                interfaces[inner] = Class.forName(interfaceNames[inner].trim(), false, loader);
+            }
+            
+            System.out.println("Wrote " + writeProxyClass(directory, superclass, interfaces));
+        }
+    }
+}
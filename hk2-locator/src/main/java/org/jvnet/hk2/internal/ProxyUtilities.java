@@ -40,31 +40,75 @@
 
 package org.jvnet.hk2.internal;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.security.AccessControlException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.Injectee;
 import org.glassfish.hk2.api.MultiException;
 import org.glassfish.hk2.api.ProxyCtl;
 import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.utilities.reflection.Logger;
 
+import javassist.bytecode.ClassFile;
+import javassist.util.proxy.FactoryHelper;
+import javassist.util.proxy.MethodFilter;
 import javassist.util.proxy.MethodHandler;
 import javassist.util.proxy.ProxyFactory;
 import javassist.util.proxy.ProxyObject;
 
 /**
- * Utilities around proxying
+ * Utilities around proxying.
+ * <p>
+ * Proxy classes are cached per superclass, set of interfaces and classloader,
+ * and are generated without any lock that is shared with the generation of
+ * other proxy classes, so that the creation of unrelated proxies does not
+ * serialize.  If the org.jvnet.hk2.properties.pregeneratedProxies system
+ * property is true then a proxy class written at build time by
+ * {@link ProxyClassWriter} is used in place of generating one at runtime
  * 
  * @author jwells
  *
  */
 public class ProxyUtilities {
-    private final static Object proxyCreationLock = new Object();
-    private final HashMap<ClassLoader, DelegatingClassLoader> superClassToDelegator = new HashMap<ClassLoader, DelegatingClassLoader>();
+    private final static String PREGENERATED_PROXIES_PROPERTY = "org.jvnet.hk2.properties.pregeneratedProxies";
+    private final static boolean PREGENERATED_PROXIES = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+        @Override
+        public Boolean run() {
+            return Boolean.parseBoolean(
+                System.getProperty(PREGENERATED_PROXIES_PROPERTY, "false"));
+        }
+            
+    });
+    
+    /**
+     * The suffix added to the name of the superclass to form the name
+     * of a proxy class written at build time
+     */
+    public final static String PREGENERATED_PROXY_SUFFIX = "$$Hk2Proxy";
+    
+    /**
+     * The separator between the name of the superclass and the unique
+     * suffix in the name of a proxy class generated at runtime.  Proxy
+     * classes generated by the fallback to ProxyFactory.createClass do
+     * not have this separator in their name
+     */
+    public final static String GENERATED_PROXY_NAME_SEPARATOR = "_$$_jvsthk2_";
+    
+    private final ConcurrentHashMap<ClassLoader, DelegatingClassLoader> superClassToDelegator = new ConcurrentHashMap<ClassLoader, DelegatingClassLoader>();
+    private final ConcurrentHashMap<ProxyKey, FutureTask<Class<?>>> proxyClasses = new ConcurrentHashMap<ProxyKey, FutureTask<Class<?>>>();
     
     /**
      * We put the anchor as the value even though we don't use it in order to
@@ -113,24 +157,22 @@ public class ProxyUtilities {
             
         });
         
-        DelegatingClassLoader initDelegatingLoader;
-        synchronized (superClassToDelegator) {
-            initDelegatingLoader = superClassToDelegator.get(loader);
-            if (initDelegatingLoader == null) {
-                initDelegatingLoader = AccessController.doPrivileged(new PrivilegedAction<DelegatingClassLoader>() {
-
-                    @Override
-                    public DelegatingClassLoader run() {
-                        return new DelegatingClassLoader(
-                                loader,
-                                ProxyFactory.class.getClassLoader(),
-                                ProxyCtl.class.getClassLoader());
-                    }
-                    
-                });
+        DelegatingClassLoader initDelegatingLoader = superClassToDelegator.get(loader);
+        if (initDelegatingLoader == null) {
+            initDelegatingLoader = AccessController.doPrivileged(new PrivilegedAction<DelegatingClassLoader>() {
+
+                @Override
+                public DelegatingClassLoader run() {
+                    return new DelegatingClassLoader(
+                            loader,
+                            ProxyFactory.class.getClassLoader(),
+                            ProxyCtl.class.getClassLoader());
+                }
                 
-                superClassToDelegator.put(loader, initDelegatingLoader);
-            }
+            });
+            
+            DelegatingClassLoader existing = superClassToDelegator.putIfAbsent(loader, initDelegatingLoader);
+            if (existing != null) initDelegatingLoader = existing;
         }
         
         final DelegatingClassLoader delegatingLoader = initDelegatingLoader;
@@ -148,42 +190,22 @@ public class ProxyUtilities {
             });
 
         }
+        
+        final Class<?> proxyClass = getProxyClass(superclass, interfaces, loader, delegatingLoader);
 
         return AccessController.doPrivileged(new PrivilegedAction<T>() {
 
             @SuppressWarnings("unchecked")
             @Override
             public T run() {
-                synchronized (proxyCreationLock) {
-                    ProxyFactory.ClassLoaderProvider originalProvider = ProxyFactory.classLoaderProvider;
-                    ProxyFactory.classLoaderProvider = new ProxyFactory.ClassLoaderProvider() {
-                        
-                        @Override
-                        public ClassLoader get(ProxyFactory arg0) {
-                            return delegatingLoader;
-                        }
-                    };
-                    
-                    try {
-                        ProxyFactory proxyFactory = new ProxyFactory();
-                        proxyFactory.setInterfaces(interfaces);
-                        proxyFactory.setSuperclass(superclass);
-
-                        Class<?> proxyClass = proxyFactory.createClass();
+                try {
+                    T proxy = (T) proxyClass.newInstance();
 
-                        try {
-                            T proxy = (T) proxyClass.newInstance();
+                    ((ProxyObject) proxy).setHandler(callback);
 
-                            ((ProxyObject) proxy).setHandler(callback);
-
-                            return proxy;
-                        } catch (Exception e1) {
-                            throw new RuntimeException(e1);
-                        }
-                    }
-                    finally {
-                        ProxyFactory.classLoaderProvider = originalProvider;
-                    }
+                    return proxy;
+                } catch (Exception e1) {
+                    throw new RuntimeException(e1);
                 }
             }
 
@@ -191,6 +213,97 @@ public class ProxyUtilities {
 
     }
     
+    /**
+     * Gets the proxy class for the given superclass and interfaces,
+     * generating it if this is the first request for it.  Only requests
+     * for the same proxy class wait for each other
+     */
+    private Class<?> getProxyClass(final Class<?> superclass,
+            final Class<?>[] interfaces,
+            final ClassLoader loader,
+            final DelegatingClassLoader delegatingLoader) {
+        ProxyKey key = new ProxyKey(superclass, interfaces, loader);
+        
+        FutureTask<Class<?>> future = proxyClasses.get(key);
+        if (future == null) {
+            FutureTask<Class<?>> generator = new FutureTask<Class<?>>(new Callable<Class<?>>() {
+
+                @Override
+                public Class<?> call() throws Exception {
+                    return AccessController.doPrivileged(new PrivilegedAction<Class<?>>() {
+
+                        @Override
+                        public Class<?> run() {
+                            if (PREGENERATED_PROXIES) {
+                                Class<?> pregenerated = findPregeneratedProxy(superclass, interfaces, loader);
+                                if (pregenerated != null) return pregenerated;
+                            }
+                            
+                            DelegatingProxyFactory proxyFactory = new DelegatingProxyFactory(delegatingLoader);
+                            proxyFactory.setInterfaces(interfaces);
+                            proxyFactory.setSuperclass(superclass);
+                            
+                            return proxyFactory.generateClass(null);
+                        }
+                        
+                    });
+                }
+                
+            });
+            
+            future = proxyClasses.putIfAbsent(key, generator);
+            if (future == null) {
+                future = generator;
+                generator.run();
+            }
+        }
+        
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MultiException(e);
+        }
+        catch (ExecutionException e) {
+            // Let a later request try again
+            proxyClasses.remove(key, future);
+            
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new MultiException(cause);
+        }
+    }
+    
+    /**
+     * Finds a proxy class written at build time with {@link ProxyClassWriter}.
+     * The class is only used if it extends the superclass and implements
+     * all of the interfaces of the requested proxy
+     * 
+     * @return The pregenerated proxy class, or null if there is no usable one
+     */
+    private static Class<?> findPregeneratedProxy(Class<?> superclass, Class<?>[] interfaces, ClassLoader loader) {
+        Class<?> candidate;
+        try {
+            candidate = loader.loadClass(superclass.getName() + PREGENERATED_PROXY_SUFFIX);
+        }
+        catch (ClassNotFoundException cnfe) {
+            return null;
+        }
+        catch (LinkageError le) {
+            return null;
+        }
+        
+        if (!superclass.equals(candidate.getSuperclass())) return null;
+        if (!ProxyObject.class.isAssignableFrom(candidate)) return null;
+        for (Class<?> iFace : interfaces) {
+            if (!iFace.isAssignableFrom(candidate)) return null;
+        }
+        
+        return candidate;
+    }
+    
     @SuppressWarnings("unchecked")
     public <T> T generateProxy(Class<?> requestedClass,
             ServiceLocatorImpl locator,
@@ -241,8 +354,193 @@ public class ProxyUtilities {
     }
     
     public void releaseCache() {
-        synchronized (superClassToDelegator) {
-            superClassToDelegator.clear();
+        superClassToDelegator.clear();
+        proxyClasses.clear();
+    }
+    
+    /**
+     * A ProxyFactory that defines its proxy classes in a given classloader.
+     * Overriding getClassLoader replaces setting the static classLoaderProvider
+     * of ProxyFactory, which had to be done under a JVM wide lock.
+     * <p>
+     * ProxyFactory.createClass always holds the monitor of the static proxy
+     * cache of ProxyFactory while it generates and defines a class, even when
+     * the cache is not used.  {@link #generateClass(String)} instead takes the
+     * ClassFile made by the ProxyFactory and defines it in the
+     * {@link DelegatingClassLoader} itself, so that unrelated proxy classes
+     * are generated concurrently.  If the private members of ProxyFactory it
+     * needs can not be found, as may happen with another version of javassist,
+     * it falls back to createClass
+     */
+    static class DelegatingProxyFactory extends ProxyFactory {
+        private final static String FILTER_SIGNATURE_FIELD = "_filter_signature";
+        private final static AtomicLong PROXY_NAME_COUNTER = new AtomicLong();
+        private final static ProxyFactoryMembers MEMBERS = AccessController.doPrivileged(
+                new PrivilegedAction<ProxyFactoryMembers>() {
+            
+            @Override
+            public ProxyFactoryMembers run() {
+                try {
+                    return new ProxyFactoryMembers();
+                }
+                catch (Exception e) {
+                    Logger.getLogger().debug("The members of ProxyFactory used to generate proxy classes " +
+                            "could not be found, proxy classes will be generated with ProxyFactory.createClass", e);
+                    return null;
+                }
+            }
+            
+        });
+        
+        private final DelegatingClassLoader loader;
+        
+        DelegatingProxyFactory(DelegatingClassLoader loader) {
+            this.loader = loader;
+            setUseCache(false);
+        }
+        
+        @Override
+        protected ClassLoader getClassLoader() {
+            return loader;
+        }
+        
+        /**
+         * Generates the proxy class and defines it in the loader of this factory.
+         * Must be called with privileges
+         * 
+         * @param className The name of the proxy class, or null to give
+         * it a unique name in the package of the superclass
+         * @return The new proxy class
+         */
+        Class<?> generateClass(String className) {
+            if (MEMBERS == null) {
+                if (className == null) return createClass();
+                
+                // The name generator of ProxyFactory is static
+                final String fixedName = className;
+                synchronized (DelegatingProxyFactory.class) {
+                    ProxyFactory.UniqueName original = ProxyFactory.nameGenerator;
+                    ProxyFactory.nameGenerator = new ProxyFactory.UniqueName() {
+                        
+                        @Override
+                        public String get(String classname) {
+                            return fixedName;
+                        }
+                        
+                    };
+                    try {
+                        return createClass();
+                    }
+                    finally {
+                        ProxyFactory.nameGenerator = original;
+                    }
+                }
+            }
+            
+            try {
+                MEMBERS.computeSignature.invoke(this, (MethodFilter) null);
+                if (className == null) {
+                    className = MEMBERS.basename.get(this) + GENERATED_PROXY_NAME_SEPARATOR +
+                            Long.toHexString(PROXY_NAME_COUNTER.incrementAndGet());
+                }
+                MEMBERS.classname.set(this, className);
+                
+                ClassFile classFile = (ClassFile) MEMBERS.make.invoke(this);
+                if (writeDirectory != null) {
+                    FactoryHelper.writeFile(classFile, writeDirectory);
+                }
+                
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                classFile.write(out);
+                out.close();
+                
+                Class<?> retVal = loader.defineProxyClass(className, bytes.toByteArray(), getDomain());
+                
+                Field filterSignature = retVal.getField(FILTER_SIGNATURE_FIELD);
+                filterSignature.setAccessible(true);
+                filterSignature.set(null, MEMBERS.signature.get(this));
+                
+                return retVal;
+            }
+            catch (InvocationTargetException ite) {
+                Throwable cause = ite.getTargetException();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new RuntimeException(cause);
+            }
+            catch (RuntimeException re) {
+                throw re;
+            }
+            catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+    
+    /**
+     * The private members of ProxyFactory used to make its ClassFile
+     * without going through ProxyFactory.createClass
+     */
+    private static class ProxyFactoryMembers {
+        private final Method computeSignature;
+        private final Method make;
+        private final Field basename;
+        private final Field classname;
+        private final Field signature;
+        
+        private ProxyFactoryMembers() throws Exception {
+            computeSignature = ProxyFactory.class.getDeclaredMethod("computeSignature", MethodFilter.class);
+            make = ProxyFactory.class.getDeclaredMethod("make");
+            basename = ProxyFactory.class.getDeclaredField("basename");
+            classname = ProxyFactory.class.getDeclaredField("classname");
+            signature = ProxyFactory.class.getDeclaredField("signature");
+            
+            if (!ClassFile.class.equals(make.getReturnType())) {
+                throw new NoSuchMethodException("make returns " + make.getReturnType().getName());
+            }
+            
+            computeSignature.setAccessible(true);
+            make.setAccessible(true);
+            basename.setAccessible(true);
+            classname.setAccessible(true);
+            signature.setAccessible(true);
+        }
+    }
+    
+    /**
+     * The key of a proxy class, made of the superclass, the
+     * interfaces and the classloader of the superclass
+     */
+    private static class ProxyKey {
+        private final Class<?> superclass;
+        private final Class<?>[] interfaces;
+        private final ClassLoader loader;
+        private final int hash;
+        
+        private ProxyKey(Class<?> superclass, Class<?>[] interfaces, ClassLoader loader) {
+            this.superclass = superclass;
+            this.interfaces = interfaces;
+            this.loader = loader;
+            
+            hash = superclass.hashCode() ^ Arrays.hashCode(interfaces) ^ System.identityHashCode(loader);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (o == null) return false;
+            if (!(o instanceof ProxyKey)) return false;
+            
+            ProxyKey other = (ProxyKey) o;
+            
+            return superclass.equals(other.superclass) &&
+                    loader == other.loader &&
+                    Arrays.equals(interfaces, other.interfaces);
         }
     }
 }
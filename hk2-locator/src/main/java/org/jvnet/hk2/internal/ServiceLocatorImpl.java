@@ -49,6 +49,7 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -75,6 +76,7 @@ import javax.inject.Provider;
 import javax.inject.Singleton;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.CacheableValidationService;
 import org.glassfish.hk2.api.ClassAnalyzer;
 import org.glassfish.hk2.api.Context;
 import org.glassfish.hk2.api.Descriptor;
@@ -90,6 +92,7 @@ import org.glassfish.hk2.api.Injectee;
 import org.glassfish.hk2.api.InstanceLifecycleListener;
 import org.glassfish.hk2.api.InterceptionService;
 import org.glassfish.hk2.api.JustInTimeInjectionResolver;
+import org.glassfish.hk2.api.JustInTimeResolves;
 import org.glassfish.hk2.api.MethodParameter;
 import org.glassfish.hk2.api.Operation;
 import org.glassfish.hk2.api.InjectionResolver;
@@ -111,15 +114,16 @@ import org.glassfish.hk2.api.Validator;
 import org.glassfish.hk2.api.messaging.Topic;
 import org.glassfish.hk2.utilities.BuilderHelper;
 import org.glassfish.hk2.utilities.InjecteeImpl;
-import org.glassfish.hk2.utilities.cache.CacheKeyFilter;
+import org.glassfish.hk2.utilities.cache.CacheKeyIndexer;
 import org.glassfish.hk2.utilities.cache.CacheUtilities;
 import org.glassfish.hk2.utilities.cache.ComputationErrorException;
-import org.glassfish.hk2.utilities.cache.WeakCARCache;
+import org.glassfish.hk2.utilities.cache.IndexedCache;
 import org.glassfish.hk2.utilities.reflection.ClassReflectionHelper;
 import org.glassfish.hk2.utilities.reflection.Logger;
 import org.glassfish.hk2.utilities.reflection.ParameterizedTypeImpl;
 import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
 import org.glassfish.hk2.utilities.reflection.internal.ClassReflectionHelperImpl;
+import org.jvnet.hk2.external.runtime.ServiceLocatorMetrics;
 
 /**
  * @author jwells
@@ -145,7 +149,50 @@ public class ServiceLocatorImpl implements ServiceLocator {
             
     });
 
-    private final static int CACHE_SIZE = 20000;
+    private final static String LOCK_FREE_LOOKUPS_PROPERTY = "org.jvnet.hk2.properties.lockFreeLookups";
+    private final static boolean LOCK_FREE_LOOKUPS = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+        @Override
+        public Boolean run() {
+            return Boolean.parseBoolean(
+                System.getProperty(LOCK_FREE_LOOKUPS_PROPERTY, "false"));
+        }
+            
+    });
+
+    private final static String GROUP_COMMITS_PROPERTY = "org.jvnet.hk2.properties.groupCommits";
+    private final static boolean GROUP_COMMITS = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+        @Override
+        public Boolean run() {
+            return Boolean.parseBoolean(
+                System.getProperty(GROUP_COMMITS_PROPERTY, "false"));
+        }
+            
+    });
+
+    private final static String LOOKUP_CACHE_SIZE_PROPERTY = "org.jvnet.hk2.properties.lookupCacheSize";
+    private final static int DEFAULT_LOOKUP_CACHE_SIZE = 20000;
+    private final static int CACHE_SIZE = AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+        @Override
+        public Integer run() {
+            int retVal = Integer.getInteger(LOOKUP_CACHE_SIZE_PROPERTY, DEFAULT_LOOKUP_CACHE_SIZE);
+            if (retVal < 1) return DEFAULT_LOOKUP_CACHE_SIZE;
+            
+            return retVal;
+        }
+            
+    });
+    
+    /** The maximum number of injection points remembered as not resolvable by the JIT resolvers */
+    private final static int MAX_JIT_MISSES = 1024;
+    
+    /** Indexes the lookup caches by contract, so that a contract can be released without a full scan */
+    private final static CacheKeyIndexer<IgdCacheKey> IGD_CACHE_INDEXER = new CacheKeyIndexer<IgdCacheKey>() {
+        @Override
+        public String getIndex(IgdCacheKey key) {
+            return key.cacheKey.getRemovalName();
+        }
+        
+    };
     private final static Object sLock = new Object();
     private static long currentLocatorId = 0L;
 
@@ -162,6 +209,44 @@ public class ServiceLocatorImpl implements ServiceLocator {
     private volatile boolean neutralContextClassLoader = true;
     private final ClassReflectionHelper classReflectionHelper = new ClassReflectionHelperImpl();
     private final PerLocatorUtilities perLocatorUtilities = new PerLocatorUtilities(this);
+    
+    /*
+     * When lockFreeLookups is true lookups do not take the read lock but instead
+     * read an immutable snapshot of the indexes.  The snapshot is thrown away
+     * by every configuration change and is rebuilt lazily by the first lookup
+     * that needs it.  The generation is only modified with the write lock held
+     */
+    private volatile boolean lockFreeLookups = LOCK_FREE_LOOKUPS;
+    private volatile DescriptorSnapshot snapshot = null;
+    private volatile ValidatorList validatorList = null;
+    private volatile long generation = 0L;
+    
+    /*
+     * Injection points that none of the JIT resolvers could resolve, mapped
+     * to the generation in which that happened.  An entry from an older
+     * generation is ignored
+     */
+    private final ConcurrentHashMap<JustInTimeMissKey, Long> jitMisses =
+            new ConcurrentHashMap<JustInTimeMissKey, Long>();
+    
+    /*
+     * When groupCommits is true a commit that arrives while another commit
+     * is being processed is queued, and all of the queued commits are then
+     * applied by one thread under a single acquisition of the write lock,
+     * followed by one cache invalidation pass, one notification of the
+     * children and one notification of the configuration listeners.  The
+     * thread applying the queued commits is the groupCommitLeader
+     */
+    private volatile boolean groupCommits = GROUP_COMMITS;
+    private final Object groupCommitLock = new Object();
+    private final LinkedList<PendingCommit> pendingCommits = new LinkedList<PendingCommit>();
+    private Thread groupCommitLeader = null;
+    
+    /*
+     * Null unless someone is collecting metrics, in which case
+     * the clock is read around lookups, commits and creations
+     */
+    private volatile ServiceLocatorMetrics metrics = null;
 
     private final IndexedListData allDescriptors = new IndexedListData();
     private final HashMap<String, IndexedListData> descriptorsByAdvertisedContract =
@@ -250,35 +335,44 @@ public class ServiceLocatorImpl implements ServiceLocator {
             return vs.getValidator().validate(vi);
         }
         catch (Throwable th) {
-            List<ErrorService> localErrorServices = new LinkedList<ErrorService>(errorHandlers);
-            
-            MultiException useException;
-            if (th instanceof MultiException) {
-                useException = (MultiException) th;
-            }
-            else {
-                useException = new MultiException(th);
-            }
-            
-            ErrorInformationImpl ei = new ErrorInformationImpl(
-                    ErrorType.VALIDATE_FAILURE,
-                    vi.getCandidate(),
-                    vi.getInjectee(),
-                    useException);
-            
-            for (ErrorService errorService : localErrorServices) {
-                try {
-                    errorService.onFailure(ei);
-                }
-                catch (Throwable th2) {
-                    Logger.getLogger().debug("ServiceLocatorImpl", "callValidate", th2);
-                }
-            }
-            
+            reportValidateFailure(vi, th);
         }
         
         return false;
     }
+    
+    /**
+     * Must have read lock held
+     * 
+     * @param vi The non-null validation that failed
+     * @param th The non-null exception thrown by the validator
+     */
+    private void reportValidateFailure(ValidationInformation vi, Throwable th) {
+        List<ErrorService> localErrorServices = getErrorHandlers();
+        
+        MultiException useException;
+        if (th instanceof MultiException) {
+            useException = (MultiException) th;
+        }
+        else {
+            useException = new MultiException(th);
+        }
+        
+        ErrorInformationImpl ei = new ErrorInformationImpl(
+                ErrorType.VALIDATE_FAILURE,
+                vi.getCandidate(),
+                vi.getInjectee(),
+                useException);
+        
+        for (ErrorService errorService : localErrorServices) {
+            try {
+                errorService.onFailure(ei);
+            }
+            catch (Throwable th2) {
+                Logger.getLogger().debug("ServiceLocatorImpl", "callValidate", th2);
+            }
+        }
+    }
 
     /**
      * Must be called under lock
@@ -288,7 +382,14 @@ public class ServiceLocatorImpl implements ServiceLocator {
      * @return true if every validator returned true
      */
     private boolean validate(SystemDescriptor<?> descriptor, Injectee onBehalfOf, Filter filter) {
-        for (ValidationService vs : getAllValidators()) {
+        ValidatorList validators = getAllValidators();
+        
+        if (validators.hasCacheable() && !validateCacheable(validators, descriptor, onBehalfOf, filter)) {
+            return false;
+        }
+        
+        for (ValidationService vs : validators.getValidators()) {
+            if (vs instanceof CacheableValidationService) continue;
             if (!descriptor.isValidating(vs)) continue;
 
             if (!callValidate(vs, new ValidationInformationImpl(
@@ -299,6 +400,55 @@ public class ServiceLocatorImpl implements ServiceLocator {
 
         return true;
     }
+    
+    /**
+     * Must be called under lock.  Runs the {@link CacheableValidationService}s,
+     * remembering their decision on the descriptor for the given list of
+     * validators
+     * 
+     * @param validators The validators of this locator
+     * @param descriptor The descriptor to validate
+     * @param onBehalfOf The fella who is being validated (or null)
+     * @return true if every cacheable validator returned true
+     */
+    private boolean validateCacheable(ValidatorList validators,
+            SystemDescriptor<?> descriptor,
+            Injectee onBehalfOf,
+            Filter filter) {
+        // Merged lists are replaced whenever the configuration changes
+        boolean remember = (validators.getGeneration() != ValidatorList.NO_GENERATION);
+        
+        if (remember) {
+            Boolean verdict = descriptor.getLookupVerdict(onBehalfOf, validators);
+            if (verdict != null) return verdict.booleanValue();
+        }
+        
+        boolean valid = true;
+        for (ValidationService vs : validators.getValidators()) {
+            if (!(vs instanceof CacheableValidationService)) continue;
+            if (!descriptor.isValidating(vs)) continue;
+            
+            ValidationInformation vi = new ValidationInformationImpl(
+                    Operation.LOOKUP, descriptor, onBehalfOf, filter);
+            try {
+                if (!vs.getValidator().validate(vi)) {
+                    valid = false;
+                    break;
+                }
+            }
+            catch (Throwable th) {
+                // Failures are reported every time, so the decision is not remembered
+                reportValidateFailure(vi, th);
+                return false;
+            }
+        }
+        
+        if (remember) {
+            descriptor.setLookupVerdict(onBehalfOf, validators, valid);
+        }
+        
+        return valid;
+    }
 
     private List<SystemDescriptor<?>> getDescriptors(Filter filter,
             Injectee onBehalfOf,
@@ -307,82 +457,110 @@ public class ServiceLocatorImpl implements ServiceLocator {
             boolean getLocals) {
         if (filter == null) throw new IllegalArgumentException("filter is null");
 
-        LinkedList<SystemDescriptor<?>> retVal;
-        rLock.lock();
-        try {
-            Collection<SystemDescriptor<?>> sortMeOut;
-            if (filter instanceof IndexedFilter) {
-                IndexedFilter df = (IndexedFilter) filter;
+        List<SystemDescriptor<?>> retVal;
+        DescriptorSnapshot lockFreeSnapshot = getLockFreeSnapshot();
+        if (lockFreeSnapshot != null) {
+            retVal = matchCandidates(lockFreeSnapshot.getCandidates(filter),
+                    filter, onBehalfOf, doValidation, getLocals);
+        }
+        else {
+            rLock.lock();
+            try {
+                retVal = matchCandidates(getIndexedCandidates(filter),
+                        filter, onBehalfOf, doValidation, getLocals);
+            } finally {
+                rLock.unlock();
+            }
+        }
+
+        // Must be done outside of lock, or there can be a deadlock between child and parent
+        if (getParents && parent != null) {
+            TreeSet<SystemDescriptor<?>> sorter = new TreeSet<SystemDescriptor<?>>(DESCRIPTOR_COMPARATOR);
+
+            sorter.addAll(retVal);
+            sorter.addAll(parent.getDescriptors(filter, onBehalfOf, getParents, doValidation, false));
 
-                if (df.getName() != null) {
-                    Collection<SystemDescriptor<?>> scopedByName;
+            retVal.clear();
 
-                    String name = df.getName();
+            retVal.addAll(sorter);
+        }
 
-                    IndexedListData ild = descriptorsByName.get(name);
-                    scopedByName = (ild == null) ? null : ild.getSortedList();
-                    if (scopedByName == null) {
-                        scopedByName = Collections.emptyList();
-                    }
+        return retVal;
+    }
 
-                    if (df.getAdvertisedContract() != null) {
-                        sortMeOut = new LinkedList<SystemDescriptor<?>>();
+    /**
+     * Must be called with the read lock held
+     *
+     * @param filter The non-null filter to get the candidates for
+     * @return The sorted candidates that should be matched against the filter
+     */
+    private Collection<SystemDescriptor<?>> getIndexedCandidates(Filter filter) {
+        Collection<SystemDescriptor<?>> sortMeOut;
+        if (filter instanceof IndexedFilter) {
+            IndexedFilter df = (IndexedFilter) filter;
 
-                        for (SystemDescriptor<?> candidate : scopedByName) {
-                            if (candidate.getAdvertisedContracts().contains(df.getAdvertisedContract())) {
-                                sortMeOut.add(candidate);
-                            }
-                        }
-                    }
-                    else {
-                        sortMeOut = scopedByName;
-                    }
+            if (df.getName() != null) {
+                Collection<SystemDescriptor<?>> scopedByName;
+
+                String name = df.getName();
+
+                IndexedListData ild = descriptorsByName.get(name);
+                scopedByName = (ild == null) ? null : ild.getSortedList();
+                if (scopedByName == null) {
+                    scopedByName = Collections.emptyList();
                 }
-                else if (df.getAdvertisedContract() != null) {
-                    String advertisedContract = df.getAdvertisedContract();
 
-                    IndexedListData ild = descriptorsByAdvertisedContract.get(advertisedContract);
-                    sortMeOut = (ild == null) ? null : ild.getSortedList();
-                    if (sortMeOut == null) {
-                        sortMeOut = Collections.emptyList();
+                if (df.getAdvertisedContract() != null) {
+                    sortMeOut = new LinkedList<SystemDescriptor<?>>();
 
+                    for (SystemDescriptor<?> candidate : scopedByName) {
+                        if (candidate.getAdvertisedContracts().contains(df.getAdvertisedContract())) {
+                            sortMeOut.add(candidate);
+                        }
                     }
                 }
                 else {
-                    sortMeOut = allDescriptors.getSortedList();
+                    sortMeOut = scopedByName;
                 }
             }
-            else {
-                sortMeOut = allDescriptors.getSortedList();
-            }
-
-            retVal = new LinkedList<SystemDescriptor<?>>();
+            else if (df.getAdvertisedContract() != null) {
+                String advertisedContract = df.getAdvertisedContract();
 
-            for (SystemDescriptor<?> candidate : sortMeOut) {
-                if (!getLocals && DescriptorVisibility.LOCAL.equals(candidate.getDescriptorVisibility())) {
-                    continue;
-                }
-
-                if (doValidation && !validate(candidate, onBehalfOf, filter)) continue;
+                IndexedListData ild = descriptorsByAdvertisedContract.get(advertisedContract);
+                sortMeOut = (ild == null) ? null : ild.getSortedList();
+                if (sortMeOut == null) {
+                    sortMeOut = Collections.emptyList();
 
-                if (filter.matches(candidate)) {
-                    retVal.add(candidate);
                 }
             }
-        } finally {
-            rLock.unlock();
+            else {
+                sortMeOut = allDescriptors.getSortedList();
+            }
+        }
+        else {
+            sortMeOut = allDescriptors.getSortedList();
         }
 
-        // Must be done outside of lock, or there can be a deadlock between child and parent
-        if (getParents && parent != null) {
-            TreeSet<SystemDescriptor<?>> sorter = new TreeSet<SystemDescriptor<?>>(DESCRIPTOR_COMPARATOR);
+        return sortMeOut;
+    }
 
-            sorter.addAll(retVal);
-            sorter.addAll(parent.getDescriptors(filter, onBehalfOf, getParents, doValidation, false));
+    private List<SystemDescriptor<?>> matchCandidates(Collection<SystemDescriptor<?>> candidates,
+            Filter filter,
+            Injectee onBehalfOf,
+            boolean doValidation,
+            boolean getLocals) {
+        LinkedList<SystemDescriptor<?>> retVal = new LinkedList<SystemDescriptor<?>>();
 
-            retVal.clear();
+        for (SystemDescriptor<?> candidate : candidates) {
+            if (!getLocals && DescriptorVisibility.LOCAL.equals(candidate.getDescriptorVisibility())) {
+                continue;
+            }
 
-            retVal.addAll(sorter);
+            if (doValidation && !validate(candidate, onBehalfOf, filter)) continue;
+
+            if (filter.matches(candidate)) {
+                retVal.add(candidate);
+            }
         }
 
         return retVal;
@@ -479,16 +657,29 @@ public class ServiceLocatorImpl implements ServiceLocator {
     }
 
     private ActiveDescriptor<?> secondChanceResolve(Injectee injectee) {
+        // The generation must be read before the resolvers are looked up
+        long missGeneration = generation;
+        JustInTimeMissKey missKey = new JustInTimeMissKey(injectee);
+        
+        Long missedIn = jitMisses.get(missKey);
+        if (missedIn != null && missedIn.longValue() == missGeneration) {
+            // None of the resolvers could do anything with this the last time
+            return null;
+        }
+        
         // OK, lets do the second chance protocol
         Collector collector = new Collector();
 
         List<ServiceHandle<JustInTimeInjectionResolver>> jitResolvers =
                 ReflectionHelper.<List<ServiceHandle<JustInTimeInjectionResolver>>>cast(
                 getAllServiceHandles(JustInTimeInjectionResolver.class));
+        
+        Class<?> rawType = ReflectionHelper.getRawClass(injectee.getRequiredType());
 
         try {
             boolean modified = false;
             boolean aJITFailed = false;
+            boolean rememberMiss = true;
             for (ServiceHandle<JustInTimeInjectionResolver> handle : jitResolvers) {
                 if ((injectee.getInjecteeClass() != null) && (
                         injectee.getInjecteeClass().getName().equals(
@@ -496,6 +687,10 @@ public class ServiceLocatorImpl implements ServiceLocator {
                     // Do not self second-chance
                     continue;
                 }
+                
+                if (!Utilities.isJustInTimeResolverFor(handle.getActiveDescriptor(), rawType)) {
+                    continue;
+                }
 
                 JustInTimeInjectionResolver jitResolver;
                 try {
@@ -504,6 +699,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 catch (MultiException me) {
                     // We just ignore this for now, it may be resolvable later
                     Logger.getLogger().debug(handle.toString(), "secondChanceResolver", me);
+                    rememberMiss = false;
                     continue;
                 }
 
@@ -524,6 +720,14 @@ public class ServiceLocatorImpl implements ServiceLocator {
             }
 
             if (!modified) {
+                if (rememberMiss) {
+                    if (jitMisses.size() >= MAX_JIT_MISSES) {
+                        jitMisses.clear();
+                    }
+                    
+                    jitMisses.put(missKey, missGeneration);
+                }
+                
                 return null;
             }
 
@@ -932,6 +1136,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
         try {
 
             state = ServiceLocatorState.SHUTDOWN;
+            nextGeneration();
 
             allDescriptors.clear();
             descriptorsByAdvertisedContract.clear();
@@ -1165,23 +1370,27 @@ public class ServiceLocatorImpl implements ServiceLocator {
     private class IgdValue {
         final NarrowResults results;
         final ImmediateResults immediate;
+        final long generation;
         final AtomicInteger freshnessKeeper = new AtomicInteger(1);
 
-        public IgdValue(NarrowResults results, ImmediateResults immediate) {
+        public IgdValue(NarrowResults results, ImmediateResults immediate, long generation) {
             this.results = results;
             this.immediate = immediate;
+            this.generation = generation;
         }
     }
 
-    private final WeakCARCache<IgdCacheKey, IgdValue> igdCache = CacheUtilities.createWeakCARCache(
+    private final IndexedCache<IgdCacheKey, IgdValue> igdCache = CacheUtilities.createIndexedCache(
             new Computable<IgdCacheKey, IgdValue>() {
                 @Override
                 public IgdValue compute(final IgdCacheKey key) {
                     return igdCacheCompute(key);
                 }
-            }, CACHE_SIZE, false);
+            }, IGD_CACHE_INDEXER, CACHE_SIZE);
     
     private IgdValue igdCacheCompute(final IgdCacheKey key) {
+        // The generation must be read before any of the indexes
+        final long currentGeneration = generation;
         final List<SystemDescriptor<?>> candidates = getDescriptors(key.filter, key.onBehalfOf, true, false, true);
         final ImmediateResults immediate = narrow(ServiceLocatorImpl.this, // locator
                 candidates, // candidates
@@ -1196,11 +1405,42 @@ public class ServiceLocatorImpl implements ServiceLocator {
         
         final NarrowResults results = immediate.getTimelessResults();
         if (!results.getErrors().isEmpty()) {
-            Utilities.handleErrors(results, new LinkedList<ErrorService>(errorHandlers));
-            throw new ComputationErrorException(new IgdValue(results, immediate));
+            Utilities.handleErrors(results, getErrorHandlers());
+            throw new ComputationErrorException(new IgdValue(results, immediate, currentGeneration));
+        }
+        
+        return new IgdValue(results, immediate, currentGeneration);
+    }
+    
+    /**
+     * Gets the value for the key from the given cache.  If lockFreeSnapshot
+     * is null then the read lock must be held
+     * 
+     * @param cache The cache to get the value from
+     * @param key The key of the value
+     * @param lockFreeSnapshot The snapshot taken by the caller before
+     * getting the value, or null if the caller holds the read lock
+     * @return The value, or null if a value consistent with the given
+     * snapshot could not be found and the caller must try again with
+     * the read lock held
+     */
+    private IgdValue getIgdValue(IndexedCache<IgdCacheKey, IgdValue> cache,
+            IgdCacheKey key,
+            DescriptorSnapshot lockFreeSnapshot) {
+        IgdValue value = cache.compute(key);
+        if (lockFreeSnapshot != null) {
+            if (value.generation != lockFreeSnapshot.getGeneration()) return null;
+            
+            return value;
+        }
+        
+        if (value.generation != generation) {
+            // Computed without the lock by a lookup that raced with a configuration change
+            cache.remove(key);
+            value = cache.compute(key);
         }
         
-        return new IgdValue(results, immediate);
+        return value;
     }
     
     private Unqualified getEffectiveUnqualified(Unqualified givenUnqualified, boolean isIterable, Annotation qualifiers[]) {
@@ -1220,13 +1460,35 @@ public class ServiceLocatorImpl implements ServiceLocator {
       return internalGetDescriptor(onBehalfOf, contractOrImpl, name, unqualified, isIterable, false, qualifiers);
     }
   
-    @SuppressWarnings("unchecked")
     private <T> ActiveDescriptor<T> internalGetDescriptor(Injectee onBehalfOf, Type contractOrImpl,
             String name,
             Unqualified unqualified,
             boolean isIterable,
             boolean calledFromSecondChanceResolveMethod,
             Annotation... qualifiers) throws MultiException {
+        ServiceLocatorMetrics localMetrics = metrics;
+        if (localMetrics == null) {
+            return timedGetDescriptor(onBehalfOf, contractOrImpl, name, unqualified, isIterable,
+                    calledFromSecondChanceResolveMethod, qualifiers);
+        }
+        
+        long start = System.nanoTime();
+        try {
+            return timedGetDescriptor(onBehalfOf, contractOrImpl, name, unqualified, isIterable,
+                    calledFromSecondChanceResolveMethod, qualifiers);
+        }
+        finally {
+            localMetrics.lookupCompleted(System.nanoTime() - start);
+        }
+    }
+  
+    @SuppressWarnings("unchecked")
+    private <T> ActiveDescriptor<T> timedGetDescriptor(Injectee onBehalfOf, Type contractOrImpl,
+            String name,
+            Unqualified unqualified,
+            boolean isIterable,
+            boolean calledFromSecondChanceResolveMethod,
+            Annotation... qualifiers) throws MultiException {
         if (contractOrImpl == null) throw new IllegalArgumentException();
 
         Class<?> rawClass = ReflectionHelper.getRawClass(contractOrImpl);
@@ -1255,9 +1517,17 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 qualifiers,
                 filter);
 
-        rLock.lock();
+        final DescriptorSnapshot lockFreeSnapshot = getLockFreeSnapshot();
+        IgdValue value = (lockFreeSnapshot == null) ? null : getIgdValue(igdCache, igdCacheKey, lockFreeSnapshot);
+        final boolean locked = (value == null);
+        if (locked) {
+            rLock.lock();
+        }
         try {
-            final IgdValue value = igdCache.compute(igdCacheKey);
+            if (locked) {
+                value = getIgdValue(igdCache, igdCacheKey, null);
+            }
+
             final boolean freshOne = value.freshnessKeeper.compareAndSet(1, 2);
             if (!freshOne) {
                 immediate = narrow(this,  // locator
@@ -1277,10 +1547,12 @@ public class ServiceLocatorImpl implements ServiceLocator {
             }
 
             if (!results.getErrors().isEmpty()) {
-                currentErrorHandlers = new LinkedList<ErrorService>(errorHandlers);
+                currentErrorHandlers = getErrorHandlers();
             }
         } finally {
-            rLock.unlock();
+            if (locked) {
+                rLock.unlock();
+            }
         }
 
         if (currentErrorHandlers != null) {
@@ -1378,18 +1650,12 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 internalGetAllServiceHandles(contractOrImpl, null, true, false, qualifiers);
     }
 
-    /* package */ @SuppressWarnings("unchecked")
-    List<ServiceHandle<?>> getAllUnqualifiedServiceHandles(
-            Type contractOrImpl, Unqualified unqualified, boolean isIterable, Annotation... qualifiers)
-            throws MultiException {
-        return (List<ServiceHandle<?>>)
-                internalGetAllServiceHandles(contractOrImpl, unqualified, true, isIterable, qualifiers);
-    }
-
-    final private WeakCARCache<IgdCacheKey, IgdValue> igashCache =
-            CacheUtilities.createWeakCARCache(new Computable<IgdCacheKey, IgdValue>() {
+    final private IndexedCache<IgdCacheKey, IgdValue> igashCache =
+            CacheUtilities.createIndexedCache(new Computable<IgdCacheKey, IgdValue>() {
         @Override
         public IgdValue compute(final IgdCacheKey key) {
+            // The generation must be read before any of the indexes
+            final long currentGeneration = generation;
 
             List<SystemDescriptor<?>> candidates = getDescriptors(key.filter, null, true, false, true);
             ImmediateResults immediate = narrow(ServiceLocatorImpl.this,
@@ -1404,13 +1670,13 @@ public class ServiceLocatorImpl implements ServiceLocator {
                     key.qualifiers);
             NarrowResults results = immediate.getTimelessResults();
             if (!results.getErrors().isEmpty()) {
-                Utilities.handleErrors(results, new LinkedList<ErrorService>(errorHandlers));
-                throw new ComputationErrorException(new IgdValue(results, immediate)) ;
+                Utilities.handleErrors(results, getErrorHandlers());
+                throw new ComputationErrorException(new IgdValue(results, immediate, currentGeneration)) ;
             }
             
-            return new IgdValue(results, immediate);
+            return new IgdValue(results, immediate, currentGeneration);
         }
-    }, CACHE_SIZE, false);
+    }, IGD_CACHE_INDEXER, CACHE_SIZE);
 
     private List<?> internalGetAllServiceHandles(
             Type contractOrImpl,
@@ -1419,6 +1685,27 @@ public class ServiceLocatorImpl implements ServiceLocator {
             boolean isIterable,
             Annotation... qualifiers)
             throws MultiException {
+        ServiceLocatorMetrics localMetrics = metrics;
+        if (localMetrics == null) {
+            return timedGetAllServiceHandles(contractOrImpl, unqualified, getHandles, isIterable, qualifiers);
+        }
+        
+        long start = System.nanoTime();
+        try {
+            return timedGetAllServiceHandles(contractOrImpl, unqualified, getHandles, isIterable, qualifiers);
+        }
+        finally {
+            localMetrics.lookupCompleted(System.nanoTime() - start);
+        }
+    }
+    
+    private List<?> timedGetAllServiceHandles(
+            Type contractOrImpl,
+            Unqualified unqualified,
+            boolean getHandles,
+            boolean isIterable,
+            Annotation... qualifiers)
+            throws MultiException {
 
         if (contractOrImpl == null) throw new IllegalArgumentException();
         checkState();
@@ -1428,73 +1715,182 @@ public class ServiceLocatorImpl implements ServiceLocator {
             throw new MultiException(new IllegalArgumentException("Type must be a class or parameterized type, it was " + contractOrImpl));
         }
 
-        final String name = rawClass.getName();
-
-        NarrowResults results = null;
-        LinkedList<ErrorService> currentErrorHandlers = null;
-
-        ImmediateResults immediate = null;
-        
-        unqualified = getEffectiveUnqualified(unqualified, isIterable, qualifiers);
-
-        final CacheKey cacheKey = new CacheKey(contractOrImpl, null, unqualified, qualifiers);
-        final Filter filter = new UnqualifiedIndexedFilter(name, null, unqualified);
-        final IgdCacheKey igdCacheKey = new IgdCacheKey(cacheKey,
-                name,
-                null,
-                contractOrImpl,
-                rawClass,
-                qualifiers,
-                filter);
+        ImmediateResults immediate = getAllImmediateResults(contractOrImpl, rawClass, unqualified, isIterable, qualifiers);
 
-        rLock.lock();
-        try {
-            final IgdValue value = igashCache.compute(igdCacheKey);
-            final boolean freshOne = value.freshnessKeeper.compareAndSet(1, 2);
-            if (!freshOne) {
-                immediate = narrow(this,
-                        null,
-                        contractOrImpl,
-                        null,
-                        null,
-                        false,
-                        true,
-                        value.results,
-                        filter,
-                        qualifiers);
-                results = immediate.getTimelessResults();
+        LinkedList<Object> retVal = new LinkedList<Object>();
+        for (ActiveDescriptor<?> candidate : immediate.getImmediateResults()) {
+            if (getHandles) {
+                retVal.add(internalGetServiceHandle(candidate, contractOrImpl, null));
             }
             else {
-                results = value.results;
-                immediate = value.immediate;
-            }
+                Object service = Utilities.createService(candidate, null, this, null, rawClass);
 
-            if (!results.getErrors().isEmpty()) {
-                currentErrorHandlers = new LinkedList<ErrorService>(errorHandlers);
+                retVal.add(service);
             }
         }
-        finally {
-            rLock.unlock();
-        }
 
-        if (currentErrorHandlers != null) {
-            // Do this next call OUTSIDE of the lock
-            Utilities.handleErrors(results, currentErrorHandlers);
+        return retVal;
+    }
+    
+    /**
+     * Returns the descriptors of all the services matching the given unqualified
+     * lookup, which is used by IterableProvider.  The descriptors are stamped with the generation of this
+     * locator if they may be used again until the configuration changes, which is the case
+     * if there were no errors and if every validation service is cacheable
+     * 
+     * @param contractOrImpl The type to look up
+     * @param unqualified The unqualified annotation, may be null
+     * @param isIterable true if this lookup is for an IterableProvider
+     * @param qualifiers The qualifiers of the lookup
+     * @return The descriptors found and the generation they were found in
+     * @throws MultiException on a lookup failure
+     */
+    /* package */ StampedDescriptors getAllUnqualifiedDescriptors(
+            Type contractOrImpl, Unqualified unqualified, boolean isIterable, Annotation... qualifiers)
+            throws MultiException {
+        if (contractOrImpl == null) throw new IllegalArgumentException();
+        checkState();
+
+        final Class<?> rawClass = ReflectionHelper.getRawClass(contractOrImpl);
+        if (rawClass == null) {
+            throw new MultiException(new IllegalArgumentException("Type must be a class or parameterized type, it was " + contractOrImpl));
+        }
+        
+        // The generation must be read before any of the indexes
+        long lookupGeneration = generation;
+        
+        ServiceLocatorMetrics localMetrics = metrics;
+        long start = (localMetrics == null) ? 0L : System.nanoTime();
+        
+        ImmediateResults immediate = getAllImmediateResults(contractOrImpl, rawClass, unqualified, isIterable, qualifiers);
+        
+        if (localMetrics != null) {
+            localMetrics.lookupCompleted(System.nanoTime() - start);
+        }
+        
+        if (!immediate.getTimelessResults().getErrors().isEmpty() || !isLookupCacheable()) {
+            lookupGeneration = ValidatorList.NO_GENERATION;
+        }
+        
+        return new StampedDescriptors(lookupGeneration,
+                Collections.unmodifiableList(new ArrayList<ActiveDescriptor<?>>(immediate.getImmediateResults())));
+    }
+    
+    /**
+     * Tells whether the result of a lookup only changes when the
+     * configuration of this locator changes
+     * 
+     * @return true if every validation service is cacheable
+     */
+    private boolean isLookupCacheable() {
+        DescriptorSnapshot lockFreeSnapshot = getLockFreeSnapshot();
+        if (lockFreeSnapshot != null) {
+            return lockFreeSnapshot.getAllValidators().isAllCacheable();
         }
+        
+        rLock.lock();
+        try {
+            return getAllValidators().isAllCacheable();
+        }
+        finally {
+            rLock.unlock();
+        }
+    }
+    
+    /**
+     * The current generation of the configuration of this locator, which
+     * changes whenever the configuration of this locator or of any of its
+     * parents changes
+     * 
+     * @return The current generation of this locator
+     */
+    /* package */ long getGeneration() {
+        return generation;
+    }
+    
+    private ImmediateResults getAllImmediateResults(
+            Type contractOrImpl,
+            Class<?> rawClass,
+            Unqualified unqualified,
+            boolean isIterable,
+            Annotation... qualifiers) {
+        final String name = rawClass.getName();
 
-        LinkedList<Object> retVal = new LinkedList<Object>();
-        for (ActiveDescriptor<?> candidate : immediate.getImmediateResults()) {
-            if (getHandles) {
-                retVal.add(internalGetServiceHandle(candidate, contractOrImpl, null));
+        NarrowResults results = null;
+        LinkedList<ErrorService> currentErrorHandlers = null;
+
+        ImmediateResults immediate = null;
+        
+        unqualified = getEffectiveUnqualified(unqualified, isIterable, qualifiers);
+
+        final CacheKey cacheKey = new CacheKey(contractOrImpl, null, unqualified, qualifiers);
+        final Filter filter = new UnqualifiedIndexedFilter(name, null, unqualified);
+        final IgdCacheKey igdCacheKey = new IgdCacheKey(cacheKey,
+                name,
+                null,
+                contractOrImpl,
+                rawClass,
+                qualifiers,
+                filter);
+
+        final DescriptorSnapshot lockFreeSnapshot = getLockFreeSnapshot();
+        IgdValue value = (lockFreeSnapshot == null) ? null : getIgdValue(igashCache, igdCacheKey, lockFreeSnapshot);
+        final boolean locked = (value == null);
+        if (locked) {
+            rLock.lock();
+        }
+        try {
+            if (locked) {
+                value = getIgdValue(igashCache, igdCacheKey, null);
+            }
+
+            final boolean freshOne = value.freshnessKeeper.compareAndSet(1, 2);
+            if (!freshOne) {
+                immediate = narrow(this,
+                        null,
+                        contractOrImpl,
+                        null,
+                        null,
+                        false,
+                        true,
+                        value.results,
+                        filter,
+                        qualifiers);
+                results = immediate.getTimelessResults();
             }
             else {
-                Object service = Utilities.createService(candidate, null, this, null, rawClass);
+                results = value.results;
+                immediate = value.immediate;
+            }
 
-                retVal.add(service);
+            if (!results.getErrors().isEmpty()) {
+                currentErrorHandlers = getErrorHandlers();
+            }
+        }
+        finally {
+            if (locked) {
+                rLock.unlock();
             }
         }
 
-        return retVal;
+        if (currentErrorHandlers != null) {
+            // Do this next call OUTSIDE of the lock
+            Utilities.handleErrors(results, currentErrorHandlers);
+        }
+
+        return immediate;
+    }
+    
+    /**
+     * Creates a handle for one of the descriptors returned from
+     * {@link #getAllUnqualifiedDescriptors(Type, Unqualified, boolean, Annotation...)}
+     * 
+     * @param activeDescriptor The descriptor to create the handle for
+     * @param requestedType The type that was looked up
+     * @return A new handle for the descriptor
+     */
+    /* package */ <T> ServiceHandle<T> getLookupServiceHandle(ActiveDescriptor<T> activeDescriptor, Type requestedType) {
+        return internalGetServiceHandle(activeDescriptor, requestedType, null);
     }
 
     @Override
@@ -1539,7 +1935,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 searchCriteria);
         results = immediate.getTimelessResults();
         if (!results.getErrors().isEmpty()) {
-            currentErrorHandlers = new LinkedList<ErrorService>(errorHandlers);
+            currentErrorHandlers = getErrorHandlers();
         }
 
         if (currentErrorHandlers != null) {
@@ -1624,7 +2020,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
 
                 if (retVal.contains(candidate)) continue;
 
-                for (ValidationService vs : getAllValidators()) {
+                for (ValidationService vs : getAllValidators().getValidators()) {
                     if (!callValidate(vs, new ValidationInformationImpl(
                             Operation.UNBIND, candidate))) {
                         throw new MultiException(new IllegalArgumentException("Descriptor " +
@@ -1724,7 +2120,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 }
             }
 
-            for (ValidationService vs : getAllValidators()) {
+            for (ValidationService vs : getAllValidators().getValidators()) {
                 Validator validator = vs.getValidator();
                 if (validator == null) {
                     throw new MultiException(new IllegalArgumentException("Validator was null from validation service" + vs));
@@ -2016,17 +2412,11 @@ public class ServiceLocatorImpl implements ServiceLocator {
         // This lock must be acquired as reupCache is called on children
         wLock.lock();
         try {
+            nextGeneration();
+            
             for (String affectedContract : affectedContracts) {
-                final String fAffectedContract = affectedContract;
-                final CacheKeyFilter<IgdCacheKey> cacheKeyFilter = new CacheKeyFilter<IgdCacheKey>() {
-                    @Override
-                    public boolean matches(IgdCacheKey key) {
-                        return key.cacheKey.matchesRemovalName(fAffectedContract);
-                    }
-                };
-
-                igdCache.releaseMatching(cacheKeyFilter);
-                igashCache.releaseMatching(cacheKeyFilter);
+                igdCache.releaseIndex(affectedContract);
+                igashCache.releaseIndex(affectedContract);
             }
         } finally {
             wLock.unlock();
@@ -2108,76 +2498,337 @@ public class ServiceLocatorImpl implements ServiceLocator {
     }
 
     /* package */ void addConfiguration(DynamicConfigurationImpl dci) {
-        CheckConfigurationData checkData;
+        ServiceLocatorMetrics localMetrics = metrics;
+        if (localMetrics == null) {
+            timedAddConfiguration(dci);
+            return;
+        }
         
-        List<ServiceHandle<?>> allConfigurationListeners = null;
-        MultiException configurationError = null;
-
-        wLock.lock();
+        long start = System.nanoTime();
         try {
-            checkData = checkConfiguration(dci);  // Does as much preliminary checking as possible
-
-            removeConfigurationInternal(checkData.getUnbinds());
-
-            List<SystemDescriptor<?>> thingsAdded = addConfigurationInternal(dci);
-
-            reup(thingsAdded,
-                    checkData.getInstanceLifecycleModificationsMade(),
-                    checkData.getInjectionResolverModificationMade(),
-                    checkData.getErrorHandlerModificationMade(),
-                    checkData.getClassAnalyzerModificationMade(),
-                    checkData.getDynamicConfigurationListenerModificationMade(),
-                    checkData.getAffectedContracts(),
-                    checkData.getInterceptionServiceModificationMade());
-            
-            allConfigurationListeners = new LinkedList<ServiceHandle<?>>(configListeners);
-        } catch (MultiException me) {
-            configurationError = me;
-            throw me;
-        } finally {
-            List<ErrorService> errorServices = null;
-            if (configurationError != null) {
-                errorServices = new LinkedList<ErrorService>(errorHandlers);
-            }
-            
-            wLock.unlock();
-            
-            if (errorServices != null && !errorServices.isEmpty()) {
+            timedAddConfiguration(dci);
+        }
+        finally {
+            // Failed commits are timed too
+            localMetrics.commitCompleted(System.nanoTime() - start);
+        }
+    }
+    
+    private void timedAddConfiguration(DynamicConfigurationImpl dci) {
+        PendingCommit commit = new PendingCommit(dci);
+        if (groupCommits && !readWriteLock.isWriteLockedByCurrentThread()) {
+            groupCommit(commit);
+        }
+        else {
+            commitAll(Collections.singletonList(commit));
+        }
+        
+        Throwable error = commit.getError();
+        if (error != null) {
+            List<ErrorService> errorServices = commit.getErrorServices();
+            if (errorServices != null) {
                 for (ErrorService errorService : errorServices) {
                     try {
                         errorService.onFailure(new ErrorInformationImpl(
                             ErrorType.DYNAMIC_CONFIGURATION_FAILURE,
                             null,
                             null,
-                            configurationError));
+                            (MultiException) error));
                     }
                     catch (Throwable th) {
                         // Ignore
                     }
                 }
-                
             }
+            
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            }
+            
+            throw (Error) error;
         }
-
-        LinkedList<ServiceLocatorImpl> allMyChildren = new LinkedList<ServiceLocatorImpl>();
-        getAllChildren(allMyChildren);
-
-        for (ServiceLocatorImpl sli : allMyChildren) {
-            sli.reupCache(checkData.getAffectedContracts());
-        }
-        
-        callAllConfigurationListeners(allConfigurationListeners);
         
         LinkedList<TwoPhaseResource> resources = dci.getResources();
         for (TwoPhaseResource resource : resources) {
             try {
-                resource.activateDynamicConfiguration(checkData.getTransactionData());
+                resource.activateDynamicConfiguration(commit.getCheckData().getTransactionData());
             }
             catch (Throwable ignore) {
                 Logger.getLogger().debug("Activate of TwoPhaseResource " + resource + " failed with exception", ignore);
             }
         }
     }
+    
+    /**
+     * Queues the given commit and waits for it to be applied.  If no other
+     * thread is applying commits this thread applies every queued commit,
+     * including the given one
+     * 
+     * @param commit The commit to apply, which on return has either its
+     * check data or its error set
+     */
+    private void groupCommit(PendingCommit commit) {
+        List<PendingCommit> batch = null;
+        boolean nested = false;
+        boolean interrupted = false;
+        
+        synchronized (groupCommitLock) {
+            if (groupCommitLeader == Thread.currentThread()) {
+                // A commit done while notifying the listeners of a batch
+                nested = true;
+            }
+            else {
+                pendingCommits.add(commit);
+                
+                while (!commit.isDone() && groupCommitLeader != null) {
+                    try {
+                        groupCommitLock.wait();
+                    }
+                    catch (InterruptedException ie) {
+                        // The commit may already be partially applied, it must be waited for
+                        interrupted = true;
+                    }
+                }
+                
+                if (!commit.isDone()) {
+                    groupCommitLeader = Thread.currentThread();
+                    
+                    batch = new ArrayList<PendingCommit>(pendingCommits);
+                    pendingCommits.clear();
+                }
+            }
+        }
+        
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        
+        if (nested) {
+            commitAll(Collections.singletonList(commit));
+            return;
+        }
+        
+        if (batch == null) return;
+        
+        try {
+            commitAll(batch);
+        }
+        finally {
+            synchronized (groupCommitLock) {
+                for (PendingCommit done : batch) {
+                    done.setDone();
+                }
+                
+                groupCommitLeader = null;
+                groupCommitLock.notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * Applies the given commits in order.  Each commit is checked and applied
+     * on its own, and a commit that fails does not affect the others.  The
+     * caches are invalidated and the children and configuration listeners
+     * are notified once for all of the commits that succeeded
+     * 
+     * @param commits The commits to apply, which on return each have
+     * either their check data or their error set
+     */
+    private void commitAll(List<PendingCommit> commits) {
+        HashSet<String> allAffectedContracts = new HashSet<String>();
+        List<ServiceHandle<?>> allConfigurationListeners = null;
+        
+        try {
+            wLock.lock();
+            try {
+                PendingReup pendingReup = new PendingReup();
+                boolean stale = false;
+                
+                for (PendingCommit commit : commits) {
+                    if (stale) {
+                        // Lookups done by this commit must not use cached results
+                        nextGeneration();
+                        stale = false;
+                    }
+                    
+                    try {
+                        // Does as much preliminary checking as possible
+                        CheckConfigurationData checkData = checkConfiguration(commit.getConfiguration());
+                        
+                        boolean reupNow = isReupNeededNow(commit.getConfiguration(), checkData);
+                        if (reupNow) {
+                            // The commits before this one must be fully visible to it
+                            reup(pendingReup);
+                            pendingReup = new PendingReup();
+                        }
+                        
+                        removeConfigurationInternal(checkData.getUnbinds());
+                        
+                        List<SystemDescriptor<?>> thingsAdded = addConfigurationInternal(commit.getConfiguration());
+                        
+                        commit.setCheckData(checkData);
+                        commit.setThingsAdded(thingsAdded);
+                        pendingReup.add(commit, thingsAdded, checkData);
+                        
+                        if (reupNow) {
+                            reup(pendingReup);
+                            pendingReup = new PendingReup();
+                        }
+                        else {
+                            stale = true;
+                        }
+                    }
+                    catch (RuntimeException re) {
+                        failCommit(commit, re);
+                    }
+                    catch (Error e) {
+                        failCommit(commit, e);
+                    }
+                }
+                
+                reup(pendingReup);
+                
+                boolean anySucceeded = false;
+                for (PendingCommit commit : commits) {
+                    if (commit.getError() != null) continue;
+                    
+                    anySucceeded = true;
+                    allAffectedContracts.addAll(commit.getCheckData().getAffectedContracts());
+                }
+                
+                if (anySucceeded) {
+                    allConfigurationListeners = new LinkedList<ServiceHandle<?>>(configListeners);
+                }
+            } finally {
+                // A failed change may have modified the indexes before reaching reupCache
+                snapshot = null;
+                
+                wLock.unlock();
+            }
+            
+            if (allConfigurationListeners == null) return;
+
+            LinkedList<ServiceLocatorImpl> allMyChildren = new LinkedList<ServiceLocatorImpl>();
+            getAllChildren(allMyChildren);
+
+            for (ServiceLocatorImpl sli : allMyChildren) {
+                sli.reupCache(allAffectedContracts);
+            }
+            
+            callAllConfigurationListeners(allConfigurationListeners);
+        }
+        catch (RuntimeException re) {
+            for (PendingCommit commit : commits) {
+                if (commit.getError() == null) commit.setError(re, null);
+            }
+        }
+        catch (Error e) {
+            for (PendingCommit commit : commits) {
+                if (commit.getError() == null) commit.setError(e, null);
+            }
+        }
+    }
+    
+    /**
+     * Must be called with the write lock held.  Records the failure of the
+     * given commit, which may have modified the indexes before failing
+     * 
+     * @param commit The commit that failed
+     * @param error The reason it failed
+     */
+    private void failCommit(PendingCommit commit, Throwable error) {
+        List<ErrorService> errorServices = null;
+        if (error instanceof MultiException) {
+            errorServices = new LinkedList<ErrorService>(errorHandlers);
+        }
+        
+        commit.setError(error, errorServices);
+        
+        nextGeneration();
+    }
+    
+    /**
+     * Tells whether or not the given commit must be fully visible before
+     * and after it is applied, which is the case if it modifies any of the
+     * services used by the locator itself or if it creates services
+     * 
+     * @param dci The commit being applied
+     * @param checkData The result of checking the commit
+     * @return true if all of the pending work must be done prior to and
+     * right after applying this commit
+     */
+    private static boolean isReupNeededNow(DynamicConfigurationImpl dci, CheckConfigurationData checkData) {
+        if (checkData.getInstanceLifecycleModificationsMade() ||
+                checkData.getInjectionResolverModificationMade() ||
+                checkData.getErrorHandlerModificationMade() ||
+                checkData.getClassAnalyzerModificationMade() ||
+                checkData.getDynamicConfigurationListenerModificationMade() ||
+                checkData.getInterceptionServiceModificationMade()) {
+            return true;
+        }
+        
+        // Validation services are created when bound or unbound
+        for (SystemDescriptor<?> unbind : checkData.getUnbinds()) {
+            if (unbind.getAdvertisedContracts().contains(ValidationService.class.getName())) return true;
+        }
+        
+        for (SystemDescriptor<?> sd : dci.getAllDescriptors()) {
+            if (sd.getAdvertisedContracts().contains(ValidationService.class.getName())) return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Must be called with the write lock held
+     * 
+     * @param pendingReup The work left over from the commits applied since the last reup
+     */
+    private void reup(PendingReup pendingReup) {
+        if (pendingReup.isEmpty()) return;
+        
+        try {
+            reup(pendingReup.getThingsAdded(),
+                    pendingReup.getInstanceLifecycleModificationsMade(),
+                    pendingReup.getInjectionResolverModificationMade(),
+                    pendingReup.getErrorHandlerModificationMade(),
+                    pendingReup.getClassAnalyzerModificationMade(),
+                    pendingReup.getDynamicConfigurationListenerModificationMade(),
+                    pendingReup.getAffectedContracts(),
+                    pendingReup.getInterceptionServiceModificationMade());
+        }
+        catch (RuntimeException re) {
+            reupEach(pendingReup, re);
+        }
+        catch (Error e) {
+            reupEach(pendingReup, e);
+        }
+    }
+    
+    /**
+     * Must be called with the write lock held.  Called when the reup of the
+     * given commits failed.  The descriptors of all of these commits are
+     * already in the locator, so rather than failing all of them the reup
+     * of each commit is done again on its own, and only the commits whose
+     * own reup fails are failed
+     * 
+     * @param failed The work whose reup failed
+     * @param error The reason the reup failed
+     */
+    private void reupEach(PendingReup failed, Throwable error) {
+        List<PendingCommit> commits = failed.getCommits();
+        if (commits.size() == 1) {
+            failCommit(commits.get(0), error);
+            return;
+        }
+        
+        for (PendingCommit commit : commits) {
+            PendingReup single = new PendingReup();
+            single.add(commit, commit.getThingsAdded(), commit.getCheckData());
+            
+            reup(single);
+        }
+    }
 
     /* package */ boolean isInjectAnnotation(Annotation annotation) {
         return allResolvers.containsKey(annotation.annotationType());
@@ -2393,17 +3044,133 @@ public class ServiceLocatorImpl implements ServiceLocator {
         if (ServiceLocatorState.SHUTDOWN.equals(state)) throw new IllegalStateException(this + " has been shut down");
     }
 
-    private LinkedHashSet<ValidationService> getAllValidators() {
+    private ValidatorList getAllValidators() {
+        DescriptorSnapshot lockFreeSnapshot = getLockFreeSnapshot();
+        if (lockFreeSnapshot != null) {
+            return lockFreeSnapshot.getAllValidators();
+        }
+        
+        if (readWriteLock.isWriteLockedByCurrentThread()) {
+            // The validators may be in the middle of being changed
+            return mergeAllValidators(ValidatorList.NO_GENERATION);
+        }
+        
+        // The generation must be read before the validators
+        long currentGeneration = generation;
+        ValidatorList retVal = validatorList;
+        if (retVal != null && retVal.getGeneration() == currentGeneration) {
+            return retVal;
+        }
+        
+        retVal = mergeAllValidators(currentGeneration);
+        validatorList = retVal;
+        
+        return retVal;
+    }
+    
+    /**
+     * Must have the read lock held
+     * 
+     * @param mergeGeneration The generation to stamp on the merged list
+     * @return The validators of this locator and all of its parents
+     */
+    private ValidatorList mergeAllValidators(long mergeGeneration) {
         if (parent == null) {
-            return allValidators;
+            return new ValidatorList(mergeGeneration, allValidators);
         }
 
         LinkedHashSet<ValidationService> retVal = new LinkedHashSet<ValidationService>();
 
-        retVal.addAll(parent.getAllValidators());
+        retVal.addAll(parent.getAllValidators().getValidators());
         retVal.addAll(allValidators);
 
-        return retVal;
+        return new ValidatorList(mergeGeneration, retVal);
+    }
+    
+    /**
+     * Returns the snapshot of the indexes that lookups should use in
+     * place of taking the read lock.  The snapshot is built if it is
+     * not currently available
+     * 
+     * @return The current snapshot, or null if lookups are not lock free
+     * or if the current thread is changing the configuration of this
+     * locator, in which case the read lock must be used
+     */
+    private DescriptorSnapshot getLockFreeSnapshot() {
+        if (!lockFreeLookups) return null;
+        
+        DescriptorSnapshot retVal = snapshot;
+        if (retVal != null) {
+            if (!readWriteLock.isWriteLockedByCurrentThread()) return retVal;
+            
+            return null;
+        }
+        
+        if (readWriteLock.isWriteLockedByCurrentThread()) return null;
+        
+        rLock.lock();
+        try {
+            retVal = snapshot;
+            if (retVal != null) return retVal;
+            
+            retVal = new DescriptorSnapshot(generation,
+                    allDescriptors,
+                    descriptorsByAdvertisedContract,
+                    descriptorsByName,
+                    mergeAllValidators(generation),
+                    errorHandlers);
+            snapshot = retVal;
+            
+            return retVal;
+        }
+        finally {
+            rLock.unlock();
+        }
+    }
+    
+    /**
+     * Must have the write lock held.  Throws away the current snapshot
+     * and moves to the next generation, which causes every cached lookup
+     * result computed without the lock to be recomputed
+     */
+    private void nextGeneration() {
+        // The snapshot must be cleared prior to the generation changing
+        snapshot = null;
+        generation++;
+        
+        // Entries from older generations are ignored, this just frees them
+        jitMisses.clear();
+    }
+    
+    /* package */ boolean isLockFreeLookups() {
+        return lockFreeLookups;
+    }
+    
+    /* package */ void setLockFreeLookups(boolean lockFreeLookups) {
+        wLock.lock();
+        try {
+            nextGeneration();
+            this.lockFreeLookups = lockFreeLookups;
+        }
+        finally {
+            wLock.unlock();
+        }
+    }
+    
+    /* package */ boolean isGroupCommits() {
+        return groupCommits;
+    }
+    
+    /* package */ void setGroupCommits(boolean groupCommits) {
+        this.groupCommits = groupCommits;
+    }
+    
+    /* package */ ServiceLocatorMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /* package */ void setMetrics(ServiceLocatorMetrics metrics) {
+        this.metrics = metrics;
     }
 
     @Override
@@ -2468,6 +3235,138 @@ public class ServiceLocatorImpl implements ServiceLocator {
         return retVal;
     }
 
+    /**
+     * A commit waiting to be applied, and the outcome of applying it
+     */
+    private static class PendingCommit {
+        private final DynamicConfigurationImpl dci;
+        private CheckConfigurationData checkData;
+        private List<SystemDescriptor<?>> thingsAdded;
+        private Throwable error;
+        private List<ErrorService> errorServices;
+        private boolean done;
+        
+        private PendingCommit(DynamicConfigurationImpl dci) {
+            this.dci = dci;
+        }
+        
+        private DynamicConfigurationImpl getConfiguration() {
+            return dci;
+        }
+        
+        private CheckConfigurationData getCheckData() {
+            return checkData;
+        }
+        
+        private void setCheckData(CheckConfigurationData checkData) {
+            this.checkData = checkData;
+        }
+        
+        private List<SystemDescriptor<?>> getThingsAdded() {
+            return thingsAdded;
+        }
+        
+        private void setThingsAdded(List<SystemDescriptor<?>> thingsAdded) {
+            this.thingsAdded = thingsAdded;
+        }
+        
+        private Throwable getError() {
+            return error;
+        }
+        
+        private List<ErrorService> getErrorServices() {
+            return errorServices;
+        }
+        
+        private void setError(Throwable error, List<ErrorService> errorServices) {
+            this.error = error;
+            this.errorServices = errorServices;
+        }
+        
+        /**
+         * Must hold the groupCommitLock
+         */
+        private boolean isDone() {
+            return done;
+        }
+        
+        /**
+         * Must hold the groupCommitLock
+         */
+        private void setDone() {
+            done = true;
+        }
+    }
+    
+    /**
+     * The work that remains to be done for the commits
+     * that have been applied since the last reup
+     */
+    private static class PendingReup {
+        private final List<PendingCommit> commits = new LinkedList<PendingCommit>();
+        private final List<SystemDescriptor<?>> thingsAdded = new LinkedList<SystemDescriptor<?>>();
+        private final HashSet<String> affectedContracts = new HashSet<String>();
+        private boolean instanceLifecycleModificationMade;
+        private boolean injectionResolverModificationMade;
+        private boolean errorHandlerModificationMade;
+        private boolean classAnalyzerModificationMade;
+        private boolean dynamicConfigurationListenerModificationMade;
+        private boolean interceptionServiceModificationMade;
+        
+        private void add(PendingCommit commit, List<SystemDescriptor<?>> added, CheckConfigurationData checkData) {
+            commits.add(commit);
+            thingsAdded.addAll(added);
+            affectedContracts.addAll(checkData.getAffectedContracts());
+            
+            instanceLifecycleModificationMade |= checkData.getInstanceLifecycleModificationsMade();
+            injectionResolverModificationMade |= checkData.getInjectionResolverModificationMade();
+            errorHandlerModificationMade |= checkData.getErrorHandlerModificationMade();
+            classAnalyzerModificationMade |= checkData.getClassAnalyzerModificationMade();
+            dynamicConfigurationListenerModificationMade |= checkData.getDynamicConfigurationListenerModificationMade();
+            interceptionServiceModificationMade |= checkData.getInterceptionServiceModificationMade();
+        }
+        
+        private boolean isEmpty() {
+            return commits.isEmpty();
+        }
+        
+        private List<PendingCommit> getCommits() {
+            return commits;
+        }
+        
+        private List<SystemDescriptor<?>> getThingsAdded() {
+            return thingsAdded;
+        }
+        
+        private HashSet<String> getAffectedContracts() {
+            return affectedContracts;
+        }
+        
+        private boolean getInstanceLifecycleModificationsMade() {
+            return instanceLifecycleModificationMade;
+        }
+
+        private boolean getInjectionResolverModificationMade() {
+            return injectionResolverModificationMade;
+        }
+
+        private boolean getErrorHandlerModificationMade() {
+            return errorHandlerModificationMade;
+        }
+
+        private boolean getClassAnalyzerModificationMade() {
+            return classAnalyzerModificationMade;
+        }
+        
+        private boolean getDynamicConfigurationListenerModificationMade() {
+            return dynamicConfigurationListenerModificationMade;
+        }
+        
+        private boolean getInterceptionServiceModificationMade() {
+            return interceptionServiceModificationMade;
+        }
+    }
+
     private static class CheckConfigurationData {
         private final List<SystemDescriptor<?>> unbinds;
         private final boolean instanceLifeycleModificationMade;
@@ -2630,6 +3529,11 @@ public class ServiceLocatorImpl implements ServiceLocator {
     }
     
     /* package */ LinkedList<ErrorService> getErrorHandlers() {
+        DescriptorSnapshot lockFreeSnapshot = getLockFreeSnapshot();
+        if (lockFreeSnapshot != null) {
+            return new LinkedList<ErrorService>(lockFreeSnapshot.getErrorHandlers());
+        }
+        
         rLock.lock();
         try {
             return new LinkedList<ErrorService>(errorHandlers);
@@ -2669,6 +3573,44 @@ public class ServiceLocatorImpl implements ServiceLocator {
         igdCache.clear();
         
     }
+    
+    /* package */ long getServiceCacheHitCount() {
+        return igdCache.getHitCount();
+    }
+    
+    /* package */ long getServiceCacheMissCount() {
+        return igdCache.getMissCount();
+    }
+    
+    /* package */ long getServiceCacheEvictionCount() {
+        return igdCache.getEvictionCount();
+    }
+    
+    /* package */ int getHandleCacheSize() {
+        return igashCache.getValueSize();
+    }
+    
+    /* package */ long getHandleCacheHitCount() {
+        return igashCache.getHitCount();
+    }
+    
+    /* package */ long getHandleCacheMissCount() {
+        return igashCache.getMissCount();
+    }
+    
+    /* package */ long getHandleCacheEvictionCount() {
+        return igashCache.getEvictionCount();
+    }
+    
+    /* package */ int getNumberOfContracts() {
+        rLock.lock();
+        try {
+            return descriptorsByAdvertisedContract.size();
+        }
+        finally {
+            rLock.unlock();
+        }
+    }
 
     /* package */ int getReflectionCacheSize() {
         return classReflectionHelper.size();
@@ -2693,6 +3635,9 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 myList.unSort();
             }
             
+            // The order of the indexes has changed, but not their contents
+            snapshot = null;
+            
             return retVal;
         }
         finally {
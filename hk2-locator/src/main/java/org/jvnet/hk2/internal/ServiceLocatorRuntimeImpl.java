@@ -39,13 +39,21 @@
  */
 package org.jvnet.hk2.internal;
 
+import java.util.Collections;
+import java.util.Map;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.glassfish.hk2.api.DescriptorVisibility;
+import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.Populator;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.api.Visibility;
+import org.jvnet.hk2.external.runtime.ServiceLocatorMetrics;
+import org.jvnet.hk2.external.runtime.ServiceLocatorMetricsRuntimeBean;
 import org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean;
+import org.jvnet.hk2.external.runtime.ServiceLocatorTuningRuntimeBean;
 
 /**
  * @author jwells
@@ -53,7 +61,8 @@ import org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean;
  */
 @Singleton
 @Visibility(DescriptorVisibility.LOCAL)
-public class ServiceLocatorRuntimeImpl implements ServiceLocatorRuntimeBean {
+public class ServiceLocatorRuntimeImpl implements ServiceLocatorRuntimeBean, ServiceLocatorMetricsRuntimeBean,
+        ServiceLocatorTuningRuntimeBean {
     private final ServiceLocatorImpl locator;
     
     @Inject
@@ -69,6 +78,14 @@ public class ServiceLocatorRuntimeImpl implements ServiceLocatorRuntimeBean {
         return locator.getNumberOfDescriptors();
     }
 
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorMetricsRuntimeBean#getNumberOfContracts()
+     */
+    @Override
+    public int getNumberOfContracts() {
+        return locator.getNumberOfContracts();
+    }
+
     /* (non-Javadoc)
      * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#getNumberOfChildren()
      */
@@ -102,6 +119,62 @@ public class ServiceLocatorRuntimeImpl implements ServiceLocatorRuntimeBean {
 
     }
 
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorMetricsRuntimeBean#getServiceCacheHitCount()
+     */
+    @Override
+    public long getServiceCacheHitCount() {
+        return locator.getServiceCacheHitCount();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorMetricsRuntimeBean#getServiceCacheMissCount()
+     */
+    @Override
+    public long getServiceCacheMissCount() {
+        return locator.getServiceCacheMissCount();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorMetricsRuntimeBean#getServiceCacheEvictionCount()
+     */
+    @Override
+    public long getServiceCacheEvictionCount() {
+        return locator.getServiceCacheEvictionCount();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorMetricsRuntimeBean#getHandleCacheSize()
+     */
+    @Override
+    public int getHandleCacheSize() {
+        return locator.getHandleCacheSize();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorMetricsRuntimeBean#getHandleCacheHitCount()
+     */
+    @Override
+    public long getHandleCacheHitCount() {
+        return locator.getHandleCacheHitCount();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorMetricsRuntimeBean#getHandleCacheMissCount()
+     */
+    @Override
+    public long getHandleCacheMissCount() {
+        return locator.getHandleCacheMissCount();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorMetricsRuntimeBean#getHandleCacheEvictionCount()
+     */
+    @Override
+    public long getHandleCacheEvictionCount() {
+        return locator.getHandleCacheEvictionCount();
+    }
+
     /* (non-Javadoc)
      * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#getReflectionCacheSize()
      */
@@ -119,4 +192,67 @@ public class ServiceLocatorRuntimeImpl implements ServiceLocatorRuntimeBean {
 
     }
 
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorTuningRuntimeBean#isLockFreeLookups()
+     */
+    @Override
+    public boolean isLockFreeLookups() {
+        return locator.isLockFreeLookups();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorTuningRuntimeBean#setLockFreeLookups(boolean)
+     */
+    @Override
+    public void setLockFreeLookups(boolean lockFreeLookups) {
+        locator.setLockFreeLookups(lockFreeLookups);
+
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorTuningRuntimeBean#isGroupCommits()
+     */
+    @Override
+    public boolean isGroupCommits() {
+        return locator.isGroupCommits();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorTuningRuntimeBean#setGroupCommits(boolean)
+     */
+    @Override
+    public void setGroupCommits(boolean groupCommits) {
+        locator.setGroupCommits(groupCommits);
+        
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorMetricsRuntimeBean#getDescriptorFileParseTimes()
+     */
+    @Override
+    public Map<String, Long> getDescriptorFileParseTimes() {
+        Populator populator = locator.getService(DynamicConfigurationService.class).getPopulator();
+        if (!(populator instanceof PopulatorImpl)) {
+            return Collections.emptyMap();
+        }
+        
+        return ((PopulatorImpl) populator).getParseTimes();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorMetricsRuntimeBean#getMetrics()
+     */
+    @Override
+    public ServiceLocatorMetrics getMetrics() {
+        return locator.getMetrics();
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorMetricsRuntimeBean#setMetrics(org.jvnet.hk2.external.runtime.ServiceLocatorMetrics)
+     */
+    @Override
+    public void setMetrics(ServiceLocatorMetrics metrics) {
+        locator.setMetrics(metrics);
+    }
+
 }
@@ -45,6 +45,7 @@ import java.lang.annotation.Annotation;
 import java.util.Comparator;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Singleton;
 
@@ -64,9 +65,13 @@ import org.glassfish.hk2.utilities.reflection.Logger;
  */
 @Singleton
 public class SingletonContext implements Context<Singleton> {
-    private int generationNumber = Integer.MIN_VALUE;
+    private final AtomicInteger generationNumber = new AtomicInteger(Integer.MIN_VALUE);
     private final ServiceLocatorImpl locator;
 
+    /**
+     * Only used for descriptors that are not SystemDescriptors, which
+     * cannot hold the per-descriptor creation state
+     */
     private final Cache<ContextualInput<Object>, Object> valueCache =
             new Cache<ContextualInput<Object>, Object>(new Computable<ContextualInput<Object>, Object>() {
 
@@ -82,9 +87,6 @@ public class SingletonContext implements Context<Singleton> {
 
             final Object createdVal = activeDescriptor.create(a.getRoot());
             activeDescriptor.setCache(createdVal);
-            if (activeDescriptor instanceof SystemDescriptor) {
-                ((SystemDescriptor<?>) activeDescriptor).setSingletonGeneration(generationNumber++);
-            }
 
             return createdVal;
         }
@@ -92,9 +94,7 @@ public class SingletonContext implements Context<Singleton> {
 
         @Override
         public void handleCycle(ContextualInput<Object> key) {
-            throw new MultiException(new IllegalStateException(
-                            "A circular dependency involving Singleton service " + key.getDescriptor().getImplementation() +
-                            " was found.  Full descriptor is " + key.getDescriptor()));
+            throw cycle(key.getDescriptor());
         }
     });
 
@@ -117,8 +117,17 @@ public class SingletonContext implements Context<Singleton> {
     @Override
     public <T> T findOrCreate(ActiveDescriptor<T> activeDescriptor,
             ServiceHandle<?> root) {
+        if (activeDescriptor instanceof SystemDescriptor) {
+            // Fast path, a created singleton is one volatile read
+            T cachedVal = activeDescriptor.getCache();
+            if (cachedVal != null) return cachedVal;
+        }
 
         try {
+            if (activeDescriptor instanceof SystemDescriptor) {
+                return create((SystemDescriptor<T>) activeDescriptor, root);
+            }
+            
             return (T)valueCache.compute(new ContextualInput<Object>((ActiveDescriptor<Object>) activeDescriptor, root));
         } catch (Throwable th) {
             if (th instanceof MultiException) {
@@ -127,6 +136,41 @@ public class SingletonContext implements Context<Singleton> {
             throw new MultiException(th);
         }
     }
+    
+    /**
+     * Creates the singleton under the lock of its own descriptor, so that
+     * singletons that do not depend on each other are created concurrently
+     */
+    private <T> T create(SystemDescriptor<T> descriptor, ServiceHandle<?> root) {
+        synchronized (descriptor.getSingletonLock()) {
+            T cachedVal = descriptor.getCache();
+            if (cachedVal != null) return cachedVal;
+            
+            if (descriptor.getSingletonCreator() == Thread.currentThread()) {
+                throw cycle(descriptor);
+            }
+            
+            T createdVal;
+            descriptor.setSingletonCreator(Thread.currentThread());
+            try {
+                createdVal = descriptor.create(root);
+            }
+            finally {
+                descriptor.setSingletonCreator(null);
+            }
+            
+            descriptor.setCache(createdVal);
+            descriptor.setSingletonGeneration(generationNumber.getAndIncrement());
+            
+            return createdVal;
+        }
+    }
+    
+    private static MultiException cycle(ActiveDescriptor<?> descriptor) {
+        return new MultiException(new IllegalStateException(
+                "A circular dependency involving Singleton service " + descriptor.getImplementation() +
+                " was found.  Full descriptor is " + descriptor));
+    }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.api.Context#find(org.glassfish.hk2.api.Descriptor)
@@ -134,6 +178,12 @@ public class SingletonContext implements Context<Singleton> {
     @SuppressWarnings("unchecked")
     @Override
     public boolean containsKey(ActiveDescriptor<?> descriptor) {
+        if (descriptor instanceof SystemDescriptor) {
+            SystemDescriptor<?> sd = (SystemDescriptor<?>) descriptor;
+            
+            return sd.isCacheSet() || (sd.getSingletonCreator() != null);
+        }
+        
         return valueCache.containsKey(new ContextualInput<Object>((ActiveDescriptor<Object>) descriptor, null));
     }
 
@@ -51,6 +51,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.Descriptor;
@@ -85,6 +86,9 @@ import org.glassfish.hk2.utilities.reflection.ScopeInfo;
  * @param <T> The type from the cache
  */
 public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
+    private final static Object NO_INJECTEE = new Object();
+    private final static int MAX_LOOKUP_VERDICTS = 64;
+
     private final Descriptor baseDescriptor;
     private final Long id;
     private final ActiveDescriptor<T> activeDescriptor;
@@ -96,8 +100,16 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
     private volatile boolean closed = false;
 
     private final Object cacheLock = new Object();
-    private boolean cacheSet = false;
-    private T cachedValue;
+    private volatile boolean cacheSet = false;
+    private volatile T cachedValue;
+    
+    /**
+     * Held while the SingletonContext creates the value of this descriptor.
+     * The creating thread is recorded in singletonCreator so that a
+     * re-entrant request from the same thread can be reported as a cycle
+     */
+    private final Object singletonLock = new Object();
+    private volatile Thread singletonCreator;
 
     // These are used when we are doing the reifying ourselves
     private Class<?> implClass;
@@ -113,6 +125,10 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
     private final HashMap<ValidationService, Boolean> validationServiceCache =
             new HashMap<ValidationService, Boolean>();
 
+    /** Decisions of the cacheable validators, keyed by Injectee or NO_INJECTEE */
+    private final ConcurrentHashMap<Object, LookupVerdict> lookupVerdicts =
+            new ConcurrentHashMap<Object, LookupVerdict>();
+
     private final List<InstanceLifecycleListener> instanceListeners =
             new LinkedList<InstanceLifecycleListener>();
 
@@ -455,6 +471,10 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
         this.factoryServiceId = factoryServiceId;
     }
 
+    /* package */ boolean hasInstanceListeners() {
+        return !instanceListeners.isEmpty();
+    }
+
     /* package */ void invokeInstanceListeners(InstanceLifecycleEvent event) {
         for (InstanceLifecycleListener listener : instanceListeners) {
             listener.lifecycleEvent(event);
@@ -890,6 +910,50 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
         return decision;
     }
 
+    /**
+     * Gets the remembered decision of the cacheable validators for a lookup
+     * of this descriptor on behalf of the given injectee
+     *
+     * @param onBehalfOf The injectee of the lookup, may be null
+     * @param validators The validators being used, which may belong to
+     * a child of the locator of this descriptor
+     * @return The decision, or null if no decision was remembered for
+     * the given validators
+     */
+    /* package */ Boolean getLookupVerdict(Injectee onBehalfOf, ValidatorList validators) {
+        LookupVerdict verdict = lookupVerdicts.get((onBehalfOf == null) ? NO_INJECTEE : onBehalfOf);
+        if (verdict == null || verdict.validators != validators) return null;
+
+        return verdict.valid ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    /**
+     * Remembers the decision of the cacheable validators for a lookup
+     * of this descriptor on behalf of the given injectee
+     *
+     * @param onBehalfOf The injectee of the lookup, may be null
+     * @param validators The validators that were used
+     * @param valid The decision of the validators
+     */
+    /* package */ void setLookupVerdict(Injectee onBehalfOf, ValidatorList validators, boolean valid) {
+        if (lookupVerdicts.size() >= MAX_LOOKUP_VERDICTS) {
+            // Injectees are compared by identity, so do not let them pile up
+            lookupVerdicts.clear();
+        }
+
+        lookupVerdicts.put((onBehalfOf == null) ? NO_INJECTEE : onBehalfOf, new LookupVerdict(validators, valid));
+    }
+
+    private static class LookupVerdict {
+        private final ValidatorList validators;
+        private final boolean valid;
+
+        private LookupVerdict(ValidatorList validators, boolean valid) {
+            this.validators = validators;
+            this.valid = valid;
+        }
+    }
+
     /* package */ void reupInstanceListeners(List<InstanceLifecycleListener> listeners) {
         instanceListeners.clear();
 
@@ -913,6 +977,18 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
         singletonGeneration = gen;
     }
     
+    /* package */ Object getSingletonLock() {
+        return singletonLock;
+    }
+    
+    /* package */ Thread getSingletonCreator() {
+        return singletonCreator;
+    }
+    
+    /* package */ void setSingletonCreator(Thread creator) {
+        singletonCreator = creator;
+    }
+    
     @Override
     public int hashCode() {
         int low32 = id.intValue();
@@ -89,6 +89,7 @@ import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.api.Filter;
 import org.glassfish.hk2.api.HK2Loader;
 import org.glassfish.hk2.api.Injectee;
+import org.glassfish.hk2.api.JustInTimeResolves;
 import org.glassfish.hk2.api.InjectionResolver;
 import org.glassfish.hk2.api.InstanceLifecycleListener;
 import org.glassfish.hk2.api.InterceptionService;
@@ -475,6 +476,44 @@ public class Utilities {
         }
     }
 
+    /**
+     * Returns true if the given JIT resolver might be able to resolve an
+     * injection point of the given type, based on the {@link JustInTimeResolves}
+     * metadata of the resolver.  This does not reify or create the resolver
+     *
+     * @param resolver The descriptor of the JIT resolver
+     * @param rawType The raw type of the injection point, may be null
+     * @return false if the resolver has declared that it cannot resolve
+     * the given type, true otherwise
+     */
+    public static boolean isJustInTimeResolverFor(Descriptor resolver, Class<?> rawType) {
+        if (rawType == null) return true;
+
+        Map<String, List<String>> metadata = resolver.getMetadata();
+        List<String> types = metadata.get(JustInTimeResolves.JIT_RESOLVES_TYPES);
+        List<String> packages = metadata.get(JustInTimeResolves.JIT_RESOLVES_PACKAGES);
+
+        boolean noTypes = (types == null || types.isEmpty());
+        boolean noPackages = (packages == null || packages.isEmpty());
+        if (noTypes && noPackages) return true;
+
+        String typeName = rawType.getName();
+        if (!noTypes && types.contains(typeName)) return true;
+        if (noPackages) return false;
+
+        int lastDot = typeName.lastIndexOf('.');
+        String packageName = (lastDot < 0) ? "" : typeName.substring(0, lastDot);
+
+        for (String declaredPackage : packages) {
+            if (packageName.equals(declaredPackage)) return true;
+            if (packageName.startsWith(declaredPackage) &&
+                    packageName.length() > declaredPackage.length() &&
+                    packageName.charAt(declaredPackage.length()) == '.') return true;
+        }
+
+        return false;
+    }
+
     /**
      * Will return the class of the injection resolver annotation type, or null if
      * no injection resolver annotation can be found
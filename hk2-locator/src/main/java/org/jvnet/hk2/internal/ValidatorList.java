@@ -0,0 +1,131 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.internal;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.glassfish.hk2.api.CacheableValidationService;
+import org.glassfish.hk2.api.ValidationService;
+
+/**
+ * The validation services of a locator and all of its parents,
+ * merged once per configuration generation of the locator
+ * 
+ * @author jwells
+ *
+ */
+public class ValidatorList {
+    /** Used when the list must not be used to remember validation decisions */
+    /* package */ final static long NO_GENERATION = -1L;
+    
+    private final long generation;
+    private final List<ValidationService> validators;
+    private final boolean hasCacheable;
+    private final boolean allCacheable;
+    
+    /* package */ ValidatorList(long generation, Collection<ValidationService> validators) {
+        this.generation = generation;
+        this.validators = Collections.unmodifiableList(new LinkedList<ValidationService>(validators));
+        
+        boolean cacheable = false;
+        boolean all = true;
+        for (ValidationService validator : validators) {
+            if (validator instanceof CacheableValidationService) {
+                cacheable = true;
+            }
+            else {
+                all = false;
+            }
+        }
+        hasCacheable = cacheable;
+        allCacheable = all;
+    }
+    
+    /**
+     * The configuration generation of the locator this list was merged at,
+     * or {@link #NO_GENERATION} if decisions made with this list must not
+     * be remembered
+     * 
+     * @return The generation of this list
+     */
+    /* package */ long getGeneration() {
+        return generation;
+    }
+    
+    /**
+     * All of the validation services of the locator and its parents
+     * 
+     * @return A non-null unmodifiable list of validation services
+     */
+    /* package */ List<ValidationService> getValidators() {
+        return validators;
+    }
+    
+    /**
+     * Tells whether any of the validation services are
+     * {@link CacheableValidationService}s
+     * 
+     * @return true if there is at least one cacheable validation service
+     */
+    /* package */ boolean hasCacheable() {
+        return hasCacheable;
+    }
+    
+    /**
+     * Tells whether all of the validation services are
+     * {@link CacheableValidationService}s, in which case the
+     * result of a lookup only changes when the configuration does
+     * 
+     * @return true if there are no validation services or if every
+     * validation service is cacheable
+     */
+    /* package */ boolean isAllCacheable() {
+        return allCacheable;
+    }
+    
+    @Override
+    public String toString() {
+        return "ValidatorList(" + generation + "," + validators.size() + "," + hasCacheable + "," +
+            System.identityHashCode(this) + ")";
+    }
+}
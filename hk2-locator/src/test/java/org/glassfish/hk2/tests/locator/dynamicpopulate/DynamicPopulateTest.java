@@ -45,11 +45,17 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+
+import javax.inject.Singleton;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.DescriptorFileFinder;
+import org.glassfish.hk2.api.DescriptorFileFinderInformation;
 import org.glassfish.hk2.api.DynamicConfigurationService;
 import org.glassfish.hk2.api.MultiException;
 import org.glassfish.hk2.api.Populator;
@@ -58,9 +64,11 @@ import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
 import org.glassfish.hk2.utilities.BuilderHelper;
 import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.glassfish.hk2.utilities.DescriptorIndex;
 import org.glassfish.hk2.utilities.DuplicatePostProcessor;
 import org.glassfish.hk2.utilities.DuplicatePostProcessorMode;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.jvnet.hk2.external.runtime.ServiceLocatorMetricsRuntimeBean;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -83,6 +91,16 @@ public class DynamicPopulateTest {
     private final static String DUMMY_IMPL_9 = "com.acme.dummy.Dummy9";
     private final static String DUMMY_IMPL_10 = "com.acme.dummy.Dummy10";
     private final static String DUMMY_IMPL_11 = "com.acme.dummy.Dummy11";
+    private final static String DUMMY_IMPL_12 = "com.acme.dummy.Dummy12";
+    private final static String DUMMY_IMPL_13 = "com.acme.dummy.Dummy13";
+    private final static String DUMMY_CONTRACT = "com.acme.dummy.DummyContract";
+    private final static String DUMMY_QUALIFIER = "com.acme.dummy.DummyQualifier";
+    private final static String DUMMY_NAME = "Dummy13";
+    private final static String PARALLEL_IMPL = "com.acme.dummy.Parallel";
+    private final static String PARALLEL_CONTRACT = "com.acme.dummy.ParallelContract";
+    private final static String PARALLEL_FILE = "parallel-file-";
+    private final static int NUM_PARALLEL_FILES = 20;
+    private final static int DESCRIPTORS_PER_FILE = 5;
     
     private final static String KEY = "key";
     private final static String VALUE = "value";
@@ -528,6 +546,200 @@ public class DynamicPopulateTest {
         Assert.assertEquals(1, lucky11list.size());
     }
     
+    /**
+     * Tests that a binary descriptor index is recognized by the populator
+     * and that every field written survives the round trip
+     * 
+     * @throws IOException
+     */
+    @Test // @org.junit.Ignore
+    public void testBinaryIndexPopulation() throws IOException {
+        DescriptorImpl di_12 = new DescriptorImpl();
+        di_12.setImplementation(DUMMY_IMPL_12);
+        di_12.addAdvertisedContract(DUMMY_IMPL_12);
+        di_12.addAdvertisedContract(DUMMY_CONTRACT);
+        
+        DescriptorImpl di_13 = new DescriptorImpl();
+        di_13.setImplementation(DUMMY_IMPL_13);
+        di_13.addAdvertisedContract(DUMMY_CONTRACT);
+        di_13.setName(DUMMY_NAME);
+        di_13.setScope(Singleton.class.getName());
+        di_13.addQualifier(DUMMY_QUALIFIER);
+        di_13.setRanking(13);
+        di_13.setProxiable(Boolean.FALSE);
+        di_13.addMetadata(KEY, VALUE2);
+        
+        List<DescriptorImpl> written = new LinkedList<DescriptorImpl>();
+        written.add(di_12);
+        written.add(di_13);
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DescriptorIndex.write(written, baos);
+        baos.close();
+        
+        DescriptorIndex index = DescriptorIndex.read(new ByteArrayInputStream(baos.toByteArray()));
+        Assert.assertEquals(2, index.size());
+        Assert.assertEquals(di_12, index.getDescriptor(0));
+        Assert.assertEquals(di_13, index.getDescriptor(1));
+        Assert.assertSame(index.getDescriptor(1), index.getDescriptor(1));
+        
+        Assert.assertEquals(2, index.getDescriptorsWithContract(DUMMY_CONTRACT).size());
+        Assert.assertEquals(di_12, index.getDescriptorsWithContract(DUMMY_IMPL_12).get(0));
+        Assert.assertTrue(index.getDescriptorsWithContract(DUMMY_IMPL_13).isEmpty());
+        Assert.assertTrue(index.getDescriptorsWithContract(DUMMY_IMPL).isEmpty());
+        
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        Assert.assertNotNull(dcs);
+        
+        Populator populator = dcs.getPopulator();
+        
+        ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+        List<ActiveDescriptor<?>> populated = populator.populate(new MyDescriptorFinder(bais),
+                new MetadataPostProcessor(locator));
+        Assert.assertEquals(2, populated.size());
+        
+        ActiveDescriptor<?> ad = locator.getBestDescriptor(BuilderHelper.createContractFilter(DUMMY_CONTRACT));
+        Assert.assertNotNull(ad);
+        
+        Assert.assertEquals(DUMMY_IMPL_13, ad.getImplementation());
+        Assert.assertEquals(DUMMY_NAME, ad.getName());
+        Assert.assertEquals(Singleton.class.getName(), ad.getScope());
+        Assert.assertTrue(ad.getQualifiers().contains(DUMMY_QUALIFIER));
+        Assert.assertEquals(13, ad.getRanking());
+        Assert.assertEquals(Boolean.FALSE, ad.isProxiable());
+        
+        List<String> values = ad.getMetadata().get(KEY);
+        Assert.assertNotNull(values);
+        Assert.assertEquals(2, values.size());
+        Assert.assertTrue(values.contains(VALUE));
+        Assert.assertTrue(values.contains(VALUE2));
+    }
+    
+    /**
+     * Tests that a truncated binary descriptor index is reported
+     * as an error rather than partially populated
+     * 
+     * @throws IOException
+     */
+    @Test // @org.junit.Ignore
+    public void testTruncatedBinaryIndex() throws IOException {
+        DescriptorImpl di = new DescriptorImpl();
+        di.setImplementation(DUMMY_IMPL);
+        di.addAdvertisedContract(DUMMY_IMPL);
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DescriptorIndex.write(Collections.singletonList(di), baos);
+        baos.close();
+        
+        byte[] truncated = Arrays.copyOf(baos.toByteArray(), baos.size() / 2);
+        
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        Assert.assertNotNull(dcs);
+        
+        Populator populator = dcs.getPopulator();
+        
+        try {
+            populator.populate(new MyDescriptorFinder(new ByteArrayInputStream(truncated)));
+            Assert.fail("Should not have succeeded, the binary index was truncated");
+        }
+        catch (MultiException me) {
+            Assert.assertTrue(me.getErrors().get(0) instanceof IOException);
+        }
+    }
+    
+    /**
+     * Tests that readDescriptors reads the same descriptors
+     * from the text and the binary format
+     * 
+     * @throws IOException
+     */
+    @Test // @org.junit.Ignore
+    public void testReadDescriptorsOfEitherFormat() throws IOException {
+        DescriptorImpl di_12 = new DescriptorImpl();
+        di_12.setImplementation(DUMMY_IMPL_12);
+        di_12.addAdvertisedContract(DUMMY_CONTRACT);
+        
+        DescriptorImpl di_13 = new DescriptorImpl();
+        di_13.setImplementation(DUMMY_IMPL_13);
+        di_13.addAdvertisedContract(DUMMY_CONTRACT);
+        di_13.setName(DUMMY_NAME);
+        di_13.addMetadata(KEY, VALUE);
+        
+        List<DescriptorImpl> written = new LinkedList<DescriptorImpl>();
+        written.add(di_12);
+        written.add(di_13);
+        
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        DescriptorIndex.write(written, binary);
+        binary.close();
+        
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        PrintWriter pw = new PrintWriter(text);
+        for (DescriptorImpl di : written) {
+            di.writeObject(pw);
+        }
+        pw.close();
+        
+        Assert.assertEquals(written, DescriptorIndex.readDescriptors(new ByteArrayInputStream(binary.toByteArray())));
+        Assert.assertEquals(written, DescriptorIndex.readDescriptors(new ByteArrayInputStream(text.toByteArray())));
+        Assert.assertTrue(DescriptorIndex.readDescriptors(new ByteArrayInputStream(new byte[0])).isEmpty());
+    }
+    
+    /**
+     * Tests that many files are bound in the order the finder returned
+     * them, and that the parse time of each file is recorded
+     * 
+     * @throws IOException
+     */
+    @Test // @org.junit.Ignore
+    public void testManyFilesBoundInFinderOrder() throws IOException {
+        List<ByteArrayInputStream> streams = new LinkedList<ByteArrayInputStream>();
+        List<String> identifiers = new LinkedList<String>();
+        
+        for (int lcv = 0; lcv < NUM_PARALLEL_FILES; lcv++) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            PrintWriter pw = new PrintWriter(baos);
+            
+            for (int inner = 0; inner < DESCRIPTORS_PER_FILE; inner++) {
+                DescriptorImpl di = new DescriptorImpl();
+                di.setImplementation(PARALLEL_IMPL + lcv + "_" + inner);
+                di.addAdvertisedContract(PARALLEL_CONTRACT);
+                
+                di.writeObject(pw);
+            }
+            
+            pw.close();
+            
+            streams.add(new ByteArrayInputStream(baos.toByteArray()));
+            identifiers.add(PARALLEL_FILE + lcv);
+        }
+        
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        Assert.assertNotNull(dcs);
+        
+        Populator populator = dcs.getPopulator();
+        
+        List<ActiveDescriptor<?>> populated = populator.populate(new MultiFileDescriptorFinder(streams, identifiers));
+        Assert.assertEquals(NUM_PARALLEL_FILES * DESCRIPTORS_PER_FILE, populated.size());
+        
+        int index = 0;
+        for (int lcv = 0; lcv < NUM_PARALLEL_FILES; lcv++) {
+            for (int inner = 0; inner < DESCRIPTORS_PER_FILE; inner++) {
+                Assert.assertEquals(PARALLEL_IMPL + lcv + "_" + inner, populated.get(index++).getImplementation());
+            }
+        }
+        
+        Assert.assertEquals(NUM_PARALLEL_FILES * DESCRIPTORS_PER_FILE,
+                locator.getAllServiceHandles(BuilderHelper.createContractFilter(PARALLEL_CONTRACT)).size());
+        
+        Map<String, Long> parseTimes = locator.getService(ServiceLocatorMetricsRuntimeBean.class).getDescriptorFileParseTimes();
+        for (String identifier : identifiers) {
+            Long parseTime = parseTimes.get(identifier);
+            Assert.assertNotNull(parseTime);
+            Assert.assertTrue(parseTime >= 0L);
+        }
+    }
+    
     private static class MyDescriptorFinder implements DescriptorFileFinder {
         private final ByteArrayInputStream bais;
         
@@ -545,6 +757,27 @@ public class DynamicPopulateTest {
         
     }
     
+    private static class MultiFileDescriptorFinder implements DescriptorFileFinder, DescriptorFileFinderInformation {
+        private final List<ByteArrayInputStream> streams;
+        private final List<String> identifiers;
+        
+        private MultiFileDescriptorFinder(List<ByteArrayInputStream> streams, List<String> identifiers) {
+            this.streams = streams;
+            this.identifiers = identifiers;
+        }
+
+        @Override
+        public List<InputStream> findDescriptorFiles() throws IOException {
+            return new LinkedList<InputStream>(streams);
+        }
+
+        @Override
+        public List<String> getDescriptorFileInformation() {
+            return identifiers;
+        }
+        
+    }
+    
     private static class MetadataPostProcessor implements PopulatorPostProcessor {
         private final ServiceLocator locator;
         
@@ -0,0 +1,268 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.groupcommit;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.glassfish.hk2.api.DynamicConfiguration;
+import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+import org.jvnet.hk2.external.runtime.ServiceLocatorTuningRuntimeBean;
+
+/**
+ * Tests for commits that are applied together
+ * 
+ * @author jwells
+ *
+ */
+public class GroupCommitTest {
+    private static ServiceLocator createGroupCommitLocator() {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        ServiceLocatorTuningRuntimeBean bean = locator.getService(ServiceLocatorTuningRuntimeBean.class);
+        Assert.assertFalse(bean.isGroupCommits());
+        
+        bean.setGroupCommits(true);
+        Assert.assertTrue(bean.isGroupCommits());
+        
+        return locator;
+    }
+    
+    private static void waitUntilWaiting(Thread thread) throws InterruptedException {
+        long giveUp = System.currentTimeMillis() + 20000L;
+        while (!Thread.State.WAITING.equals(thread.getState())) {
+            Assert.assertTrue("Thread " + thread + " never queued its commit", System.currentTimeMillis() < giveUp);
+            
+            Thread.sleep(5L);
+        }
+    }
+    
+    /**
+     * Tests that commits queued behind a commit that is in progress are
+     * applied together and notify the listeners once
+     */
+    @Test // @org.junit.Ignore
+    public void testQueuedCommitsNotifyListenersOnce() throws Throwable {
+        ServiceLocator locator = createGroupCommitLocator();
+        
+        ServiceLocatorUtilities.addClasses(locator, CountingListener.class);
+        CountingListener listener = locator.getService(CountingListener.class);
+        int baseline = listener.getCalls();
+        
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        listener.holdNextCall(entered, release);
+        
+        Committer first = new Committer(locator, FirstService.class, false);
+        first.start();
+        entered.await();
+        
+        Committer second = new Committer(locator, SecondService.class, false);
+        Committer third = new Committer(locator, ThirdService.class, false);
+        second.start();
+        third.start();
+        
+        waitUntilWaiting(second);
+        waitUntilWaiting(third);
+        
+        release.countDown();
+        
+        first.check();
+        second.check();
+        third.check();
+        
+        Assert.assertNotNull(locator.getService(FirstService.class));
+        Assert.assertNotNull(locator.getService(SecondService.class));
+        Assert.assertNotNull(locator.getService(ThirdService.class));
+        
+        // Once for the first commit and once for the other two
+        Assert.assertEquals(baseline + 2, listener.getCalls());
+    }
+    
+    /**
+     * Tests that a failed commit in a group is reported to its
+     * own committer and does not affect the rest of the group
+     */
+    @Test // @org.junit.Ignore
+    public void testFailedCommitDoesNotAffectGroup() throws Throwable {
+        ServiceLocator locator = createGroupCommitLocator();
+        
+        ServiceLocatorUtilities.addClasses(locator, CountingListener.class);
+        CountingListener listener = locator.getService(CountingListener.class);
+        int baseline = listener.getCalls();
+        
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        listener.holdNextCall(entered, release);
+        
+        Committer first = new Committer(locator, FirstService.class, false);
+        first.start();
+        entered.await();
+        
+        Committer duplicate = new Committer(locator, FirstService.class, true);
+        Committer third = new Committer(locator, ThirdService.class, false);
+        duplicate.start();
+        third.start();
+        
+        waitUntilWaiting(duplicate);
+        waitUntilWaiting(third);
+        
+        release.countDown();
+        
+        first.check();
+        third.check();
+        
+        try {
+            duplicate.check();
+            Assert.fail("The duplicate commit should have failed");
+        }
+        catch (MultiException me) {
+            // expected
+        }
+        
+        Assert.assertEquals(1, locator.getAllServiceHandles(FirstService.class).size());
+        Assert.assertNotNull(locator.getService(ThirdService.class));
+        
+        Assert.assertEquals(baseline + 2, listener.getCalls());
+    }
+    
+    /**
+     * Tests that when the reup done for a group of commits fails
+     * only the commit that caused the failure is failed
+     */
+    @Test // @org.junit.Ignore
+    public void testFailedReupOnlyFailsCausingCommit() throws Throwable {
+        ServiceLocator locator = createGroupCommitLocator();
+        
+        ServiceLocatorUtilities.addClasses(locator, CountingListener.class, RejectingLifecycleListener.class);
+        CountingListener listener = locator.getService(CountingListener.class);
+        
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        listener.holdNextCall(entered, release);
+        
+        Committer first = new Committer(locator, FirstService.class, false);
+        first.start();
+        entered.await();
+        
+        Committer rejected = new Committer(locator, SecondService.class, false);
+        Committer third = new Committer(locator, ThirdService.class, false);
+        rejected.start();
+        third.start();
+        
+        waitUntilWaiting(rejected);
+        waitUntilWaiting(third);
+        
+        release.countDown();
+        
+        first.check();
+        third.check();
+        
+        try {
+            rejected.check();
+            Assert.fail("The commit of the rejected service should have failed");
+        }
+        catch (IllegalStateException ise) {
+            Assert.assertEquals(RejectingLifecycleListener.REJECTED, ise.getMessage());
+        }
+        
+        Assert.assertNotNull(locator.getService(ThirdService.class));
+    }
+    
+    /**
+     * Tests that a listener can commit while being notified
+     * of a grouped commit
+     */
+    @Test // @org.junit.Ignore
+    public void testCommitFromListener() {
+        ServiceLocator locator = createGroupCommitLocator();
+        
+        ServiceLocatorUtilities.addClasses(locator, CommittingListener.class);
+        locator.getService(CommittingListener.class).arm();
+        
+        ServiceLocatorUtilities.addClasses(locator, FirstService.class);
+        
+        Assert.assertNotNull(locator.getService(FirstService.class));
+        Assert.assertNotNull(locator.getService(ThirdService.class));
+    }
+    
+    private static class Committer extends Thread {
+        private final ServiceLocator locator;
+        private final Class<?> toAdd;
+        private final boolean idempotent;
+        private volatile Throwable error;
+        
+        private Committer(ServiceLocator locator, Class<?> toAdd, boolean idempotent) {
+            this.locator = locator;
+            this.toAdd = toAdd;
+            this.idempotent = idempotent;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                DynamicConfiguration config = locator.getService(DynamicConfigurationService.class).createDynamicConfiguration();
+                if (idempotent) {
+                    config.addIdempotentFilter(BuilderHelper.createContractFilter(toAdd.getName()));
+                }
+                
+                config.addActiveDescriptor(toAdd);
+                
+                config.commit();
+            }
+            catch (Throwable th) {
+                error = th;
+            }
+        }
+        
+        private void check() throws Throwable {
+            join();
+            
+            if (error != null) throw error;
+        }
+    }
+
+}
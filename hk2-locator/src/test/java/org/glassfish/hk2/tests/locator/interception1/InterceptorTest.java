@@ -303,4 +303,103 @@ public class InterceptorTest {
         Assert.assertEquals("callMe", inMethods.get(0));
         Assert.assertEquals("callMe", inMethods.get(1));
     }
+    
+    /**
+     * Tests that an interceptor may proceed more than once, and that
+     * each proceed runs the rest of the interceptor stack
+     */
+    @Test // @org.junit.Ignore
+    public void testInterceptorProceedsTwice() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(
+                CountingService.class,
+                ProceedTwiceInterceptorService.class);
+        
+        CountingService counter = locator.getService(CountingService.class);
+        
+        counter.callMe();
+        
+        Assert.assertEquals(2, counter.gotCalled());
+        Assert.assertEquals(2, locator.getService(ProceedTwiceInterceptorService.class).getNumCounterCalls());
+        
+        counter.callMe();
+        
+        Assert.assertEquals(4, counter.gotCalled());
+        Assert.assertEquals(4, locator.getService(ProceedTwiceInterceptorService.class).getNumCounterCalls());
+    }
+    
+    /**
+     * Tests that an interceptor may keep its invocation and
+     * proceed with it after the intercepted call has returned
+     * 
+     * @throws Throwable
+     */
+    @Test // @org.junit.Ignore
+    public void testInterceptorProceedsAfterCallReturns() throws Throwable {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(
+                CountingService.class,
+                ProceedLaterInterceptorService.class);
+        
+        CountingService counter = locator.getService(CountingService.class);
+        
+        counter.callMe();
+        Assert.assertEquals(0, counter.gotCalled());
+        
+        MethodInvocation kept = locator.getService(ProceedLaterInterceptorService.class).getKeptInvocation();
+        Assert.assertNotNull(kept);
+        
+        kept.proceed();
+        Assert.assertEquals(1, counter.gotCalled());
+    }
+    
+    /**
+     * Tests that the proxy of an intercepted service only overrides
+     * the methods that have interceptors when the context class loader
+     * is not kept neutral
+     * 
+     * @throws NoSuchMethodException
+     */
+    @Test // @org.junit.Ignore
+    public void testUninterceptedMethodsAreNotOverridden() throws NoSuchMethodException {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(
+                CountingService.class,
+                ProceedTwiceInterceptorService.class);
+        locator.setNeutralContextClassLoader(false);
+        
+        CountingService counter = locator.getService(CountingService.class);
+        
+        Assert.assertNotSame(CountingService.class, counter.getClass());
+        Assert.assertNotSame(CountingService.class, counter.getClass().getMethod("callMe").getDeclaringClass());
+        Assert.assertSame(CountingService.class, counter.getClass().getMethod("gotCalled").getDeclaringClass());
+        Assert.assertSame(Object.class, counter.getClass().getMethod("hashCode").getDeclaringClass());
+        
+        Assert.assertTrue(counter instanceof AOPProxyCtl);
+        Assert.assertNotNull(((AOPProxyCtl) counter).__getUnderlyingDescriptor());
+    }
+    
+    /**
+     * Tests that when the locator keeps the context class loader neutral
+     * the proxy also overrides the methods of the service without
+     * interceptors, since it is the proxy handler that puts back the
+     * context class loader, but not the methods of Object
+     * 
+     * @throws NoSuchMethodException
+     */
+    @Test // @org.junit.Ignore
+    public void testUninterceptedMethodsOverriddenWhenContextClassLoaderNeutral() throws NoSuchMethodException {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(
+                CountingService.class,
+                ProceedTwiceInterceptorService.class);
+        Assert.assertTrue(locator.getNeutralContextClassLoader());
+        
+        CountingService counter = locator.getService(CountingService.class);
+        
+        Assert.assertNotSame(CountingService.class, counter.getClass().getMethod("callMe").getDeclaringClass());
+        Assert.assertNotSame(CountingService.class, counter.getClass().getMethod("gotCalled").getDeclaringClass());
+        
+        // The methods of Object do not change the context class loader
+        Assert.assertSame(Object.class, counter.getClass().getMethod("hashCode").getDeclaringClass());
+        
+        counter.callMe();
+        Assert.assertEquals(2, counter.gotCalled());
+    }
 }
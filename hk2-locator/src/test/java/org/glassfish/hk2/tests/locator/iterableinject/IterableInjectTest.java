@@ -39,7 +39,12 @@
  */
 package org.glassfish.hk2.tests.locator.iterableinject;
 
+import java.util.Iterator;
+
+import org.glassfish.hk2.api.IterableProvider;
 import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
 import org.junit.Assert;
 import org.junit.Test;
@@ -51,6 +56,7 @@ import org.junit.Test;
 public class IterableInjectTest {
     public static final String ALICE = "Alice";
     public static final String BOB = "Bob";
+    public static final String CAROL = "Carol";
     
     /**
      * Tests the most basic iterable injection
@@ -148,4 +154,89 @@ public class IterableInjectTest {
         Assert.assertEquals(5, tis.getNumAlls());
     }
 
+    /**
+     * Tests that an injected IterableProvider sees services that
+     * are added and removed after it was injected
+     */
+    @Test // @org.junit.Ignore
+    public void testIterableProviderSeesConfigurationChanges() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(
+                AliceService.class,
+                ProviderInjectingService.class);
+        
+        IterableProvider<NamedService> allNamed = locator.getService(ProviderInjectingService.class).getAllNamed();
+        
+        Assert.assertEquals(1, allNamed.getSize());
+        Assert.assertEquals(1, allNamed.getSize());
+        
+        ServiceLocatorUtilities.addClasses(locator, BobService.class);
+        
+        Assert.assertEquals(2, allNamed.getSize());
+        
+        int count = 0;
+        for (NamedService ns : allNamed) {
+            Assert.assertNotNull(ns);
+            count++;
+        }
+        Assert.assertEquals(2, count);
+        
+        ServiceLocatorUtilities.removeFilter(locator, BuilderHelper.createContractFilter(BobService.class.getName()));
+        
+        Assert.assertEquals(1, allNamed.getSize());
+        
+        Iterator<NamedService> iterator = allNamed.iterator();
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertEquals(ALICE, iterator.next().getName());
+        Assert.assertFalse(iterator.hasNext());
+    }
+    
+    /**
+     * Tests that iterating twice over PerLookup services
+     * produces new instances each time
+     */
+    @Test // @org.junit.Ignore
+    public void testPerLookupServicesAreNotReusedAcrossIterations() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(
+                CarolService.class,
+                ProviderInjectingService.class);
+        
+        IterableProvider<NamedService> allNamed = locator.getService(ProviderInjectingService.class).getAllNamed();
+        
+        NamedService first = allNamed.iterator().next();
+        NamedService second = allNamed.iterator().next();
+        
+        Assert.assertEquals(CAROL, first.getName());
+        Assert.assertEquals(CAROL, second.getName());
+        Assert.assertNotSame(first, second);
+    }
+    
+    /**
+     * Tests that the results of an IterableProvider are not
+     * remembered when a validator is not cacheable
+     */
+    @Test // @org.junit.Ignore
+    public void testNonCacheableValidatorIsConsultedEveryTime() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(
+                AliceService.class,
+                BobService.class,
+                HideBobValidationService.class,
+                ProviderInjectingService.class);
+        
+        HideBobValidationService validator = locator.getService(HideBobValidationService.class);
+        IterableProvider<NamedService> allNamed = locator.getService(ProviderInjectingService.class).getAllNamed();
+        
+        Assert.assertEquals(2, allNamed.getSize());
+        
+        validator.setHideBob(true);
+        
+        Assert.assertEquals(1, allNamed.getSize());
+        for (NamedService ns : allNamed) {
+            Assert.assertEquals(ALICE, ns.getName());
+        }
+        
+        validator.setHideBob(false);
+        
+        Assert.assertEquals(2, allNamed.getSize());
+    }
+
 }
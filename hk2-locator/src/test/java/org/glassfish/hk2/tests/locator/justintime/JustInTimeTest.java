@@ -225,6 +225,91 @@ public class JustInTimeTest {
         Assert.assertEquals("unimplementedContract", field.getName());
     }
     
+    /**
+     * Tests that an injection point none of the resolvers could
+     * resolve is not given to the resolvers again until the
+     * configuration changes
+     */
+    @Test // @org.junit.Ignore
+    public void testMissesAreRemembered() {
+        ServiceLocator locator = ServiceLocatorFactory.getInstance().create(null);
+        
+        ServiceLocatorUtilities.addClasses(locator, CountingJITResolver.class);
+        
+        CountingJITResolver resolver = locator.getService(CountingJITResolver.class);
+        
+        Assert.assertNull(locator.getService(UnimplementedContract.class));
+        Assert.assertEquals(1, resolver.getNumTimesCalled());
+        
+        Assert.assertNull(locator.getService(UnimplementedContract.class));
+        Assert.assertNull(locator.getInjecteeDescriptor(new InjecteeImpl(UnimplementedContract.class)));
+        Assert.assertEquals(1, resolver.getNumTimesCalled());
+        
+        // A different injection point is not remembered
+        Assert.assertNull(locator.getService(SimpleService2.class));
+        Assert.assertEquals(2, resolver.getNumTimesCalled());
+        
+        // Any change to the configuration forgets the misses
+        ServiceLocatorUtilities.addClasses(locator, SimpleService.class);
+        
+        Assert.assertNull(locator.getService(UnimplementedContract.class));
+        Assert.assertEquals(3, resolver.getNumTimesCalled());
+    }
+    
+    /**
+     * Tests that resolvers which have declared the types or packages
+     * they resolve are only called for those types
+     */
+    @Test // @org.junit.Ignore
+    public void testResolversOnlyCalledForDeclaredTypes() {
+        ServiceLocator locator = ServiceLocatorFactory.getInstance().create(null);
+        
+        ServiceLocatorUtilities.addClasses(locator,
+                CountingJITResolver.class,
+                TypedJITResolver.class,
+                PackageJITResolver.class);
+        
+        CountingJITResolver counting = locator.getService(CountingJITResolver.class);
+        TypedJITResolver typed = locator.getService(TypedJITResolver.class);
+        PackageJITResolver packaged = locator.getService(PackageJITResolver.class);
+        
+        Assert.assertNull(locator.getService(UnimplementedContract.class));
+        Assert.assertEquals(1, counting.getNumTimesCalled());
+        Assert.assertEquals(1, typed.getNumTimesCalled());
+        Assert.assertEquals(1, packaged.getNumTimesCalled());
+        
+        Assert.assertNull(locator.getService(SimpleService2.class));
+        Assert.assertEquals(2, counting.getNumTimesCalled());
+        Assert.assertEquals(1, typed.getNumTimesCalled());
+        Assert.assertEquals(2, packaged.getNumTimesCalled());
+        
+        Assert.assertNull(locator.getService(Runnable.class));
+        Assert.assertEquals(3, counting.getNumTimesCalled());
+        Assert.assertEquals(1, typed.getNumTimesCalled());
+        Assert.assertEquals(2, packaged.getNumTimesCalled());
+    }
+    
+    /**
+     * Tests that a miss of one parameter is not used for another parameter
+     * of the same type and qualifiers, since resolvers may look at the
+     * other annotations of the parameter
+     */
+    @Test // @org.junit.Ignore
+    public void testMissesAreRememberedPerParameter() {
+        ServiceLocator locator = ServiceLocatorFactory.getInstance().create(null);
+        
+        ServiceLocatorUtilities.addClasses(locator,
+                ParameterAnnotationJITResolver.class,
+                TwoParameterService.class);
+        
+        ParameterAnnotationJITResolver resolver = locator.getService(ParameterAnnotationJITResolver.class);
+        
+        TwoParameterService service = locator.getService(TwoParameterService.class);
+        Assert.assertNull(service.getNotSupplied());
+        Assert.assertNotNull(service.getSupplied());
+        Assert.assertEquals(2, resolver.getNumTimesCalled());
+    }
+    
     private static ServiceLocator getProviderLocator() {
         ServiceLocator locator = ServiceLocatorFactory.getInstance().create(null);
         
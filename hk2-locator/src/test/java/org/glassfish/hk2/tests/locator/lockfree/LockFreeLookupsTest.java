@@ -0,0 +1,247 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.tests.locator.lockfree;
+
+import java.util.List;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+import org.jvnet.hk2.external.runtime.ServiceLocatorTuningRuntimeBean;
+
+/**
+ * Tests for lookups that use a snapshot of the indexes rather
+ * than the locator lock
+ * 
+ * @author jwells
+ *
+ */
+public class LockFreeLookupsTest {
+    /* package */ final static String HIDDEN = "Hidden";
+    
+    private final static int NUM_THREADS = 10;
+    private final static int NUM_ITERATIONS = 2000;
+    
+    private static ServiceLocator createLockFreeLocator(ServiceLocator parent) {
+        ServiceLocator locator = (parent == null) ? LocatorHelper.create() : LocatorHelper.create(parent);
+        
+        ServiceLocatorTuningRuntimeBean bean = locator.getService(ServiceLocatorTuningRuntimeBean.class);
+        bean.setLockFreeLookups(true);
+        Assert.assertTrue(bean.isLockFreeLookups());
+        
+        return locator;
+    }
+    
+    /**
+     * Tests that adds and removes are seen by
+     * subsequent lookups
+     */
+    @Test // @org.junit.Ignore
+    public void testLookupsSeeConfigurationChanges() {
+        ServiceLocator locator = createLockFreeLocator(null);
+        
+        Assert.assertNull(locator.getService(SimpleContract.class));
+        
+        ServiceLocatorUtilities.addClasses(locator, SimpleServiceA.class);
+        
+        Assert.assertTrue(locator.getService(SimpleContract.class) instanceof SimpleServiceA);
+        Assert.assertEquals(1, locator.getAllServices(SimpleContract.class).size());
+        
+        List<ActiveDescriptor<?>> added = ServiceLocatorUtilities.addClasses(locator, SimpleServiceB.class);
+        
+        Assert.assertTrue(locator.getService(SimpleContract.class) instanceof SimpleServiceB);
+        Assert.assertTrue(locator.getService(SimpleContract.class, HIDDEN) instanceof SimpleServiceB);
+        Assert.assertEquals(2, locator.getAllServices(SimpleContract.class).size());
+        
+        ServiceLocatorUtilities.removeOneDescriptor(locator, added.get(0));
+        
+        Assert.assertTrue(locator.getService(SimpleContract.class) instanceof SimpleServiceA);
+        Assert.assertNull(locator.getService(SimpleContract.class, HIDDEN));
+        Assert.assertEquals(1, locator.getAllServices(SimpleContract.class).size());
+    }
+    
+    /**
+     * Tests that a change of rank is seen by
+     * subsequent calls to getDescriptors
+     */
+    @Test // @org.junit.Ignore
+    public void testRankChangeIsSeen() {
+        ServiceLocator locator = createLockFreeLocator(null);
+        
+        ServiceLocatorUtilities.addClasses(locator, SimpleServiceA.class, SimpleServiceB.class);
+        
+        List<ActiveDescriptor<?>> descriptors = locator.getDescriptors(
+                BuilderHelper.createContractFilter(SimpleContract.class.getName()));
+        Assert.assertEquals(2, descriptors.size());
+        Assert.assertEquals(SimpleServiceB.class.getName(), descriptors.get(0).getImplementation());
+        
+        descriptors.get(1).setRanking(10);
+        
+        descriptors = locator.getDescriptors(
+                BuilderHelper.createContractFilter(SimpleContract.class.getName()));
+        Assert.assertEquals(2, descriptors.size());
+        Assert.assertEquals(SimpleServiceA.class.getName(), descriptors.get(0).getImplementation());
+    }
+    
+    /**
+     * Tests that a child locator sees services added
+     * to the parent after the child has cached a failed lookup
+     */
+    @Test // @org.junit.Ignore
+    public void testChildSeesParentChanges() {
+        ServiceLocator parent = createLockFreeLocator(null);
+        ServiceLocator child = createLockFreeLocator(parent);
+        
+        Assert.assertNull(child.getService(SimpleContract.class));
+        Assert.assertTrue(child.getAllServices(SimpleContract.class).isEmpty());
+        
+        ServiceLocatorUtilities.addClasses(parent, SimpleServiceA.class);
+        
+        Assert.assertTrue(child.getService(SimpleContract.class) instanceof SimpleServiceA);
+        Assert.assertEquals(1, child.getAllServices(SimpleContract.class).size());
+    }
+    
+    /**
+     * Tests that a validation service added after the lookups
+     * have been cached is used by subsequent lookups, both in
+     * the locator and in its child
+     */
+    @Test // @org.junit.Ignore
+    public void testValidationServiceAddedLater() {
+        ServiceLocator parent = createLockFreeLocator(null);
+        ServiceLocator child = createLockFreeLocator(parent);
+        
+        ServiceLocatorUtilities.addClasses(parent, SimpleServiceA.class, SimpleServiceB.class);
+        
+        Assert.assertTrue(parent.getService(SimpleContract.class) instanceof SimpleServiceB);
+        Assert.assertTrue(child.getService(SimpleContract.class) instanceof SimpleServiceB);
+        
+        ServiceLocatorUtilities.addClasses(parent, HidingValidationService.class);
+        
+        Assert.assertTrue(parent.getService(SimpleContract.class) instanceof SimpleServiceA);
+        Assert.assertTrue(child.getService(SimpleContract.class) instanceof SimpleServiceA);
+        Assert.assertEquals(1, child.getAllServices(SimpleContract.class).size());
+    }
+    
+    /**
+     * Tests that lookups are correct as lock free
+     * lookups are turned off and on again
+     */
+    @Test // @org.junit.Ignore
+    public void testSwitchingLockFreeLookups() {
+        ServiceLocator locator = createLockFreeLocator(null);
+        ServiceLocatorTuningRuntimeBean bean = locator.getService(ServiceLocatorTuningRuntimeBean.class);
+        
+        ServiceLocatorUtilities.addClasses(locator, SimpleServiceA.class);
+        Assert.assertTrue(locator.getService(SimpleContract.class) instanceof SimpleServiceA);
+        
+        bean.setLockFreeLookups(false);
+        Assert.assertFalse(bean.isLockFreeLookups());
+        
+        List<ActiveDescriptor<?>> added = ServiceLocatorUtilities.addClasses(locator, SimpleServiceB.class);
+        Assert.assertTrue(locator.getService(SimpleContract.class) instanceof SimpleServiceB);
+        
+        bean.setLockFreeLookups(true);
+        Assert.assertTrue(locator.getService(SimpleContract.class) instanceof SimpleServiceB);
+        
+        ServiceLocatorUtilities.removeOneDescriptor(locator, added.get(0));
+        Assert.assertTrue(locator.getService(SimpleContract.class) instanceof SimpleServiceA);
+    }
+    
+    /**
+     * Many threads doing lookups while services are
+     * added and removed.  The service that is never removed
+     * must always be found
+     */
+    @Test // @org.junit.Ignore
+    public void testManyThreadsWithConfigurationChanges() throws Throwable {
+        final ServiceLocator locator = createLockFreeLocator(null);
+        
+        ServiceLocatorUtilities.addClasses(locator, SimpleServiceA.class);
+        
+        Thread threads[] = new Thread[NUM_THREADS];
+        final Throwable errors[] = new Throwable[NUM_THREADS];
+        
+        for (int lcv = 0; lcv < NUM_THREADS; lcv++) {
+            final int index = lcv;
+            threads[lcv] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        for (int iteration = 0; iteration < NUM_ITERATIONS; iteration++) {
+                            Assert.assertNotNull(locator.getService(SimpleContract.class));
+                            
+                            int size = locator.getAllServices(SimpleContract.class).size();
+                            Assert.assertTrue("size=" + size, size == 1 || size == 2);
+                        }
+                    }
+                    catch (Throwable th) {
+                        errors[index] = th;
+                    }
+                }
+                
+            });
+        }
+        
+        for (int lcv = 0; lcv < NUM_THREADS; lcv++) {
+            threads[lcv].start();
+        }
+        
+        for (int lcv = 0; lcv < NUM_ITERATIONS / 10; lcv++) {
+            List<ActiveDescriptor<?>> added = ServiceLocatorUtilities.addClasses(locator, SimpleServiceB.class);
+            ServiceLocatorUtilities.removeOneDescriptor(locator, added.get(0));
+        }
+        
+        for (int lcv = 0; lcv < NUM_THREADS; lcv++) {
+            threads[lcv].join(20 * 1000);
+            if (errors[lcv] != null) throw errors[lcv];
+        }
+        
+        Assert.assertTrue(locator.getService(SimpleContract.class) instanceof SimpleServiceA);
+        Assert.assertEquals(1, locator.getAllServices(SimpleContract.class).size());
+    }
+
+}
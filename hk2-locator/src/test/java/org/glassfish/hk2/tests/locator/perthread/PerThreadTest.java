@@ -44,8 +44,11 @@ import java.util.HashSet;
 
 import junit.framework.Assert;
 
+import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.internal.PerThreadContext;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BuilderHelper;
 import org.glassfish.hk2.utilities.PerThreadScopeModule;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.junit.Before;
@@ -280,6 +283,63 @@ public class PerThreadTest {
         }
     }
     
+    /**
+     * Tests that shutting down the context forgets the instances
+     * of the current thread
+     */
+    @Test // @org.junit.Ignore
+    public void testContextShutdownForgetsInstances() {
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorUtilities.enablePerThreadScope(locator);
+        ServiceLocatorUtilities.addClasses(locator, Pants.class);
+        
+        ActiveDescriptor<?> pantsDescriptor = locator.getBestDescriptor(BuilderHelper.createContractFilter(Pants.class.getName()));
+        PerThreadContext context = locator.getService(PerThreadContext.class);
+        
+        Assert.assertFalse(context.containsKey(pantsDescriptor));
+        
+        Pants pants1 = locator.getService(Pants.class);
+        Assert.assertSame(pants1, locator.getService(Pants.class));
+        Assert.assertTrue(context.containsKey(pantsDescriptor));
+        
+        context.shutdown();
+        
+        Assert.assertFalse(context.containsKey(pantsDescriptor));
+        
+        Pants pants2 = locator.getService(Pants.class);
+        Assert.assertNotSame(pants1, pants2);
+        Assert.assertSame(pants2, locator.getService(Pants.class));
+    }
+    
+    /**
+     * Tests that once a descriptor is unbound a new descriptor, which
+     * may be given the slot of the unbound one, does not see the
+     * instance of the unbound descriptor
+     */
+    @Test // @org.junit.Ignore
+    public void testUnboundDescriptorInstanceNotSeenByNewDescriptor() {
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorUtilities.enablePerThreadScope(locator);
+        ServiceLocatorUtilities.addClasses(locator, Pants.class);
+        
+        ActiveDescriptor<?> pantsDescriptor = locator.getBestDescriptor(BuilderHelper.createContractFilter(Pants.class.getName()));
+        PerThreadContext context = locator.getService(PerThreadContext.class);
+        
+        Pants pants1 = locator.getService(Pants.class);
+        Assert.assertTrue(context.containsKey(pantsDescriptor));
+        
+        ServiceLocatorUtilities.removeOneDescriptor(locator, pantsDescriptor);
+        ServiceLocatorUtilities.addClasses(locator, Pants.class);
+        
+        ActiveDescriptor<?> newPantsDescriptor = locator.getBestDescriptor(BuilderHelper.createContractFilter(Pants.class.getName()));
+        Assert.assertNotSame(pantsDescriptor, newPantsDescriptor);
+        Assert.assertFalse(context.containsKey(newPantsDescriptor));
+        
+        Pants pants2 = locator.getService(Pants.class);
+        Assert.assertNotSame(pants1, pants2);
+        Assert.assertSame(pants2, locator.getService(Pants.class));
+    }
+    
     public class StoreRunner implements Runnable {
         private final ServiceLocator locator;
         private ClothingStore store;
@@ -0,0 +1,154 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.tests.locator.proxiable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads its own copy of one class.  When that class is loaded
+ * again while a class that extends it is being defined, as happens
+ * when a proxy class is generated for it, the loading thread waits
+ * until {@link #release()} is called
+ * 
+ * @author jwells
+ *
+ */
+public class BlockingClassLoader extends ClassLoader {
+    private final String blockedName;
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private final CountDownLatch released = new CountDownLatch(1);
+    private Class<?> copy;
+    
+    /**
+     * Creates a loader with its own copy of the given class
+     * 
+     * @param original The class to copy, whose loader becomes the
+     * parent of this loader
+     */
+    public BlockingClassLoader(Class<?> original) {
+        super(original.getClassLoader());
+        
+        blockedName = original.getName();
+    }
+    
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (!blockedName.equals(name)) return super.loadClass(name, resolve);
+        
+        if (isDefiningSubclass()) {
+            blocked.countDown();
+            
+            try {
+                released.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        return getCopy();
+    }
+    
+    private synchronized Class<?> getCopy() throws ClassNotFoundException {
+        if (copy != null) return copy;
+        
+        String resource = blockedName.replace('.', '/') + ".class";
+        InputStream is = getParent().getResourceAsStream(resource);
+        if (is == null) throw new ClassNotFoundException(blockedName);
+        
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte buffer[] = new byte[4096];
+            int read;
+            while ((read = is.read(buffer)) >= 0) {
+                baos.write(buffer, 0, read);
+            }
+            
+            byte bytes[] = baos.toByteArray();
+            copy = defineClass(blockedName, bytes, 0, bytes.length);
+            
+            return copy;
+        }
+        catch (IOException ioe) {
+            throw new ClassNotFoundException(blockedName, ioe);
+        }
+        finally {
+            try {
+                is.close();
+            }
+            catch (IOException ignore) {
+            }
+        }
+    }
+    
+    private static boolean isDefiningSubclass() {
+        for (StackTraceElement element : new Throwable().getStackTrace()) {
+            if (ClassLoader.class.getName().equals(element.getClassName()) &&
+                    element.getMethodName().startsWith("defineClass")) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Waits for a thread to be blocked loading the class
+     * 
+     * @param seconds The most seconds to wait
+     * @return true if a thread is blocked
+     * @throws InterruptedException
+     */
+    public boolean awaitBlocked(long seconds) throws InterruptedException {
+        return blocked.await(seconds, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Lets all blocked threads and all later loads continue
+     */
+    public void release() {
+        released.countDown();
+    }
+}
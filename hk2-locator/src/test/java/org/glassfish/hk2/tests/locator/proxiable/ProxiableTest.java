@@ -40,12 +40,24 @@
 
 package org.glassfish.hk2.tests.locator.proxiable;
 
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javax.inject.Singleton;
+
 import org.junit.Assert;
 
+import org.glassfish.hk2.api.Context;
+import org.glassfish.hk2.api.DynamicConfiguration;
+import org.glassfish.hk2.api.DynamicConfigurationService;
 import org.glassfish.hk2.api.ProxyCtl;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BuilderHelper;
 import org.junit.Test;
+import org.jvnet.hk2.internal.ProxyUtilities;
 
 /**
  * @author jwells
@@ -54,6 +66,8 @@ import org.junit.Test;
 public class ProxiableTest {
     private final static String TEST_NAME = "ProxiableTest";
     private final static ServiceLocator locator = LocatorHelper.create(TEST_NAME, new ProxiableModule());
+    private final static int NUM_PROXY_THREADS = 16;
+    private final static long PROXY_WAIT_SECONDS = 20;
     
     /** Many flowers */
     public final static String SPRING = "Spring";
@@ -125,4 +139,156 @@ public class ProxiableTest {
     	// If this doesn't bomb, this test works
     	sh.check();
     }
+    
+    /**
+     * Tests that proxies of different classes can be created at the
+     * same time from many threads, and that all proxies of the same
+     * class share one proxy class
+     * 
+     * @throws InterruptedException
+     */
+    @Test // @org.junit.Ignore
+    public void testConcurrentProxyCreation() throws InterruptedException {
+        final ServiceLocator concurrentLocator = LocatorHelper.create(TEST_NAME + "Concurrent", new ProxiableModule());
+        final Class<?> seasons[] = { Spring.class, Summer.class, Fall.class, Winter.class };
+        final String names[] = { SPRING, SUMMER, FALL, WINTER };
+        
+        final CountDownLatch start = new CountDownLatch(1);
+        final Class<?> proxyClasses[] = new Class<?>[NUM_PROXY_THREADS];
+        final List<Throwable> errors = Collections.synchronizedList(new LinkedList<Throwable>());
+        
+        Thread threads[] = new Thread[NUM_PROXY_THREADS];
+        for (int lcv = 0; lcv < NUM_PROXY_THREADS; lcv++) {
+            final int index = lcv;
+            threads[lcv] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        
+                        Season season = (Season) concurrentLocator.getService(seasons[index % seasons.length]);
+                        Assert.assertEquals(names[index % names.length], season.getName());
+                        
+                        proxyClasses[index] = season.getClass();
+                    }
+                    catch (Throwable th) {
+                        errors.add(th);
+                    }
+                }
+                
+            });
+            
+            threads[lcv].start();
+        }
+        
+        start.countDown();
+        
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        Assert.assertTrue(errors.toString(), errors.isEmpty());
+        
+        for (int lcv = 0; lcv < NUM_PROXY_THREADS; lcv++) {
+            Class<?> seasonClass = seasons[lcv % seasons.length];
+            
+            Assert.assertTrue(ProxyCtl.class.isAssignableFrom(proxyClasses[lcv]));
+            Assert.assertEquals(seasonClass, proxyClasses[lcv].getSuperclass());
+            Assert.assertSame(proxyClasses[lcv % seasons.length], proxyClasses[lcv]);
+        }
+        
+        concurrentLocator.shutdown();
+    }
+    
+    /**
+     * Tests that proxy classes are generated by hk2 itself rather than
+     * by the fallback to ProxyFactory.createClass, which is only used when
+     * the members of ProxyFactory hk2 relies upon can no longer be found
+     */
+    @Test // @org.junit.Ignore
+    public void testProxyClassesNotGeneratedByFallback() {
+        Winter winter = locator.getService(Winter.class);
+        Assert.assertTrue(winter instanceof ProxyCtl);
+        
+        String proxyClassName = winter.getClass().getName();
+        Assert.assertTrue(proxyClassName, proxyClassName.contains(ProxyUtilities.GENERATED_PROXY_NAME_SEPARATOR));
+    }
+    
+    /**
+     * Tests that the generation of a proxy class does not wait for the
+     * generation of an unrelated proxy class in another thread
+     * 
+     * @throws Exception
+     */
+    @Test // @org.junit.Ignore
+    public void testUnrelatedProxiesGeneratedAtSameTime() throws Exception {
+        final BlockingClassLoader blockingLoader = new BlockingClassLoader(Winter.class);
+        final Class<?> blockedWinter = blockingLoader.loadClass(Winter.class.getName());
+        Assert.assertNotSame(Winter.class, blockedWinter);
+        
+        final ServiceLocator blockedLocator = LocatorHelper.create(TEST_NAME + "Blocked", null);
+        DynamicConfigurationService dcs = blockedLocator.getService(DynamicConfigurationService.class);
+        DynamicConfiguration config = dcs.createDynamicConfiguration();
+        config.bind(BuilderHelper.link(SeasonContext.class).to(Context.class).in(Singleton.class.getName()).build());
+        config.addActiveDescriptor(blockedWinter);
+        config.commit();
+        
+        final ServiceLocator unrelatedLocator = LocatorHelper.create(TEST_NAME + "Unrelated", new ProxiableModule());
+        
+        final List<Throwable> errors = Collections.synchronizedList(new LinkedList<Throwable>());
+        
+        Thread blockedThread = new Thread(new Runnable() {
+            
+            @Override
+            public void run() {
+                try {
+                    Object winter = blockedLocator.getService(blockedWinter);
+                    Assert.assertTrue(winter instanceof ProxyCtl);
+                }
+                catch (Throwable th) {
+                    errors.add(th);
+                }
+            }
+            
+        });
+        
+        Thread unrelatedThread = new Thread(new Runnable() {
+            
+            @Override
+            public void run() {
+                try {
+                    Spring spring = unrelatedLocator.getService(Spring.class);
+                    Assert.assertTrue(spring instanceof ProxyCtl);
+                    Assert.assertEquals(SPRING, spring.getName());
+                }
+                catch (Throwable th) {
+                    errors.add(th);
+                }
+            }
+            
+        });
+        
+        try {
+            blockedThread.start();
+            Assert.assertTrue(blockingLoader.awaitBlocked(PROXY_WAIT_SECONDS));
+            
+            // The Winter proxy class is now being defined, which must not stop the Spring one
+            unrelatedThread.start();
+            unrelatedThread.join(PROXY_WAIT_SECONDS * 1000);
+            
+            Assert.assertFalse("Generation of an unrelated proxy class waited for another one", unrelatedThread.isAlive());
+        }
+        finally {
+            blockingLoader.release();
+        }
+        
+        blockedThread.join();
+        unrelatedThread.join();
+        
+        Assert.assertTrue(errors.toString(), errors.isEmpty());
+        
+        blockedLocator.shutdown();
+        unrelatedLocator.shutdown();
+    }
 }
@@ -42,11 +42,13 @@ package org.glassfish.hk2.tests.locator.runtime;
 import java.util.List;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.MultiException;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.junit.Assert;
 import org.junit.Test;
+import org.jvnet.hk2.external.runtime.ServiceLocatorMetricsRuntimeBean;
 import org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean;
 
 /**
@@ -153,6 +155,44 @@ public class RuntimeBeanTest {
         Assert.assertEquals(1, bean.getServiceCacheSize());
     }
     
+    /**
+     * Tests that the service cache counts its
+     * hits and misses, and that clearing the
+     * cache sets the counts back to zero
+     */
+    @Test // @org.junit.Ignore
+    public void testServiceCacheStatistics() {
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorRuntimeBean bean = locator.getService(ServiceLocatorRuntimeBean.class);
+        ServiceLocatorMetricsRuntimeBean metricsBean = locator.getService(ServiceLocatorMetricsRuntimeBean.class);
+        
+        ServiceLocatorUtilities.addClasses(locator, SimpleService.class);
+        
+        bean.clearServiceCache();
+        
+        Assert.assertEquals(0L, metricsBean.getServiceCacheHitCount());
+        Assert.assertEquals(0L, metricsBean.getServiceCacheMissCount());
+        Assert.assertEquals(0L, metricsBean.getServiceCacheEvictionCount());
+        
+        Assert.assertNotNull(locator.getService(SimpleService.class));
+        
+        Assert.assertEquals(0L, metricsBean.getServiceCacheHitCount());
+        Assert.assertEquals(1L, metricsBean.getServiceCacheMissCount());
+        
+        for (int lcv = 0; lcv < 10; lcv++) {
+            Assert.assertNotNull(locator.getService(SimpleService.class));
+        }
+        
+        Assert.assertEquals(10L, metricsBean.getServiceCacheHitCount());
+        Assert.assertEquals(1L, metricsBean.getServiceCacheMissCount());
+        Assert.assertEquals(0L, metricsBean.getServiceCacheEvictionCount());
+        
+        bean.clearServiceCache();
+        
+        Assert.assertEquals(0L, metricsBean.getServiceCacheHitCount());
+        Assert.assertEquals(0L, metricsBean.getServiceCacheMissCount());
+    }
+    
     /**
      * Tests that the service cache can be zeroed
      */
@@ -182,5 +222,94 @@ public class RuntimeBeanTest {
         
         Assert.assertTrue(bean.getReflectionCacheSize() > 0);
     }
+    
+    /**
+     * Tests that the service handle cache counts its
+     * hits and that the contract index can be sized
+     */
+    @Test // @org.junit.Ignore
+    public void testHandleCacheAndContractStatistics() {
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorMetricsRuntimeBean bean = locator.getService(ServiceLocatorMetricsRuntimeBean.class);
+        
+        int numContracts = bean.getNumberOfContracts();
+        
+        ServiceLocatorUtilities.addClasses(locator, SimpleService.class);
+        
+        Assert.assertEquals(numContracts + 1, bean.getNumberOfContracts());
+        
+        long hits = bean.getHandleCacheHitCount();
+        long misses = bean.getHandleCacheMissCount();
+        
+        Assert.assertEquals(1, locator.getAllServiceHandles(SimpleService.class).size());
+        
+        Assert.assertEquals(misses + 1, bean.getHandleCacheMissCount());
+        
+        for (int lcv = 0; lcv < 10; lcv++) {
+            Assert.assertEquals(1, locator.getAllServiceHandles(SimpleService.class).size());
+        }
+        
+        Assert.assertEquals(hits + 10, bean.getHandleCacheHitCount());
+        Assert.assertEquals(misses + 1, bean.getHandleCacheMissCount());
+        Assert.assertEquals(0L, bean.getHandleCacheEvictionCount());
+        Assert.assertTrue(bean.getHandleCacheSize() > 0);
+    }
+    
+    /**
+     * Tests that metrics are told about lookups, commits,
+     * creations and postConstruct calls, and are told
+     * nothing once they are removed
+     */
+    @Test // @org.junit.Ignore
+    public void testMetrics() {
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorMetricsRuntimeBean bean = locator.getService(ServiceLocatorMetricsRuntimeBean.class);
+        
+        Assert.assertNull(bean.getMetrics());
+        
+        RecordingMetrics metrics = new RecordingMetrics();
+        bean.setMetrics(metrics);
+        Assert.assertSame(metrics, bean.getMetrics());
+        
+        ServiceLocatorUtilities.addClasses(locator, PostConstructService.class);
+        
+        Assert.assertEquals(1, metrics.getCommits());
+        
+        try {
+            ServiceLocatorUtilities.addClasses(locator, true, PostConstructService.class);
+            Assert.fail("An idempotent add of a service that is already there should fail");
+        }
+        catch (MultiException me) {
+            // Expected
+        }
+        
+        // Failed commits are timed too
+        Assert.assertEquals(2, metrics.getCommits());
+        
+        int lookups = metrics.getLookups();
+        
+        PostConstructService service = locator.getService(PostConstructService.class);
+        Assert.assertTrue(service.isStarted());
+        
+        Assert.assertEquals(lookups + 1, metrics.getLookups());
+        Assert.assertTrue(metrics.getCreated().contains(PostConstructService.class.getName()));
+        Assert.assertEquals(1, metrics.getPostConstructed().size());
+        Assert.assertEquals(PostConstructService.class.getName() + ".start", metrics.getPostConstructed().get(0));
+        
+        locator.getAllServices(PostConstructService.class);
+        
+        Assert.assertEquals(lookups + 2, metrics.getLookups());
+        
+        bean.setMetrics(null);
+        
+        int created = metrics.getCreated().size();
+        
+        locator.getService(PostConstructService.class);
+        ServiceLocatorUtilities.addClasses(locator, SimpleService.class);
+        
+        Assert.assertEquals(lookups + 2, metrics.getLookups());
+        Assert.assertEquals(2, metrics.getCommits());
+        Assert.assertEquals(created, metrics.getCreated().size());
+    }
 
 }
@@ -46,11 +46,13 @@ import java.util.List;
 import junit.framework.Assert;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.MultiException;
 import org.glassfish.hk2.api.ServiceHandle;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.api.ServiceLocatorFactory;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
 import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.junit.Test;
 
 /**
@@ -120,6 +122,29 @@ public class SingletonTest {
         Assert.assertTrue(triple.getWasPreDestroyed());
     }
     
+    /**
+     * Tests that a singleton that looks itself up while being created
+     * is reported as a cycle, and that the handle is not active afterwards
+     */
+    @Test // @org.junit.Ignore
+    public void testSelfLookupIsCycle() {
+        ServiceLocator cycleLocator = LocatorHelper.create();
+        ServiceLocatorUtilities.addClasses(cycleLocator, SelfLookupService.class);
+        
+        ServiceHandle<SelfLookupService> handle = cycleLocator.getServiceHandle(SelfLookupService.class);
+        Assert.assertNotNull(handle);
+        
+        try {
+            handle.getService();
+            Assert.fail("SelfLookupService looks itself up in postConstruct and so should have failed");
+        }
+        catch (MultiException me) {
+            Assert.assertTrue(me.getMessage(), me.getMessage().contains("circular dependency"));
+        }
+        
+        Assert.assertFalse(handle.isActive());
+    }
+    
     private class MyWorker implements Runnable {
         private final ServiceHandle<?> handle;
         
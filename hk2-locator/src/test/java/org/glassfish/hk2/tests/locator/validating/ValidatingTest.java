@@ -49,6 +49,7 @@ import junit.framework.Assert;
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.DynamicConfiguration;
 import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.Filter;
 import org.glassfish.hk2.api.MultiException;
 import org.glassfish.hk2.api.ProxyCtl;
 import org.glassfish.hk2.api.ServiceLocator;
@@ -234,6 +235,88 @@ public class ValidatingTest {
         Assert.assertEquals(2, d2.getImplNumber());
     }
 
+    /**
+     * Tests that the decisions of a cacheable validator are remembered
+     * until the configuration changes
+     */
+    @Test
+    public void testCacheableValidatorCalledOncePerConfiguration() {
+        ServiceLocator locator = LocatorHelper.create(TEST_NAME + ".testCacheableValidatorCalledOncePerConfiguration", null);
+
+        ServiceLocatorUtilities.addClasses(locator,
+                DynamicServiceImpl1.class,
+                DynamicServiceImpl2.class,
+                CountingCacheableValidationService.class);
+
+        CountingCacheableValidationService validator = locator.getService(CountingCacheableValidationService.class);
+        Filter filter = BuilderHelper.createContractFilter(DynamicService.class.getName());
+
+        for (int lcv = 0; lcv < 10; lcv++) {
+            List<ActiveDescriptor<?>> found = locator.getDescriptors(filter);
+            Assert.assertEquals(1, found.size());
+            Assert.assertEquals(DynamicServiceImpl1.class.getName(), found.get(0).getImplementation());
+
+            DynamicService ds = locator.getService(DynamicService.class);
+            Assert.assertEquals(1, ds.getImplNumber());
+        }
+
+        // Once for each of the two implementations
+        Assert.assertEquals(2, validator.getCalls());
+
+        // Any configuration change causes the decisions to be made again
+        ServiceLocatorUtilities.addClasses(locator, ServiceA.class);
+
+        List<ActiveDescriptor<?>> found = locator.getDescriptors(filter);
+        Assert.assertEquals(1, found.size());
+        Assert.assertEquals(4, validator.getCalls());
+
+        locator.getDescriptors(filter);
+        Assert.assertEquals(4, validator.getCalls());
+    }
+
+    /**
+     * Tests that a child locator remembers its own decisions about the
+     * descriptors of its parent, and forgets them when the parent changes
+     */
+    @Test
+    public void testCacheableValidatorInChildLocator() {
+        ServiceLocator parent = LocatorHelper.create(TEST_NAME + ".testCacheableValidatorInChildLocatorParent", null);
+        ServiceLocator child = LocatorHelper.create(TEST_NAME + ".testCacheableValidatorInChildLocatorChild", parent, null);
+
+        ServiceLocatorUtilities.addClasses(parent,
+                DynamicServiceImpl1.class,
+                DynamicServiceImpl2.class);
+        ServiceLocatorUtilities.addClasses(child, CountingCacheableValidationService.class);
+
+        CountingCacheableValidationService validator = child.getService(CountingCacheableValidationService.class);
+
+        // The parent does not have the validator
+        Assert.assertEquals(2, parent.getAllServices(DynamicService.class).size());
+
+        for (int lcv = 0; lcv < 10; lcv++) {
+            DynamicService ds = child.getService(DynamicService.class);
+            Assert.assertEquals(1, ds.getImplNumber());
+        }
+
+        Assert.assertEquals(2, parent.getAllServices(DynamicService.class).size());
+
+        int afterFirstRound = validator.getCalls();
+        Assert.assertTrue(afterFirstRound > 0);
+
+        for (int lcv = 0; lcv < 10; lcv++) {
+            DynamicService ds = child.getService(DynamicService.class);
+            Assert.assertEquals(1, ds.getImplNumber());
+        }
+
+        Assert.assertEquals(afterFirstRound, validator.getCalls());
+
+        ServiceLocatorUtilities.addClasses(parent, ServiceA.class);
+
+        DynamicService ds = child.getService(DynamicService.class);
+        Assert.assertEquals(1, ds.getImplNumber());
+        Assert.assertTrue(validator.getCalls() > afterFirstRound);
+    }
+
     private static ServiceLocator generateGetCallerLocators(String testName) {
         ServiceLocator retVal = LocatorHelper.create(TEST_NAME + "." + testName, null);
 
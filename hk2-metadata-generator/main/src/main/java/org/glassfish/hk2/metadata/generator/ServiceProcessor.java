@@ -40,6 +40,7 @@
 package org.glassfish.hk2.metadata.generator;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Writer;
 import java.util.ArrayList;
@@ -62,6 +63,7 @@ import javax.tools.StandardLocation;
 
 import org.glassfish.hk2.api.MultiException;
 import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.glassfish.hk2.utilities.DescriptorIndex;
 
 /**
  * The entry point for service &#64;Service annotations
@@ -70,9 +72,10 @@ import org.glassfish.hk2.utilities.DescriptorImpl;
  *
  */
 @SupportedAnnotationTypes("org.jvnet.hk2.annotations.Service")
-@SupportedOptions("org.glassfish.hk2.metadata.location")
+@SupportedOptions({ "org.glassfish.hk2.metadata.location", "org.glassfish.hk2.metadata.binary" })
 public class ServiceProcessor extends AbstractProcessor {
     private static final String LOCATION_OPTION = "org.glassfish.hk2.metadata.location";
+    private static final String BINARY_OPTION = "org.glassfish.hk2.metadata.binary";
     private static final String LOCATION_DEFAULT = "META-INF/hk2-locator/default";
     
     private final TreeSet<DescriptorImpl> allDescriptors = new TreeSet<DescriptorImpl>(new DescriptorComparitor());
@@ -157,6 +160,18 @@ public class ServiceProcessor extends AbstractProcessor {
                 "", location, 
                 originators.toArray(new Element[originators.size()]));
         
+        if (Boolean.parseBoolean(processingEnv.getOptions().get(BINARY_OPTION))) {
+            OutputStream outputStream = fileObject.openOutputStream();
+            try {
+                DescriptorIndex.write(new ArrayList<DescriptorImpl>(allDescriptors), outputStream);
+            }
+            finally {
+                outputStream.close();
+            }
+            
+            return;
+        }
+        
         Writer fileWriter = fileObject.openWriter();
         PrintWriter printWriter = null;
         try {
@@ -0,0 +1,99 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.runlevel;
+
+import java.util.List;
+
+/**
+ * Describes how long the system took to bring up all of the
+ * services at a single run level.  All times are in nanoseconds
+ *
+ * @author jwells
+ */
+public interface LevelTiming {
+    /**
+     * The level these timings are for
+     *
+     * @return The level these timings are for
+     */
+    public int getLevel();
+
+    /**
+     * The amount of time between the services at this level being
+     * looked up and the completion of the last service at this
+     * level
+     *
+     * @return The elapsed time for this level in nanoseconds
+     */
+    public long getElapsedTime();
+
+    /**
+     * The timing of every service that was started at this
+     * level, in the order in which they were started
+     *
+     * @return A non-null, possibly empty list of the timings of
+     * the services started at this level
+     */
+    public List<ServiceTiming> getServiceTimings();
+
+    /**
+     * The critical path is the chain of services at this level
+     * that depend on each other whose creation times add up to
+     * the largest value.  Since a service cannot be started before
+     * the services it depends on, this is the lower bound on the
+     * time needed to bring up this level no matter how many threads
+     * are used.  Services that should be made faster (or have some
+     * of their dependencies removed) in order to speed up the level
+     * will be found on this path
+     *
+     * @return A non-null, possibly empty list of the services on the
+     * critical path, ordered such that each service depends on the
+     * service before it
+     */
+    public List<ServiceTiming> getCriticalPath();
+
+    /**
+     * The sum of the durations of the services on the critical path
+     *
+     * @return The length of the critical path in nanoseconds
+     */
+    public long getCriticalPathTime();
+
+}
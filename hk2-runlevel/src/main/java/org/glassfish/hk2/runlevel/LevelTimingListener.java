@@ -0,0 +1,75 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.runlevel;
+
+import org.jvnet.hk2.annotations.Contract;
+
+/**
+ * Instances of classes implementing this contract can be registered with HK2
+ * to be informed of how long it took the system to reach a level when
+ * progressing upward.  The information given includes the time spent
+ * creating each service at the level and the critical path through
+ * the services at that level
+ * <p>
+ * Lengthy operations should not be performed in the listener since
+ * that may impact the performance of the RunLevelController calling the
+ * listener
+ *
+ * @author jwells
+ */
+@Contract
+public interface LevelTimingListener {
+    /**
+     * Called when all of the services at a level have been started, but
+     * before the {@link RunLevelListener#onProgress(ChangeableRunLevelFuture, int)}
+     * method is called for that level.  This method is also called for a
+     * level at which some of the services failed, in which case the timing
+     * information only covers the services that were started
+     * <p>
+     * Neither {@link RunLevelController#proceedTo(int)} nor
+     * {@link RunLevelController#proceedToAsync(int)} may be called from this method
+     * <p>
+     * Any exception thrown from this method is ignored
+     *
+     * @param timing The non-null timing information for the level
+     */
+    public void onLevelTiming(LevelTiming timing);
+
+}
@@ -0,0 +1,89 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.runlevel;
+
+import java.util.List;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+
+/**
+ * Describes how long a single service took to be created
+ * while a run level was being brought up.  All times are
+ * in nanoseconds
+ *
+ * @author jwells
+ */
+public interface ServiceTiming {
+    /**
+     * The descriptor of the run level service
+     *
+     * @return The non-null descriptor of the service
+     */
+    public ActiveDescriptor<?> getDescriptor();
+
+    /**
+     * The time at which the creation of this service started,
+     * relative to the start of the level
+     *
+     * @return The start time of this service in nanoseconds since
+     * the start of the level
+     */
+    public long getStartTime();
+
+    /**
+     * The amount of time it took to create this service.  If
+     * the service was created on behalf of another service before
+     * it was scheduled this may be very small
+     *
+     * @return The time it took to create this service in nanoseconds
+     */
+    public long getDuration();
+
+    /**
+     * The services at the same level that this service injects,
+     * either directly or through services that are not at this
+     * level
+     *
+     * @return A non-null, possibly empty list of the descriptors
+     * of the services at this level that this service depends on
+     */
+    public List<ActiveDescriptor<?>> getDependencies();
+
+}
@@ -59,6 +59,8 @@ import org.glassfish.hk2.api.ServiceHandle;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.runlevel.ChangeableRunLevelFuture;
 import org.glassfish.hk2.runlevel.ErrorInformation;
+import org.glassfish.hk2.runlevel.LevelTiming;
+import org.glassfish.hk2.runlevel.LevelTimingListener;
 import org.glassfish.hk2.runlevel.ProgressStartedListener;
 import org.glassfish.hk2.runlevel.RunLevel;
 import org.glassfish.hk2.runlevel.RunLevelListener;
@@ -82,6 +84,7 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
     private final boolean useThreads;
     private final List<ServiceHandle<RunLevelListener>> allListenerHandles;
     private final List<ServiceHandle<ProgressStartedListener>> allProgressStartedHandles;
+    private final List<ServiceHandle<LevelTimingListener>> allLevelTimingHandles;
     private final List<ServiceHandle<Sorter>> allSorterHandles;
     private final int maxThreads;
     private final Timer timer;
@@ -115,6 +118,7 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
         
         allListenerHandles = locator.getAllServiceHandles(RunLevelListener.class);
         allProgressStartedHandles = locator.getAllServiceHandles(ProgressStartedListener.class);
+        allLevelTimingHandles = locator.getAllServiceHandles(LevelTimingListener.class);
         allSorterHandles = locator.getAllServiceHandles(Sorter.class);
         
         if (currentLevel == proposedLevel) {
@@ -411,6 +415,27 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
         }
     }
     
+    private void invokeOnLevelTiming(LevelTiming timing,
+            List<ServiceHandle<LevelTimingListener>> listeners) {
+        setInCallback(true);
+        try {
+            for (ServiceHandle<LevelTimingListener> listener : listeners) {
+                try {
+                    LevelTimingListener ltl = listener.getService();
+                    if (ltl != null) {
+                        ltl.onLevelTiming(timing);
+                    }
+                }
+                catch (Throwable th) {
+                    // TODO:  Need a log message here
+               }
+            }
+        }
+        finally {
+            setInCallback(false);
+        }
+    }
+    
     private static void invokeOnCancelled(CurrentTaskFuture job, int levelAchieved,
             List<ServiceHandle<RunLevelListener>> listeners) {
         for (ServiceHandle<RunLevelListener> listener : listeners) {
@@ -666,6 +691,8 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
         private boolean cancelled = false;
         private CancelTimer hardCanceller;
         private int numJobsRunning = 0;
+        private int numRunners = 0;
+        private LevelGraph levelGraph;
         private boolean hardCancelled = false;
         private final HashSet<ServiceHandle<?>> outstandingHandles = new HashSet<ServiceHandle<?>>();
         
@@ -727,6 +754,28 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
             return numJobsRunning;
         }
         
+        /**
+         * Called with the queueLock held to reserve a new runner
+         * 
+         * @return true if another runner may be started
+         */
+        private boolean reserveRunner() {
+            // Without threads every job of the level runs on the calling thread
+            if (!useThreads) return false;
+            if (numRunners >= maxThreads) return false;
+            
+            numRunners++;
+            return true;
+        }
+        
+        private void runnerFinished() {
+            numRunners--;
+        }
+        
+        private void startRunner() {
+            executor.execute(new QueueRunner(locator, asyncContext, queueLock, levelGraph, this, lock));
+        }
+        
         private List<ServiceHandle<?>> applySorters(List<ServiceHandle<?>> jobs) {
             List<ServiceHandle<?>> retVal = jobs;
             
@@ -745,7 +794,7 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
 
         @Override
         public void run() {
-            Object jobsLock = new Object();
+            long levelStart = System.nanoTime();
             List<ServiceHandle<?>> jobs = locator.getAllServiceHandles(new IndexedFilter() {
 
                 @Override
@@ -767,22 +816,23 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
             
             jobs = applySorters(jobs);
             
+            // The dependencies are only needed in order to run services in parallel
+            // or to tell the timing listeners about the critical path
+            boolean computeDependencies = (useThreads && maxThreads > 1) || !allLevelTimingHandles.isEmpty();
+            
+            LevelGraph graph = new LevelGraph(locator, upToThisLevel, levelStart, jobs, computeDependencies);
+            synchronized (queueLock) {
+                levelGraph = graph;
+                numRunners = 1;
+            }
+            
             numJobs = jobs.size();
             if (numJobs <= 0) {
                 jobComplete();
                 return;
             }
             
-            int runnersToCreate = ((numJobs < maxThreads) ? numJobs : maxThreads) - 1;
-            if (!useThreads) runnersToCreate = 0;
-            
-            for (int lcv = 0; lcv < runnersToCreate; lcv++) {
-                QueueRunner runner = new QueueRunner(locator, asyncContext, jobsLock, jobs, this, lock, maxThreads);
-                
-                executor.execute(runner);
-            }
-            
-            QueueRunner myRunner = new QueueRunner(locator, asyncContext, jobsLock, jobs, this, lock, maxThreads);
+            QueueRunner myRunner = new QueueRunner(locator, asyncContext, queueLock, graph, this, lock);
             myRunner.run();
         }
         
@@ -821,6 +871,15 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
             }
             
             if (complete) {
+                if (!allLevelTimingHandles.isEmpty()) {
+                    LevelTiming timing;
+                    synchronized (queueLock) {
+                        timing = levelGraph.getTiming();
+                    }
+                    
+                    invokeOnLevelTiming(timing, allLevelTimingHandles);
+                }
+                
                 master.currentJobComplete(accumulatedExceptions);
             }
         }
@@ -1088,84 +1147,83 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
         }
     }
     
+    /**
+     * Runs the jobs of a level in the order given by the {@link LevelGraph}.  A job
+     * is only taken once the jobs it depends on have completed.  When more jobs are
+     * ready than there are runners another runner is started, up to the maximum
+     * number of threads
+     */
     private static class QueueRunner implements Runnable {
         private final ServiceLocator locator;
         private final AsyncRunLevelContext asyncContext;
         private final Object queueLock;
-        private final List<ServiceHandle<?>> queue;
+        private final LevelGraph graph;
         private final UpOneLevel parent;
         private final Object parentLock;
-        private final int maxThreads;
-        private ServiceHandle<?> wouldHaveBlocked;
-        private final HashSet<ActiveDescriptor<?>> alreadyTried = new HashSet<ActiveDescriptor<?>>();
         
         private QueueRunner(ServiceLocator locator,
                 AsyncRunLevelContext asyncContext,
                 Object queueLock,
-                List<ServiceHandle<?>> queue,
+                LevelGraph graph,
                 UpOneLevel parent,
-                Object parentLock,
-                int maxThreads) {
+                Object parentLock) {
             this.locator = locator;
             this.asyncContext = asyncContext;
             this.queueLock = queueLock;
-            this.queue = queue;
+            this.graph = graph;
             this.parent = parent;
             this.parentLock = parentLock;
-            this.maxThreads = maxThreads;
         }
 
         @Override
         public void run() {
-            ServiceHandle<?> runningHandle = null;
+            LevelGraph.Node runningJob = null;
+            boolean runningCompleted = false;
             for (;;) {
-                ServiceHandle<?> job;
+                LevelGraph.Node job;
                 boolean block;
+                boolean startAnother;
                 synchronized(queueLock) {
-                    if (runningHandle != null) parent.jobFinished(runningHandle);
-                    
-                    if (wouldHaveBlocked != null) {
-                        alreadyTried.add(wouldHaveBlocked.getActiveDescriptor());
+                    if (runningJob != null) {
+                        parent.jobFinished(runningJob.getHandle());
                         
-                        queue.add(queue.size(), wouldHaveBlocked);
-                        wouldHaveBlocked = null;
-                    }
-                    
-                    if (queue.isEmpty()) return;
-                    
-                    if (maxThreads <= 0) {
-                        block = true;
-                    }
-                    else {
-                        int currentlyEmptyThreads = maxThreads - parent.getJobsRunning();
-                        block = (queue.size() <= currentlyEmptyThreads);
+                        if (runningCompleted) {
+                            graph.completed(runningJob);
+                        }
+                        else {
+                            graph.deferred(runningJob);
+                        }
+                        
+                        runningJob = null;
                     }
                     
-                    if (block) {
-                        job = queue.remove(0);
-                    }
-                    else {
-                        job = null;
-                        for (int lcv = 0; lcv < queue.size(); lcv++) {
-                            ActiveDescriptor<?> candidate = queue.get(lcv).getActiveDescriptor();
-                            if (!alreadyTried.contains(candidate)) {
-                                job = queue.remove(lcv);
-                                break;
-                            }
-                        }
-                        if (job == null) {
-                            // Every job in the queue is one I've tried already
-                            job = queue.remove(0);
-                            
-                            block = true;
+                    job = graph.next();
+                    if (job == null) {
+                        if (parent.getJobsRunning() > 0 || !graph.forceProgress()) {
+                            // Either the running jobs will make more jobs ready
+                            // or there is nothing left to do
+                            parent.runnerFinished();
+                            return;
                         }
+                        
+                        job = graph.next();
                     }
                     
-                    parent.jobRunning(job);
-                    runningHandle = job;
+                    // If nothing else is running this job cannot block on another
+                    // thread, so there is no need to check for it
+                    block = (parent.getJobsRunning() == 0);
+                    
+                    parent.jobRunning(job.getHandle());
+                    runningJob = job;
+                    
+                    startAnother = graph.hasReady() && parent.reserveRunner();
                 }
                 
-                oneJob(job, block);
+                if (startAnother) {
+                    parent.startRunner();
+                }
+                
+                runningCompleted = oneJob(job, block);
             }
             
         }
@@ -1218,9 +1276,11 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
             return false;
         }
         
-        private void oneJob(ServiceHandle<?> fService, boolean block) {
+        private boolean oneJob(LevelGraph.Node job, boolean block) {
+            ServiceHandle<?> fService = job.getHandle();
             fService.setServiceData(!block);
             boolean completed = true;
+            job.setStart(System.nanoTime());
             try {
                 boolean ok;
                 synchronized (parentLock) {
@@ -1228,7 +1288,6 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
                 }
                 
                 if (!block && isWouldBlockRightNow(new HashSet<ActiveDescriptor<?>>(), fService.getActiveDescriptor())) {
-                    wouldHaveBlocked = fService;
                     completed = false;
                     ok = false;
                 }
@@ -1240,7 +1299,6 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
             catch (MultiException me) {
                 if (!block && isWouldBlock(me)) {
                     // In this case completed is FALSE, as the job has NOT completed
-                    wouldHaveBlocked = fService;
                     completed = false;
                 }
                 else if (!isWasCancelled(me)) {
@@ -1253,9 +1311,12 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
             finally {
                 fService.setServiceData(null);
                 if (completed) {
+                    job.setEnd(System.nanoTime());
                     parent.jobComplete();
                 }
             }
+            
+            return completed;
         }
     }
     
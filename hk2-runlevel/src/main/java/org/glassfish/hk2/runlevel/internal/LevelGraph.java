@@ -0,0 +1,419 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.runlevel.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.Injectee;
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceHandle;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.runlevel.LevelTiming;
+import org.glassfish.hk2.runlevel.RunLevel;
+import org.glassfish.hk2.runlevel.ServiceTiming;
+
+/**
+ * The dependency graph of the services at a single level.  A service
+ * is only handed out by {@link #next()} once all of the services at
+ * the same level that it injects have completed, which allows the
+ * services at a level to be created in parallel without the threads
+ * blocking on each other.  Services that are part of a cycle (or that
+ * have dependencies that could not be discovered up front) are handed
+ * out by {@link #forceProgress()} when nothing else is running.
+ * <p>
+ * This class is not thread safe, callers must synchronize
+ * 
+ * @author jwells
+ *
+ */
+public class LevelGraph {
+    private final static Comparator<Node> ORDER_COMPARATOR = new Comparator<Node>() {
+
+        @Override
+        public int compare(Node o1, Node o2) {
+            return o1.order - o2.order;
+        }
+        
+    };
+    
+    private final int level;
+    private final long levelStart;
+    private final List<Node> nodes;
+    private final PriorityQueue<Node> ready;
+    private final List<Node> deferred = new LinkedList<Node>();
+    private final List<Node> started = new ArrayList<Node>();
+    
+    /**
+     * Creates the graph for the given jobs
+     * 
+     * @param locator The locator to use to discover the dependencies
+     * @param level The level the jobs are at
+     * @param levelStart The time (in nanoseconds) at which the level started
+     * @param jobs The jobs at this level, in the order in which they should
+     * be started when they are otherwise equal
+     * @param computeDependencies If false the dependencies are not discovered
+     * and the jobs are handed out in the order given
+     */
+    /* package */ LevelGraph(ServiceLocator locator, int level, long levelStart,
+            List<ServiceHandle<?>> jobs, boolean computeDependencies) {
+        this.level = level;
+        this.levelStart = levelStart;
+        
+        nodes = new ArrayList<Node>(jobs.size());
+        ready = new PriorityQueue<Node>(Math.max(1, jobs.size()), ORDER_COMPARATOR);
+        
+        HashMap<ActiveDescriptor<?>, Node> byDescriptor = new HashMap<ActiveDescriptor<?>, Node>();
+        for (ServiceHandle<?> job : jobs) {
+            Node node = new Node(job, nodes.size());
+            
+            nodes.add(node);
+            byDescriptor.put(job.getActiveDescriptor(), node);
+        }
+        
+        if (computeDependencies) {
+            for (Node node : nodes) {
+                findDependencies(locator, byDescriptor, node, node.handle.getActiveDescriptor(),
+                        new HashSet<ActiveDescriptor<?>>());
+                
+                for (Node dependency : node.dependencies) {
+                    dependency.dependents.add(node);
+                }
+                node.waitingOn = node.dependencies.size();
+            }
+        }
+        
+        for (Node node : nodes) {
+            if (node.waitingOn == 0) ready.add(node);
+        }
+    }
+    
+    /**
+     * Walks the injection points of the given descriptor.  Services at this
+     * level become dependencies of the node, other run level services are
+     * walked through since creating them may in turn create services at this
+     * level
+     */
+    private static void findDependencies(ServiceLocator locator,
+            HashMap<ActiveDescriptor<?>, Node> byDescriptor,
+            Node node,
+            ActiveDescriptor<?> walkMe,
+            HashSet<ActiveDescriptor<?>> cycleChecker) {
+        if (!cycleChecker.add(walkMe)) return;
+        
+        if (!walkMe.isReified()) {
+            try {
+                walkMe = locator.reifyDescriptor(walkMe);
+            }
+            catch (MultiException me) {
+                // The error will be reported when the service is created
+                return;
+            }
+        }
+        
+        for (Injectee ip : walkMe.getInjectees()) {
+            ActiveDescriptor<?> childService;
+            try {
+                childService = locator.getInjecteeDescriptor(ip);
+            }
+            catch (MultiException me) {
+                continue;
+            }
+            
+            if (childService == null) continue;
+            
+            Node childNode = byDescriptor.get(childService);
+            if (childNode != null) {
+                if (childNode != node) node.dependencies.add(childNode);
+                continue;
+            }
+            
+            if (!RunLevel.class.getName().equals(childService.getScope())) continue;
+            
+            findDependencies(locator, byDescriptor, node, childService, cycleChecker);
+        }
+    }
+    
+    /**
+     * Returns the next job whose dependencies have all completed
+     * 
+     * @return The next job that can be run, or null if there is
+     * no such job right now
+     */
+    /* package */ Node next() {
+        Node retVal = ready.poll();
+        if (retVal == null) return null;
+        
+        if (retVal.start < 0L) {
+            started.add(retVal);
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Returns true if there are jobs that can be run right now
+     * 
+     * @return true if {@link #next()} would return a job
+     */
+    /* package */ boolean hasReady() {
+        return !ready.isEmpty();
+    }
+    
+    /**
+     * Called when a job could not be run because it would have
+     * blocked on a service being created by another thread.  The
+     * job is made ready again when any other job completes
+     * 
+     * @param node The node that would have blocked
+     */
+    /* package */ void deferred(Node node) {
+        deferred.add(node);
+    }
+    
+    /**
+     * Called when a job has completed (successfully or not).  The
+     * jobs that were only waiting on this job become ready, as do
+     * all deferred jobs
+     * 
+     * @param node The job that completed
+     */
+    /* package */ void completed(Node node) {
+        node.finished = true;
+        
+        for (Node dependent : node.dependents) {
+            dependent.waitingOn--;
+            if (dependent.waitingOn == 0 && !dependent.finished) {
+                ready.add(dependent);
+            }
+        }
+        
+        ready.addAll(deferred);
+        deferred.clear();
+    }
+    
+    /**
+     * Called when no job is running and no job is ready.  The deferred jobs
+     * become ready and if there are none then the first job still waiting
+     * on a dependency (which must be part of a cycle) becomes ready
+     * 
+     * @return true if there is now a job that can be run, false if every
+     * job has been handed out
+     */
+    /* package */ boolean forceProgress() {
+        if (!deferred.isEmpty()) {
+            ready.addAll(deferred);
+            deferred.clear();
+            return true;
+        }
+        
+        for (Node node : nodes) {
+            if (node.waitingOn > 0 && !node.finished) {
+                node.waitingOn = 0;
+                ready.add(node);
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Computes the timings of the jobs at this level, including the
+     * critical path
+     * 
+     * @return The timings of the jobs that have been started
+     */
+    /* package */ LevelTiming getTiming() {
+        HashMap<Node, ServiceTimingImpl> timings = new HashMap<Node, ServiceTimingImpl>();
+        List<ServiceTiming> serviceTimings = new ArrayList<ServiceTiming>(started.size());
+        long lastFinish = levelStart;
+        for (Node node : started) {
+            long duration = (node.end < node.start) ? 0L : (node.end - node.start);
+            
+            List<ActiveDescriptor<?>> dependencies = new ArrayList<ActiveDescriptor<?>>(node.dependencies.size());
+            for (Node dependency : node.dependencies) {
+                dependencies.add(dependency.handle.getActiveDescriptor());
+            }
+            
+            ServiceTimingImpl timing = new ServiceTimingImpl(node.handle.getActiveDescriptor(),
+                    node.start - levelStart,
+                    duration,
+                    Collections.unmodifiableList(dependencies));
+            
+            timings.put(node, timing);
+            serviceTimings.add(timing);
+            
+            if (node.end > lastFinish) lastFinish = node.end;
+        }
+        
+        // Longest path through the dependencies, weighted by the duration
+        // of each job.  Visiting in a topological order means every dependency
+        // is done before its dependents, except for the edges of a cycle which
+        // are ignored
+        HashMap<Node, Long> pathTime = new HashMap<Node, Long>();
+        HashMap<Node, Node> pathPredecessor = new HashMap<Node, Node>();
+        Node last = null;
+        long lastTime = -1L;
+        for (Node node : topologicalOrder()) {
+            ServiceTimingImpl timing = timings.get(node);
+            if (timing == null) continue;
+            
+            long best = 0L;
+            Node bestPredecessor = null;
+            for (Node dependency : node.dependencies) {
+                Long dependencyTime = pathTime.get(dependency);
+                if (dependencyTime == null) continue;
+                
+                if (bestPredecessor == null || dependencyTime > best) {
+                    best = dependencyTime;
+                    bestPredecessor = dependency;
+                }
+            }
+            
+            long myTime = best + timing.getDuration();
+            pathTime.put(node, myTime);
+            if (bestPredecessor != null) pathPredecessor.put(node, bestPredecessor);
+            
+            if (myTime > lastTime) {
+                lastTime = myTime;
+                last = node;
+            }
+        }
+        
+        LinkedList<ServiceTiming> criticalPath = new LinkedList<ServiceTiming>();
+        for (Node node = last; node != null; node = pathPredecessor.get(node)) {
+            criticalPath.addFirst(timings.get(node));
+        }
+        
+        return new LevelTimingImpl(level,
+                lastFinish - levelStart,
+                Collections.unmodifiableList(serviceTimings),
+                Collections.unmodifiableList(new ArrayList<ServiceTiming>(criticalPath)),
+                (lastTime < 0L) ? 0L : lastTime);
+    }
+    
+    private List<Node> topologicalOrder() {
+        HashMap<Node, Integer> remaining = new HashMap<Node, Integer>();
+        LinkedList<Node> available = new LinkedList<Node>();
+        for (Node node : nodes) {
+            remaining.put(node, node.dependencies.size());
+            if (node.dependencies.isEmpty()) available.add(node);
+        }
+        
+        List<Node> retVal = new ArrayList<Node>(nodes.size());
+        LinkedHashSet<Node> unvisited = new LinkedHashSet<Node>(nodes);
+        while (!unvisited.isEmpty()) {
+            if (available.isEmpty()) {
+                // Only cycles remain, break one
+                available.add(unvisited.iterator().next());
+            }
+            
+            Node node = available.removeFirst();
+            if (!unvisited.remove(node)) continue;
+            
+            retVal.add(node);
+            
+            for (Node dependent : node.dependents) {
+                int left = remaining.get(dependent) - 1;
+                remaining.put(dependent, left);
+                
+                if (left == 0) available.add(dependent);
+            }
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * A single job at this level
+     * 
+     * @author jwells
+     *
+     */
+    /* package */ static class Node {
+        private final ServiceHandle<?> handle;
+        private final int order;
+        private final LinkedHashSet<Node> dependencies = new LinkedHashSet<Node>();
+        private final List<Node> dependents = new LinkedList<Node>();
+        private int waitingOn;
+        private boolean finished;
+        private long start = -1L;
+        private long end = -1L;
+        
+        private Node(ServiceHandle<?> handle, int order) {
+            this.handle = handle;
+            this.order = order;
+        }
+        
+        /* package */ ServiceHandle<?> getHandle() {
+            return handle;
+        }
+        
+        /**
+         * Records the time at which this job started running.  If
+         * a job is deferred and retried the last start time is kept
+         * 
+         * @param start The start time in nanoseconds
+         */
+        /* package */ void setStart(long start) {
+            this.start = start;
+        }
+        
+        /* package */ void setEnd(long end) {
+            this.end = end;
+        }
+        
+        @Override
+        public String toString() {
+            return "Node(" + handle.getActiveDescriptor().getImplementation() + "," + order + "," +
+                waitingOn + "," + System.identityHashCode(this) + ")";
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.runlevel.internal;
+
+import java.util.List;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.runlevel.ServiceTiming;
+
+/**
+ * @author jwells
+ *
+ */
+public class ServiceTimingImpl implements ServiceTiming {
+    private final ActiveDescriptor<?> descriptor;
+    private final long startTime;
+    private final long duration;
+    private final List<ActiveDescriptor<?>> dependencies;
+    
+    /* package */ ServiceTimingImpl(ActiveDescriptor<?> descriptor,
+            long startTime,
+            long duration,
+            List<ActiveDescriptor<?>> dependencies) {
+        this.descriptor = descriptor;
+        this.startTime = startTime;
+        this.duration = duration;
+        this.dependencies = dependencies;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.ServiceTiming#getDescriptor()
+     */
+    @Override
+    public ActiveDescriptor<?> getDescriptor() {
+        return descriptor;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.ServiceTiming#getStartTime()
+     */
+    @Override
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.ServiceTiming#getDuration()
+     */
+    @Override
+    public long getDuration() {
+        return duration;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.ServiceTiming#getDependencies()
+     */
+    @Override
+    public List<ActiveDescriptor<?>> getDependencies() {
+        return dependencies;
+    }
+    
+    @Override
+    public String toString() {
+        return "ServiceTimingImpl(" + descriptor.getImplementation() + "," + startTime + "," +
+            duration + "," + System.identityHashCode(this) + ")";
+    }
+
+}
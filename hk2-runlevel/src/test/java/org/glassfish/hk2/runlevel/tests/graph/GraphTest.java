@@ -0,0 +1,235 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.runlevel.tests.graph;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.runlevel.LevelTiming;
+import org.glassfish.hk2.runlevel.RunLevelController;
+import org.glassfish.hk2.runlevel.RunLevelController.ThreadingPolicy;
+import org.glassfish.hk2.runlevel.ServiceTiming;
+import org.glassfish.hk2.runlevel.tests.utilities.Utilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the dependency aware scheduling of the services
+ * at a level and for the level timings
+ * 
+ * @author jwells
+ *
+ */
+public class GraphTest {
+    private final static long WORK_TIME = 20L;
+    
+    private final static Set<Thread> workThreads = new HashSet<Thread>();
+    
+    /**
+     * Called from the postConstruct of the services in this test
+     */
+    public static void work() {
+        synchronized (workThreads) {
+            workThreads.add(Thread.currentThread());
+        }
+        
+        try {
+            Thread.sleep(WORK_TIME);
+        }
+        catch (InterruptedException ie) {
+            throw new AssertionError(ie);
+        }
+    }
+    
+    private static ServiceLocator getLocator(ThreadingPolicy policy) {
+        return getLocator(policy, true);
+    }
+    
+    private static ServiceLocator getLocator(ThreadingPolicy policy, boolean recordTimings) {
+        ServiceLocator locator;
+        if (recordTimings) {
+            locator = Utilities.getServiceLocator(LevelTimingRecorder.class,
+                    TopService.class,
+                    MiddleService.class,
+                    BottomService.class,
+                    LoneService.class);
+        }
+        else {
+            locator = Utilities.getServiceLocator(TopService.class,
+                    MiddleService.class,
+                    BottomService.class,
+                    LoneService.class);
+        }
+        
+        RunLevelController controller = locator.getService(RunLevelController.class);
+        controller.setThreadingPolicy(policy);
+        
+        controller.proceedTo(1);
+        
+        return locator;
+    }
+    
+    private static Map<Class<?>, ServiceTiming> byImplementation(LevelTiming timing) {
+        Map<Class<?>, ServiceTiming> retVal = new HashMap<Class<?>, ServiceTiming>();
+        for (ServiceTiming serviceTiming : timing.getServiceTimings()) {
+            retVal.put(serviceTiming.getDescriptor().getImplementationClass(), serviceTiming);
+        }
+        
+        return retVal;
+    }
+    
+    private static void checkCriticalPath(LevelTiming timing) {
+        List<ServiceTiming> path = timing.getCriticalPath();
+        
+        Assert.assertEquals(3, path.size());
+        Assert.assertEquals(BottomService.class, path.get(0).getDescriptor().getImplementationClass());
+        Assert.assertEquals(MiddleService.class, path.get(1).getDescriptor().getImplementationClass());
+        Assert.assertEquals(TopService.class, path.get(2).getDescriptor().getImplementationClass());
+        
+        long sum = 0L;
+        for (ServiceTiming serviceTiming : path) {
+            sum += serviceTiming.getDuration();
+        }
+        
+        Assert.assertEquals(sum, timing.getCriticalPathTime());
+        Assert.assertTrue(timing.getCriticalPathTime() <= timing.getElapsedTime());
+    }
+    
+    /**
+     * Ensures that when using threads every service is only started
+     * after the services it injects at the same level have finished,
+     * rather than blocking on them
+     */
+    @Test // @org.junit.Ignore
+    public void testDependenciesCompleteBeforeDependentsStart() {
+        ServiceLocator locator = getLocator(ThreadingPolicy.FULLY_THREADED);
+        
+        TopService top = locator.getService(TopService.class);
+        Assert.assertNotNull(top.getDependency());
+        Assert.assertNotNull(top.getDependency().getDependency());
+        
+        LevelTiming timing = locator.getService(LevelTimingRecorder.class).getTiming(1);
+        Assert.assertNotNull(timing);
+        Assert.assertEquals(1, timing.getLevel());
+        
+        Map<Class<?>, ServiceTiming> timings = byImplementation(timing);
+        Assert.assertEquals(4, timings.size());
+        
+        for (ServiceTiming serviceTiming : timing.getServiceTimings()) {
+            for (ServiceTiming dependency : timings.values()) {
+                if (!serviceTiming.getDependencies().contains(dependency.getDescriptor())) continue;
+                
+                Assert.assertTrue(serviceTiming.getStartTime() >=
+                        dependency.getStartTime() + dependency.getDuration());
+            }
+        }
+        
+        Assert.assertEquals(1, timings.get(TopService.class).getDependencies().size());
+        Assert.assertEquals(MiddleService.class,
+                timings.get(TopService.class).getDependencies().get(0).getImplementationClass());
+        Assert.assertTrue(timings.get(BottomService.class).getDependencies().isEmpty());
+        Assert.assertTrue(timings.get(LoneService.class).getDependencies().isEmpty());
+        
+        // Each service did its own work, rather than creating its dependencies
+        for (ServiceTiming serviceTiming : timings.values()) {
+            Assert.assertTrue(serviceTiming.getDuration() < 3 * WORK_TIME * 1000000L);
+        }
+        
+        checkCriticalPath(timing);
+    }
+    
+    /**
+     * Ensures the critical path is the chain of services that
+     * inject each other when not using threads
+     */
+    @Test // @org.junit.Ignore
+    public void testCriticalPathWithNoThreads() {
+        ServiceLocator locator = getLocator(ThreadingPolicy.USE_NO_THREADS);
+        
+        LevelTiming timing = locator.getService(LevelTimingRecorder.class).getTiming(1);
+        Assert.assertNotNull(timing);
+        
+        Assert.assertEquals(4, timing.getServiceTimings().size());
+        
+        checkCriticalPath(timing);
+    }
+    
+    /**
+     * Ensures that when not using threads every service of the level
+     * is started on the calling thread, whether or not the dependencies
+     * of the level are computed for the timing listeners
+     */
+    @Test // @org.junit.Ignore
+    public void testNoThreadsRunsEverythingOnCallingThread() {
+        for (int lcv = 0; lcv < 2; lcv++) {
+            synchronized (workThreads) {
+                workThreads.clear();
+            }
+            
+            getLocator(ThreadingPolicy.USE_NO_THREADS, (lcv == 0));
+            
+            synchronized (workThreads) {
+                Assert.assertEquals(1, workThreads.size());
+                Assert.assertTrue(workThreads.contains(Thread.currentThread()));
+            }
+        }
+    }
+    
+    /**
+     * Ensures the listener is told about levels with no services
+     */
+    @Test // @org.junit.Ignore
+    public void testLevelWithNoServices() {
+        ServiceLocator locator = getLocator(ThreadingPolicy.FULLY_THREADED);
+        
+        LevelTiming timing = locator.getService(LevelTimingRecorder.class).getTiming(0);
+        Assert.assertNotNull(timing);
+        
+        Assert.assertEquals(0, timing.getLevel());
+        Assert.assertTrue(timing.getServiceTimings().isEmpty());
+        Assert.assertTrue(timing.getCriticalPath().isEmpty());
+        Assert.assertEquals(0L, timing.getCriticalPathTime());
+    }
+
+}
@@ -40,13 +40,11 @@
 
 package org.jvnet.hk2.testing.junit;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URL;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
@@ -65,6 +63,7 @@ import org.glassfish.hk2.api.DynamicConfigurationService;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.api.ServiceLocatorFactory;
 import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.glassfish.hk2.utilities.DescriptorIndex;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.junit.Before;
 import org.jvnet.hk2.testing.junit.annotations.Classes;
@@ -321,19 +320,19 @@ public class HK2Runner {
             try {
                 InputStream urlStream = url.openStream();
                 
-                BufferedReader reader = new BufferedReader(new InputStreamReader(urlStream));
-                
-                boolean goOn = true;
-                while (goOn) {
-                    DescriptorImpl bindMe = new DescriptorImpl();
+                List<DescriptorImpl> descriptors;
+                try {
+                    descriptors = DescriptorIndex.readDescriptors(urlStream);
+                }
+                finally {
+                    urlStream.close();
+                }
                 
-                    goOn = bindMe.readObject(reader);
-                    if (goOn == true && !excludes.contains(bindMe.getImplementation())) {
+                for (DescriptorImpl bindMe : descriptors) {
+                    if (!excludes.contains(bindMe.getImplementation())) {
                         config.bind(bindMe);
                     }
                 }
-                
-                reader.close();
             }
             catch (IOException ioe) {
                 ioe.printStackTrace();
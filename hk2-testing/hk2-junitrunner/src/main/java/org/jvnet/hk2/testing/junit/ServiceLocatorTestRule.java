@@ -39,13 +39,11 @@
  */
 package org.jvnet.hk2.testing.junit;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.PrintStream; // for javadoc only
 
 import java.lang.annotation.Annotation;
@@ -93,6 +91,7 @@ import org.glassfish.hk2.utilities.AbstractActiveDescriptor;
 import org.glassfish.hk2.utilities.Binder;
 import org.glassfish.hk2.utilities.BuilderHelper;
 import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.glassfish.hk2.utilities.DescriptorIndex;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 
 import org.junit.ClassRule; // for javadoc only
@@ -1245,9 +1244,8 @@ public class ServiceLocatorTestRule<T> extends ExternalResource implements Binde
 
   /**
    * {@linkplain URL#openStream() Opens an <code>InputStream</code>}
-   * to the supplied {@link URL}, wraps a {@link BufferedReader}
-   * around it, and calls the {@link #bind(DynamicConfiguration,
-   * BufferedReader)} method.
+   * to the supplied {@link URL} and calls the {@link
+   * #bind(DynamicConfiguration, InputStream)} method.
    *
    * @param configuration a {@link DynamicConfiguration} that will
    * perform the binding; must not be {@code null}
@@ -1261,18 +1259,18 @@ public class ServiceLocatorTestRule<T> extends ExternalResource implements Binde
    * @exception IOException if there was a problem reading locator
    * files
    *
-   * @see #bind(DynamicConfiguration, BufferedReader)
+   * @see #bind(DynamicConfiguration, InputStream)
    */
   private static final void bind(final DynamicConfiguration configuration, final URL locatorResource) throws IOException {
     assertNotNull(configuration);
     if (locatorResource != null) {
-      final BufferedReader reader = new BufferedReader(new InputStreamReader(locatorResource.openStream()));
+      final InputStream stream = locatorResource.openStream();
       try {
-        bind(configuration, reader);
+        bind(configuration, stream);
       } finally {
-        if (reader != null) {
+        if (stream != null) {
           try {
-            reader.close();
+            stream.close();
           } catch (final IOException ignore) {
             
           }
@@ -1282,19 +1280,17 @@ public class ServiceLocatorTestRule<T> extends ExternalResource implements Binde
   }
 
   /**
-   * {@linkplain DescriptorImpl#readObject(BufferedReader) Reads} the
-   * HK2 locator file represented by the supplied {@link
-   * BufferedReader} and {@linkplain
-   * DynamicConfiguration#bind(Descriptor) binds the
-   * <code>Descriptor</code>}s it represents.
+   * {@linkplain DescriptorIndex#readDescriptors(InputStream) Reads}
+   * the HK2 locator file represented by the supplied {@link
+   * InputStream}, which may be in either the text or the binary
+   * format, and {@linkplain DynamicConfiguration#bind(Descriptor)
+   * binds the <code>Descriptor</code>}s it represents.
    *
    * @param configuration a {@link DynamicConfiguration} that will
    * perform the binding; must not be {@code null}
    *
-   * @param reader a {@link BufferedReader} reading a stream of
-   * descriptor information as parseable by the {@link
-   * DescriptorImpl#readObject(BufferedReader)} method; may be {@code
-   * null} in which case no action will be performed
+   * @param stream an {@link InputStream} of an HK2 locator file; may
+   * be {@code null} in which case no action will be performed
    *
    * @exception AssertionError if {@code configuration} is {@code
    * null}
@@ -1302,17 +1298,15 @@ public class ServiceLocatorTestRule<T> extends ExternalResource implements Binde
    * @exception IOException if there was a problem reading locator
    * files
    *
-   * @see DescriptorImpl#readObject(BufferedReader)
+   * @see DescriptorIndex#readDescriptors(InputStream)
    *
    * @see DynamicConfiguration#bind(Descriptor)
    */
-  private static final void bind(final DynamicConfiguration configuration, final BufferedReader reader) throws IOException {
+  private static final void bind(final DynamicConfiguration configuration, final InputStream stream) throws IOException {
     assertNotNull(configuration);
-    if (reader != null) {
-      DescriptorImpl descriptor = new DescriptorImpl();
-      while (descriptor.readObject(reader)) {
+    if (stream != null) {
+      for (final DescriptorImpl descriptor : DescriptorIndex.readDescriptors(stream)) {
         configuration.bind(descriptor);
-        descriptor = new DescriptorImpl();
       }
     }
   }
@@ -39,6 +39,7 @@
  */
 package org.glassfish.hk2.utilities.cache;
 
+import org.glassfish.hk2.utilities.cache.internal.StripedTinyLFUCacheImpl;
 import org.glassfish.hk2.utilities.cache.internal.WeakCARCacheImpl;
 
 /**
@@ -65,4 +66,20 @@ public class CacheUtilities {
         return new WeakCARCacheImpl<K,V>(computable, maxSize, isWeak);
     }
 
+    /**
+     * Returns a bounded {@link IndexedCache} with the given computable and the given maximum
+     * value size.  The cache is split into independently locked segments, and uses the
+     * frequency of access of the keys to decide which values to keep when it is full.  Keys
+     * are kept with hard references
+     * 
+     * @param computable The computable that is used to get the V from the given K
+     * @param indexer Used to find the index of a key so that all keys with the same index
+     * can be released together.  May be null, in which case no keys are indexed
+     * @param maxSize The maximum number of values kept by the cache, must be greater than zero
+     * @return An IndexedCache that is empty
+     */
+    public static <K,V> IndexedCache<K,V> createIndexedCache(Computable<K,V> computable, CacheKeyIndexer<K> indexer, int maxSize) {
+        return new StripedTinyLFUCacheImpl<K,V>(computable, indexer, maxSize);
+    }
+
 }
@@ -0,0 +1,154 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.utilities.cache;
+
+/**
+ * A bounded cache of computed values.  Every key may belong to
+ * an index, as given by a {@link CacheKeyIndexer}, and all of the
+ * keys of an index can be released in time proportional to the
+ * number of keys in that index rather than the size of the cache.
+ * <p>
+ * Implementations must be safe to use from many threads at once,
+ * and must not hold any lock while calling the {@link Computable}
+ * 
+ * @author jwells
+ * @param <K> The key type of this cache
+ * @param <V> The value type of this cache
+ *
+ */
+public interface IndexedCache<K,V> {
+    /**
+     * The method used to get or add values to this cache
+     * 
+     * @param key The key to add to the cache.  If the value
+     * is not found, then the computable will be called to
+     * get the value.  May not be null
+     * 
+     * @return The calculated return value.  May not be null
+     */
+    public V compute(K key);
+    
+    /**
+     * Used to remove a single key and value from the cache (if
+     * the value is available)
+     * 
+     * @param key The key to remove. May not be null
+     * @return true if a key was found and removed
+     */
+    public boolean remove(K key);
+    
+    /**
+     * Releases all key/value pairs whose key belongs to the
+     * given index
+     * 
+     * @param index The non-null index whose keys should
+     * all be removed from the cache
+     */
+    public void releaseIndex(String index);
+    
+    /**
+     * Releases all key/value pairs that match the filter.  This
+     * must look at every key in the cache, and so {@link #releaseIndex(String)}
+     * should be used whenever possible
+     * 
+     * @param filter A non-null filter that can be used
+     * to delete every key/value pair that matches the filter
+     */
+    public void releaseMatching(CacheKeyFilter<K> filter);
+    
+    /**
+     * Clears the current cache, making the current size zero
+     * and setting all of the statistics of the cache back to zero
+     */
+    public void clear();
+    
+    /**
+     * Returns the current number of values in the cache
+     * 
+     * @return The current number of value entries in the cache
+     */
+    public int getValueSize();
+    
+    /**
+     * Gets the maximum number of values that will be kept
+     * by the cache
+     * 
+     * @return The maximum size of the cache
+     */
+    public int getMaxSize();
+    
+    /**
+     * Returns the number of calls to {@link #compute(Object)} that
+     * found their value in the cache since the cache was created or
+     * last cleared
+     * 
+     * @return The number of cache hits
+     */
+    public long getHitCount();
+    
+    /**
+     * Returns the number of calls to {@link #compute(Object)} that
+     * did not find their value in the cache since the cache was
+     * created or last cleared
+     * 
+     * @return The number of cache misses
+     */
+    public long getMissCount();
+    
+    /**
+     * Returns the number of values that have been removed from
+     * the cache in order to keep the cache under its maximum size
+     * since the cache was created or last cleared.  Values released
+     * with {@link #remove(Object)}, {@link #releaseIndex(String)} or
+     * {@link #releaseMatching(CacheKeyFilter)} are not counted
+     * 
+     * @return The number of cache evictions
+     */
+    public long getEvictionCount();
+    
+    /**
+     * The computable associated with this cache
+     * 
+     * @return The computable associated with this cache
+     */
+    public Computable<K,V> getComputable();
+
+}
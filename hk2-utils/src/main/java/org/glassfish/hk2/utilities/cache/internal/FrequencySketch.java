@@ -0,0 +1,172 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.utilities.cache.internal;
+
+/**
+ * A small count-min sketch of four bit counters used to estimate how often
+ * a key has been asked for.  Counters saturate at fifteen and every counter
+ * is halved once enough additions have been made, so that keys which were
+ * popular long ago do not keep their place forever.  This class is not
+ * thread safe, it is protected by the lock of the segment that owns it
+ * 
+ * @author jwells
+ *
+ */
+class FrequencySketch {
+    private final static int[] SEEDS = {
+        0x97CB3127, 0xB4B82E13, 0xC2B2AE35, 0x9E3779B9
+    };
+    private final static int MAX_COUNT = 15;
+    private final static int SAMPLE_FACTOR = 10;
+    
+    private final static int COUNTERS_PER_ENTRY = 4;
+    private final static int MIN_WIDTH = 64;
+    
+    private final int maxWidth;
+    private byte[][] table;
+    private int mask;
+    private int sampleSize;
+    private int additions;
+    
+    /**
+     * Creates a sketch for a segment holding at most the given
+     * number of entries.  The sketch starts small and grows
+     * with the segment, see {@link #ensureCapacity(int)}
+     * 
+     * @param maxSize The maximum number of entries in the segment
+     */
+    FrequencySketch(int maxSize) {
+        maxWidth = tableSizeFor(Math.max(maxSize, 1) * COUNTERS_PER_ENTRY);
+        
+        allocate(Math.min(maxWidth, MIN_WIDTH));
+    }
+    
+    private void allocate(int width) {
+        table = new byte[SEEDS.length][width];
+        mask = width - 1;
+        sampleSize = (width / COUNTERS_PER_ENTRY) * SAMPLE_FACTOR;
+        additions = 0;
+    }
+    
+    private static int tableSizeFor(int size) {
+        int retVal = Integer.highestOneBit(size);
+        if (retVal < size) retVal = retVal << 1;
+        
+        return retVal;
+    }
+    
+    /**
+     * Grows the sketch if it is too small for the given number
+     * of entries.  Growing the sketch forgets all of the counts
+     * 
+     * @param size The current number of entries in the segment
+     */
+    void ensureCapacity(int size) {
+        int width = table[0].length;
+        if (width >= maxWidth || size * COUNTERS_PER_ENTRY <= width) return;
+        
+        allocate(Math.min(maxWidth, tableSizeFor(size * COUNTERS_PER_ENTRY)));
+    }
+    
+    private int indexOf(int hash, int row) {
+        int h = hash * SEEDS[row];
+        h += h >>> 16;
+        
+        return h & mask;
+    }
+    
+    /**
+     * Returns the estimated number of times the key with
+     * the given hash has been seen
+     * 
+     * @param hash The spread hash of the key
+     * @return The estimated frequency of the key, between 0 and 15
+     */
+    int frequency(int hash) {
+        int retVal = MAX_COUNT;
+        for (int row = 0; row < SEEDS.length; row++) {
+            retVal = Math.min(retVal, table[row][indexOf(hash, row)]);
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Records one more use of the key with the given hash.  Only
+     * the smallest counters are raised (conservative update) which
+     * keeps the estimate closer to the real count
+     * 
+     * @param hash The spread hash of the key
+     */
+    void increment(int hash) {
+        int min = frequency(hash);
+        if (min < MAX_COUNT) {
+            for (int row = 0; row < SEEDS.length; row++) {
+                int index = indexOf(hash, row);
+                if (table[row][index] == min) {
+                    table[row][index]++;
+                }
+            }
+        }
+        
+        if (++additions >= sampleSize) {
+            reset();
+        }
+    }
+    
+    private void reset() {
+        for (int row = 0; row < SEEDS.length; row++) {
+            byte[] counters = table[row];
+            for (int lcv = 0; lcv < counters.length; lcv++) {
+                counters[lcv] = (byte) (counters[lcv] >>> 1);
+            }
+        }
+        
+        additions = additions >>> 1;
+    }
+    
+    /**
+     * Sets every counter back to zero
+     */
+    void clear() {
+        allocate(Math.min(maxWidth, MIN_WIDTH));
+    }
+}
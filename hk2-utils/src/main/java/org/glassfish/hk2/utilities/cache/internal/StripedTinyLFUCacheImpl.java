@@ -0,0 +1,530 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.utilities.cache.internal;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.glassfish.hk2.utilities.cache.CacheKeyFilter;
+import org.glassfish.hk2.utilities.cache.CacheKeyIndexer;
+import org.glassfish.hk2.utilities.cache.Computable;
+import org.glassfish.hk2.utilities.cache.ComputationErrorException;
+import org.glassfish.hk2.utilities.cache.IndexedCache;
+
+/**
+ * Implements the W-TinyLFU algorithm as found here:
+ * 
+ * https://arxiv.org/abs/1512.00727
+ * <p>
+ * The cache is split into a power of two number of segments, each
+ * with its own lock, its own frequency sketch and its own share of
+ * the maximum size.  Within a segment new entries go into a small LRU
+ * window.  When the window is full its oldest entry is only admitted
+ * into the main (segmented LRU) part of the segment if it has been
+ * asked for more often than the entry that would be evicted to make
+ * room for it.  The {@link Computable} is always called without holding
+ * any segment lock
+ * 
+ * @author jwells
+ *
+ */
+public class StripedTinyLFUCacheImpl<K,V> implements IndexedCache<K, V> {
+    private final static int MAX_SEGMENTS = 64;
+    private final static int SEGMENTS_PER_PROCESSOR = 4;
+    
+    private final Computable<K,V> computable;
+    private final CacheKeyIndexer<K> indexer;
+    private final int maxSize;
+    private final Segment<K,V>[] segments;
+    private final int segmentMask;
+    
+    @SuppressWarnings("unchecked")
+    public StripedTinyLFUCacheImpl(Computable<K,V> computable, CacheKeyIndexer<K> indexer, int maxSize) {
+        if (computable == null) throw new IllegalArgumentException("computable may not be null");
+        if (maxSize < 1) throw new IllegalArgumentException("Invalid maximum cache size " + maxSize);
+        
+        this.computable = computable;
+        this.indexer = indexer;
+        this.maxSize = maxSize;
+        
+        int numSegments = Integer.highestOneBit(Math.min(MAX_SEGMENTS,
+                Runtime.getRuntime().availableProcessors() * SEGMENTS_PER_PROCESSOR));
+        while (numSegments > maxSize) {
+            numSegments = numSegments >>> 1;
+        }
+        
+        segments = new Segment[numSegments];
+        segmentMask = numSegments - 1;
+        
+        int share = maxSize / numSegments;
+        int remainder = maxSize % numSegments;
+        for (int lcv = 0; lcv < numSegments; lcv++) {
+            segments[lcv] = new Segment<K,V>((lcv < remainder) ? share + 1 : share);
+        }
+    }
+    
+    private static int spread(int hashCode) {
+        int h = hashCode * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    
+    private Segment<K,V> segmentFor(int hash) {
+        return segments[(hash >>> 24) & segmentMask];
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.IndexedCache#compute(java.lang.Object)
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public V compute(K key) {
+        int hash = spread(key.hashCode());
+        Segment<K,V> segment = segmentFor(hash);
+        
+        V value = segment.get(key, hash);
+        if (value != null) return value;
+        
+        try {
+            value = computable.compute(key);
+        }
+        catch (ComputationErrorException cee) {
+            // Not kept in the cache
+            return (V) cee.getComputation();
+        }
+        
+        String index = (indexer == null) ? null : indexer.getIndex(key);
+        
+        return segment.put(key, hash, index, value);
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.IndexedCache#remove(java.lang.Object)
+     */
+    @Override
+    public boolean remove(K key) {
+        return segmentFor(spread(key.hashCode())).remove(key);
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.IndexedCache#releaseIndex(java.lang.String)
+     */
+    @Override
+    public void releaseIndex(String index) {
+        for (Segment<K,V> segment : segments) {
+            segment.releaseIndex(index);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.IndexedCache#releaseMatching(org.glassfish.hk2.utilities.cache.CacheKeyFilter)
+     */
+    @Override
+    public void releaseMatching(CacheKeyFilter<K> filter) {
+        if (filter == null) return;
+        
+        for (Segment<K,V> segment : segments) {
+            segment.releaseMatching(filter);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.IndexedCache#clear()
+     */
+    @Override
+    public void clear() {
+        for (Segment<K,V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.IndexedCache#getValueSize()
+     */
+    @Override
+    public int getValueSize() {
+        int retVal = 0;
+        for (Segment<K,V> segment : segments) {
+            retVal += segment.size();
+        }
+        
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.IndexedCache#getMaxSize()
+     */
+    @Override
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.IndexedCache#getHitCount()
+     */
+    @Override
+    public long getHitCount() {
+        long retVal = 0L;
+        for (Segment<K,V> segment : segments) {
+            retVal += segment.getHits();
+        }
+        
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.IndexedCache#getMissCount()
+     */
+    @Override
+    public long getMissCount() {
+        long retVal = 0L;
+        for (Segment<K,V> segment : segments) {
+            retVal += segment.getMisses();
+        }
+        
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.IndexedCache#getEvictionCount()
+     */
+    @Override
+    public long getEvictionCount() {
+        long retVal = 0L;
+        for (Segment<K,V> segment : segments) {
+            retVal += segment.getEvictions();
+        }
+        
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.IndexedCache#getComputable()
+     */
+    @Override
+    public Computable<K, V> getComputable() {
+        return computable;
+    }
+    
+    @Override
+    public String toString() {
+        return "StripedTinyLFUCacheImpl(" + getValueSize() + "," + maxSize + "," +
+            segments.length + "," + System.identityHashCode(this) + ")";
+    }
+    
+    private final static int WINDOW = 0;
+    private final static int PROBATION = 1;
+    private final static int PROTECTED = 2;
+    
+    private static class Node<K,V> {
+        private final K key;
+        private final V value;
+        private final int hash;
+        private final String index;
+        private int queue = WINDOW;
+        
+        private Node<K,V> previous;
+        private Node<K,V> next;
+        
+        private Node(K key, V value, int hash, String index) {
+            this.key = key;
+            this.value = value;
+            this.hash = hash;
+            this.index = index;
+        }
+        
+        private static <K,V> Node<K,V> sentinel() {
+            Node<K,V> retVal = new Node<K,V>(null, null, 0, null);
+            retVal.previous = retVal;
+            retVal.next = retVal;
+            
+            return retVal;
+        }
+        
+        private void unlink() {
+            previous.next = next;
+            next.previous = previous;
+            previous = null;
+            next = null;
+        }
+        
+        private void linkBefore(Node<K,V> sentinel) {
+            previous = sentinel.previous;
+            next = sentinel;
+            previous.next = this;
+            sentinel.previous = this;
+        }
+    }
+    
+    /**
+     * One independently locked piece of the cache.  The head of
+     * each queue (sentinel.next) is the least recently used entry
+     * 
+     * @author jwells
+     *
+     */
+    private static class Segment<K,V> {
+        private final int maxSize;
+        private final int windowMax;
+        private final int protectedMax;
+        
+        private final Map<K, Node<K,V>> data = new HashMap<K, Node<K,V>>();
+        private final Map<String, Set<Node<K,V>>> indexes = new HashMap<String, Set<Node<K,V>>>();
+        private final FrequencySketch sketch;
+        
+        private final Node<K,V> window = Node.sentinel();
+        private final Node<K,V> probation = Node.sentinel();
+        private final Node<K,V> protectedQueue = Node.sentinel();
+        private int windowSize;
+        private int protectedSize;
+        
+        private long hits;
+        private long misses;
+        private long evictions;
+        
+        private Segment(int maxSize) {
+            this.maxSize = maxSize;
+            windowMax = Math.max(1, maxSize / 100);
+            
+            int mainMax = Math.max(0, maxSize - windowMax);
+            protectedMax = (mainMax * 8) / 10;
+            
+            sketch = new FrequencySketch(maxSize);
+        }
+        
+        private synchronized V get(K key, int hash) {
+            sketch.increment(hash);
+            
+            Node<K,V> node = data.get(key);
+            if (node == null) {
+                misses++;
+                return null;
+            }
+            
+            hits++;
+            onHit(node);
+            
+            return node.value;
+        }
+        
+        private synchronized V put(K key, int hash, String index, V value) {
+            Node<K,V> node = data.get(key);
+            if (node != null) {
+                // Someone else got here first, keep theirs
+                return node.value;
+            }
+            
+            node = new Node<K,V>(key, value, hash, index);
+            data.put(key, node);
+            if (index != null) {
+                Set<Node<K,V>> indexed = indexes.get(index);
+                if (indexed == null) {
+                    indexed = new HashSet<Node<K,V>>();
+                    indexes.put(index, indexed);
+                }
+                indexed.add(node);
+            }
+            
+            node.linkBefore(window);
+            windowSize++;
+            
+            sketch.ensureCapacity(data.size());
+            evict();
+            
+            return value;
+        }
+        
+        private void onHit(Node<K,V> node) {
+            switch (node.queue) {
+            case WINDOW:
+                node.unlink();
+                node.linkBefore(window);
+                break;
+            case PROBATION:
+                node.unlink();
+                node.queue = PROTECTED;
+                node.linkBefore(protectedQueue);
+                protectedSize++;
+                
+                if (protectedSize > protectedMax) {
+                    Node<K,V> demoted = protectedQueue.next;
+                    demoted.unlink();
+                    demoted.queue = PROBATION;
+                    demoted.linkBefore(probation);
+                    protectedSize--;
+                }
+                break;
+            case PROTECTED:
+                node.unlink();
+                node.linkBefore(protectedQueue);
+                break;
+            default:
+                throw new AssertionError("Unknown queue " + node.queue);
+            }
+        }
+        
+        private void evict() {
+            while (windowSize > windowMax) {
+                Node<K,V> candidate = window.next;
+                candidate.unlink();
+                windowSize--;
+                
+                if (data.size() <= maxSize) {
+                    candidate.queue = PROBATION;
+                    candidate.linkBefore(probation);
+                    continue;
+                }
+                
+                Node<K,V> victim = probation.next;
+                if (victim == probation) {
+                    victim = protectedQueue.next;
+                    if (victim == protectedQueue) victim = null;
+                }
+                
+                if (victim != null &&
+                        sketch.frequency(candidate.hash) > sketch.frequency(victim.hash)) {
+                    candidate.queue = PROBATION;
+                    candidate.linkBefore(probation);
+                    
+                    // candidate is already unlinked, victim is still in a queue
+                    removeNode(victim, true);
+                }
+                else {
+                    // candidate is already unlinked from its queue
+                    removeNode(candidate, false);
+                }
+                
+                evictions++;
+            }
+        }
+        
+        private void removeNode(Node<K,V> node, boolean unlink) {
+            data.remove(node.key);
+            
+            if (unlink) {
+                if (node.queue == WINDOW) windowSize--;
+                else if (node.queue == PROTECTED) protectedSize--;
+                
+                node.unlink();
+            }
+            
+            if (node.index != null) {
+                Set<Node<K,V>> indexed = indexes.get(node.index);
+                if (indexed != null) {
+                    indexed.remove(node);
+                    if (indexed.isEmpty()) indexes.remove(node.index);
+                }
+            }
+        }
+        
+        private synchronized boolean remove(K key) {
+            Node<K,V> node = data.get(key);
+            if (node == null) return false;
+            
+            removeNode(node, true);
+            
+            return true;
+        }
+        
+        private synchronized void releaseIndex(String index) {
+            Set<Node<K,V>> indexed = indexes.remove(index);
+            if (indexed == null) return;
+            
+            for (Node<K,V> node : indexed) {
+                data.remove(node.key);
+                
+                if (node.queue == WINDOW) windowSize--;
+                else if (node.queue == PROTECTED) protectedSize--;
+                
+                node.unlink();
+            }
+        }
+        
+        private synchronized void releaseMatching(CacheKeyFilter<K> filter) {
+            List<Node<K,V>> removeMe = new LinkedList<Node<K,V>>();
+            for (Node<K,V> node : data.values()) {
+                if (filter.matches(node.key)) {
+                    removeMe.add(node);
+                }
+            }
+            
+            for (Node<K,V> node : removeMe) {
+                removeNode(node, true);
+            }
+        }
+        
+        private synchronized void clear() {
+            data.clear();
+            indexes.clear();
+            sketch.clear();
+            
+            window.next = window.previous = window;
+            probation.next = probation.previous = probation;
+            protectedQueue.next = protectedQueue.previous = protectedQueue;
+            windowSize = 0;
+            protectedSize = 0;
+            
+            hits = 0L;
+            misses = 0L;
+            evictions = 0L;
+        }
+        
+        private synchronized int size() {
+            return data.size();
+        }
+        
+        private synchronized long getHits() {
+            return hits;
+        }
+        
+        private synchronized long getMisses() {
+            return misses;
+        }
+        
+        private synchronized long getEvictions() {
+            return evictions;
+        }
+    }
+
+}
@@ -1320,6 +1320,14 @@ public final class ReflectionHelper {
      * @param l The classloader to set
      */
     private static void setContextClassLoader(final Thread t, final ClassLoader l) {
+        if (System.getSecurityManager() == null) {
+            if (t.getContextClassLoader() != l) {
+                t.setContextClassLoader(l);
+            }
+            
+            return;
+        }
+        
         AccessController.doPrivileged(new PrivilegedAction<Object>() {
 
             @Override
@@ -1491,6 +1499,11 @@ public final class ReflectionHelper {
      * @return The current context class loader
      */
     private static ClassLoader getCurrentContextClassLoader() {
+        if (System.getSecurityManager() == null) {
+            // No need to pay for doPrivileged on every reflective call
+            return Thread.currentThread().getContextClassLoader();
+        }
+        
         return AccessController.doPrivileged(new PrivilegedAction<ClassLoader>() {
             @Override
             public ClassLoader run() {
@@ -0,0 +1,282 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.utilities.cache.test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.glassfish.hk2.utilities.cache.CacheKeyFilter;
+import org.glassfish.hk2.utilities.cache.CacheKeyIndexer;
+import org.glassfish.hk2.utilities.cache.CacheUtilities;
+import org.glassfish.hk2.utilities.cache.Computable;
+import org.glassfish.hk2.utilities.cache.ComputationErrorException;
+import org.glassfish.hk2.utilities.cache.IndexedCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author jwells
+ *
+ */
+public class IndexedCacheTest {
+    private final static String HOT = "hot";
+    private final static String ERROR = "error";
+    private final static String A_INDEX = "a";
+    private final static String B_INDEX = "b";
+    
+    private final static int SMALL_CACHE_SIZE = 10;
+    private final static int LARGE_CACHE_SIZE = 1000;
+    
+    /**
+     * Indexes keys by their first character
+     */
+    private final static CacheKeyIndexer<String> FIRST_CHARACTER = new CacheKeyIndexer<String>() {
+
+        @Override
+        public String getIndex(String key) {
+            return key.substring(0, 1);
+        }
+        
+    };
+    
+    /**
+     * Tests that values are only computed once
+     */
+    @Test // @org.junit.Ignore
+    public void testValuesAreCached() {
+        CountingComputable counter = new CountingComputable();
+        IndexedCache<String, Integer> cache = CacheUtilities.createIndexedCache(counter, FIRST_CHARACTER, SMALL_CACHE_SIZE);
+        
+        Assert.assertEquals(new Integer(3), cache.compute("abc"));
+        Assert.assertEquals(new Integer(3), cache.compute("abc"));
+        Assert.assertEquals(new Integer(2), cache.compute("bc"));
+        
+        Assert.assertEquals(1, counter.getCount("abc"));
+        Assert.assertEquals(1, counter.getCount("bc"));
+        
+        Assert.assertEquals(2, cache.getValueSize());
+        Assert.assertEquals(SMALL_CACHE_SIZE, cache.getMaxSize());
+        Assert.assertEquals(1L, cache.getHitCount());
+        Assert.assertEquals(2L, cache.getMissCount());
+        Assert.assertEquals(0L, cache.getEvictionCount());
+        Assert.assertSame(counter, cache.getComputable());
+    }
+    
+    /**
+     * Tests that the cache never grows beyond its maximum
+     * size, and that the evictions are counted
+     */
+    @Test // @org.junit.Ignore
+    public void testMaximumSizeIsKept() {
+        CountingComputable counter = new CountingComputable();
+        IndexedCache<String, Integer> cache = CacheUtilities.createIndexedCache(counter, FIRST_CHARACTER, SMALL_CACHE_SIZE);
+        
+        for (int lcv = 0; lcv < 100; lcv++) {
+            cache.compute("k" + lcv);
+            
+            Assert.assertTrue(cache.getValueSize() <= SMALL_CACHE_SIZE);
+        }
+        
+        Assert.assertEquals(100L, cache.getMissCount());
+        Assert.assertEquals(100L - cache.getValueSize(), cache.getEvictionCount());
+    }
+    
+    /**
+     * Tests that a frequently used key is not pushed out
+     * of the cache by a long scan of keys used only once
+     */
+    @Test // @org.junit.Ignore
+    public void testFrequentKeySurvivesScan() {
+        CountingComputable counter = new CountingComputable();
+        IndexedCache<String, Integer> cache = CacheUtilities.createIndexedCache(counter, FIRST_CHARACTER, LARGE_CACHE_SIZE);
+        
+        for (int lcv = 0; lcv < 20; lcv++) {
+            cache.compute(HOT);
+        }
+        
+        for (int lcv = 0; lcv < 10 * LARGE_CACHE_SIZE; lcv++) {
+            cache.compute("scan" + lcv);
+            
+            if ((lcv % 100) == 0) {
+                cache.compute(HOT);
+            }
+        }
+        
+        Assert.assertEquals(1, counter.getCount(HOT));
+        Assert.assertTrue(cache.getValueSize() <= LARGE_CACHE_SIZE);
+        Assert.assertTrue(cache.getEvictionCount() > 0L);
+    }
+    
+    /**
+     * Tests that releasing an index removes all
+     * of the keys of that index and no others
+     */
+    @Test // @org.junit.Ignore
+    public void testReleaseIndex() {
+        CountingComputable counter = new CountingComputable();
+        IndexedCache<String, Integer> cache = CacheUtilities.createIndexedCache(counter, FIRST_CHARACTER, LARGE_CACHE_SIZE);
+        
+        for (int lcv = 0; lcv < 10; lcv++) {
+            cache.compute(A_INDEX + lcv);
+            cache.compute(B_INDEX + lcv);
+        }
+        
+        Assert.assertEquals(20, cache.getValueSize());
+        
+        cache.releaseIndex(A_INDEX);
+        
+        Assert.assertEquals(10, cache.getValueSize());
+        
+        for (int lcv = 0; lcv < 10; lcv++) {
+            cache.compute(A_INDEX + lcv);
+            cache.compute(B_INDEX + lcv);
+            
+            Assert.assertEquals(2, counter.getCount(A_INDEX + lcv));
+            Assert.assertEquals(1, counter.getCount(B_INDEX + lcv));
+        }
+        
+        // Releasing an unknown index does nothing
+        cache.releaseIndex("z");
+        
+        Assert.assertEquals(20, cache.getValueSize());
+    }
+    
+    /**
+     * Tests remove and releaseMatching
+     */
+    @Test // @org.junit.Ignore
+    public void testRemoveAndReleaseMatching() {
+        CountingComputable counter = new CountingComputable();
+        IndexedCache<String, Integer> cache = CacheUtilities.createIndexedCache(counter, null, LARGE_CACHE_SIZE);
+        
+        for (int lcv = 0; lcv < 10; lcv++) {
+            cache.compute(A_INDEX + lcv);
+        }
+        
+        Assert.assertTrue(cache.remove(A_INDEX + 0));
+        Assert.assertFalse(cache.remove(A_INDEX + 0));
+        
+        Assert.assertEquals(9, cache.getValueSize());
+        
+        cache.releaseMatching(new CacheKeyFilter<String>() {
+
+            @Override
+            public boolean matches(String key) {
+                return key.endsWith("1") || key.endsWith("2");
+            }
+            
+        });
+        
+        Assert.assertEquals(7, cache.getValueSize());
+        
+        cache.compute(A_INDEX + 1);
+        
+        Assert.assertEquals(2, counter.getCount(A_INDEX + 1));
+        Assert.assertEquals(0L, cache.getEvictionCount());
+    }
+    
+    /**
+     * Tests that values returned with a ComputationErrorException
+     * are returned but not kept in the cache
+     */
+    @Test // @org.junit.Ignore
+    public void testComputationErrorNotCached() {
+        CountingComputable counter = new CountingComputable();
+        IndexedCache<String, Integer> cache = CacheUtilities.createIndexedCache(counter, FIRST_CHARACTER, SMALL_CACHE_SIZE);
+        
+        Assert.assertEquals(new Integer(-1), cache.compute(ERROR));
+        Assert.assertEquals(new Integer(-1), cache.compute(ERROR));
+        
+        Assert.assertEquals(2, counter.getCount(ERROR));
+        Assert.assertEquals(0, cache.getValueSize());
+    }
+    
+    /**
+     * Tests that clear empties the cache and
+     * sets the statistics back to zero
+     */
+    @Test // @org.junit.Ignore
+    public void testClear() {
+        CountingComputable counter = new CountingComputable();
+        IndexedCache<String, Integer> cache = CacheUtilities.createIndexedCache(counter, FIRST_CHARACTER, SMALL_CACHE_SIZE);
+        
+        for (int lcv = 0; lcv < 20; lcv++) {
+            cache.compute(A_INDEX + lcv);
+            cache.compute(A_INDEX + lcv);
+        }
+        
+        cache.clear();
+        
+        Assert.assertEquals(0, cache.getValueSize());
+        Assert.assertEquals(0L, cache.getHitCount());
+        Assert.assertEquals(0L, cache.getMissCount());
+        Assert.assertEquals(0L, cache.getEvictionCount());
+        
+        cache.compute(A_INDEX + 0);
+        
+        Assert.assertEquals(1, cache.getValueSize());
+        Assert.assertEquals(1L, cache.getMissCount());
+    }
+    
+    private static class CountingComputable implements Computable<String, Integer> {
+        private final Map<String, Integer> counts = new HashMap<String, Integer>();
+
+        @Override
+        public synchronized Integer compute(String key) {
+            counts.put(key, getCount(key) + 1);
+            
+            if (ERROR.equals(key)) {
+                throw new ComputationErrorException(new Integer(-1));
+            }
+            
+            return key.length();
+        }
+        
+        private synchronized int getCount(String key) {
+            Integer retVal = counts.get(key);
+            if (retVal == null) return 0;
+            
+            return retVal;
+        }
+        
+    }
+
+}
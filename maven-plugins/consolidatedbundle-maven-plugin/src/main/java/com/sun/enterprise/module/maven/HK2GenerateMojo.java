@@ -43,12 +43,17 @@ import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.artifact.Artifact;
+import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.glassfish.hk2.utilities.DescriptorIndex;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -124,10 +129,24 @@ public class HK2GenerateMojo extends AbstractMojo {
             throws IOException {
         byte buf[] = new byte[BUFFER_SIZE];
 
-        InputStream is = jf.getInputStream(e);
-        int readLength;
-        while ((readLength = is.read(buf)) > 0) {
-            catStream.write(buf, 0, readLength);
+        InputStream is = new BufferedInputStream(jf.getInputStream(e));
+        try {
+            if (DescriptorIndex.isDescriptorIndex(is)) {
+                // binary indexes can not be concatenated, so add it in the text format
+                PrintWriter writer = new PrintWriter(new OutputStreamWriter(catStream));
+                for (DescriptorImpl descriptor : DescriptorIndex.read(is).getDescriptors()) {
+                    descriptor.writeObject(writer);
+                }
+                writer.flush();
+                return;
+            }
+            
+            int readLength;
+            while ((readLength = is.read(buf)) > 0) {
+                catStream.write(buf, 0, readLength);
+            }
+        } finally {
+            is.close();
         }
     }
 
@@ -51,13 +51,14 @@ import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 import java.util.logging.Level;
 
 import org.glassfish.hk2.api.Descriptor;
-import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.glassfish.hk2.utilities.DescriptorIndex;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleReference;
@@ -293,24 +294,8 @@ public class OSGiModuleDefinition implements ModuleDefinition, Serializable {
                         try {
                             is = url.openStream();
 
-                            BufferedReader br = new BufferedReader(new InputStreamReader(is));
-
-                            try {
-                                boolean readOne = false;
-
-                                do {
-                                    DescriptorImpl descriptorImpl = new DescriptorImpl();
-
-                                    readOne = descriptorImpl.readObject(br);
-
-                                    if (readOne) {
-                                        descriptors.add(descriptorImpl);
-                                    }
-                                } while (readOne);
-
-                            } finally {
-                                br.close();
-                            }
+                            // either the text or the binary descriptor format
+                            descriptors.addAll(DescriptorIndex.readDescriptors(is));
 
                             result.addDescriptors(serviceLocatorName, descriptors);
 
@@ -335,6 +320,22 @@ public class OSGiModuleDefinition implements ModuleDefinition, Serializable {
             throw new UnsupportedOperationException("Method not implemented");
         }
 
+        public void getPackages(Set<String> result) {
+            Enumeration<URL> entries = b.findEntries("/", "*", true);
+            if (entries == null) return;
+            
+            while (entries.hasMoreElements()) {
+                String entry = entries.nextElement().getPath();
+                if (entry.startsWith("/")) entry = entry.substring(1);
+                if (entry.endsWith("/")) continue;
+                
+                int idx = entry.lastIndexOf('/');
+                if (idx <= 0 || entry.startsWith("META-INF/")) continue;
+                
+                result.add(entry.substring(0, idx).replace('/', '.'));
+            }
+        }
+        
         /**
          * Manifest of a bundle. It is optimized for serialization as it writes out only the bundle id to the stream.
          * So, it can only be desrialized in the context of OSGi and that too only if the bundle id is same.